@@ -34,7 +34,6 @@ import static nom.tam.fits.header.Standard.GCOUNT;
 import static nom.tam.fits.header.Standard.NAXIS1;
 import static nom.tam.fits.header.Standard.NAXIS2;
 import static nom.tam.fits.header.Standard.PCOUNT;
-import static nom.tam.fits.header.Standard.TDIMn;
 import static nom.tam.fits.header.Standard.TFIELDS;
 import static nom.tam.fits.header.Standard.TFORMn;
 import static nom.tam.fits.header.Standard.THEAP;
@@ -49,7 +48,6 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
-import nom.tam.fits.header.IFitsHeader;
 import nom.tam.fits.header.Standard;
 import nom.tam.util.ArrayDataInput;
 import nom.tam.util.ArrayDataOutput;
@@ -73,51 +71,51 @@ public class BinaryTable extends AbstractTableData {
     protected static class ColumnDesc implements Cloneable {
 
         /** The size of the column in the type of the column */
-        private int size;
+        protected int size;
 
         /** The dimensions of the column (or just [1] if a scalar) */
-        private int[] dimens;
+        protected int[] dimens;
 
         /** The underlying class associated with the column. */
-        private Class<?> base;
+        protected Class<?> base;
 
         /**
          * An example of the kind of data that should be read/written in one row
          */
-        private Object model;
+        protected Object model;
 
         /** Is this a variable length column ? */
-        private boolean isVarying;
+        protected boolean isVarying;
 
         /**
          * Is this a variable length column using longs? [Must have isVarying
          * true too]
          */
-        private boolean isLongVary;
+        protected boolean isLongVary;
 
         /**
          * Is this a complex column. Each entry will be associated with a
          * float[2]/double[2]
          */
-        private boolean isComplex;
+        protected boolean isComplex;
 
         /**
          * Is this a string column. Strings will normally be converted to fixed
          * length byte arrays with the length given by the longest string.
          */
-        private boolean isString;
+        protected boolean isString;
 
         /**
          * Is this a boolean column? Booleans are stored as bytes with the value
          * 'T'/'F'
          */
-        private boolean isBoolean;
+        protected boolean isBoolean;
 
         /**
          * The flattened column data. This should be nulled when the data is
          * copied into the ColumnTable
          */
-        private Object column;
+        protected Object column;
 
         @Override
         public Object clone() {
@@ -194,12 +192,12 @@ public class BinaryTable extends AbstractTableData {
     /**
      * This is the area in which variable length column data lives.
      */
-    private final FitsHeap heap;
+    private FitsHeap heap;
 
     /**
      * The number of bytes between the end of the data and the heap
      */
-    private int heapOffset;
+    private long heapOffset;
 
     /**
      * Switched to an initial value of true TAM, 11/20/12, since the heap may be
@@ -208,8 +206,6 @@ public class BinaryTable extends AbstractTableData {
      */
     private boolean heapReadFromStream = true;
 
-    private boolean warnedOnVariableConversion = false;
-
     /**
      * A list describing each of the columns in the table
      */
@@ -237,6 +233,12 @@ public class BinaryTable extends AbstractTableData {
      */
     private ArrayDataInput currInput;
 
+    /**
+     * Reads single columns, rows and elements from the input while the data of
+     * the table was not read yet.
+     */
+    private BinaryTableFileReader fileReader;
+
     /**
      * Create a null binary table data segment.
      */
@@ -290,35 +292,30 @@ public class BinaryTable extends AbstractTableData {
     public BinaryTable(Header myHeader) throws FitsException {
         long heapSizeL = myHeader.getLongValue(PCOUNT);
         long heapOffsetL = myHeader.getLongValue(THEAP);
-        if (heapOffsetL > MAX_INTEGER_VALUE) {
-            throw new FitsException("Heap Offset > 2GB");
+        if (heapSizeL > FitsHeap.MAX_SIZE) {
+            throw new FitsException("Heap size > " + FitsHeap.MAX_SIZE + " bytes");
         }
-        if (heapSizeL > MAX_INTEGER_VALUE) {
-            throw new FitsException("Heap size > 2 GB");
-        }
-        if (heapSizeL - heapOffsetL > MAX_INTEGER_VALUE) {
-            throw new FitsException("Unable to allocate heap > 2GB");
-        }
-        this.heapOffset = (int) heapOffsetL;
-        int heapSize = (int) heapSizeL;
+        this.heapOffset = heapOffsetL;
         int rwsz = myHeader.getIntValue(NAXIS1);
         this.nRow = myHeader.getIntValue(NAXIS2);
 
         // Subtract out the size of the regular table from
         // the heap offset.
         if (this.heapOffset > 0) {
-            this.heapOffset -= this.nRow * rwsz;
+            this.heapOffset -= (long) this.nRow * (long) rwsz;
         }
 
-        if (this.heapOffset < 0 || this.heapOffset > heapSize) {
+        if (this.heapOffset < 0 || this.heapOffset > heapSizeL) {
             throw new FitsException("Inconsistent THEAP and PCOUNT");
         }
 
-        this.heap = new FitsHeap(heapSize - this.heapOffset);
+        this.heap = new FitsHeap(heapSizeL - this.heapOffset);
         int nCol = myHeader.getIntValue(TFIELDS);
         this.rowLen = 0;
         for (int col = 0; col < nCol; col++) {
-            this.rowLen += processCol(myHeader, col);
+            ColumnDesc colDesc = new ColumnDesc();
+            this.rowLen += BinaryTableColumnFormat.readColumnFormat(myHeader, col, colDesc);
+            this.columnList.add(colDesc);
         }
         HeaderCard card = myHeader.findCard(NAXIS1);
         card.setValue(String.valueOf(this.rowLen));
@@ -353,7 +350,7 @@ public class BinaryTable extends AbstractTableData {
      *             if the data could not be converted to a binary table
      */
     public BinaryTable(Object[][] data) throws FitsException {
-        this(convertToColumns(data));
+        this(BinaryTableColumnFormat.convertToColumns(data));
     }
 
     /**
@@ -378,68 +375,7 @@ public class BinaryTable extends AbstractTableData {
      *         the tdims is the inverse of the order in the TDIMS key.
      */
     public static int[] getTDims(String tdims) {
-
-        // The TDIMs value should be of the form: "(iiii,jjjj,kkk,...)"
-        int[] dims = null;
-        int first = tdims.indexOf('(');
-        int last = tdims.lastIndexOf(')');
-        if (first >= 0 && last > first) {
-
-            tdims = tdims.substring(first + 1, last - first);
-
-            java.util.StringTokenizer st = new java.util.StringTokenizer(tdims, ",");
-            int dim = st.countTokens();
-            if (dim > 0) {
-                dims = new int[dim];
-                for (int i = dim - 1; i >= 0; i -= 1) {
-                    dims[i] = Integer.parseInt(st.nextToken().trim());
-                }
-            }
-        }
-        return dims;
-    }
-
-    /**
-     * Convert a two-d table to a table of columns. Handle String specially.
-     * Every other element of data should be a primitive array of some
-     * dimensionality. Basically the translates a table expressed as objects in
-     * row order to a table with objects in column order.
-     */
-    private static Object[] convertToColumns(Object[][] data) {
-        Object[] row = data[0];
-        int nrow = data.length;
-        Object[] results = new Object[row.length];
-        for (int col = 0; col < row.length; col++) {
-            if (row[col] instanceof String) {
-                String[] sa = new String[nrow];
-                for (int irow = 0; irow < nrow; irow++) {
-                    sa[irow] = (String) data[irow][col];
-                }
-                results[col] = sa;
-            } else {
-                Class<?> base = ArrayFuncs.getBaseClass(row[col]);
-                int[] dims = ArrayFuncs.getDimensions(row[col]);
-
-                if (dims.length > 1 || dims[0] > 1) {
-                    int[] xdims = new int[dims.length + 1];
-                    xdims[0] = nrow;
-
-                    Object[] arr = (Object[]) ArrayFuncs.newInstance(base, xdims);
-                    for (int irow = 0; irow < nrow; irow++) {
-                        arr[irow] = data[irow][col];
-                    }
-                    results[col] = arr;
-                } else {
-                    Object arr = ArrayFuncs.newInstance(base, nrow);
-                    for (int irow = 0; irow < nrow; irow++) {
-                        System.arraycopy(data[irow][col], 0, arr, irow, 1);
-                    }
-                    results[col] = arr;
-                }
-
-            }
-        }
-        return results;
+        return BinaryTableColumnFormat.getTDims(tdims);
     }
 
     @Override
@@ -450,23 +386,25 @@ public class BinaryTable extends AbstractTableData {
 
         // A varying length column is a two-d primitive
         // array where the second index is not constant.
-        // We do not support Q types here, since Java
-        // can't handle the long indices anyway...
-        // This will probably change in some version of Java.
-        if (isVarying(o)) {
+        // 64 bit descriptors (Q) are only used if the heap
+        // will not fit 32 bit offsets.
+        if (BinaryTableColumnFormat.isVarying(o)) {
             added.isVarying = true;
             added.dimens = new int[]{
                 2
             };
         }
 
-        if (isVaryingComp(o)) {
+        if (BinaryTableColumnFormat.isVaryingComp(o)) {
             added.isVarying = true;
             added.isComplex = true;
             added.dimens = new int[]{
                 2
             };
         }
+        if (added.isVarying) {
+            added.isLongVary = this.heap.size() + ArrayFuncs.computeLSize(o) > MAX_INTEGER_VALUE;
+        }
 
         // Flatten out everything but 1-D arrays and the
         // two-D arrays associated with variable length columns.
@@ -526,24 +464,64 @@ public class BinaryTable extends AbstractTableData {
                 if (element == null) {
                     throw new FitsException("Cannot add initial rows with nulls");
                 }
-                addColumn(encapsulate(element));
+                addColumn(BinaryTableColumnFormat.encapsulate(element));
             }
             createTable();
 
         } else {
-            Object[] flatRow = new Object[getNCols()];
-            for (int i = 0; i < getNCols(); i++) {
-                Object x = ArrayFuncs.flatten(o[i]);
-                ColumnDesc colDesc = this.columnList.get(i);
-                flatRow[i] = arrayToColumn(colDesc, x);
-            }
-            this.table.addRow(flatRow);
+            this.table.addRow(flattenRow(o));
             this.nRow++;
         }
 
         return this.nRow;
     }
 
+    /**
+     * Convert a row to the flattened primitive arrays stored in the column
+     * table, variable length elements are written to the heap.
+     *
+     * @param o
+     *            the row to convert
+     * @return the converted row
+     * @throws FitsException
+     *             if the row could not be converted
+     */
+    Object[] flattenRow(Object[] o) throws FitsException {
+        Object[] flatRow = new Object[getNCols()];
+        for (int i = 0; i < getNCols(); i++) {
+            Object x = ArrayFuncs.flatten(o[i]);
+            ColumnDesc colDesc = this.columnList.get(i);
+            flatRow[i] = arrayToColumn(colDesc, x);
+        }
+        return flatRow;
+    }
+
+    /**
+     * Replace the column data of the table, the columns must have the same
+     * types and row sizes as the current ones.
+     *
+     * @param columns
+     *            the new flattened column arrays
+     * @throws FitsException
+     *             if the columns do not fit the table
+     */
+    void replaceColumns(Object[] columns) throws FitsException {
+        this.table = createColumnTable(columns, this.table.getSizes());
+        this.nRow = this.table.getNRows();
+        saveExtraState();
+    }
+
+    /**
+     * Replace the heap that receives the data of variable length columns.
+     *
+     * @param newHeap
+     *            the new heap
+     */
+    void replaceHeap(FitsHeap newHeap) {
+        this.heap = newHeap;
+        saveExtraState();
+    }
+
     /**
      * Delete a set of columns. Note that this does not fix the header, so users
      * should normally call the routine in TableHDU. * @throws FitsException if
@@ -606,7 +584,7 @@ public class BinaryTable extends AbstractTableData {
                 if (i > 0) {
                     h.positionAfterIndex(TFORMn, i);
                 }
-                fillForColumn(h, i, iter);
+                BinaryTableColumnFormat.addColumnFormat(this.columnList.get(i), i, iter);
             }
         } finally {
             Standard.context(null);
@@ -622,7 +600,39 @@ public class BinaryTable extends AbstractTableData {
     }
 
     /**
-     * Get a given column
+     * @return the value of a scalar logical column.
+     * @param row
+     *            the row of the element
+     * @param col
+     *            the column of the element
+     * @throws FitsException
+     *             if the column is not a scalar logical column or the data
+     *             could not be read
+     */
+    public boolean getBoolean(int row, int col) throws FitsException {
+        byte[] column = (byte[]) scalarColumn(row, col, true);
+        return column[row] == 'T';
+    }
+
+    /**
+     * @return the backing array of a byte column in flattened format, the
+     *         values of row r start at index r times the number of elements per
+     *         row. The array is not copied, changes are written to the table.
+     * @param col
+     *            the index of the column
+     * @throws FitsException
+     *             if the column is not a byte column or the data could not be
+     *             read
+     */
+    public byte[] getByteColumn(int col) throws FitsException {
+        return (byte[]) typedColumn(col, byte.class);
+    }
+
+    /**
+     * Get a given column. If the data of the table was not read yet (deferred
+     * reading from a random access input) only the bytes of this column are
+     * read from the file, the column is kept until the rest of the table is
+     * read.
      *
      * @param col
      *            The index of the column. * @throws FitsException if the
@@ -630,9 +640,31 @@ public class BinaryTable extends AbstractTableData {
      */
     @Override
     public Object getColumn(int col) throws FitsException {
-        ensureData();
         Object res = getFlattenedColumn(col);
-        res = encurl(res, col, this.nRow);
+        res = BinaryTableColumnFormat.encurl(this.columnList.get(col), res, this.nRow);
+        return res;
+    }
+
+    /**
+     * Get a range of rows of a given column. If the data of the table was not
+     * read yet (deferred reading from a random access input) only the bytes of
+     * this column in the requested rows are read from the file, the rest of the
+     * table is not loaded and the returned data is a copy that is not cached.
+     *
+     * @param col
+     *            The index of the column.
+     * @param firstRow
+     *            The first row to return.
+     * @param nRows
+     *            The number of rows to return.
+     * @return the column data of the rows in the same format as
+     *         {@link #getColumn(int)}.
+     * @throws FitsException
+     *             if the operation failed
+     */
+    public Object getColumn(int col, int firstRow, int nRows) throws FitsException {
+        Object res = getFlattenedColumn(col, firstRow, nRows);
+        res = BinaryTableColumnFormat.encurl(this.columnList.get(col), res, nRows);
         return res;
     }
 
@@ -642,11 +674,22 @@ public class BinaryTable extends AbstractTableData {
             if (this.currInput == null) {
                 throw new FitsException("Cannot find input for deferred read");
             }
+            // columns read on their own before may have been changed.
+            Object[] readColumns = new Object[this.columnList.size()];
+            for (int col = 0; col < readColumns.length; col++) {
+                readColumns[col] = this.columnList.get(col).column;
+                this.columnList.get(col).column = null;
+            }
             this.table = createTable();
             long currentOffset = FitsUtil.findOffset(this.currInput);
             FitsUtil.reposition(this.currInput, this.fileOffset);
             readTrueData(this.input);
             FitsUtil.reposition(this.currInput, currentOffset);
+            for (int col = 0; col < readColumns.length; col++) {
+                if (readColumns[col] != null) {
+                    this.table.setColumn(col, readColumns[col]);
+                }
+            }
         }
         return this.table;
     }
@@ -659,6 +702,43 @@ public class BinaryTable extends AbstractTableData {
         return dimens;
     }
 
+    /**
+     * Get a numeric scalar element without boxing, any numeric column type is
+     * converted to a double.
+     *
+     * @return the value of the element.
+     * @param row
+     *            the row of the element
+     * @param col
+     *            the column of the element
+     * @throws FitsException
+     *             if the column is not a numeric scalar column or the data
+     *             could not be read
+     */
+    public double getDouble(int row, int col) throws FitsException {
+        Object column = scalarColumn(row, col, false);
+        if (column instanceof double[]) {
+            return ((double[]) column)[row];
+        } else if (column instanceof float[]) {
+            return ((float[]) column)[row];
+        }
+        return longValue(column, row, col);
+    }
+
+    /**
+     * @return the backing array of a double column in flattened format, the
+     *         values of row r start at index r times the number of elements per
+     *         row. The array is not copied, changes are written to the table.
+     * @param col
+     *            the index of the column
+     * @throws FitsException
+     *             if the column is not a double column or the data could not be
+     *             read
+     */
+    public double[] getDoubleColumn(int col) throws FitsException {
+        return (double[]) typedColumn(col, double.class);
+    }
+
     /**
      * Get a particular element from the table.
      *
@@ -677,21 +757,14 @@ public class BinaryTable extends AbstractTableData {
 
         ColumnDesc colDesc = this.columnList.get(j);
         Object ele;
-        if (colDesc.isVarying) {
-            // Have to read in entire data set.
-            ensureData();
-        }
-
         if (this.table == null) {
-            // This is really inefficient.
-            // Need to either save the row, or just read the one element.
-            Object[] row = getRow(i);
-            ele = row[j];
-
+            // Deferred read: fetch just this element (and its heap data if
+            // the column is varying) from the file.
+            ele = this.fileReader.readElement(i, j);
         } else {
             ele = this.table.getElement(i, j);
             ele = columnToArray(colDesc, ele, 1);
-            ele = encurl(ele, j, 1);
+            ele = BinaryTableColumnFormat.encurl(colDesc, ele, 1);
             if (ele instanceof Object[]) {
                 ele = ((Object[]) ele)[0];
             }
@@ -716,19 +789,91 @@ public class BinaryTable extends AbstractTableData {
      *             if the column could not be flattened
      */
     public Object getFlattenedColumn(int col) throws FitsException {
-        ensureData();
         if (!validColumn(col)) {
             throw new FitsException("Invalid column");
         }
-        Object res = this.table.getColumn(col);
+        Object res = getTableColumn(col);
         ColumnDesc colDesc = this.columnList.get(col);
         return columnToArray(colDesc, res, this.nRow);
     }
 
+    /**
+     * @return a range of rows of a column in flattened format, if the data of
+     *         the table was not read yet only this part of the column is read
+     *         from the file.
+     * @param col
+     *            the column to flatten
+     * @param firstRow
+     *            the first row to return
+     * @param nRows
+     *            the number of rows to return
+     * @throws FitsException
+     *             if the column could not be flattened
+     */
+    public Object getFlattenedColumn(int col, int firstRow, int nRows) throws FitsException {
+        if (!validColumn(col)) {
+            throw new FitsException("Invalid column");
+        }
+        if (firstRow < 0 || nRows < 0 || (long) firstRow + nRows > this.nRow) {
+            throw new FitsException("Invalid row range " + firstRow + " to " + ((long) firstRow + nRows) + " in table with " + this.nRow + " rows");
+        }
+        ColumnDesc colDesc = this.columnList.get(col);
+        if (isDeferred() && colDesc.column == null) {
+            Object res = this.fileReader.readColumn(col, firstRow, nRows);
+            if (colDesc.isVarying) {
+                return this.fileReader.readHeapEntries(col, res);
+            }
+            return columnToArray(colDesc, res, nRows);
+        }
+        Object res = getTableColumn(col);
+        if (firstRow != 0 || nRows != this.nRow) {
+            long from = (long) firstRow * colDesc.size;
+            long length = (long) nRows * colDesc.size;
+            if (from + length > Array.getLength(res)) {
+                throw new FitsException("Invalid row range " + firstRow + " to " + ((long) firstRow + nRows) + " for column " + col);
+            }
+            Object range = colDesc.newInstance(nRows);
+            System.arraycopy(res, (int) from, range, 0, (int) length);
+            res = range;
+        }
+        return columnToArray(colDesc, res, nRows);
+    }
+
+    /**
+     * Get a numeric scalar element without boxing, any numeric column type is
+     * converted to a float.
+     *
+     * @return the value of the element.
+     * @param row
+     *            the row of the element
+     * @param col
+     *            the column of the element
+     * @throws FitsException
+     *             if the column is not a numeric scalar column or the data
+     *             could not be read
+     */
+    public float getFloat(int row, int col) throws FitsException {
+        return (float) getDouble(row, col);
+    }
+
+    /**
+     * @return the backing array of a float column in flattened format, the
+     *         values of row r start at index r times the number of elements per
+     *         row. The array is not copied, changes are written to the table.
+     * @param col
+     *            the index of the column
+     * @throws FitsException
+     *             if the column is not a float column, is a complex column or
+     *             the data could not be read
+     */
+    public float[] getFloatColumn(int col) throws FitsException {
+        return (float[]) typedColumn(col, float.class);
+    }
+
     /**
      * @return the offset to the heap
      */
-    public int getHeapOffset() {
+    public long getHeapOffset() {
         return this.heapOffset;
     }
 
@@ -736,10 +881,74 @@ public class BinaryTable extends AbstractTableData {
      * @return the size of the heap -- including the offset from the end of the
      *         table data.
      */
-    public int getHeapSize() {
+    public long getHeapSize() {
         return this.heapOffset + this.heap.size();
     }
 
+    /**
+     * Get an integer scalar element without boxing.
+     *
+     * @return the value of the element.
+     * @param row
+     *            the row of the element
+     * @param col
+     *            the column of the element
+     * @throws FitsException
+     *             if the column is not a byte, short or int scalar column or
+     *             the data could not be read
+     */
+    public int getInt(int row, int col) throws FitsException {
+        Object column = scalarColumn(row, col, false);
+        if (column instanceof long[]) {
+            throw new FitsException("Column " + col + " can not be read as int");
+        }
+        return (int) longValue(column, row, col);
+    }
+
+    /**
+     * @return the backing array of a int column in flattened format, the
+     *         values of row r start at index r times the number of elements per
+     *         row. The array is not copied, changes are written to the table.
+     * @param col
+     *            the index of the column
+     * @throws FitsException
+     *             if the column is not a int column or the data could not be
+     *             read
+     */
+    public int[] getIntColumn(int col) throws FitsException {
+        return (int[]) typedColumn(col, int.class);
+    }
+
+    /**
+     * Get an integer scalar element without boxing.
+     *
+     * @return the value of the element.
+     * @param row
+     *            the row of the element
+     * @param col
+     *            the column of the element
+     * @throws FitsException
+     *             if the column is not an integer scalar column or the data
+     *             could not be read
+     */
+    public long getLong(int row, int col) throws FitsException {
+        return longValue(scalarColumn(row, col, false), row, col);
+    }
+
+    /**
+     * @return the backing array of a long column in flattened format, the
+     *         values of row r start at index r times the number of elements per
+     *         row. The array is not copied, changes are written to the table.
+     * @param col
+     *            the index of the column
+     * @throws FitsException
+     *             if the column is not a long column or the data could not be
+     *             read
+     */
+    public long[] getLongColumn(int col) throws FitsException {
+        return (long[]) typedColumn(col, long.class);
+    }
+
     /**
      * @return a row that may be used for direct i/o to the table.
      */
@@ -801,11 +1010,25 @@ public class BinaryTable extends AbstractTableData {
         if (this.table != null) {
             res = getMemoryRow(row);
         } else {
-            res = getFileRow(row);
+            res = this.fileReader.readRow(row);
         }
         return res;
     }
 
+    /**
+     * @return the backing array of a short column in flattened format, the
+     *         values of row r start at index r times the number of elements per
+     *         row. The array is not copied, changes are written to the table.
+     * @param col
+     *            the index of the column
+     * @throws FitsException
+     *             if the column is not a short column or the data could not be
+     *             read
+     */
+    public short[] getShortColumn(int col) throws FitsException {
+        return (short[]) typedColumn(col, short.class);
+    }
+
     public int[] getSizes() {
         int[] sizes = new int[this.columnList.size()];
         for (int i = 0; i < sizes.length; i++) {
@@ -842,7 +1065,7 @@ public class BinaryTable extends AbstractTableData {
         this.currInput = i;
 
         if (i instanceof RandomAccess) {
-
+            this.fileReader = new BinaryTableFileReader(this, i, this.fileOffset, getFileHeapStart());
             try {
                 i.skipAllBytes(getTrueSize());
                 this.heapReadFromStream = false;
@@ -874,6 +1097,24 @@ public class BinaryTable extends AbstractTableData {
         }
     }
 
+    /**
+     * Set the value of a scalar logical column.
+     *
+     * @param row
+     *            the row of the element
+     * @param col
+     *            the column of the element
+     * @param value
+     *            the new value
+     * @throws FitsException
+     *             if the column is not a scalar logical column or the data
+     *             could not be read
+     */
+    public void setBoolean(int row, int col, boolean value) throws FitsException {
+        byte[] column = (byte[]) scalarColumn(row, col, true);
+        column[row] = (byte) (value ? 'T' : 'F');
+    }
+
     /**
      * Replace a column in the table.
      *
@@ -887,13 +1128,36 @@ public class BinaryTable extends AbstractTableData {
      */
     @Override
     public void setColumn(int col, Object xcol) throws FitsException {
-
+        // variable length data is added to the heap, so the heap must be
+        // loaded before.
+        ensureData();
         ColumnDesc colDesc = this.columnList.get(col);
         xcol = arrayToColumn(colDesc, xcol);
         xcol = ArrayFuncs.flatten(xcol);
         setFlattenedColumn(col, xcol);
     }
 
+    /**
+     * Set the value of a scalar double column without boxing.
+     *
+     * @param row
+     *            the row of the element
+     * @param col
+     *            the column of the element
+     * @param value
+     *            the new value
+     * @throws FitsException
+     *             if the column is not a scalar double column or the data could
+     *             not be read
+     */
+    public void setDouble(int row, int col, double value) throws FitsException {
+        Object column = scalarColumn(row, col, false);
+        if (!(column instanceof double[])) {
+            throw new FitsException("Column " + col + " is not a double column");
+        }
+        ((double[]) column)[row] = value;
+    }
+
     /**
      * Replace a single element within the table.
      *
@@ -914,8 +1178,7 @@ public class BinaryTable extends AbstractTableData {
             int size = Array.getLength(o);
             // The offset for the row is the offset to the heap plus the
             // offset within the heap.
-            int offset = (int) this.heap.getSize();
-            this.heap.putData(o);
+            long offset = this.heap.putData(o);
             if (colDesc.isLongVary) {
                 this.table.setElement(i, j, new long[]{
                     size,
@@ -924,7 +1187,7 @@ public class BinaryTable extends AbstractTableData {
             } else {
                 this.table.setElement(i, j, new int[]{
                     size,
-                    offset
+                    checkIntDescriptor(offset)
                 });
             }
 
@@ -954,6 +1217,69 @@ public class BinaryTable extends AbstractTableData {
         this.table.setColumn(col, data);
     }
 
+    /**
+     * Set the value of a scalar float column without boxing.
+     *
+     * @param row
+     *            the row of the element
+     * @param col
+     *            the column of the element
+     * @param value
+     *            the new value
+     * @throws FitsException
+     *             if the column is not a scalar float column or the data could
+     *             not be read
+     */
+    public void setFloat(int row, int col, float value) throws FitsException {
+        Object column = scalarColumn(row, col, false);
+        if (!(column instanceof float[])) {
+            throw new FitsException("Column " + col + " is not a float column");
+        }
+        ((float[]) column)[row] = value;
+    }
+
+    /**
+     * Set the value of a scalar int column without boxing.
+     *
+     * @param row
+     *            the row of the element
+     * @param col
+     *            the column of the element
+     * @param value
+     *            the new value
+     * @throws FitsException
+     *             if the column is not a scalar int column or the data could
+     *             not be read
+     */
+    public void setInt(int row, int col, int value) throws FitsException {
+        Object column = scalarColumn(row, col, false);
+        if (!(column instanceof int[])) {
+            throw new FitsException("Column " + col + " is not a int column");
+        }
+        ((int[]) column)[row] = value;
+    }
+
+    /**
+     * Set the value of a scalar long column without boxing.
+     *
+     * @param row
+     *            the row of the element
+     * @param col
+     *            the column of the element
+     * @param value
+     *            the new value
+     * @throws FitsException
+     *             if the column is not a scalar long column or the data could
+     *             not be read
+     */
+    public void setLong(int row, int col, long value) throws FitsException {
+        Object column = scalarColumn(row, col, false);
+        if (!(column instanceof long[])) {
+            throw new FitsException("Column " + col + " is not a long column");
+        }
+        ((long[]) column)[row] = value;
+    }
+
     /**
      * Replace a row in the table.
      *
@@ -998,12 +1324,15 @@ public class BinaryTable extends AbstractTableData {
      */
     @Override
     public void write(ArrayDataOutput os) throws FitsException {
+        if (this.table == null && !hasReadColumns() && transferUnmodified(os)) {
+            return;
+        }
         ensureData();
         try {
 
             this.table.write(os);
             if (this.heapOffset > 0) {
-                int off = this.heapOffset;
+                long off = this.heapOffset;
                 // Minimize memory usage. This also accommodates
                 // the possibility that heapOffset > 2GB.
                 // Previous code might have allocated up to 2GB
@@ -1012,7 +1341,7 @@ public class BinaryTable extends AbstractTableData {
                 int arrSiz = MAX_EMPTY_BLOCK_SIZE;
                 while (off > 0) {
                     if (arrSiz > off) {
-                        arrSiz = off;
+                        arrSiz = (int) off;
                     }
                     os.write(new byte[arrSiz]);
                     off -= arrSiz;
@@ -1079,7 +1408,7 @@ public class BinaryTable extends AbstractTableData {
                 o = xo;
             }
             // Write all rows of data onto the heap.
-            int offset = this.heap.putData(o);
+            long offset = this.heap.putData(o);
             int blen = ArrayFuncs.getBaseLength(o);
             // Handle an addRow of a variable length element.
             // In this case we only get a one-d array, but we just
@@ -1103,7 +1432,7 @@ public class BinaryTable extends AbstractTableData {
                     int len = Array.getLength(x[i]);
                     descrip[2 * i] = len;
                     descrip[2 * i + 1] = offset;
-                    offset += len * blen * factor;
+                    offset += (long) len * blen * factor;
                 }
                 o = descrip;
             } else {
@@ -1115,8 +1444,8 @@ public class BinaryTable extends AbstractTableData {
                 for (int i = 0; i < nrow; i++) {
                     int len = Array.getLength(x[i]);
                     descrip[2 * i] = len;
-                    descrip[2 * i + 1] = offset;
-                    offset += len * blen * factor;
+                    descrip[2 * i + 1] = checkIntDescriptor(offset);
+                    offset += (long) len * blen * factor;
                 }
                 o = descrip;
             }
@@ -1124,47 +1453,17 @@ public class BinaryTable extends AbstractTableData {
         return o;
     }
 
-    // Check if this is consistent with a varying
-    // complex row. That requires
-    // The second index varies.
-    // The third index is 2 whenever the second
-    // index is non-zero.
-    // This function will fail if nulls are encountered.
-    private boolean checkCompVary(float[][][] o) {
-
-        boolean varying = false;
-        int len0 = o[0].length;
-        for (float[][] element : o) {
-            if (element.length != len0) {
-                varying = true;
-            }
-            if (element.length > 0) {
-                for (float[] element2 : element) {
-                    if (element2.length != 2) {
-                        return false;
-                    }
-                }
-            }
-        }
-        return varying;
-    }
-
-    private boolean checkDCompVary(double[][][] o) {
-        boolean varying = false;
-        int len0 = o[0].length;
-        for (double[][] element : o) {
-            if (element.length != len0) {
-                varying = true;
-            }
-            if (element.length > 0) {
-                for (double[] element2 : element) {
-                    if (element2.length != 2) {
-                        return false;
-                    }
-                }
-            }
+    /**
+     * @return the heap offset as 32 bit descriptor value.
+     * @throws FitsException
+     *             if the offset does not fit, the column would need 64 bit
+     *             descriptors (Q).
+     */
+    private int checkIntDescriptor(long offset) throws FitsException {
+        if (offset > MAX_INTEGER_VALUE) {
+            throw new FitsException("Heap offset " + offset + " does not fit a 32 bit (P) descriptor, a 64 bit (Q) column is needed");
         }
-        return varying;
+        return (int) offset;
     }
 
     /**
@@ -1184,72 +1483,35 @@ public class BinaryTable extends AbstractTableData {
             if (!this.heapReadFromStream) {
                 readHeap(this.currInput);
             }
-            int[] descrip;
-            if (colDesc.isLongVary) {
-                // Convert longs to int's. This is dangerous.
-                if (!this.warnedOnVariableConversion) {
-                    LOG.log(Level.WARNING, "Warning: converting long variable array pointers to int's");
-                    this.warnedOnVariableConversion = true;
-
-                }
-                descrip = (int[]) ArrayFuncs.convertArray(o, int.class);
-            } else {
-                descrip = (int[]) o;
-            }
+            long[] descrip = (long[]) ArrayFuncs.convertArray(o, long.class);
             int nrow = descrip.length / 2;
             Object[] res; // Res will be the result of extracting from the heap.
-            int[] dims; // Used to create result arrays.
             if (colDesc.isComplex) {
                 // Complex columns have an extra dimension for each row
-                dims = new int[]{
+                res = (Object[]) ArrayFuncs.newInstance(colDesc.base, new int[]{
                     nrow,
                     0,
                     0
-                };
-                res = (Object[]) ArrayFuncs.newInstance(colDesc.base, dims);
-                // Set up dims for individual rows.
-                dims = new int[2];
-                dims[1] = 2;
+                });
                 // ---> Added clause by Attila Kovacs (13 July 2007)
                 // String columns have to read data into a byte array at first
                 // then do the string conversion later.
             } else if (colDesc.isString) {
-                dims = new int[]{
+                res = (Object[]) ArrayFuncs.newInstance(byte.class, new int[]{
                     nrow,
                     0
-                };
-                res = (Object[]) ArrayFuncs.newInstance(byte.class, dims);
+                });
             } else {
                 // Non-complex data has a simple primitive array for each row
-                dims = new int[]{
+                res = (Object[]) ArrayFuncs.newInstance(colDesc.base, new int[]{
                     nrow,
                     0
-                };
-                res = (Object[]) ArrayFuncs.newInstance(colDesc.base, dims);
+                });
             }
             // Now read in each requested row.
             for (int i = 0; i < nrow; i++) {
-                Object row;
-                int offset = descrip[2 * i + 1];
-                int dim = descrip[2 * i];
-                if (colDesc.isComplex) {
-                    dims[0] = dim;
-                    row = ArrayFuncs.newInstance(colDesc.base, dims);
-                    // ---> Added clause by Attila Kovacs (13 July 2007)
-                    // Again, String entries read data into a byte array at
-                    // first
-                    // then do the string conversion later.
-                } else if (colDesc.isString) {
-                    // For string data, we need to read bytes and convert
-                    // to strings
-                    row = ArrayFuncs.newInstance(byte.class, dim);
-                } else if (colDesc.isBoolean) {
-                    // For boolean data, we need to read bytes and convert
-                    // to booleans.
-                    row = ArrayFuncs.newInstance(byte.class, dim);
-                } else {
-                    row = ArrayFuncs.newInstance(colDesc.base, dim);
-                }
+                long offset = descrip[2 * i + 1];
+                Object row = BinaryTableFileReader.newVaryingRow(colDesc, (int) descrip[2 * i]);
                 this.heap.getData(offset, row);
                 // Now do the boolean conversion.
                 if (colDesc.isBoolean) {
@@ -1286,6 +1548,37 @@ public class BinaryTable extends AbstractTableData {
         return o;
     }
 
+    /**
+     * Convert a single element of a row as it was read from the file (the
+     * flattened data of the column) to its java representation. Variable length
+     * data is read from the heap in the input.
+     *
+     * @param col
+     *            the column of the element
+     * @param raw
+     *            the flattened data of the element
+     * @param heapInput
+     *            the random access input to read variable length data from,
+     *            may be null if the table has no variable length columns
+     * @param heapStart
+     *            the position of the heap in the input
+     * @return the element
+     * @throws FitsException
+     *             if the element could not be converted
+     */
+    Object decodeElement(int col, Object raw, ArrayDataInput heapInput, long heapStart) throws FitsException {
+        ColumnDesc colDesc = this.columnList.get(col);
+        if (colDesc.isVarying) {
+            return BinaryTableFileReader.readHeapEntry(heapInput, heapStart, colDesc, (long[]) ArrayFuncs.convertArray(raw, long.class));
+        }
+        Object ele = columnToArray(colDesc, raw, 1);
+        ele = BinaryTableColumnFormat.encurl(colDesc, ele, 1);
+        if (ele instanceof Object[]) {
+            ele = ((Object[]) ele)[0];
+        }
+        return ele;
+    }
+
     /**
      * Create a column table given the number of rows and a model row. This is
      * used when we defer instantiation of the ColumnTable until the user
@@ -1311,49 +1604,99 @@ public class BinaryTable extends AbstractTableData {
         return this.table;
     }
 
-    private Object encapsulate(Object o) {
-        if (o.getClass().isArray() && ArrayFuncs.getDimensions(o).length == 1 && ArrayFuncs.getDimensions(o)[0] == 1) {
-            return o;
+    private static long longValue(Object column, int row, int col) throws FitsException {
+        if (column instanceof long[]) {
+            return ((long[]) column)[row];
+        } else if (column instanceof int[]) {
+            return ((int[]) column)[row];
+        } else if (column instanceof short[]) {
+            return ((short[]) column)[row];
+        } else if (column instanceof byte[]) {
+            return ((byte[]) column)[row];
         }
-
-        Object[] array = (Object[]) Array.newInstance(o.getClass(), 1);
-        array[0] = o;
-        return array;
+        throw new FitsException("Column " + col + " is not an integer column");
     }
 
-    private Object encurl(Object res, int col, int rows) {
-
+    /**
+     * @return the flattened column array of a scalar column (one element per
+     *         row) after checking that the element exists.
+     */
+    private Object scalarColumn(int row, int col, boolean logical) throws FitsException {
+        if (!validRow(row) || !validColumn(col)) {
+            throw new FitsException("No such element (" + row + "," + col + ")");
+        }
         ColumnDesc colDesc = this.columnList.get(col);
+        if (colDesc.isVarying || colDesc.isString || colDesc.isComplex || colDesc.size != 1 || colDesc.isBoolean != logical) {
+            throw new FitsException("Column " + col + " is not a scalar " + (logical ? "logical" : "numeric") + " column");
+        }
+        ensureData();
+        return this.table.getColumn(col);
+    }
 
-        if (colDesc.base != String.class) {
+    /**
+     * @return the flattened column array of a fixed size column after checking
+     *         its element type.
+     */
+    private Object typedColumn(int col, Class<?> type) throws FitsException {
+        if (!validColumn(col)) {
+            throw new FitsException("Invalid column");
+        }
+        ColumnDesc colDesc = this.columnList.get(col);
+        ensureData();
+        Object column = this.table.getColumn(col);
+        if (colDesc.isVarying || colDesc.isString || colDesc.isBoolean || colDesc.isComplex || column.getClass().getComponentType() != type) {
+            throw new FitsException("Column " + col + " is not a " + type + " column");
+        }
+        return column;
+    }
 
-            if (!colDesc.isVarying && colDesc.dimens.length > 0) {
+    /**
+     * @return true if the data of the table was not read yet and can still be
+     *         read from the input.
+     */
+    private boolean isDeferred() {
+        return this.table == null && this.currInput != null;
+    }
 
-                int[] dims = new int[colDesc.dimens.length + 1];
-                System.arraycopy(colDesc.dimens, 0, dims, 1, colDesc.dimens.length);
-                dims[0] = rows;
-                res = ArrayFuncs.curl(res, dims);
+    /**
+     * @return true if single columns of a deferred table were already read
+     *         from the file.
+     */
+    private boolean hasReadColumns() {
+        for (ColumnDesc colDesc : this.columnList) {
+            if (colDesc.column != null) {
+                return true;
             }
+        }
+        return false;
+    }
 
-        } else {
-            // Handle Strings. Remember the last element
-            // in dimens is the length of the Strings and
-            // we already used that when we converted from
-            // byte arrays to strings. So we need to ignore
-            // the last element of dimens, and add the row count
-            // at the beginning to curl.
-            if (colDesc.dimens.length > 1) {
-                int[] dims = new int[colDesc.dimens.length];
-
-                System.arraycopy(colDesc.dimens, 0, dims, 1, colDesc.dimens.length - 1);
-                dims[0] = rows;
-
-                res = ArrayFuncs.curl(res, dims);
+    /**
+     * @return the column as it is stored in the column table. If the data of
+     *         the table was not read yet, only the column is read from the file
+     *         and kept until the table is read, the heap is read for variable
+     *         length columns.
+     * @throws FitsException
+     *             if the operation failed
+     */
+    private Object getTableColumn(int col) throws FitsException {
+        if (!isDeferred()) {
+            ensureData();
+            return this.table.getColumn(col);
+        }
+        ColumnDesc colDesc = this.columnList.get(col);
+        if (colDesc.column == null) {
+            colDesc.column = this.fileReader.readColumn(col, 0, this.nRow);
+        }
+        if (colDesc.isVarying && !this.heapReadFromStream) {
+            long currentOffset = FitsUtil.findOffset(this.currInput);
+            try {
+                readHeap(this.currInput);
+            } finally {
+                FitsUtil.reposition(this.currInput, currentOffset);
             }
         }
-
-        return res;
-
+        return colDesc.column;
     }
 
     private void ensureData() throws FitsException {
@@ -1369,37 +1712,10 @@ public class BinaryTable extends AbstractTableData {
     }
 
     /**
-     * @return row from the file.
-     * @throws FitsException
-     *             if the operation failed
+     * @return the position of the heap in the file.
      */
-    private Object[] getFileRow(int row) throws FitsException {
-
-        /**
-         * Read the row from memory
-         */
-        Object[] data = new Object[this.columnList.size()];
-        for (int col = 0; col < data.length; col++) {
-            ColumnDesc colDesc = this.columnList.get(col);
-            data[col] = colDesc.newInstance(1);
-        }
-
-        try {
-            FitsUtil.reposition(this.currInput, this.fileOffset + (long) row * (long) this.rowLen);
-            this.currInput.readLArray(data);
-        } catch (IOException e) {
-            throw new FitsException("Error in deferred row read", e);
-        }
-
-        for (int col = 0; col < data.length; col++) {
-            ColumnDesc colDesc = this.columnList.get(col);
-            data[col] = columnToArray(colDesc, data[col], 1);
-            data[col] = encurl(data[col], col, 1);
-            if (data[col] instanceof Object[]) {
-                data[col] = ((Object[]) data[col])[0];
-            }
-        }
-        return data;
+    private long getFileHeapStart() {
+        return this.fileOffset + (long) this.nRow * (long) this.rowLen + this.heapOffset;
     }
 
     /**
@@ -1413,7 +1729,7 @@ public class BinaryTable extends AbstractTableData {
             ColumnDesc colDesc = this.columnList.get(col);
             Object o = this.table.getElement(row, col);
             o = columnToArray(colDesc, o, 1);
-            data[col] = encurl(o, col, 1);
+            data[col] = BinaryTableColumnFormat.encurl(this.columnList.get(col), o, 1);
             if (data[col] instanceof Object[]) {
                 data[col] = ((Object[]) data[col])[0];
             }
@@ -1423,191 +1739,6 @@ public class BinaryTable extends AbstractTableData {
 
     }
 
-    /**
-     * Get an unsigned number at the beginning of a string
-     */
-    private int initialNumber(String tform) {
-
-        int i;
-        for (i = 0; i < tform.length(); i++) {
-
-            if (!Character.isDigit(tform.charAt(i))) {
-                break;
-            }
-
-        }
-
-        return Integer.parseInt(tform.substring(0, i));
-    }
-
-    /**
-     * Is this a variable length column? It is if it's a two-d primitive array
-     * and the second dimension is not constant. It may also be a 3-d array of
-     * type float or double where the last index is always 2 (when the second
-     * index is non-zero). In this case it can be a complex varying column.
-     */
-    private boolean isVarying(Object o) {
-        if (o == null || //
-                !o.getClass().isArray() || //
-                !o.getClass().getComponentType().isArray() || //
-                !o.getClass().getComponentType().getComponentType().isPrimitive()) {
-            return false;
-        }
-
-        int oLength = Array.getLength(o);
-        if (oLength < 2) {
-            return false;
-        }
-
-        int flen = Array.getLength(Array.get(o, 0));
-        for (int i = 1; i < oLength; i++) {
-            if (Array.getLength(Array.get(o, i)) != flen) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    private boolean isVaryingComp(Object o) {
-        if (o instanceof float[][][]) {
-            return checkCompVary((float[][][]) o);
-        } else if (o instanceof double[][][]) {
-            return checkDCompVary((double[][][]) o);
-        }
-        return false;
-    }
-
-    /**
-     * Process one column from a FITS Header. * @throws FitsException if the
-     * operation failed
-     */
-    private int processCol(Header header, int col) throws FitsException {
-        String tform = header.getStringValue(TFORMn.n(col + 1));
-        if (tform == null) {
-            throw new FitsException("Attempt to process column " + (col + 1) + " but no TFORMn found.");
-        }
-        tform = tform.trim();
-        ColumnDesc colDesc = new ColumnDesc();
-        String tdims = header.getStringValue(TDIMn.n(col + 1));
-        if (tdims != null) {
-            tdims = tdims.trim();
-        }
-        char type = getTFORMType(tform);
-        if (type == 'P' || type == 'Q') {
-            colDesc.isVarying = true;
-            colDesc.isLongVary = type == 'Q';
-            type = getTFORMVarType(tform);
-        }
-        int size = getTFORMLength(tform);
-        // Handle the special size cases.
-        //
-        // Bit arrays (8 bits fit in a byte)
-        if (type == 'X') {
-            size = (size + FitsIO.BITS_OF_1_BYTE - 1) / FitsIO.BITS_OF_1_BYTE;
-            // Variable length arrays always have a two-element pointer (offset
-            // and size)
-        } else if (colDesc.isVarying) {
-            size = 2;
-        }
-
-        // bSize is the number of bytes in the field.
-        int bSize = size;
-        int[] dims = null;
-        // Cannot really handle arbitrary arrays of bits.
-        if (tdims != null && type != 'X' && !colDesc.isVarying) {
-            dims = getTDims(tdims);
-        }
-        if (dims == null) {
-            if (size == 1) {
-                dims = new int[0]; // Marks this as a scalar column
-            } else {
-                dims = new int[]{
-                    size
-                };
-            }
-        }
-        colDesc.isComplex = type == 'C' || type == 'M';
-        Class<?> colBase;
-        switch (type) {
-            case 'A':
-                colBase = byte.class;
-                colDesc.isString = true;
-                colDesc.base = String.class;
-                break;
-
-            case 'L':
-                colBase = byte.class;
-                colDesc.base = boolean.class;
-                colDesc.isBoolean = true;
-                break;
-            case 'X':
-            case 'B':
-                colBase = byte.class;
-                colDesc.base = byte.class;
-                break;
-
-            case 'I':
-                colBase = short.class;
-                colDesc.base = short.class;
-                bSize *= FitsIO.BYTES_IN_SHORT;
-                break;
-
-            case 'J':
-                colBase = int.class;
-                colDesc.base = int.class;
-                bSize *= FitsIO.BYTES_IN_INTEGER;
-                break;
-
-            case 'K':
-                colBase = long.class;
-                colDesc.base = long.class;
-                bSize *= FitsIO.BYTES_IN_LONG;
-                break;
-
-            case 'E':
-            case 'C':
-                colBase = float.class;
-                colDesc.base = float.class;
-                bSize *= FitsIO.BYTES_IN_FLOAT;
-                break;
-
-            case 'D':
-            case 'M':
-                colBase = double.class;
-                colDesc.base = double.class;
-                bSize *= FitsIO.BYTES_IN_DOUBLE;
-                break;
-
-            default:
-                throw new FitsException("Invalid type in column:" + col);
-        }
-        if (colDesc.isVarying) {
-            dims = new int[]{
-                2
-            };
-            colBase = int.class;
-            bSize = FitsIO.BYTES_IN_INTEGER * 2;
-            if (colDesc.isLongVary) {
-                colBase = long.class;
-                bSize = FitsIO.BYTES_IN_LONG * 2;
-            }
-        }
-        if (!colDesc.isVarying && colDesc.isComplex) {
-            int[] xdims = new int[dims.length + 1];
-            System.arraycopy(dims, 0, xdims, 0, dims.length);
-            xdims[dims.length] = 2;
-            dims = xdims;
-            bSize *= 2;
-            size *= 2;
-        }
-        colDesc.model = ArrayFuncs.newInstance(colBase, dims);
-        colDesc.dimens = dims;
-        colDesc.size = size;
-        this.columnList.add(colDesc);
-
-        return bSize;
-    }
-
     private void saveExtraState() {
         this.table.setExtraState(new SaveState(this.columnList, this.heap));
     }
@@ -1646,7 +1777,7 @@ public class BinaryTable extends AbstractTableData {
      *             if the heap could not be read from the stream
      */
     protected void readHeap(ArrayDataInput input) throws FitsException {
-        FitsUtil.reposition(input, this.fileOffset + this.nRow * this.rowLen + this.heapOffset);
+        FitsUtil.reposition(input, getFileHeapStart());
         this.heap.read(input);
         this.heapReadFromStream = true;
     }
@@ -1774,117 +1905,10 @@ public class BinaryTable extends AbstractTableData {
         return this.columnList.size();
     }
 
-    /**
-     * Update the header to reflect the details of a given column. * @throws
-     * FitsException if the operation failed
-     */
-    void fillForColumn(Header h, int col, Cursor<String, HeaderCard> iter) throws FitsException {
-        ColumnDesc colDesc = this.columnList.get(col);
-
-        String tform;
-        if (colDesc.isVarying) {
-            if (colDesc.isLongVary) {
-                tform = "1Q";
-            } else {
-                tform = "1P";
-            }
-        } else {
-            tform = Integer.toString(colDesc.size);
-        }
-        if (colDesc.base == int.class) {
-            tform += "J";
-        } else if (colDesc.base == short.class || colDesc.base == char.class) {
-            tform += "I";
-        } else if (colDesc.base == byte.class) {
-            tform += "B";
-        } else if (colDesc.base == float.class) {
-            if (colDesc.isComplex) {
-                tform += "C";
-            } else {
-                tform += "E";
-            }
-        } else if (colDesc.base == double.class) {
-            if (colDesc.isComplex) {
-                tform += "M";
-            } else {
-                tform += "D";
-            }
-        } else if (colDesc.base == long.class) {
-            tform += "K";
-        } else if (colDesc.base == boolean.class) {
-            tform += "L";
-        } else if (colDesc.base == String.class) {
-            tform += "A";
-        } else {
-            throw new FitsException("Invalid column data class:" + colDesc.base);
-        }
-        IFitsHeader key = TFORMn.n(col + 1);
-        iter.add(new HeaderCard(key.key(), tform, key.comment()));
-
-        if (colDesc.dimens.length > 0 && !colDesc.isVarying) {
-
-            StringBuffer tdim = new StringBuffer();
-            char comma = '(';
-            for (int i = colDesc.dimens.length - 1; i >= 0; i -= 1) {
-                tdim.append(comma);
-                tdim.append(colDesc.dimens[i]);
-                comma = ',';
-            }
-            tdim.append(')');
-            key = TDIMn.n(col + 1);
-            iter.add(new HeaderCard(key.key(), tdim.toString(), key.comment()));
-        }
-    }
-
     ColumnDesc getDescriptor(int column) {
         return this.columnList.get(column);
     }
 
-    /**
-     * Get the explicit or implied length of the TFORM field
-     */
-    int getTFORMLength(String tform) {
-
-        tform = tform.trim();
-
-        if (Character.isDigit(tform.charAt(0))) {
-            return initialNumber(tform);
-
-        } else {
-            return 1;
-        }
-    }
-
-    /**
-     * Get the type in the TFORM field
-     */
-    char getTFORMType(String tform) {
-
-        for (int i = 0; i < tform.length(); i++) {
-            if (!Character.isDigit(tform.charAt(i))) {
-                return tform.charAt(i);
-            }
-        }
-        return 0;
-    }
-
-    /**
-     * Get the type in a varying length column TFORM
-     */
-    char getTFORMVarType(String tform) {
-
-        int ind = tform.indexOf("P");
-        if (ind < 0) {
-            ind = tform.indexOf("Q");
-        }
-
-        if (tform.length() > ind + 1) {
-            return tform.charAt(ind + 1);
-        } else {
-            return 0;
-        }
-    }
-
     /**
      * Update the header to reflect information about a given column. This
      * routine tries to ensure that the Header is organized by column. * @throws
@@ -1895,7 +1919,7 @@ public class BinaryTable extends AbstractTableData {
         if (col > 0) {
             hdr.positionAfterIndex(TFORMn, col);
         }
-        fillForColumn(hdr, col, iter);
+        BinaryTableColumnFormat.addColumnFormat(this.columnList.get(col), col, iter);
     }
 
     /**
@@ -0,0 +1,216 @@
+package nom.tam.fits;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 1996 - 2021 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.lang.reflect.Array;
+
+import nom.tam.util.ArrayFuncs;
+import nom.tam.util.ColumnTable;
+import nom.tam.util.TableException;
+
+/**
+ * Builder to create a binary table row by row. Adding rows to a
+ * {@link BinaryTable} reallocates every column for each row, this builder keeps
+ * the flattened columns in buffers that double their capacity when full, so
+ * appending n rows costs O(n). The first row defines the structure of the table
+ * just like {@link BinaryTable#addRow(Object[])} does.
+ * 
+ * <pre>
+ * BinaryTableBuilder builder = new BinaryTableBuilder();
+ * while (source.hasNext()) {
+ *     builder.addRow(source.next());
+ * }
+ * BinaryTable table = builder.build();
+ * </pre>
+ */
+public final class BinaryTableBuilder {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * the table defining the column structure, also owns the heap for variable
+     * length columns.
+     */
+    private BinaryTable table;
+
+    /**
+     * the flattened columns, with room for capacity rows.
+     */
+    private Object[] columns;
+
+    /**
+     * the number of elements of a row per column.
+     */
+    private int[] sizes;
+
+    private int capacity;
+
+    private int nRow;
+
+    private final int initialCapacity;
+
+    /**
+     * create a builder with the default initial capacity.
+     */
+    public BinaryTableBuilder() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * create a builder.
+     * 
+     * @param initialCapacity
+     *            the number of rows to reserve space for initially.
+     */
+    public BinaryTableBuilder(int initialCapacity) {
+        this.initialCapacity = Math.max(1, initialCapacity);
+    }
+
+    /**
+     * Add a row to the table, the elements follow the same rules as for
+     * {@link BinaryTable#addRow(Object[])}.
+     * 
+     * @param row
+     *            the row to add
+     * @return this builder
+     * @throws FitsException
+     *             if the row does not fit the structure of the table
+     */
+    public BinaryTableBuilder addRow(Object[] row) throws FitsException {
+        if (this.table == null) {
+            this.table = new BinaryTable();
+            this.table.addRow(row);
+            ColumnTable<?> first = this.table.getData();
+            this.sizes = first.getSizes();
+            this.columns = new Object[this.sizes.length];
+            this.capacity = this.initialCapacity;
+            for (int col = 0; col < this.columns.length; col++) {
+                Object column = first.getColumn(col);
+                this.columns[col] = ArrayFuncs.newInstance(column.getClass().getComponentType(), this.capacity * this.sizes[col]);
+                System.arraycopy(column, 0, this.columns[col], 0, this.sizes[col]);
+            }
+            this.nRow = 1;
+        } else {
+            ensureCapacity(this.nRow + 1);
+            append(row);
+        }
+        return this;
+    }
+
+    /**
+     * Add several rows to the table at once.
+     * 
+     * @param rows
+     *            the rows to add
+     * @return this builder
+     * @throws FitsException
+     *             if one of the rows does not fit the structure of the table
+     */
+    public BinaryTableBuilder addRows(Object[][] rows) throws FitsException {
+        int start = 0;
+        if (this.table == null && rows.length > 0) {
+            addRow(rows[0]);
+            start = 1;
+        }
+        if (start < rows.length) {
+            ensureCapacity(this.nRow + rows.length - start);
+            for (int index = start; index < rows.length; index++) {
+                append(rows[index]);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Create the binary table with the rows added so far, the builder is reset
+     * afterwards and can be used for a new table.
+     * 
+     * @return the binary table
+     * @throws FitsException
+     *             if the table could not be created
+     */
+    public BinaryTable build() throws FitsException {
+        BinaryTable result = this.table;
+        if (result == null) {
+            return new BinaryTable();
+        }
+        if (this.capacity != this.nRow) {
+            for (int col = 0; col < this.columns.length; col++) {
+                Object trimmed = ArrayFuncs.newInstance(this.columns[col].getClass().getComponentType(), this.nRow * this.sizes[col]);
+                System.arraycopy(this.columns[col], 0, trimmed, 0, this.nRow * this.sizes[col]);
+                this.columns[col] = trimmed;
+            }
+        }
+        result.replaceColumns(this.columns);
+        this.table = null;
+        this.columns = null;
+        this.sizes = null;
+        this.capacity = 0;
+        this.nRow = 0;
+        return result;
+    }
+
+    /**
+     * @return the number of rows added so far.
+     */
+    public int getNRows() {
+        return this.nRow;
+    }
+
+    private void append(Object[] row) throws FitsException {
+        if (row.length != this.columns.length) {
+            throw new TableException("Row length mismatch");
+        }
+        Object[] flatRow = this.table.flattenRow(row);
+        for (int col = 0; col < flatRow.length; col++) {
+            Object element = flatRow[col];
+            if (element.getClass() != this.columns[col].getClass() || Array.getLength(element) != this.sizes[col]) {
+                throw new TableException("Row column mismatch at column:" + col);
+            }
+            System.arraycopy(element, 0, this.columns[col], this.nRow * this.sizes[col], this.sizes[col]);
+        }
+        this.nRow++;
+    }
+
+    private void ensureCapacity(int rows) {
+        if (rows <= this.capacity) {
+            return;
+        }
+        int newCapacity = Math.max(rows, this.capacity * 2);
+        for (int col = 0; col < this.columns.length; col++) {
+            Object grown = ArrayFuncs.newInstance(this.columns[col].getClass().getComponentType(), newCapacity * this.sizes[col]);
+            System.arraycopy(this.columns[col], 0, grown, 0, this.nRow * this.sizes[col]);
+            this.columns[col] = grown;
+        }
+        this.capacity = newCapacity;
+    }
+}
@@ -0,0 +1,509 @@
+package nom.tam.fits;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 1996 - 2021 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import static nom.tam.fits.header.Standard.TDIMn;
+import static nom.tam.fits.header.Standard.TFORMn;
+
+import java.lang.reflect.Array;
+
+import nom.tam.fits.BinaryTable.ColumnDesc;
+import nom.tam.fits.header.IFitsHeader;
+import nom.tam.util.ArrayFuncs;
+import nom.tam.util.Cursor;
+import nom.tam.util.FitsIO;
+
+/**
+ * Translates between the TFORMn/TDIMn cards of a binary table header and the
+ * column descriptions of the table, and works out the column layout of the
+ * data added to or returned from a table (variable length columns, rows to
+ * columns and flattened to curled columns).
+ */
+final class BinaryTableColumnFormat {
+
+    private BinaryTableColumnFormat() {
+    }
+
+    /**
+     * Fill the column description from the TFORMn and TDIMn cards of one column
+     * in a FITS header.
+     *
+     * @return the number of bytes of the column in a row of the table.
+     * @throws FitsException
+     *             if the operation failed
+     */
+    static int readColumnFormat(Header header, int col, ColumnDesc colDesc) throws FitsException {
+        String tform = header.getStringValue(TFORMn.n(col + 1));
+        if (tform == null) {
+            throw new FitsException("Attempt to process column " + (col + 1) + " but no TFORMn found.");
+        }
+        tform = tform.trim();
+        String tdims = header.getStringValue(TDIMn.n(col + 1));
+        if (tdims != null) {
+            tdims = tdims.trim();
+        }
+        char type = getTFORMType(tform);
+        if (type == 'P' || type == 'Q') {
+            colDesc.isVarying = true;
+            colDesc.isLongVary = type == 'Q';
+            type = getTFORMVarType(tform);
+        }
+        int size = getTFORMLength(tform);
+        // Handle the special size cases.
+        //
+        // Bit arrays (8 bits fit in a byte)
+        if (type == 'X') {
+            size = (size + FitsIO.BITS_OF_1_BYTE - 1) / FitsIO.BITS_OF_1_BYTE;
+            // Variable length arrays always have a two-element pointer (offset
+            // and size)
+        } else if (colDesc.isVarying) {
+            size = 2;
+        }
+
+        // bSize is the number of bytes in the field.
+        int bSize = size;
+        int[] dims = null;
+        // Cannot really handle arbitrary arrays of bits.
+        if (tdims != null && type != 'X' && !colDesc.isVarying) {
+            dims = BinaryTable.getTDims(tdims);
+        }
+        if (dims == null) {
+            if (size == 1) {
+                dims = new int[0]; // Marks this as a scalar column
+            } else {
+                dims = new int[]{
+                    size
+                };
+            }
+        }
+        colDesc.isComplex = type == 'C' || type == 'M';
+        Class<?> colBase;
+        switch (type) {
+            case 'A':
+                colBase = byte.class;
+                colDesc.isString = true;
+                colDesc.base = String.class;
+                break;
+
+            case 'L':
+                colBase = byte.class;
+                colDesc.base = boolean.class;
+                colDesc.isBoolean = true;
+                break;
+            case 'X':
+            case 'B':
+                colBase = byte.class;
+                colDesc.base = byte.class;
+                break;
+
+            case 'I':
+                colBase = short.class;
+                colDesc.base = short.class;
+                bSize *= FitsIO.BYTES_IN_SHORT;
+                break;
+
+            case 'J':
+                colBase = int.class;
+                colDesc.base = int.class;
+                bSize *= FitsIO.BYTES_IN_INTEGER;
+                break;
+
+            case 'K':
+                colBase = long.class;
+                colDesc.base = long.class;
+                bSize *= FitsIO.BYTES_IN_LONG;
+                break;
+
+            case 'E':
+            case 'C':
+                colBase = float.class;
+                colDesc.base = float.class;
+                bSize *= FitsIO.BYTES_IN_FLOAT;
+                break;
+
+            case 'D':
+            case 'M':
+                colBase = double.class;
+                colDesc.base = double.class;
+                bSize *= FitsIO.BYTES_IN_DOUBLE;
+                break;
+
+            default:
+                throw new FitsException("Invalid type in column:" + col);
+        }
+        if (colDesc.isVarying) {
+            dims = new int[]{
+                2
+            };
+            colBase = int.class;
+            bSize = FitsIO.BYTES_IN_INTEGER * 2;
+            if (colDesc.isLongVary) {
+                colBase = long.class;
+                bSize = FitsIO.BYTES_IN_LONG * 2;
+            }
+        }
+        if (!colDesc.isVarying && colDesc.isComplex) {
+            int[] xdims = new int[dims.length + 1];
+            System.arraycopy(dims, 0, xdims, 0, dims.length);
+            xdims[dims.length] = 2;
+            dims = xdims;
+            bSize *= 2;
+            size *= 2;
+        }
+        colDesc.model = ArrayFuncs.newInstance(colBase, dims);
+        colDesc.dimens = dims;
+        colDesc.size = size;
+
+        return bSize;
+    }
+
+    /**
+     * Update the header to reflect the details of a given column. * @throws
+     * FitsException if the operation failed
+     */
+    static void addColumnFormat(ColumnDesc colDesc, int col, Cursor<String, HeaderCard> iter) throws FitsException {
+        String tform;
+        if (colDesc.isVarying) {
+            if (colDesc.isLongVary) {
+                tform = "1Q";
+            } else {
+                tform = "1P";
+            }
+        } else {
+            tform = Integer.toString(colDesc.size);
+        }
+        if (colDesc.base == int.class) {
+            tform += "J";
+        } else if (colDesc.base == short.class || colDesc.base == char.class) {
+            tform += "I";
+        } else if (colDesc.base == byte.class) {
+            tform += "B";
+        } else if (colDesc.base == float.class) {
+            if (colDesc.isComplex) {
+                tform += "C";
+            } else {
+                tform += "E";
+            }
+        } else if (colDesc.base == double.class) {
+            if (colDesc.isComplex) {
+                tform += "M";
+            } else {
+                tform += "D";
+            }
+        } else if (colDesc.base == long.class) {
+            tform += "K";
+        } else if (colDesc.base == boolean.class) {
+            tform += "L";
+        } else if (colDesc.base == String.class) {
+            tform += "A";
+        } else {
+            throw new FitsException("Invalid column data class:" + colDesc.base);
+        }
+        IFitsHeader key = TFORMn.n(col + 1);
+        iter.add(new HeaderCard(key.key(), tform, key.comment()));
+
+        if (colDesc.dimens.length > 0 && !colDesc.isVarying) {
+
+            StringBuffer tdim = new StringBuffer();
+            char comma = '(';
+            for (int i = colDesc.dimens.length - 1; i >= 0; i -= 1) {
+                tdim.append(comma);
+                tdim.append(colDesc.dimens[i]);
+                comma = ',';
+            }
+            tdim.append(')');
+            key = TDIMn.n(col + 1);
+            iter.add(new HeaderCard(key.key(), tdim.toString(), key.comment()));
+        }
+    }
+
+    /**
+     * Get the explicit or implied length of the TFORM field
+     */
+    static int getTFORMLength(String tform) {
+
+        tform = tform.trim();
+
+        if (Character.isDigit(tform.charAt(0))) {
+            return initialNumber(tform);
+
+        } else {
+            return 1;
+        }
+    }
+
+    /**
+     * Get the type in the TFORM field
+     */
+    static char getTFORMType(String tform) {
+
+        for (int i = 0; i < tform.length(); i++) {
+            if (!Character.isDigit(tform.charAt(i))) {
+                return tform.charAt(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Get the type in a varying length column TFORM
+     */
+    static char getTFORMVarType(String tform) {
+
+        int ind = tform.indexOf("P");
+        if (ind < 0) {
+            ind = tform.indexOf("Q");
+        }
+
+        if (tform.length() > ind + 1) {
+            return tform.charAt(ind + 1);
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * Is this a variable length column? It is if it's a two-d primitive array
+     * and the second dimension is not constant. It may also be a 3-d array of
+     * type float or double where the last index is always 2 (when the second
+     * index is non-zero). In this case it can be a complex varying column.
+     */
+    static boolean isVarying(Object o) {
+        if (o == null || //
+                !o.getClass().isArray() || //
+                !o.getClass().getComponentType().isArray() || //
+                !o.getClass().getComponentType().getComponentType().isPrimitive()) {
+            return false;
+        }
+
+        int oLength = Array.getLength(o);
+        if (oLength < 2) {
+            return false;
+        }
+
+        int flen = Array.getLength(Array.get(o, 0));
+        for (int i = 1; i < oLength; i++) {
+            if (Array.getLength(Array.get(o, i)) != flen) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean isVaryingComp(Object o) {
+        if (o instanceof float[][][]) {
+            return checkCompVary((float[][][]) o);
+        } else if (o instanceof double[][][]) {
+            return checkDCompVary((double[][][]) o);
+        }
+        return false;
+    }
+
+    /**
+     * Get an unsigned number at the beginning of a string
+     */
+    private static int initialNumber(String tform) {
+
+        int i;
+        for (i = 0; i < tform.length(); i++) {
+
+            if (!Character.isDigit(tform.charAt(i))) {
+                break;
+            }
+
+        }
+
+        return Integer.parseInt(tform.substring(0, i));
+    }
+
+    // Check if this is consistent with a varying
+    // complex row. That requires
+    // The second index varies.
+    // The third index is 2 whenever the second
+    // index is non-zero.
+    // This function will fail if nulls are encountered.
+    private static boolean checkCompVary(float[][][] o) {
+
+        boolean varying = false;
+        int len0 = o[0].length;
+        for (float[][] element : o) {
+            if (element.length != len0) {
+                varying = true;
+            }
+            if (element.length > 0) {
+                for (float[] element2 : element) {
+                    if (element2.length != 2) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return varying;
+    }
+
+    private static boolean checkDCompVary(double[][][] o) {
+        boolean varying = false;
+        int len0 = o[0].length;
+        for (double[][] element : o) {
+            if (element.length != len0) {
+                varying = true;
+            }
+            if (element.length > 0) {
+                for (double[] element2 : element) {
+                    if (element2.length != 2) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return varying;
+    }
+
+    /**
+     * @return the dimensions of a TDIMn value, see
+     *         {@link BinaryTable#getTDims(String)}.
+     */
+    static int[] getTDims(String tdims) {
+
+        // The TDIMs value should be of the form: "(iiii,jjjj,kkk,...)"
+        int[] dims = null;
+        int first = tdims.indexOf('(');
+        int last = tdims.lastIndexOf(')');
+        if (first >= 0 && last > first) {
+
+            tdims = tdims.substring(first + 1, last - first);
+
+            java.util.StringTokenizer st = new java.util.StringTokenizer(tdims, ",");
+            int dim = st.countTokens();
+            if (dim > 0) {
+                dims = new int[dim];
+                for (int i = dim - 1; i >= 0; i -= 1) {
+                    dims[i] = Integer.parseInt(st.nextToken().trim());
+                }
+            }
+        }
+        return dims;
+    }
+
+    /**
+     * Convert a two-d table to a table of columns. Handle String specially.
+     * Every other element of data should be a primitive array of some
+     * dimensionality. Basically the translates a table expressed as objects in
+     * row order to a table with objects in column order.
+     */
+    static Object[] convertToColumns(Object[][] data) {
+        Object[] row = data[0];
+        int nrow = data.length;
+        Object[] results = new Object[row.length];
+        for (int col = 0; col < row.length; col++) {
+            if (row[col] instanceof String) {
+                String[] sa = new String[nrow];
+                for (int irow = 0; irow < nrow; irow++) {
+                    sa[irow] = (String) data[irow][col];
+                }
+                results[col] = sa;
+            } else {
+                Class<?> base = ArrayFuncs.getBaseClass(row[col]);
+                int[] dims = ArrayFuncs.getDimensions(row[col]);
+
+                if (dims.length > 1 || dims[0] > 1) {
+                    int[] xdims = new int[dims.length + 1];
+                    xdims[0] = nrow;
+
+                    Object[] arr = (Object[]) ArrayFuncs.newInstance(base, xdims);
+                    for (int irow = 0; irow < nrow; irow++) {
+                        arr[irow] = data[irow][col];
+                    }
+                    results[col] = arr;
+                } else {
+                    Object arr = ArrayFuncs.newInstance(base, nrow);
+                    for (int irow = 0; irow < nrow; irow++) {
+                        System.arraycopy(data[irow][col], 0, arr, irow, 1);
+                    }
+                    results[col] = arr;
+                }
+
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @return the element wrapped into an array of one row, unless it is a one
+     *         element array already.
+     */
+    static Object encapsulate(Object o) {
+        if (o.getClass().isArray() && ArrayFuncs.getDimensions(o).length == 1 && ArrayFuncs.getDimensions(o)[0] == 1) {
+            return o;
+        }
+
+        Object[] array = (Object[]) Array.newInstance(o.getClass(), 1);
+        array[0] = o;
+        return array;
+    }
+
+    /**
+     * @return a flattened column of the given rows curled into the dimensions
+     *         of the column.
+     */
+    static Object encurl(ColumnDesc colDesc, Object res, int rows) {
+        if (colDesc.base != String.class) {
+
+            if (!colDesc.isVarying && colDesc.dimens.length > 0) {
+
+                int[] dims = new int[colDesc.dimens.length + 1];
+                System.arraycopy(colDesc.dimens, 0, dims, 1, colDesc.dimens.length);
+                dims[0] = rows;
+                res = ArrayFuncs.curl(res, dims);
+            }
+
+        } else {
+            // Handle Strings. Remember the last element
+            // in dimens is the length of the Strings and
+            // we already used that when we converted from
+            // byte arrays to strings. So we need to ignore
+            // the last element of dimens, and add the row count
+            // at the beginning to curl.
+            if (colDesc.dimens.length > 1) {
+                int[] dims = new int[colDesc.dimens.length];
+
+                System.arraycopy(colDesc.dimens, 0, dims, 1, colDesc.dimens.length - 1);
+                dims[0] = rows;
+
+                res = ArrayFuncs.curl(res, dims);
+            }
+        }
+
+        return res;
+
+    }
+}
@@ -0,0 +1,294 @@
+package nom.tam.fits;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 1996 - 2021 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import nom.tam.fits.BinaryTable.ColumnDesc;
+import nom.tam.util.ArrayDataInput;
+import nom.tam.util.ArrayFuncs;
+import nom.tam.util.BufferedDataInputStream;
+import nom.tam.util.RandomAccess;
+
+/**
+ * Reads single columns, rows and elements of a binary table whose data was not
+ * read yet directly from the file, without reading the rest of the table or
+ * its heap. Columns that were already read on their own (kept in
+ * {@link ColumnDesc#column}) are used instead of the file, so changes to them
+ * are seen. The position of the input is restored after every read.
+ */
+final class BinaryTableFileReader {
+
+    /**
+     * the number of bytes of a column that are collected before they are
+     * decoded when a column is read from the file.
+     */
+    private static final int COLUMN_READ_BLOCK_SIZE = 64 * 1024;
+
+    private final BinaryTable table;
+
+    private final ArrayDataInput input;
+
+    private final long dataStart;
+
+    private final long heapStart;
+
+    private final long rowLength;
+
+    /**
+     * the byte offset of each column within a row.
+     */
+    private final long[] columnOffsets;
+
+    BinaryTableFileReader(BinaryTable table, ArrayDataInput input, long dataStart, long heapStart) {
+        this.table = table;
+        this.input = input;
+        this.dataStart = dataStart;
+        this.heapStart = heapStart;
+        this.columnOffsets = new long[table.getNCols()];
+        long offset = 0;
+        for (int col = 0; col < this.columnOffsets.length; col++) {
+            this.columnOffsets[col] = offset;
+            offset += ArrayFuncs.computeLSize(table.getDescriptor(col).model);
+        }
+        this.rowLength = offset;
+    }
+
+    /**
+     * @return a new array to read a single variable length entry of the column
+     *         into.
+     * @param colDesc
+     *            the variable length column
+     * @param dim
+     *            the number of elements in the entry
+     */
+    static Object newVaryingRow(ColumnDesc colDesc, int dim) {
+        if (colDesc.isComplex) {
+            return ArrayFuncs.newInstance(colDesc.base, new int[]{
+                dim,
+                2
+            });
+        } else if (colDesc.isString || colDesc.isBoolean) {
+            // ---> Added clause by Attila Kovacs (13 July 2007)
+            // String and boolean entries read data into a byte array at
+            // first and do the conversion later.
+            return ArrayFuncs.newInstance(byte.class, dim);
+        } else {
+            return ArrayFuncs.newInstance(colDesc.base, dim);
+        }
+    }
+
+    /**
+     * @return a single variable length entry read from the heap in the input,
+     *         the position of the input is restored afterwards.
+     * @param heapInput
+     *            the random access input to read the entry from
+     * @param heapPosition
+     *            the position of the heap in the input
+     * @param colDesc
+     *            the variable length column
+     * @param descriptor
+     *            the descriptor of the entry (size and offset in the heap)
+     * @throws FitsException
+     *             if the entry could not be read
+     */
+    static Object readHeapEntry(ArrayDataInput heapInput, long heapPosition, ColumnDesc colDesc, long[] descriptor) throws FitsException {
+        if (!(heapInput instanceof RandomAccess)) {
+            throw new FitsException("Variable length data can only be read from a random access input");
+        }
+        long currentOffset = FitsUtil.findOffset(heapInput);
+        try {
+            return readHeapEntry(heapInput, heapPosition, colDesc, descriptor[0], descriptor[1]);
+        } catch (IOException e) {
+            throw new FitsException("Error reading variable length data", e);
+        } finally {
+            FitsUtil.reposition(heapInput, currentOffset);
+        }
+    }
+
+    private static Object readHeapEntry(ArrayDataInput heapInput, long heapPosition, ColumnDesc colDesc, long size, long offset) throws IOException, FitsException {
+        Object data = newVaryingRow(colDesc, (int) size);
+        FitsUtil.reposition(heapInput, heapPosition + offset);
+        heapInput.readLArray(data);
+        if (colDesc.isBoolean) {
+            data = FitsUtil.byteToBoolean((byte[]) data);
+        }
+        return data;
+    }
+
+    /**
+     * @return a range of rows of a column as it is stored in the column table.
+     *         Only the bytes of the column are read by striding through the
+     *         rows, they are decoded in blocks.
+     * @param col
+     *            the column to read
+     * @param firstRow
+     *            the first row to read
+     * @param nRows
+     *            the number of rows to read
+     * @throws FitsException
+     *             if the column could not be read
+     */
+    Object readColumn(int col, int firstRow, int nRows) throws FitsException {
+        ColumnDesc colDesc = this.table.getDescriptor(col);
+        Object res = colDesc.newInstance(nRows);
+        int rowBytes = (int) ArrayFuncs.computeLSize(colDesc.model);
+        if (rowBytes == 0) {
+            return res;
+        }
+        long columnStart = this.dataStart + this.columnOffsets[col];
+        long currentOffset = FitsUtil.findOffset(this.input);
+        try {
+            int blockRows = Math.min(nRows, Math.max(1, COLUMN_READ_BLOCK_SIZE / rowBytes));
+            byte[] bytes = new byte[blockRows * rowBytes];
+            // every block is decoded from the start of the same byte
+            // array, so one stream is enough: all bytes of a block are
+            // consumed before the array is refilled and rewound.
+            ByteArrayInputStream blockBytes = new ByteArrayInputStream(bytes);
+            BufferedDataInputStream blockInput = new BufferedDataInputStream(blockBytes);
+            Object block = colDesc.newInstance(blockRows);
+            for (int blockStart = 0; blockStart < nRows; blockStart += blockRows) {
+                int rows = Math.min(blockRows, nRows - blockStart);
+                for (int row = 0; row < rows; row++) {
+                    FitsUtil.reposition(this.input, columnStart + (firstRow + blockStart + row) * this.rowLength);
+                    this.input.readFully(bytes, row * rowBytes, rowBytes);
+                }
+                if (rows < blockRows) {
+                    block = colDesc.newInstance(rows);
+                }
+                blockBytes.reset();
+                blockInput.readLArray(block);
+                System.arraycopy(block, 0, res, blockStart * colDesc.size, rows * colDesc.size);
+            }
+        } catch (IOException e) {
+            throw new FitsException("Error in deferred column read", e);
+        } finally {
+            FitsUtil.reposition(this.input, currentOffset);
+        }
+        return res;
+    }
+
+    /**
+     * @return the entries of a variable length column read directly from the
+     *         heap in the file.
+     * @param col
+     *            the variable length column
+     * @param descriptors
+     *            the descriptors of the entries as read by
+     *            {@link #readColumn(int, int, int)}
+     * @throws FitsException
+     *             if the entries could not be read
+     */
+    Object[] readHeapEntries(int col, Object descriptors) throws FitsException {
+        ColumnDesc colDesc = this.table.getDescriptor(col);
+        long[] descrip = (long[]) ArrayFuncs.convertArray(descriptors, long.class);
+        int nRows = descrip.length / 2;
+        Object[] entries = (Object[]) ArrayFuncs.newInstance(colDesc.isString ? byte.class : colDesc.base, colDesc.isComplex ? new int[]{
+            nRows,
+            0,
+            0
+        } : new int[]{
+            nRows,
+            0
+        });
+        long currentOffset = FitsUtil.findOffset(this.input);
+        try {
+            for (int row = 0; row < nRows; row++) {
+                entries[row] = readHeapEntry(this.input, this.heapStart, colDesc, descrip[2 * row], descrip[2 * row + 1]);
+            }
+        } catch (IOException e) {
+            throw new FitsException("Error in deferred column read", e);
+        } finally {
+            FitsUtil.reposition(this.input, currentOffset);
+        }
+        return entries;
+    }
+
+    /**
+     * @return a single element in the same format as
+     *         {@link BinaryTable#getElement(int, int)}, variable length data is
+     *         read directly from the heap in the file.
+     * @param row
+     *            the row of the element
+     * @param col
+     *            the column of the element
+     * @throws FitsException
+     *             if the element could not be read
+     */
+    Object readElement(int row, int col) throws FitsException {
+        ColumnDesc colDesc = this.table.getDescriptor(col);
+        Object ele = colDesc.newInstance(1);
+        if (colDesc.column != null) {
+            System.arraycopy(colDesc.column, row * colDesc.size, ele, 0, colDesc.size);
+        } else {
+            long currentOffset = FitsUtil.findOffset(this.input);
+            try {
+                FitsUtil.reposition(this.input, this.dataStart + row * this.rowLength + this.columnOffsets[col]);
+                this.input.readLArray(ele);
+            } catch (IOException e) {
+                throw new FitsException("Error in deferred element read", e);
+            } finally {
+                FitsUtil.reposition(this.input, currentOffset);
+            }
+        }
+        return this.table.decodeElement(col, ele, this.input, this.heapStart);
+    }
+
+    /**
+     * @return a row in the same format as {@link BinaryTable#getRow(int)}.
+     * @param row
+     *            the row to read
+     * @throws FitsException
+     *             if the row could not be read
+     */
+    Object[] readRow(int row) throws FitsException {
+        Object[] data = new Object[this.columnOffsets.length];
+        for (int col = 0; col < data.length; col++) {
+            data[col] = this.table.getDescriptor(col).newInstance(1);
+        }
+        try {
+            FitsUtil.reposition(this.input, this.dataStart + row * this.rowLength);
+            this.input.readLArray(data);
+        } catch (IOException e) {
+            throw new FitsException("Error in deferred row read", e);
+        }
+        for (int col = 0; col < data.length; col++) {
+            ColumnDesc colDesc = this.table.getDescriptor(col);
+            if (colDesc.column != null) {
+                System.arraycopy(colDesc.column, row * colDesc.size, data[col], 0, colDesc.size);
+            }
+            data[col] = this.table.decodeElement(col, data[col], this.input, this.heapStart);
+        }
+        return data;
+    }
+}
@@ -293,16 +293,16 @@ public class BinaryTableHDU extends TableHDU<BinaryTable> {
     @Override
     public void write(ArrayDataOutput ado) throws FitsException {
 
-        int oldSize = this.myHeader.getIntValue(PCOUNT);
+        long oldSize = this.myHeader.getLongValue(PCOUNT);
         if (oldSize != this.myData.getHeapSize()) {
             this.myHeader.addValue(PCOUNT, this.myData.getHeapSize());
         }
 
-        if (this.myHeader.getIntValue(PCOUNT) == 0) {
+        if (this.myHeader.getLongValue(PCOUNT) == 0) {
             this.myHeader.deleteKey(THEAP);
         } else {
             this.myHeader.getIntValue(TFIELDS);
-            int offset = this.myHeader.getIntValue(NAXIS1) * this.myHeader.getIntValue(NAXIS2) + this.myData.getHeapOffset();
+            long offset = this.myHeader.getLongValue(NAXIS1) * this.myHeader.getLongValue(NAXIS2) + this.myData.getHeapOffset();
             this.myHeader.addValue(THEAP, offset);
         }
 
@@ -0,0 +1,529 @@
+package nom.tam.fits;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 1996 - 2021 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import static nom.tam.fits.header.Standard.NAXIS1;
+import static nom.tam.fits.header.Standard.NAXIS2;
+import static nom.tam.fits.header.Standard.PCOUNT;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import nom.tam.util.ArrayDataInput;
+import nom.tam.util.ArrayFuncs;
+import nom.tam.util.RandomAccess;
+import nom.tam.util.type.PrimitiveType;
+import nom.tam.util.type.PrimitiveTypeHandler;
+
+/**
+ * Streaming access to the rows of a binary table. The rows are read in batches
+ * of a fixed number of rows directly from the input, so only one batch is in
+ * memory at a time and the input does not have to be seekable. The primitive
+ * accessors read single values of the current row without decoding the rest of
+ * the row, a {@link RowFilter} can use them to skip rows before the wide
+ * columns are decoded.
+ *
+ * <pre>
+ * Header header = Header.readHeader(input);
+ * BinaryTableRowCursor cursor = new BinaryTableRowCursor(header, input).filter(new RowFilter() {
+ * 
+ *     public boolean accept(BinaryTableRowCursor row) {
+ *         return row.getDouble(2) &gt; 100.0;
+ *     }
+ * });
+ * while (cursor.advance()) {
+ *     Object[] row = cursor.getRow();
+ * }
+ * </pre>
+ *
+ * Variable length columns can only be decoded if the input is a
+ * {@link RandomAccess}, because their data is in the heap after the rows. When
+ * the last row was read the input is positioned after the data of the table
+ * (including the heap and the padding), so the next header can be read.
+ */
+public class BinaryTableRowCursor implements Iterator<Object[]> {
+
+    /**
+     * Filter that decides if a row is returned by the cursor.
+     */
+    public interface RowFilter {
+
+        /**
+         * @param row
+         *            the cursor positioned on the row to test, only the
+         *            accessors of the current row should be used.
+         * @return true if the row should be returned.
+         * @throws FitsException
+         *             if the row could not be tested
+         */
+        boolean accept(BinaryTableRowCursor row) throws FitsException;
+    }
+
+    /**
+     * the default number of rows that are read at once.
+     */
+    public static final int DEFAULT_BATCH_ROWS = 1024;
+
+    private static final byte BOOLEAN_TRUE = 'T';
+
+    private final BinaryTable table;
+
+    private final ArrayDataInput input;
+
+    private final int batchRows;
+
+    private final int rowLength;
+
+    private final int[] columnOffsets;
+
+    private final PrimitiveType<Buffer>[] columnTypes;
+
+    private final int[] columnElements;
+
+    private final long dataStart;
+
+    private final long dataSize;
+
+    private final long heapStart;
+
+    private byte[] batch;
+
+    private ByteBuffer batchBuffer;
+
+    private int batchFirstRow;
+
+    private int batchSize;
+
+    private int currentRow = -1;
+
+    private int endRow;
+
+    private int nextRow;
+
+    private long bytesRead;
+
+    private boolean pending;
+
+    private boolean finished;
+
+    private RowFilter rowFilter;
+
+    @SuppressWarnings("unchecked")
+    private static PrimitiveType<Buffer>[] newColumnTypes(int nCols) {
+        return (PrimitiveType<Buffer>[]) Array.newInstance(PrimitiveType.class, nCols);
+    }
+
+    /**
+     * create a cursor over the rows of the binary table described by the
+     * header, the input must be positioned at the start of the data of the
+     * table.
+     *
+     * @param header
+     *            the header of the binary table
+     * @param input
+     *            the input positioned at the start of the table data
+     * @throws FitsException
+     *             if the header does not describe a valid binary table
+     */
+    public BinaryTableRowCursor(Header header, ArrayDataInput input) throws FitsException {
+        this(header, input, DEFAULT_BATCH_ROWS);
+    }
+
+    /**
+     * create a cursor over the rows of the binary table described by the
+     * header, the input must be positioned at the start of the data of the
+     * table.
+     *
+     * @param header
+     *            the header of the binary table
+     * @param input
+     *            the input positioned at the start of the table data
+     * @param batchRows
+     *            the number of rows to read at once
+     * @throws FitsException
+     *             if the header does not describe a valid binary table
+     */
+    public BinaryTableRowCursor(Header header, ArrayDataInput input, int batchRows) throws FitsException {
+        if (batchRows <= 0) {
+            throw new FitsException("Illegal number of rows per batch: " + batchRows);
+        }
+        this.table = new BinaryTable(header);
+        this.input = input;
+        this.batchRows = batchRows;
+        this.rowLength = header.getIntValue(NAXIS1);
+        this.endRow = header.getIntValue(NAXIS2);
+        Object[] modelRow = this.table.getModelRow();
+        this.columnOffsets = new int[modelRow.length];
+        this.columnTypes = newColumnTypes(modelRow.length);
+        this.columnElements = new int[modelRow.length];
+        int offset = 0;
+        for (int col = 0; col < modelRow.length; col++) {
+            this.columnOffsets[col] = offset;
+            this.columnTypes[col] = PrimitiveTypeHandler.valueOf(ArrayFuncs.getBaseClass(modelRow[col]));
+            int columnBytes = (int) ArrayFuncs.computeLSize(modelRow[col]);
+            this.columnElements[col] = columnBytes / this.columnTypes[col].size();
+            offset += columnBytes;
+        }
+        this.dataStart = FitsUtil.findOffset(input);
+        long tableSize = (long) this.rowLength * (long) this.endRow;
+        this.dataSize = FitsUtil.addPadding(tableSize + header.getLongValue(PCOUNT, 0L));
+        this.heapStart = this.dataStart + tableSize + this.table.getHeapOffset();
+    }
+
+    /**
+     * Move to the next row that is accepted by the filter.
+     *
+     * @return false if there are no more rows.
+     * @throws FitsException
+     *             if the rows could not be read
+     */
+    public boolean advance() throws FitsException {
+        if (this.pending) {
+            this.pending = false;
+            return true;
+        }
+        while (this.nextRow < this.endRow) {
+            if (this.nextRow >= this.batchFirstRow + this.batchSize) {
+                readBatch();
+            }
+            this.currentRow = this.nextRow++;
+            if (this.rowFilter == null || this.rowFilter.accept(this)) {
+                return true;
+            }
+        }
+        this.currentRow = -1;
+        finish();
+        return false;
+    }
+
+    /**
+     * Only return the rows accepted by the filter. Must be set before the first
+     * row is read.
+     *
+     * @param filter
+     *            the filter to use, or null to return all rows
+     * @return this
+     */
+    public BinaryTableRowCursor filter(RowFilter filter) {
+        this.rowFilter = filter;
+        return this;
+    }
+
+    /**
+     * @return true if the element of the current row is true (only for logical
+     *         columns)
+     * @param col
+     *            the column
+     * @param index
+     *            the index of the value within the element
+     */
+    public boolean getBoolean(int col, int index) {
+        return this.batchBuffer.get(position(col, index)) == BOOLEAN_TRUE;
+    }
+
+    /**
+     * @return the first value of the element of the current row.
+     * @param col
+     *            the column
+     */
+    public byte getByte(int col) {
+        return getByte(col, 0);
+    }
+
+    /**
+     * @return a value of the element of the current row.
+     * @param col
+     *            the column
+     * @param index
+     *            the index of the value within the element
+     */
+    public byte getByte(int col, int index) {
+        return this.batchBuffer.get(position(col, index));
+    }
+
+    /**
+     * @return the first value of the element of the current row.
+     * @param col
+     *            the column
+     */
+    public double getDouble(int col) {
+        return getDouble(col, 0);
+    }
+
+    /**
+     * @return a value of the element of the current row.
+     * @param col
+     *            the column
+     * @param index
+     *            the index of the value within the element
+     */
+    public double getDouble(int col, int index) {
+        return this.batchBuffer.getDouble(position(col, index));
+    }
+
+    /**
+     * @return the element of the current row in the same format as
+     *         {@link BinaryTable#getElement(int, int)}, only this column is
+     *         decoded.
+     * @param col
+     *            the column
+     * @throws FitsException
+     *             if the element could not be decoded
+     */
+    public Object getElement(int col) throws FitsException {
+        checkCurrentRow();
+        Object raw = this.columnTypes[col].newArray(this.columnElements[col]);
+        ByteBuffer columnBuffer = this.batchBuffer.duplicate();
+        columnBuffer.position(position(col, 0));
+        this.columnTypes[col].getArray(this.columnTypes[col].asTypedBuffer(columnBuffer.slice()), raw);
+        return this.table.decodeElement(col, raw, this.input, this.heapStart);
+    }
+
+    /**
+     * @return the first value of the element of the current row.
+     * @param col
+     *            the column
+     */
+    public float getFloat(int col) {
+        return getFloat(col, 0);
+    }
+
+    /**
+     * @return a value of the element of the current row.
+     * @param col
+     *            the column
+     * @param index
+     *            the index of the value within the element
+     */
+    public float getFloat(int col, int index) {
+        return this.batchBuffer.getFloat(position(col, index));
+    }
+
+    /**
+     * @return the first value of the element of the current row.
+     * @param col
+     *            the column
+     */
+    public int getInt(int col) {
+        return getInt(col, 0);
+    }
+
+    /**
+     * @return a value of the element of the current row.
+     * @param col
+     *            the column
+     * @param index
+     *            the index of the value within the element
+     */
+    public int getInt(int col, int index) {
+        return this.batchBuffer.getInt(position(col, index));
+    }
+
+    /**
+     * @return the first value of the element of the current row.
+     * @param col
+     *            the column
+     */
+    public long getLong(int col) {
+        return getLong(col, 0);
+    }
+
+    /**
+     * @return a value of the element of the current row.
+     * @param col
+     *            the column
+     * @param index
+     *            the index of the value within the element
+     */
+    public long getLong(int col, int index) {
+        return this.batchBuffer.getLong(position(col, index));
+    }
+
+    /**
+     * @return the number of columns of the table.
+     */
+    public int getNCols() {
+        return this.columnOffsets.length;
+    }
+
+    /**
+     * @return the index of the current row in the table.
+     */
+    public int getRowIndex() {
+        return this.currentRow;
+    }
+
+    /**
+     * @return the current row in the same format as
+     *         {@link BinaryTable#getRow(int)}.
+     * @throws FitsException
+     *             if the row could not be decoded
+     */
+    public Object[] getRow() throws FitsException {
+        Object[] row = new Object[getNCols()];
+        for (int col = 0; col < row.length; col++) {
+            row[col] = getElement(col);
+        }
+        return row;
+    }
+
+    /**
+     * @return the first value of the element of the current row.
+     * @param col
+     *            the column
+     */
+    public short getShort(int col) {
+        return getShort(col, 0);
+    }
+
+    /**
+     * @return a value of the element of the current row.
+     * @param col
+     *            the column
+     * @param index
+     *            the index of the value within the element
+     */
+    public short getShort(int col, int index) {
+        return this.batchBuffer.getShort(position(col, index));
+    }
+
+    /**
+     * @return the table describing the columns, its data is not read.
+     */
+    public BinaryTable getTable() {
+        return this.table;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!this.pending) {
+            try {
+                this.pending = advance();
+            } catch (FitsException e) {
+                throw new IllegalStateException("could not read the next row", e);
+            }
+        }
+        return this.pending;
+    }
+
+    @Override
+    public Object[] next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        this.pending = false;
+        try {
+            return getRow();
+        } catch (FitsException e) {
+            throw new IllegalStateException("could not decode row " + this.currentRow, e);
+        }
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("rows can not be removed from the cursor");
+    }
+
+    /**
+     * Restrict the cursor to a range of rows, the rows before the range are
+     * skipped without decoding. Must be set before the first row is read.
+     *
+     * @param firstRow
+     *            the first row to return
+     * @param nRows
+     *            the number of rows to return
+     * @return this
+     * @throws FitsException
+     *             if the range is not inside the table
+     */
+    public BinaryTableRowCursor rows(int firstRow, int nRows) throws FitsException {
+        if (firstRow < 0 || nRows < 0 || (long) firstRow + nRows > this.endRow) {
+            throw new FitsException("Invalid row range " + firstRow + " to " + ((long) firstRow + nRows) + " in table with " + this.endRow + " rows");
+        }
+        this.nextRow = firstRow;
+        this.batchFirstRow = firstRow;
+        this.endRow = firstRow + nRows;
+        return this;
+    }
+
+    private void checkCurrentRow() throws FitsException {
+        if (this.currentRow < 0) {
+            throw new FitsException("The cursor is not positioned on a row");
+        }
+    }
+
+    private void finish() throws FitsException {
+        if (this.finished) {
+            return;
+        }
+        this.finished = true;
+        this.batch = null;
+        this.batchBuffer = null;
+        try {
+            if (this.input instanceof RandomAccess) {
+                FitsUtil.reposition(this.input, this.dataStart + this.dataSize);
+            } else {
+                this.input.skipAllBytes(this.dataSize - this.bytesRead);
+            }
+        } catch (IOException e) {
+            throw new FitsException("Could not skip the rest of the table data", e);
+        }
+    }
+
+    private int position(int col, int index) {
+        return (this.currentRow - this.batchFirstRow) * this.rowLength + this.columnOffsets[col] + index * this.columnTypes[col].size();
+    }
+
+    private void readBatch() throws FitsException {
+        if (this.batch == null) {
+            this.batch = new byte[Math.min(this.batchRows, this.endRow - this.nextRow) * this.rowLength];
+            this.batchBuffer = ByteBuffer.wrap(this.batch);
+        }
+        try {
+            long rowStart = (long) this.nextRow * (long) this.rowLength;
+            if (this.bytesRead < rowStart) {
+                this.input.skipAllBytes(rowStart - this.bytesRead);
+                this.bytesRead = rowStart;
+            }
+            this.batchFirstRow = this.nextRow;
+            this.batchSize = Math.min(this.batchRows, this.endRow - this.nextRow);
+            this.input.readFully(this.batch, 0, this.batchSize * this.rowLength);
+            this.bytesRead += this.batchSize * this.rowLength;
+        } catch (IOException e) {
+            throw new FitsException("Could not read the rows " + this.nextRow + " to " + (this.nextRow + this.batchSize), e);
+        }
+    }
+}
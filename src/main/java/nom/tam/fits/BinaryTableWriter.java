@@ -0,0 +1,294 @@
+package nom.tam.fits;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 1996 - 2021 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import static nom.tam.fits.header.Standard.NAXIS1;
+import static nom.tam.fits.header.Standard.NAXIS2;
+import static nom.tam.fits.header.Standard.PCOUNT;
+import static nom.tam.fits.header.Standard.THEAP;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+
+import nom.tam.util.ArrayDataOutput;
+import nom.tam.util.ArrayFuncs;
+import nom.tam.util.BufferedFile;
+import nom.tam.util.ColumnTable;
+import nom.tam.util.RandomAccess;
+import nom.tam.util.SafeClose;
+import nom.tam.util.TableException;
+
+/**
+ * Writes a binary table extension row batch by row batch, without keeping the
+ * table in memory. The header is written first with zero rows and an empty
+ * heap, the rows are written as they arrive and the data of variable length
+ * columns is spooled to a temporary file that is appended as the heap when the
+ * writer is closed. The header is then updated with the final number of rows
+ * and heap size, so the output must be a {@link RandomAccess}.
+ * 
+ * <pre>
+ * BufferedFile out = new BufferedFile(&quot;events.fits&quot;, &quot;rw&quot;);
+ * BasicHDU.getDummyHDU().write(out);
+ * BinaryTableWriter writer = new BinaryTableWriter(out, template);
+ * while (source.hasNext()) {
+ *     writer.writeRows(source.nextBatch());
+ * }
+ * writer.close();
+ * out.close();
+ * </pre>
+ * 
+ * The output itself is not closed by the writer.
+ */
+public final class BinaryTableWriter implements Closeable {
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Heap that writes all data to a temporary file instead of keeping it in
+     * memory.
+     */
+    private static final class SpooledHeap extends FitsHeap {
+
+        private final File file;
+
+        private final BufferedFile spool;
+
+        private long size;
+
+        private SpooledHeap() throws IOException {
+            super(0);
+            this.file = File.createTempFile("fitsheap", ".tmp");
+            this.file.deleteOnExit();
+            this.spool = new BufferedFile(this.file, "rw");
+        }
+
+        @Override
+        long putData(Object data) throws FitsException {
+            long offset = this.size;
+            try {
+                this.spool.writeArray(data);
+            } catch (IOException e) {
+                throw new FitsException("Unable to spool variable column length data", e);
+            }
+            this.size += ArrayFuncs.computeLSize(data);
+            return offset;
+        }
+
+        @Override
+        public long size() {
+            return this.size;
+        }
+
+        @Override
+        public void write(ArrayDataOutput str) throws FitsException {
+            try {
+                this.spool.seek(0);
+                byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                for (long remaining = this.size; remaining > 0;) {
+                    int length = (int) Math.min(buffer.length, remaining);
+                    this.spool.readFully(buffer, 0, length);
+                    str.write(buffer, 0, length);
+                    remaining -= length;
+                }
+            } catch (IOException e) {
+                throw new FitsException("Error writing heap:" + e.getMessage(), e);
+            }
+        }
+
+        private void delete() {
+            SafeClose.close(this.spool);
+            if (!this.file.delete()) {
+                this.file.deleteOnExit();
+            }
+        }
+    }
+
+    private final ArrayDataOutput out;
+
+    private final Header header;
+
+    /**
+     * the table describing the columns, it never holds rows itself.
+     */
+    private final BinaryTable table;
+
+    private final SpooledHeap heap;
+
+    private final int[] sizes;
+
+    private final Class<?>[] columnTypes;
+
+    private final long rowLength;
+
+    private long nRow;
+
+    private boolean closed;
+
+    /**
+     * Create a writer and write the header of the table. The rows of the
+     * template table are written first.
+     * 
+     * @param out
+     *            the random access output to write to, positioned where the
+     *            extension should start.
+     * @param template
+     *            the table that defines the columns.
+     * @throws FitsException
+     *             if the output is not random access or the header could not
+     *             be written.
+     */
+    public BinaryTableWriter(ArrayDataOutput out, BinaryTable template) throws FitsException {
+        if (!(out instanceof RandomAccess)) {
+            throw new FitsException("Streaming a binary table needs a random access output to update the header");
+        }
+        this.out = out;
+        ColumnTable<?> columns = template.getData();
+        Object[][] rows = new Object[template.getNRows()][];
+        for (int row = 0; row < rows.length; row++) {
+            rows[row] = template.getRow(row);
+        }
+        this.table = new BinaryTable(columns);
+        try {
+            this.heap = new SpooledHeap();
+        } catch (IOException e) {
+            throw new FitsException("Unable to create the heap spool file", e);
+        }
+        this.table.replaceHeap(this.heap);
+        this.sizes = columns.getSizes();
+        this.columnTypes = new Class<?>[this.sizes.length];
+        for (int col = 0; col < this.sizes.length; col++) {
+            this.columnTypes[col] = columns.getColumn(col).getClass();
+        }
+        this.header = BinaryTableHDU.manufactureHeader(template);
+        this.header.setNaxis(2, 0);
+        this.header.addValue(PCOUNT, 0);
+        this.header.deleteKey(THEAP);
+        this.rowLength = this.header.getLongValue(NAXIS1);
+        this.header.write(out);
+        writeRows(rows);
+    }
+
+    /**
+     * Write a row of the table.
+     * 
+     * @param row
+     *            the row to write, following the same rules as
+     *            {@link BinaryTable#addRow(Object[])}.
+     * @throws FitsException
+     *             if the row does not fit the table or could not be written.
+     */
+    public void writeRow(Object[] row) throws FitsException {
+        writeRows(new Object[][]{
+            row
+        });
+    }
+
+    /**
+     * Write a batch of rows of the table.
+     * 
+     * @param rows
+     *            the rows to write, following the same rules as
+     *            {@link BinaryTable#addRow(Object[])}.
+     * @throws FitsException
+     *             if a row does not fit the table or could not be written.
+     */
+    public void writeRows(Object[][] rows) throws FitsException {
+        if (this.closed) {
+            throw new FitsException("Binary table writer is closed");
+        }
+        if (rows.length == 0) {
+            return;
+        }
+        Object[] columns = new Object[this.sizes.length];
+        for (int col = 0; col < columns.length; col++) {
+            columns[col] = ArrayFuncs.newInstance(this.columnTypes[col].getComponentType(), rows.length * this.sizes[col]);
+        }
+        for (int row = 0; row < rows.length; row++) {
+            if (rows[row].length != columns.length) {
+                throw new TableException("Row length mismatch");
+            }
+            Object[] flatRow = this.table.flattenRow(rows[row]);
+            for (int col = 0; col < columns.length; col++) {
+                Object element = flatRow[col];
+                if (element.getClass() != this.columnTypes[col] || Array.getLength(element) != this.sizes[col]) {
+                    throw new TableException("Row column mismatch at column:" + col);
+                }
+                System.arraycopy(element, 0, columns[col], row * this.sizes[col], this.sizes[col]);
+            }
+        }
+        try {
+            new ColumnTable<Object>(columns, this.sizes).write(this.out);
+        } catch (IOException e) {
+            throw new FitsException("Unable to write the rows of the table", e);
+        }
+        this.nRow += rows.length;
+    }
+
+    /**
+     * @return the number of rows written so far.
+     */
+    public long getNRows() {
+        return this.nRow;
+    }
+
+    /**
+     * Write the heap and the padding of the table and update the header.
+     * 
+     * @throws IOException
+     *             if the table could not be completed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            long heapSize = this.heap.size();
+            this.heap.write(this.out);
+            FitsUtil.pad(this.out, this.nRow * this.rowLength + heapSize);
+            long end = ((RandomAccess) this.out).getFilePointer();
+            this.header.addValue(NAXIS2, this.nRow);
+            this.header.addValue(PCOUNT, heapSize);
+            FitsUtil.reposition(this.out, this.header.getFileOffset());
+            this.header.write(this.out);
+            FitsUtil.reposition(this.out, end);
+            this.out.flush();
+        } catch (FitsException e) {
+            throw new IOException("Unable to complete the binary table: " + e.getMessage(), e);
+        } finally {
+            this.heap.delete();
+        }
+    }
+}
@@ -39,6 +39,7 @@ import java.util.logging.Logger;
 
 import nom.tam.util.ArrayDataInput;
 import nom.tam.util.ArrayDataOutput;
+import nom.tam.util.ChannelFile;
 import nom.tam.util.RandomAccess;
 
 /**
@@ -156,7 +157,7 @@ public abstract class Data implements FitsElement {
 
     @Override
     public boolean rewriteable() {
-        return this.input != null && this.fileOffset >= 0
+        return this.input instanceof ArrayDataOutput && this.fileOffset >= 0
                 && (getTrueSize() + FITS_BLOCK_SIZE_MINUS_ONE) / FitsFactory.FITS_BLOCK_SIZE == (this.dataSize + FITS_BLOCK_SIZE_MINUS_ONE) / FitsFactory.FITS_BLOCK_SIZE;
     }
 
@@ -174,6 +175,34 @@ public abstract class Data implements FitsElement {
         }
     }
 
+    /**
+     * Copy the data unchanged from the file it was read from, if the output is
+     * a {@link ChannelFile} that can take it straight from the channel of the
+     * input. Only valid for data that was neither loaded nor modified since it
+     * was read.
+     *
+     * @param o
+     *            The output stream on which to write the data.
+     * @return true if the data (including the padding) was written, false if
+     *         it must be written the normal way.
+     * @throws FitsException
+     *             if the data could not be copied
+     */
+    protected boolean transferUnmodified(ArrayDataOutput o) throws FitsException {
+        if (!(o instanceof ChannelFile) || o == this.input || this.input == null || this.fileOffset < 0) {
+            return false;
+        }
+        try {
+            if (!((ChannelFile) o).transferFrom(this.input, this.fileOffset, this.dataSize)) {
+                return false;
+            }
+        } catch (IOException e) {
+            throw new FitsException("Unable to copy data: " + e, e);
+        }
+        FitsUtil.pad(o, this.dataSize);
+        return true;
+    }
+
     /**
      * Write the data -- including any buffering needed
      * 
@@ -31,6 +31,9 @@ package nom.tam.fits;
  * #L%
  */
 
+import static nom.tam.fits.header.Standard.EXTNAME;
+import static nom.tam.fits.header.Standard.EXTVER;
+
 import java.io.Closeable;
 import java.io.DataOutput;
 import java.io.DataOutputStream;
@@ -41,7 +44,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Properties;
 import java.util.logging.Level;
@@ -49,12 +54,15 @@ import java.util.logging.Logger;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import nom.tam.fits.compress.CompressionManager;
+import nom.tam.fits.utilities.ChecksumDataInputStream;
 import nom.tam.fits.utilities.FitsCheckSum;
 import nom.tam.util.ArrayDataInput;
 import nom.tam.util.ArrayDataOutput;
 import nom.tam.util.BufferedDataInputStream;
 import nom.tam.util.BufferedDataOutputStream;
 import nom.tam.util.BufferedFile;
+import nom.tam.util.ChannelFile;
+import nom.tam.util.MappedFile;
 import nom.tam.util.RandomAccess;
 import nom.tam.util.RandomAccessDataObject;
 import nom.tam.util.SafeClose;
@@ -160,6 +168,29 @@ public class Fits implements Closeable {
      */
     private long lastFileOffset = -1;
 
+    /**
+     * The file the Fits was opened from, if it is accessed randomly.
+     */
+    private File randomFile;
+
+    /**
+     * The index of the HDUs in the input, null as long as it was not needed.
+     */
+    private HDUIndex hduIndex;
+
+    /**
+     * HDUs that were read through the index ahead of the HDUs in the list, by
+     * their number. They move into the list when it reaches them, which is
+     * forced before the list is written or changed.
+     */
+    private final Map<Integer, BasicHDU<?>> indexedHDUs = new HashMap<Integer, BasicHDU<?>>();
+
+    /**
+     * Were HDUs added to or deleted from the list, so that its positions no
+     * longer correspond to the HDUs in the input?
+     */
+    private boolean hduListModified;
+
     /**
      * Create an empty Fits object which is not associated with an input stream.
      */
@@ -429,6 +460,61 @@ public class Fits implements Closeable {
         insertHDU(myHDU, getNumberOfHDUs());
     }
 
+    /**
+     * Get an extension by its EXTNAME and EXTVER. If the input supports random
+     * access the HDU is located with the {@link #getHDUIndex() HDU index},
+     * otherwise the HDUs are read until it is found.
+     * 
+     * @param extname
+     *            the EXTNAME, compared ignoring case and trailing blanks
+     * @param extver
+     *            the EXTVER, HDUs without EXTVER have version 1
+     * @return The first HDU with the name and version or null if there is
+     *         none.
+     * @throws FitsException
+     *             if a header could not be read
+     * @throws IOException
+     *             if the underlying buffer threw an error
+     */
+    public BasicHDU<?> getHDU(String extname, int extver) throws FitsException, IOException {
+        HDUIndex index = usableHDUIndex();
+        if (index != null) {
+            int n = index.indexOf(extname, extver);
+            return n < 0 ? null : getHDU(n);
+        }
+        for (int n = 0;; n++) {
+            BasicHDU<?> hdu = getHDU(n);
+            if (hdu == null) {
+                return null;
+            }
+            Header header = hdu.getHeader();
+            if (HDUIndex.matches(header.getStringValue(EXTNAME), header.getIntValue(EXTVER, 1), extname, extver)) {
+                return hdu;
+            }
+        }
+    }
+
+    /**
+     * Get the index of the HDUs in the input, building it with a header-only
+     * scan of the input the first time. If the Fits was opened from a file and
+     * {@link FitsFactory#isUseHDUIndexFiles()} is set, the index is taken from
+     * (or saved to) a sidecar file next to the FITS file.
+     * 
+     * @return The index or null if the input does not support random access.
+     * @throws IOException
+     *             if the input could not be scanned
+     */
+    public HDUIndex getHDUIndex() throws IOException {
+        if (this.hduIndex == null && this.dataStr instanceof RandomAccess) {
+            if (this.randomFile != null && FitsFactory.isUseHDUIndexFiles()) {
+                this.hduIndex = HDUIndex.forFile(this.randomFile, (RandomAccess) this.dataStr);
+            } else {
+                this.hduIndex = HDUIndex.scan((RandomAccess) this.dataStr);
+            }
+        }
+        return this.hduIndex;
+    }
+
     /**
      * Get the current number of HDUs in the Fits object.
      * 
@@ -452,10 +538,12 @@ public class Fits implements Closeable {
      *             if the HDU could not be deleted.
      */
     public void deleteHDU(int n) throws FitsException {
+        adoptIndexedHDUs();
         int size = getNumberOfHDUs();
         if (n < 0 || n >= size) {
             throw new FitsException("Attempt to delete non-existent HDU:" + n);
         }
+        this.hduListModified = true;
         this.hduList.remove(n);
         if (n == 0 && size > 1) {
             BasicHDU<?> newFirst = this.hduList.get(0);
@@ -492,8 +580,10 @@ public class Fits implements Closeable {
 
     /**
      * @return the n'th HDU. If the HDU is already read simply return a pointer
-     *         to the cached data. Otherwise read the associated stream until
-     *         the n'th HDU is read.
+     *         to the cached data. If HDUs would have to be skipped to get to it
+     *         and the input supports random access, the HDU is located with
+     *         the {@link #getHDUIndex() HDU index} and read directly. Otherwise
+     *         read the associated stream until the n'th HDU is read.
      * @param n
      *            The index of the HDU to be read. The primary HDU is index 0.
      * @return The n'th HDU or null if it could not be found.
@@ -503,7 +593,14 @@ public class Fits implements Closeable {
      *             if the underlying buffer threw an error
      */
     public BasicHDU<?> getHDU(int n) throws FitsException, IOException {
-        int size = getNumberOfHDUs();
+        int size = this.hduList.size();
+        if (n < size) {
+            return this.hduList.get(n);
+        }
+        HDUIndex index = n > size ? usableHDUIndex() : null;
+        if (index != null) {
+            return n < index.size() ? readIndexedHDU(index, n) : null;
+        }
         for (int i = size; i <= n; i += 1) {
             BasicHDU<?> hdu = readHDU();
             if (hdu == null) {
@@ -514,12 +611,18 @@ public class Fits implements Closeable {
     }
 
     /**
-     * Get the current number of HDUs in the Fits object.
+     * Get the current number of HDUs in the Fits object. HDUs that were
+     * skipped by reading a later HDU through the {@link #getHDUIndex() HDU
+     * index} are counted as well.
      * 
      * @return The number of HDU's in the object.
      */
     public int getNumberOfHDUs() {
-        return this.hduList.size();
+        int size = this.hduList.size();
+        for (Integer n : this.indexedHDUs.keySet()) {
+            size = Math.max(size, n + 1);
+        }
+        return size;
     }
 
     /**
@@ -547,9 +650,11 @@ public class Fits implements Closeable {
         if (myHDU == null) {
             return;
         }
+        adoptIndexedHDUs();
         if (position < 0 || position > getNumberOfHDUs()) {
             throw new FitsException("Attempt to insert HDU at invalid location: " + position);
         }
+        this.hduListModified = true;
         try {
             if (position == 0) {
                 // Note that the previous initial HDU is no longer the first.
@@ -578,7 +683,10 @@ public class Fits implements Closeable {
 
     /**
      * Initialize using buffered random access. This implies that the data is
-     * uncompressed.
+     * uncompressed. If {@link FitsFactory#isUseMappedFiles()} is set the file
+     * is memory mapped read-only instead, if
+     * {@link FitsFactory#isUseChannelFiles()} is set it is accessed through
+     * its file channel.
      * 
      * @param file
      *            the file to open
@@ -595,8 +703,15 @@ public class Fits implements Closeable {
             permissions += "w";
         }
         try {
-            this.dataStr = new BufferedFile(file, permissions);
-            ((BufferedFile) this.dataStr).seek(0);
+            if (FitsFactory.isUseMappedFiles()) {
+                this.dataStr = new MappedFile(file);
+            } else if (FitsFactory.isUseChannelFiles()) {
+                this.dataStr = new ChannelFile(file, permissions);
+            } else {
+                this.dataStr = new BufferedFile(file, permissions);
+            }
+            ((RandomAccess) this.dataStr).seek(0);
+            this.randomFile = file;
         } catch (IOException e) {
             throw new FitsException("Unable to open file " + file.getPath(), e);
         }
@@ -673,14 +788,62 @@ public class Fits implements Closeable {
             }
             return null;
         }
-        if (this.dataStr instanceof RandomAccess && this.lastFileOffset > 0) {
+        BasicHDU<?> indexed = this.indexedHDUs.remove(this.hduList.size());
+        if (indexed != null) {
+            this.lastFileOffset = this.hduIndex.get(this.hduList.size()).getEndOffset();
             FitsUtil.reposition(this.dataStr, this.lastFileOffset);
+            this.hduList.add(indexed);
+            return indexed;
+        }
+        if (!this.indexedHDUs.isEmpty()) {
+            // data of the HDUs read ahead may have moved the input anywhere
+            FitsUtil.reposition(this.dataStr, this.hduIndex.get(this.hduList.size()).getOffset());
+        } else if (this.dataStr instanceof RandomAccess && this.lastFileOffset > 0) {
+            FitsUtil.reposition(this.dataStr, this.lastFileOffset);
+        }
+        BasicHDU<?> nextHDU = readHDUFromStream();
+        if (nextHDU == null) {
+            this.atEOF = true;
+            return null;
+        }
+        this.lastFileOffset = FitsUtil.findOffset(this.dataStr);
+        this.hduList.add(nextHDU);
+        return nextHDU;
+    }
+
+    /**
+     * Read the HDUs up to the last one that was read through the index, so
+     * that the HDU list holds them in the order of the input.
+     */
+    private void adoptIndexedHDUs() throws FitsException {
+        while (!this.indexedHDUs.isEmpty()) {
+            try {
+                if (readHDU() == null) {
+                    this.indexedHDUs.clear();
+                }
+            } catch (IOException e) {
+                throw new FitsException("IO error: " + e, e);
+            }
+        }
+    }
+
+    /**
+     * @return the HDU at the current position of the input or null at the end
+     *         of the input.
+     */
+    private BasicHDU<?> readHDUFromStream() throws FitsException, IOException {
+        ChecksumDataInputStream sums = null;
+        if (this.dataStr instanceof ChecksumDataInputStream) {
+            sums = (ChecksumDataInputStream) this.dataStr;
+            sums.startHDU();
         }
         Header hdr = Header.readHeader(this.dataStr);
         if (hdr == null) {
-            this.atEOF = true;
             return null;
         }
+        if (sums != null) {
+            sums.startData();
+        }
         Data data = hdr.makeData(this.streamWriteFlag);
         try {
             data.read(this.dataStr);
@@ -690,10 +853,41 @@ public class Fits implements Closeable {
                 throw e;
             }
         }
-        this.lastFileOffset = FitsUtil.findOffset(this.dataStr);
-        BasicHDU<Data> nextHDU = FitsFactory.hduFactory(hdr, data);
-        this.hduList.add(nextHDU);
-        return nextHDU;
+        return FitsFactory.hduFactory(hdr, data);
+    }
+
+    /**
+     * @return an HDU from beyond the end of the HDU list, read at its offset
+     *         in the index. The position of the input is left unchanged.
+     */
+    private BasicHDU<?> readIndexedHDU(HDUIndex index, int n) throws FitsException, IOException {
+        BasicHDU<?> hdu = this.indexedHDUs.get(n);
+        if (hdu == null) {
+            long currentOffset = FitsUtil.findOffset(this.dataStr);
+            FitsUtil.reposition(this.dataStr, index.get(n).getOffset());
+            try {
+                hdu = readHDUFromStream();
+            } finally {
+                FitsUtil.reposition(this.dataStr, currentOffset);
+            }
+            if (hdu == null) {
+                throw new FitsException("No HDU at the indexed offset of HDU " + n);
+            }
+            this.indexedHDUs.put(n, hdu);
+        }
+        return hdu;
+    }
+
+    /**
+     * @return the HDU index if the HDU list still corresponds to the HDUs of a
+     *         random access input, otherwise null.
+     */
+    private HDUIndex usableHDUIndex() throws IOException {
+        if (this.hduListModified || !(this.dataStr instanceof RandomAccess)) {
+            return null;
+        }
+        HDUIndex index = getHDUIndex();
+        return index.size() > 0 ? index : null;
     }
 
     /**
@@ -747,6 +941,9 @@ public class Fits implements Closeable {
         this.dataStr = stream;
         this.atEOF = false;
         this.lastFileOffset = -1;
+        this.randomFile = null;
+        this.hduIndex = null;
+        this.indexedHDUs.clear();
     }
 
     public void setStreamWrite(final boolean useStreamWrite) {
@@ -789,14 +986,21 @@ public class Fits implements Closeable {
     public void skipHDU() throws FitsException, IOException {
         if (this.atEOF) {
             return;
-        } else {
-            Header hdr = new Header(this.dataStr);
-            int dataSize = (int) hdr.getDataSize();
-            this.dataStr.skipAllBytes(dataSize);
-            if (this.dataStr instanceof RandomAccess) {
-                this.lastFileOffset = ((RandomAccess) this.dataStr).getFilePointer();
+        }
+        if (this.hduIndex != null && this.dataStr instanceof RandomAccess) {
+            int n = this.hduIndex.indexAt(FitsUtil.findOffset(this.dataStr));
+            if (n >= 0) {
+                this.lastFileOffset = this.hduIndex.get(n).getEndOffset();
+                FitsUtil.reposition(this.dataStr, this.lastFileOffset);
+                return;
             }
         }
+        Header hdr = new Header(this.dataStr);
+        int dataSize = (int) hdr.getDataSize();
+        this.dataStr.skipAllBytes(dataSize);
+        if (this.dataStr instanceof RandomAccess) {
+            this.lastFileOffset = ((RandomAccess) this.dataStr).getFilePointer();
+        }
     }
 
     /**
@@ -820,7 +1024,8 @@ public class Fits implements Closeable {
      * compressed and wraps the stream if necessary. Even if the stream is not
      * compressed, it will likely be wrapped in a PushbackInputStream. So users
      * should probably not supply a BufferedDataInputStream themselves, but
-     * should allow the Fits class to do the wrapping.
+     * should allow the Fits class to do the wrapping. A
+     * {@link ChecksumDataInputStream} is used as it is.
      * 
      * @param inputStream
      *            stream to initialize
@@ -828,6 +1033,12 @@ public class Fits implements Closeable {
      *             if the initialization failed
      */
     protected void streamInit(InputStream inputStream) throws FitsException {
+        if (inputStream instanceof ChecksumDataInputStream) {
+            // the sums must cover exactly the bytes of the HDUs, so the
+            // stream is read directly.
+            this.dataStr = (ChecksumDataInputStream) inputStream;
+            return;
+        }
         this.dataStr = new BufferedDataInputStream(CompressionManager.decompress(inputStream));
     }
 
@@ -850,6 +1061,7 @@ public class Fits implements Closeable {
         } else {
             throw new FitsException("Cannot create ArrayDataOutput from class " + os.getClass().getName());
         }
+        adoptIndexedHDUs();
         for (BasicHDU<?> basicHDU : hduList) {
             basicHDU.write(obs);
         }
@@ -861,20 +1073,24 @@ public class Fits implements Closeable {
                 throw new FitsException("Error flushing/closing the FITS output stream: " + e, e);
             }
         }
-        if (obs instanceof BufferedFile) {
-            try {
+        try {
+            if (obs instanceof BufferedFile) {
                 ((BufferedFile) obs).setLength(((BufferedFile) obs).getFilePointer());
-            } catch (IOException e) {
-                throw new FitsException("Error resizing the FITS output stream: " + e, e);
+            } else if (obs instanceof ChannelFile) {
+                ((ChannelFile) obs).setLength(((ChannelFile) obs).getFilePointer());
             }
+        } catch (IOException e) {
+            throw new FitsException("Error resizing the FITS output stream: " + e, e);
         }
     }
 
     /**
      * Write the FITS to the specified file. This is a wrapper method provided
      * for convenience, which calls the {@link #write(DataOutput)} method. It
-     * creates a suitable {@link nom.tam.util.BufferedFile}, to which the FITS
-     * is then written. Upon completion the underlying stream is closed.
+     * creates a suitable {@link nom.tam.util.BufferedFile} (or a
+     * {@link nom.tam.util.ChannelFile} if {@link FitsFactory#isUseChannelFiles()}
+     * is set), to which the FITS is then written. Upon completion the
+     * underlying stream is closed.
      * 
      * @param file
      *            a file to which the FITS is to be written.
@@ -885,12 +1101,16 @@ public class Fits implements Closeable {
      *             closed.
      */
     public void write(File file) throws IOException, FitsException {
-        BufferedFile bf = null;
+        ArrayDataOutput out = null;
         try {
-            bf = new BufferedFile(file, "rw");
-            write(bf);
+            if (FitsFactory.isUseChannelFiles()) {
+                out = new ChannelFile(file, "rw");
+            } else {
+                out = new BufferedFile(file, "rw");
+            }
+            write(out);
         } finally {
-            SafeClose.close(bf);
+            SafeClose.close(out);
         }
     }
 
@@ -68,6 +68,14 @@ public final class FitsFactory {
 
         private boolean skipBlankAfterAssign = false;
 
+        private boolean useMappedFiles = false;
+
+        private boolean useChannelFiles = false;
+
+        private boolean useHDUIndexFiles = false;
+
+        private int tileParallelism = 0;
+
         private IHierarchKeyFormatter hierarchKeyFormatter = new StandardIHierarchKeyFormatter();
 
         private FitsSettings copy() {
@@ -80,6 +88,10 @@ public final class FitsFactory {
             settings.hierarchKeyFormatter = this.hierarchKeyFormatter;
             settings.skipBlankAfterAssign = this.skipBlankAfterAssign;
             settings.allowHeaderRepairs = this.allowHeaderRepairs;
+            settings.useMappedFiles = this.useMappedFiles;
+            settings.useChannelFiles = this.useChannelFiles;
+            settings.useHDUIndexFiles = this.useHDUIndexFiles;
+            settings.tileParallelism = this.tileParallelism;
             return settings;
         }
 
@@ -115,13 +127,40 @@ public final class FitsFactory {
             return this.allowHeaderRepairs;
         }
 
+        protected boolean isUseMappedFiles() {
+            return this.useMappedFiles;
+        }
+
+        protected boolean isUseChannelFiles() {
+            return this.useChannelFiles;
+        }
+
+        protected boolean isUseHDUIndexFiles() {
+            return this.useHDUIndexFiles;
+        }
+
+        protected int getTileParallelism() {
+            return this.tileParallelism;
+        }
+
     }
 
     private static final FitsSettings GLOBAL_SETTINGS = new FitsSettings();
 
     private static final ThreadLocal<FitsSettings> LOCAL_SETTINGS = new ThreadLocal<FitsSettings>();
 
-    private static ExecutorService threadPool;
+    /**
+     * the executor service installed by the application, null to use the
+     * default pool.
+     */
+    private static volatile ExecutorService threadPool;
+
+    /**
+     * the pool of daemon threads created by this class when it is first
+     * needed. It is never shut down, so operations that fetched it before
+     * another executor was installed can still submit their tasks.
+     */
+    private static volatile ExecutorService defaultThreadPool;
 
     public static final int FITS_BLOCK_SIZE = 2880;
 
@@ -321,6 +360,30 @@ public final class FitsFactory {
         return current().skipBlankAfterAssign;
     }
 
+    /**
+     * @return <code>true</code> if files are read and written through a
+     *         {@link nom.tam.util.ChannelFile} instead of a buffered file.
+     */
+    public static boolean isUseChannelFiles() {
+        return current().useChannelFiles;
+    }
+
+    /**
+     * @return <code>true</code> if the HDU index of a file is kept in a
+     *         sidecar file next to it.
+     */
+    public static boolean isUseHDUIndexFiles() {
+        return current().useHDUIndexFiles;
+    }
+
+    /**
+     * @return <code>true</code> if uncompressed files are opened through a
+     *         read-only memory mapping instead of a buffered file.
+     */
+    public static boolean isUseMappedFiles() {
+        return current().useMappedFiles;
+    }
+
     /**
      * Do we allow junk after a valid FITS file?
      *
@@ -408,11 +471,103 @@ public final class FitsFactory {
         current().useHierarch = useHierarch;
     }
 
+    /**
+     * Enable/Disable file channel I/O. If enabled a Fits created from a File
+     * (unless memory mapping is enabled) and {@link Fits#write(java.io.File)}
+     * use a {@link nom.tam.util.ChannelFile}, and data that was not touched
+     * since it was read is copied from file to file with
+     * {@link java.nio.channels.FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+     * instead of being decoded and encoded again. Disabled by default.
+     *
+     * @param useChannelFiles
+     *            value to set
+     */
+    public static void setUseChannelFiles(boolean useChannelFiles) {
+        current().useChannelFiles = useChannelFiles;
+    }
+
+    /**
+     * Enable/Disable sidecar files for HDU indexes. If enabled the
+     * {@link HDUIndex} of a Fits opened from a File is loaded from the file
+     * named by {@link HDUIndex#indexFileOf(java.io.File)} as long as it matches
+     * the size and modification time of the FITS file, and saved there after it
+     * was built otherwise. Disabled by default.
+     *
+     * @param useHDUIndexFiles
+     *            value to set
+     */
+    public static void setUseHDUIndexFiles(boolean useHDUIndexFiles) {
+        current().useHDUIndexFiles = useHDUIndexFiles;
+    }
+
+    /**
+     * Enable/Disable memory mapped access to uncompressed files. If enabled a
+     * Fits created from a File reads through a {@link nom.tam.util.MappedFile}
+     * which decodes data directly from the mapping. Such a Fits is read-only,
+     * its headers and data can not be rewritten in place. Disabled by default.
+     *
+     * @param useMappedFiles
+     *            value to set
+     */
+    public static void setUseMappedFiles(boolean useMappedFiles) {
+        current().useMappedFiles = useMappedFiles;
+    }
+
+    /**
+     * Set the maximum number of tiles that a single compression or
+     * decompression submits to the thread pool at the same time, further tiles
+     * are only submitted when earlier ones are finished. A value of 0 or less
+     * selects the default of two tiles per available processor.
+     *
+     * @param tileParallelism
+     *            value to set
+     */
+    public static void setTileParallelism(int tileParallelism) {
+        current().tileParallelism = tileParallelism;
+    }
+
+    /**
+     * @return the maximum number of tiles that a single compression or
+     *         decompression submits to the thread pool at the same time.
+     */
+    public static int getTileParallelism() {
+        int tileParallelism = current().getTileParallelism();
+        if (tileParallelism <= 0) {
+            return Runtime.getRuntime().availableProcessors() * 2;
+        }
+        return tileParallelism;
+    }
+
+    /**
+     * Install the executor service that is used to compress and decompress
+     * tiles, for example a pool shared with the application or a virtual
+     * thread per task executor. The application stays responsible for shutting
+     * down a supplied executor, and must not do so while operations that
+     * started before it was replaced still use it. The default pool is never
+     * shut down, its idle daemon threads do not keep the JVM alive. Setting
+     * null restores the default pool.
+     *
+     * @param executorService
+     *            the executor service to use or null for the default pool
+     */
+    public static void setThreadPool(ExecutorService executorService) {
+        threadPool = executorService;
+    }
+
+    /**
+     * @return the executor service used to compress and decompress tiles, if
+     *         none was installed a default pool of daemon threads with two
+     *         threads per available processor is created.
+     */
     public static ExecutorService threadPool() {
-        if (threadPool == null) {
-            initializeThreadPool();
+        ExecutorService result = threadPool;
+        if (result == null) {
+            result = defaultThreadPool;
+            if (result == null) {
+                result = initializeThreadPool();
+            }
         }
-        return threadPool;
+        return result;
     }
 
     /**
@@ -431,11 +586,11 @@ public final class FitsFactory {
         }
     }
 
-    private static void initializeThreadPool() {
+    private static ExecutorService initializeThreadPool() {
         synchronized (GLOBAL_SETTINGS) {
-            if (threadPool == null) {
+            if (defaultThreadPool == null) {
                 // 1.5 thread per core
-                threadPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2, //
+                defaultThreadPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2, //
                         new ThreadFactory() {
 
                             private int counter = 1;
@@ -448,6 +603,7 @@ public final class FitsFactory {
                             }
                         });
             }
+            return defaultThreadPool;
         }
     }
 
@@ -34,6 +34,8 @@ package nom.tam.fits;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import nom.tam.util.ArrayDataInput;
@@ -44,29 +46,50 @@ import nom.tam.util.BufferedDataOutputStream;
 
 /**
  * This class supports the FITS heap. This is currently used for variable length
- * columns in binary tables.
+ * columns in binary tables. The heap is stored in segments of a fixed size, so
+ * it can grow beyond 2 GB and growing it never copies more than one segment.
  */
 public class FitsHeap implements FitsElement {
 
     private static final int MINIMUM_HEAP_SIZE = 16384;
 
+    private static final int SEGMENT_BITS = 24;
+
+    /**
+     * The size of a segment of the heap (16 MB).
+     */
+    static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+
+    private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    /**
+     * The maximum size of a heap, limited by the number of segments.
+     */
+    static final long MAX_SIZE = (long) Integer.MAX_VALUE << SEGMENT_BITS;
+
     /**
-     * The storage buffer
+     * The storage segments.
      */
-    private byte[] heap;
+    private List<byte[]> segments = new ArrayList<byte[]>();
 
     /**
-     * The current used size of the buffer <= heap.length
+     * The current used size of the heap.
      */
-    private int heapSize;
+    private long heapSize;
 
     /**
      * Our current offset into the heap. When we read from the heap we use a
-     * byte array input stream. So long as we continue to read further into the
-     * heap, we can continue to use the same stream, but we need to recreate the
-     * stream whenever we skip backwards.
+     * byte array input stream over the current segment. So long as we continue
+     * to read further into the segment, we can continue to use the same stream,
+     * but we need to recreate the stream whenever we skip backwards or change
+     * the segment.
+     */
+    private long heapOffset = 0;
+
+    /**
+     * The segment the stream reads from.
      */
-    private int heapOffset = 0;
+    private int streamSegment = -1;
 
     /**
      * A stream used to read the heap data
@@ -77,16 +100,25 @@ public class FitsHeap implements FitsElement {
      * Create a heap of a given size.
      */
     FitsHeap(int size) {
+        this((long) size);
+    }
+
+    /**
+     * Create a heap of a given size.
+     */
+    FitsHeap(long size) {
         this.heapSize = size;
         if (size < 0) {
             throw new IllegalArgumentException("Illegal size for FITS heap:" + size);
         }
     }
 
-    private void allocate() {
-        if (this.heap == null) {
-            this.heap = new byte[this.heapSize];
-        }
+    private static int segmentIndex(long offset) {
+        return (int) (offset >>> SEGMENT_BITS);
+    }
+
+    private static int segmentOffset(long offset) {
+        return (int) (offset & SEGMENT_MASK);
     }
 
     /**
@@ -96,32 +128,33 @@ public class FitsHeap implements FitsElement {
      */
     FitsHeap copy() {
         FitsHeap copy = new FitsHeap(0);
-        if (this.heap != null) {
-            copy.heap = this.heap.clone();
+        for (byte[] segment : this.segments) {
+            copy.segments.add(segment.clone());
         }
         copy.heapSize = this.heapSize;
-        copy.heapOffset = this.heapOffset;
         return copy;
     }
 
     /**
      * Check if the Heap can accommodate a given requirement. If not expand the
-     * heap.
+     * last segment, or add new ones.
      */
-    void expandHeap(int need) {
-
+    void expandHeap(int need) throws FitsException {
         // Invalidate any existing input stream to the heap.
         this.bstr = null;
-        allocate();
-
-        if (this.heapSize + need > this.heap.length) {
-            int newlen = (this.heapSize + need) * 2;
-            if (newlen < MINIMUM_HEAP_SIZE) {
-                newlen = MINIMUM_HEAP_SIZE;
+        if (need <= 0) {
+            return;
+        }
+        long end = this.heapSize + need;
+        for (int index = segmentIndex(this.heapSize); index <= segmentIndex(end - 1); index++) {
+            int required = index < segmentIndex(end - 1) ? SEGMENT_SIZE : segmentOffset(end - 1) + 1;
+            byte[] segment = segment(index);
+            if (segment.length < required) {
+                int newlen = Math.min(SEGMENT_SIZE, Math.max(MINIMUM_HEAP_SIZE, required * 2));
+                byte[] newSegment = new byte[newlen];
+                System.arraycopy(segment, 0, newSegment, 0, segment.length);
+                this.segments.set(index, newSegment);
             }
-            byte[] newHeap = new byte[newlen];
-            System.arraycopy(this.heap, 0, newHeap, 0, this.heapSize);
-            this.heap = newHeap;
         }
     }
 
@@ -135,13 +168,23 @@ public class FitsHeap implements FitsElement {
      * @throws FitsException
      *             if the operation failed
      */
-    public void getData(int offset, Object array) throws FitsException {
-        allocate();
+    public void getData(long offset, Object array) throws FitsException {
         try {
+            long size = ArrayFuncs.computeLSize(array);
+            int index = segmentIndex(offset);
+            if (segmentOffset(offset) + size > SEGMENT_SIZE) {
+                // the data spans several segments, collect it first.
+                byte[] bytes = new byte[(int) size];
+                getBytes(offset, bytes);
+                new BufferedDataInputStream(new ByteArrayInputStream(bytes), bytes.length).readLArray(array);
+                return;
+            }
             // Can we reuse the existing byte stream?
-            if (this.bstr == null || this.heapOffset > offset) {
-                this.heapOffset = 0;
-                this.bstr = new BufferedDataInputStream(new ByteArrayInputStream(this.heap));
+            if (this.bstr == null || this.streamSegment != index || this.heapOffset > offset) {
+                byte[] segment = segment(index);
+                this.streamSegment = index;
+                this.heapOffset = (long) index << SEGMENT_BITS;
+                this.bstr = new BufferedDataInputStream(new ByteArrayInputStream(segment));
             }
 
             this.bstr.skipAllBytes(offset - this.heapOffset);
@@ -153,6 +196,20 @@ public class FitsHeap implements FitsElement {
         }
     }
 
+    /**
+     * Get data from the heap.
+     * 
+     * @param offset
+     *            The offset at which the data begins.
+     * @param array
+     *            The array to be extracted.
+     * @throws FitsException
+     *             if the operation failed
+     */
+    public void getData(int offset, Object array) throws FitsException {
+        getData((long) offset, array);
+    }
+
     /**
      * Get the file offset of the heap
      */
@@ -171,12 +228,14 @@ public class FitsHeap implements FitsElement {
 
     /**
      * Add some data to the heap.
+     *
+     * @return the offset of the data in the heap.
      */
-    int putData(Object data) throws FitsException {
+    long putData(Object data) throws FitsException {
 
         long lsize = ArrayFuncs.computeLSize(data);
         if (lsize > Integer.MAX_VALUE) {
-            throw new FitsException("FITS Heap > 2 G");
+            throw new FitsException("FITS Heap > 2 G in a single entry");
         }
         int size = (int) lsize;
         expandHeap(size);
@@ -191,8 +250,15 @@ public class FitsHeap implements FitsElement {
             throw new FitsException("Unable to write variable column length data", e);
         }
 
-        System.arraycopy(bo.toByteArray(), 0, this.heap, this.heapSize, size);
-        int oldOffset = this.heapSize;
+        byte[] bytes = bo.toByteArray();
+        long oldOffset = this.heapSize;
+        int written = 0;
+        while (written < size) {
+            long offset = oldOffset + written;
+            int length = Math.min(size - written, SEGMENT_SIZE - segmentOffset(offset));
+            System.arraycopy(bytes, written, this.segments.get(segmentIndex(offset)), segmentOffset(offset), length);
+            written += length;
+        }
         this.heapSize += size;
 
         return oldOffset;
@@ -204,18 +270,22 @@ public class FitsHeap implements FitsElement {
     @SuppressFBWarnings(value = "RR_NOT_CHECKED", justification = "this read will never return less than the requested length")
     @Override
     public void read(ArrayDataInput str) throws FitsException {
-        if (this.heapSize > 0) {
-            allocate();
-            try {
-                if (str.read(this.heap, 0, this.heapSize) < this.heapSize) {
+        this.segments.clear();
+        this.bstr = null;
+        if (this.heapSize <= 0) {
+            return;
+        }
+        try {
+            for (long start = 0; start < this.heapSize; start += SEGMENT_SIZE) {
+                byte[] segment = new byte[(int) Math.min(SEGMENT_SIZE, this.heapSize - start)];
+                if (str.read(segment, 0, segment.length) < segment.length) {
                     throw new FitsException("Error reading heap, no more data");
                 }
-            } catch (IOException e) {
-                throw new FitsException("Error reading heap " + e.getMessage(), e);
+                this.segments.add(segment);
             }
+        } catch (IOException e) {
+            throw new FitsException("Error reading heap " + e.getMessage(), e);
         }
-
-        this.bstr = null;
     }
 
     @Override
@@ -236,7 +306,7 @@ public class FitsHeap implements FitsElement {
     /**
      * @return the size of the Heap
      */
-    public int size() {
+    public long size() {
         return this.heapSize;
     }
 
@@ -245,11 +315,35 @@ public class FitsHeap implements FitsElement {
      */
     @Override
     public void write(ArrayDataOutput str) throws FitsException {
-        allocate();
         try {
-            str.write(this.heap, 0, this.heapSize);
+            for (long start = 0; start < this.heapSize; start += SEGMENT_SIZE) {
+                byte[] segment = segment(segmentIndex(start));
+                str.write(segment, 0, (int) Math.min(SEGMENT_SIZE, this.heapSize - start));
+            }
         } catch (IOException e) {
             throw new FitsException("Error writing heap:" + e.getMessage(), e);
         }
     }
+
+    private void getBytes(long offset, byte[] bytes) throws FitsException {
+        int copied = 0;
+        while (copied < bytes.length) {
+            long position = offset + copied;
+            int length = Math.min(bytes.length - copied, SEGMENT_SIZE - segmentOffset(position));
+            System.arraycopy(segment(segmentIndex(position)), segmentOffset(position), bytes, copied, length);
+            copied += length;
+        }
+    }
+
+    /**
+     * @return the segment with the given index, missing segments are added
+     *         zero filled up to the current size of the heap.
+     */
+    private byte[] segment(int index) {
+        while (this.segments.size() <= index) {
+            long start = (long) this.segments.size() << SEGMENT_BITS;
+            this.segments.add(new byte[(int) Math.max(0, Math.min(SEGMENT_SIZE, this.heapSize - start))]);
+        }
+        return this.segments.get(index);
+    }
 }
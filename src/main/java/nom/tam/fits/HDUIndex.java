@@ -0,0 +1,536 @@
+package nom.tam.fits;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 1996 - 2021 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import static nom.tam.fits.header.Standard.BITPIX;
+import static nom.tam.fits.header.Standard.END;
+import static nom.tam.fits.header.Standard.EXTNAME;
+import static nom.tam.fits.header.Standard.EXTVER;
+import static nom.tam.fits.header.Standard.GCOUNT;
+import static nom.tam.fits.header.Standard.GROUPS;
+import static nom.tam.fits.header.Standard.NAXIS;
+import static nom.tam.fits.header.Standard.PCOUNT;
+import static nom.tam.fits.header.Standard.SIMPLE;
+import static nom.tam.fits.header.Standard.XTENSION;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import nom.tam.util.AsciiFuncs;
+import nom.tam.util.FitsIO;
+import nom.tam.util.RandomAccess;
+import nom.tam.util.SafeClose;
+
+/**
+ * An index of the HDUs in a FITS file: where each HDU starts, how large its
+ * header and data are and its EXTNAME/EXTVER. The index is built by a scan
+ * that reads only the header blocks and picks the few keywords it needs
+ * straight from the raw cards, without creating Header objects, and skips
+ * the data. With it {@link Fits#getHDU(int)} and
+ * {@link Fits#getHDU(String, int)} can seek directly to the HDU instead of
+ * parsing all the HDUs before it.
+ * <p>
+ * An index can be saved in a sidecar file next to the FITS file, it records
+ * the length and modification time of the FITS file and is ignored when they
+ * no longer match.
+ */
+public final class HDUIndex {
+
+    /**
+     * The location and identification of one HDU in the file.
+     */
+    public static final class Entry {
+
+        private final long offset;
+
+        private final long headerSize;
+
+        private final long dataSize;
+
+        private final String extname;
+
+        private final int extver;
+
+        private Entry(long offset, long headerSize, long dataSize, String extname, int extver) {
+            this.offset = offset;
+            this.headerSize = headerSize;
+            this.dataSize = dataSize;
+            this.extname = extname;
+            this.extver = extver;
+        }
+
+        /**
+         * @return the offset in the file of the data of the HDU.
+         */
+        public long getDataOffset() {
+            return this.offset + this.headerSize;
+        }
+
+        /**
+         * @return the size of the data including the padding.
+         */
+        public long getDataSize() {
+            return this.dataSize;
+        }
+
+        /**
+         * @return the offset in the file just behind the HDU.
+         */
+        public long getEndOffset() {
+            return getDataOffset() + this.dataSize;
+        }
+
+        /**
+         * @return the EXTNAME of the HDU or null if it has none.
+         */
+        public String getExtname() {
+            return this.extname;
+        }
+
+        /**
+         * @return the EXTVER of the HDU, 1 if it has none.
+         */
+        public int getExtver() {
+            return this.extver;
+        }
+
+        /**
+         * @return the size of the header including the padding.
+         */
+        public long getHeaderSize() {
+            return this.headerSize;
+        }
+
+        /**
+         * @return the offset in the file of the header of the HDU.
+         */
+        public long getOffset() {
+            return this.offset;
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger(HDUIndex.class.getName());
+
+    /**
+     * The suffix appended to the name of a FITS file to get the name of its
+     * index file.
+     */
+    public static final String INDEX_FILE_SUFFIX = ".hdx";
+
+    /**
+     * The first bytes of an index file, followed by the format version.
+     */
+    private static final int INDEX_FILE_MAGIC = 0x48445849;
+
+    private static final int INDEX_FILE_VERSION = 1;
+
+    /**
+     * The width of the keyword field of a card.
+     */
+    private static final int KEYWORD_LENGTH = 8;
+
+    /**
+     * The column where the value of a card starts.
+     */
+    private static final int VALUE_START = 10;
+
+    private final List<Entry> entries;
+
+    private HDUIndex(List<Entry> entries) {
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * @return the sidecar index file used for the FITS file.
+     * @param fitsFile
+     *            the FITS file
+     */
+    public static File indexFileOf(File fitsFile) {
+        return new File(fitsFile.getPath() + INDEX_FILE_SUFFIX);
+    }
+
+    /**
+     * Get the index of a FITS file from its sidecar file, or scan the file and
+     * try to save the index to the sidecar file if there is no up to date one.
+     * A sidecar file that can not be written is only logged.
+     *
+     * @param fitsFile
+     *            the FITS file
+     * @param in
+     *            the opened FITS file, used if it needs to be scanned
+     * @return the index
+     * @throws IOException
+     *             if the FITS file could not be scanned
+     */
+    public static HDUIndex forFile(File fitsFile, RandomAccess in) throws IOException {
+        File indexFile = indexFileOf(fitsFile);
+        HDUIndex index = load(indexFile, fitsFile);
+        if (index == null) {
+            index = scan(in);
+            try {
+                index.save(indexFile, fitsFile);
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Could not write HDU index file " + indexFile, e);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Load an index from a sidecar file.
+     *
+     * @param indexFile
+     *            the sidecar file
+     * @param fitsFile
+     *            the FITS file it should describe
+     * @return the index or null if there is no index file or if it does not
+     *         match the current length and modification time of the FITS file.
+     */
+    public static HDUIndex load(File indexFile, File fitsFile) {
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            if (in.readInt() != INDEX_FILE_MAGIC || in.readInt() != INDEX_FILE_VERSION || in.readLong() != fitsFile.length() || in.readLong() != fitsFile.lastModified()) {
+                return null;
+            }
+            int size = in.readInt();
+            List<Entry> entries = new ArrayList<Entry>(size);
+            for (int index = 0; index < size; index++) {
+                long offset = in.readLong();
+                long headerSize = in.readLong();
+                long dataSize = in.readLong();
+                String extname = in.readBoolean() ? in.readUTF() : null;
+                entries.add(new Entry(offset, headerSize, dataSize, extname, in.readInt()));
+            }
+            return new HDUIndex(entries);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Ignoring unreadable HDU index file " + indexFile, e);
+            return null;
+        } finally {
+            SafeClose.close(in);
+        }
+    }
+
+    /**
+     * Scan a FITS file for its HDUs. The scan stops at the end of the file or
+     * at anything that is not a header (like trailing junk). The file pointer
+     * of the input is restored afterwards.
+     *
+     * @param in
+     *            the FITS file
+     * @return the index
+     * @throws IOException
+     *             if the file could not be read
+     */
+    public static HDUIndex scan(RandomAccess in) throws IOException {
+        long start = in.getFilePointer();
+        List<Entry> entries = new ArrayList<Entry>();
+        try {
+            byte[] block = new byte[FitsFactory.FITS_BLOCK_SIZE];
+            long offset = 0;
+            while (true) {
+                in.seek(offset);
+                Entry entry = scanHDU(in, block, offset, entries.isEmpty());
+                if (entry == null) {
+                    break;
+                }
+                entries.add(entry);
+                offset = entry.getEndOffset();
+            }
+        } finally {
+            in.seek(start);
+        }
+        return new HDUIndex(entries);
+    }
+
+    /**
+     * @return true if an HDU has the given EXTNAME and EXTVER. Names are
+     *         compared ignoring case and trailing blanks, a missing EXTVER is
+     *         1.
+     * @param extname
+     *            the EXTNAME of the HDU
+     * @param extver
+     *            the EXTVER of the HDU
+     * @param wantedName
+     *            the EXTNAME looked for
+     * @param wantedVersion
+     *            the EXTVER looked for
+     */
+    static boolean matches(String extname, int extver, String wantedName, int wantedVersion) {
+        return extname != null && extver == wantedVersion && extname.trim().equalsIgnoreCase(wantedName.trim());
+    }
+
+    private static Entry scanHDU(RandomAccess in, byte[] block, long offset, boolean primary) throws IOException {
+        String firstKey = primary ? SIMPLE.key() : XTENSION.key();
+        int bitpix = 0;
+        int naxis = -1;
+        long[] axes = new long[0];
+        boolean groups = false;
+        long pcount = 0;
+        long gcount = 1;
+        String extname = null;
+        int extver = 1;
+        long headerSize = 0;
+        boolean end = false;
+        while (!end) {
+            try {
+                in.readFully(block, 0, block.length);
+            } catch (EOFException e) {
+                // nothing more or a truncated header, in both cases the index
+                // ends here.
+                return null;
+            }
+            for (int card = 0; card < block.length && !end; card += HeaderCard.FITS_HEADER_CARD_SIZE) {
+                String key = AsciiFuncs.asciiString(block, card, KEYWORD_LENGTH).trim();
+                if (headerSize == 0 && card == 0 && !key.equals(firstKey)) {
+                    return null;
+                }
+                if (key.equals(END.key())) {
+                    end = true;
+                } else if (key.equals(BITPIX.key())) {
+                    bitpix = (int) longValue(block, card);
+                } else if (key.equals(NAXIS.key())) {
+                    naxis = (int) longValue(block, card);
+                    axes = new long[Math.max(naxis, 0)];
+                } else if (key.startsWith(NAXIS.key())) {
+                    int axis = axisNumber(key);
+                    if (axis > 0 && axis <= axes.length) {
+                        axes[axis - 1] = longValue(block, card);
+                    }
+                } else if (key.equals(PCOUNT.key())) {
+                    pcount = longValue(block, card);
+                } else if (key.equals(GCOUNT.key())) {
+                    gcount = longValue(block, card);
+                } else if (key.equals(GROUPS.key())) {
+                    groups = "T".equals(value(block, card));
+                } else if (key.equals(EXTNAME.key())) {
+                    extname = value(block, card);
+                } else if (key.equals(EXTVER.key())) {
+                    extver = (int) longValue(block, card);
+                }
+            }
+            headerSize += block.length;
+        }
+        long dataSize = FitsUtil.addPadding(dataSize(bitpix, naxis, axes, groups, pcount, gcount));
+        return new Entry(offset, headerSize, dataSize, extname, extver);
+    }
+
+    /**
+     * @return the number of the axis of an NAXISn keyword or 0 if it is none.
+     */
+    private static int axisNumber(String key) {
+        try {
+            return Integer.parseInt(key.substring(NAXIS.key().length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return the size of the data of an HDU computed the same way as
+     *         {@link Header#getDataSize()} does.
+     */
+    static long dataSize(int bitpix, int naxis, long[] axes, boolean groups, long pcount, long gcount) {
+        if (naxis <= 0) {
+            return 0L;
+        }
+        int startAxis = 0;
+        if (groups && naxis > 1 && axes[0] == 0) {
+            startAxis = 1;
+        }
+        long size = 1;
+        for (int i = startAxis; i < naxis; i += 1) {
+            size *= axes[i];
+        }
+        size += pcount;
+        size *= gcount;
+        return size * (Math.abs(bitpix) / FitsIO.BITS_OF_1_BYTE);
+    }
+
+    private static long longValue(byte[] block, int card) {
+        String value = value(block, card);
+        if (value == null || value.isEmpty()) {
+            return 0L;
+        }
+        try {
+            return Long.parseLong(value.startsWith("+") ? value.substring(1) : value);
+        } catch (NumberFormatException e) {
+            try {
+                return (long) Double.parseDouble(value);
+            } catch (NumberFormatException e2) {
+                return 0L;
+            }
+        }
+    }
+
+    /**
+     * @return the value of a card without its comment; the content of a
+     *         string value without the quotes and trailing blanks; or null if
+     *         the card has no value.
+     */
+    private static String value(byte[] block, int card) {
+        if (block[card + KEYWORD_LENGTH] != '=') {
+            return null;
+        }
+        String text = AsciiFuncs.asciiString(block, card + VALUE_START, HeaderCard.FITS_HEADER_CARD_SIZE - VALUE_START);
+        String trimmed = text.trim();
+        if (trimmed.startsWith("'")) {
+            StringBuilder string = new StringBuilder();
+            for (int index = 1; index < trimmed.length(); index++) {
+                char c = trimmed.charAt(index);
+                if (c == '\'') {
+                    if (index + 1 < trimmed.length() && trimmed.charAt(index + 1) == '\'') {
+                        index++;
+                    } else {
+                        break;
+                    }
+                }
+                string.append(c);
+            }
+            int length = string.length();
+            while (length > 0 && string.charAt(length - 1) == ' ') {
+                length--;
+            }
+            return string.substring(0, length);
+        }
+        int slash = text.indexOf('/');
+        if (slash >= 0) {
+            text = text.substring(0, slash);
+        }
+        return text.trim();
+    }
+
+    /**
+     * @return the entry of an HDU.
+     * @param n
+     *            the number of the HDU, the primary HDU is 0.
+     */
+    public Entry get(int n) {
+        return this.entries.get(n);
+    }
+
+    /**
+     * @return the number of the HDU that starts at the given offset, or -1 if
+     *         no HDU starts there.
+     * @param offset
+     *            the offset in the file
+     */
+    public int indexAt(long offset) {
+        int low = 0;
+        int high = this.entries.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midOffset = this.entries.get(mid).getOffset();
+            if (midOffset < offset) {
+                low = mid + 1;
+            } else if (midOffset > offset) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the number of the first HDU with the given EXTNAME and EXTVER,
+     *         or -1 if there is none.
+     * @param extname
+     *            the EXTNAME, compared ignoring case and trailing blanks
+     * @param extver
+     *            the EXTVER, HDUs without EXTVER have version 1
+     */
+    public int indexOf(String extname, int extver) {
+        for (int n = 0; n < this.entries.size(); n++) {
+            Entry entry = this.entries.get(n);
+            if (matches(entry.extname, entry.extver, extname, extver)) {
+                return n;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Save the index to a sidecar file.
+     *
+     * @param indexFile
+     *            the sidecar file
+     * @param fitsFile
+     *            the FITS file the index describes
+     * @throws IOException
+     *             if the file could not be written
+     */
+    public void save(File indexFile, File fitsFile) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+        try {
+            out.writeInt(INDEX_FILE_MAGIC);
+            out.writeInt(INDEX_FILE_VERSION);
+            out.writeLong(fitsFile.length());
+            out.writeLong(fitsFile.lastModified());
+            out.writeInt(this.entries.size());
+            for (Entry entry : this.entries) {
+                out.writeLong(entry.offset);
+                out.writeLong(entry.headerSize);
+                out.writeLong(entry.dataSize);
+                out.writeBoolean(entry.extname != null);
+                if (entry.extname != null) {
+                    out.writeUTF(entry.extname);
+                }
+                out.writeInt(entry.extver);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return the number of HDUs in the index.
+     */
+    public int size() {
+        return this.entries.size();
+    }
+}
@@ -249,6 +249,9 @@ public class ImageData extends Data {
 
         if (this.dataArray == null) {
             if (this.tiler != null) {
+                if (transferUnmodified(o)) {
+                    return;
+                }
 
                 // Need to read in the whole image first.
                 try {
@@ -0,0 +1,438 @@
+package nom.tam.fits;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 1996 - 2021 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import static nom.tam.fits.header.NonStandard.CONTINUE;
+import static nom.tam.fits.header.NonStandard.HIERARCH;
+import static nom.tam.fits.header.Standard.BITPIX;
+import static nom.tam.fits.header.Standard.END;
+import static nom.tam.fits.header.Standard.GCOUNT;
+import static nom.tam.fits.header.Standard.GROUPS;
+import static nom.tam.fits.header.Standard.NAXIS;
+import static nom.tam.fits.header.Standard.NAXISn;
+import static nom.tam.fits.header.Standard.PCOUNT;
+import static nom.tam.fits.header.Standard.SIMPLE;
+import static nom.tam.fits.header.Standard.XTENSION;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import nom.tam.fits.header.IFitsHeader;
+import nom.tam.util.ArrayDataInput;
+import nom.tam.util.AsciiFuncs;
+import nom.tam.util.BufferedDataInputStream;
+import nom.tam.util.RandomAccess;
+
+/**
+ * A header that is read without parsing it. The header blocks are read as
+ * they are and only the position of every keyword is noted, a card is parsed
+ * into a {@link HeaderCard} when its value is asked for. This makes reading
+ * a header about as cheap as reading its bytes, which pays off when only a
+ * few keywords of many headers are needed, e.g. when cataloging the files of
+ * a directory. {@link #toHeader()} parses the complete header if more is
+ * needed.
+ * <p>
+ * As for a {@link Header}, when a keyword appears more than once the last card
+ * counts.
+ */
+public final class LazyHeader {
+
+    private static final String HIERARCH_WITH_BLANK = HIERARCH.key() + " ";
+
+    /**
+     * The header blocks, up to and including the block with the END card.
+     */
+    private byte[] bytes = new byte[FitsFactory.FITS_BLOCK_SIZE];
+
+    private int size;
+
+    private final long fileOffset;
+
+    /**
+     * The card number of each keyword.
+     */
+    private final Map<String, Integer> positions = new HashMap<String, Integer>();
+
+    /**
+     * The card numbers of HIERARCH cards, their keywords are only known once
+     * they are parsed.
+     */
+    private final List<Integer> hierarchCards = new ArrayList<Integer>();
+
+    private final Map<Integer, HeaderCard> parsedCards = new HashMap<Integer, HeaderCard>();
+
+    private int physicalCards;
+
+    private LazyHeader(long fileOffset) {
+        this.fileOffset = fileOffset;
+    }
+
+    /**
+     * Read a header from the input, leaving the input at the start of the data
+     * of the HDU.
+     *
+     * @param dis
+     *            the input to read from
+     * @return the header
+     * @throws EOFException
+     *             if the input ended before the header started
+     * @throws TruncatedFileException
+     *             if the input ended inside the header
+     * @throws IOException
+     *             if the input does not start with a FITS header or could not
+     *             be read
+     */
+    public static LazyHeader read(ArrayDataInput dis) throws TruncatedFileException, IOException {
+        LazyHeader header = new LazyHeader(dis instanceof RandomAccess ? FitsUtil.findOffset(dis) : -1);
+        header.readBlocks(dis);
+        return header;
+    }
+
+    /**
+     * Read and index blocks up to the one with the END card.
+     */
+    private void readBlocks(ArrayDataInput dis) throws TruncatedFileException, IOException {
+        boolean end = false;
+        while (!end) {
+            if (this.size == this.bytes.length) {
+                this.bytes = Arrays.copyOf(this.bytes, this.bytes.length * 2);
+            }
+            try {
+                dis.readFully(this.bytes, this.size, FitsFactory.FITS_BLOCK_SIZE);
+            } catch (EOFException e) {
+                if (this.size == 0) {
+                    throw e;
+                }
+                throw new TruncatedFileException("Header ends without END card after " + this.size + " bytes");
+            }
+            this.size += FitsFactory.FITS_BLOCK_SIZE;
+            end = indexBlock(this.size - FitsFactory.FITS_BLOCK_SIZE);
+        }
+    }
+
+    /**
+     * Note the keywords of the cards of a block.
+     *
+     * @return true if the block holds the END card.
+     */
+    private boolean indexBlock(int start) throws IOException {
+        for (int offset = start; offset < start + FitsFactory.FITS_BLOCK_SIZE; offset += HeaderCard.FITS_HEADER_CARD_SIZE) {
+            int card = offset / HeaderCard.FITS_HEADER_CARD_SIZE;
+            this.physicalCards = card + 1;
+            if (startsWith(offset, CONTINUE.key())) {
+                continue;
+            }
+            if (FitsFactory.getUseHierarch() && startsWith(offset, HIERARCH_WITH_BLANK)) {
+                this.hierarchCards.add(card);
+                continue;
+            }
+            String key = AsciiFuncs.asciiString(this.bytes, offset, HeaderCard.MAX_KEYWORD_LENGTH).trim();
+            if (card == 0 && !key.equals(SIMPLE.key()) && !key.equals(XTENSION.key())) {
+                throw new IOException("Not FITS format at " + this.fileOffset + ":" + key);
+            }
+            if (key.equals(END.key())) {
+                return true;
+            }
+            this.positions.put(key, card);
+        }
+        return false;
+    }
+
+    private boolean startsWith(int offset, String prefix) {
+        for (int index = 0; index < prefix.length(); index++) {
+            if (this.bytes[offset + index] != prefix.charAt(index)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the header has a card with the keyword.
+     * @param key
+     *            the keyword
+     */
+    public boolean containsKey(IFitsHeader key) {
+        return containsKey(key.key());
+    }
+
+    /**
+     * @return true if the header has a card with the keyword.
+     * @param key
+     *            the keyword
+     */
+    public boolean containsKey(String key) {
+        return position(key) != null;
+    }
+
+    /**
+     * @return the card with the keyword, parsed on the first request, or null
+     *         if there is none.
+     * @param key
+     *            the keyword
+     */
+    public HeaderCard findCard(IFitsHeader key) {
+        return findCard(key.key());
+    }
+
+    /**
+     * @return the card with the keyword, parsed on the first request, or null
+     *         if there is none.
+     * @param key
+     *            the keyword
+     */
+    public HeaderCard findCard(String key) {
+        Integer card = position(key);
+        return card == null ? null : parse(card);
+    }
+
+    /**
+     * @return the <CODE>boolean</CODE> value of the keyword.
+     * @param key
+     *            the keyword
+     * @param dft
+     *            the value returned if the keyword is missing or is not a
+     *            boolean
+     */
+    public boolean getBooleanValue(IFitsHeader key, boolean dft) {
+        return getBooleanValue(key.key(), dft);
+    }
+
+    /**
+     * @return the <CODE>boolean</CODE> value of the keyword.
+     * @param key
+     *            the keyword
+     * @param dft
+     *            the value returned if the keyword is missing or is not a
+     *            boolean
+     */
+    public boolean getBooleanValue(String key, boolean dft) {
+        HeaderCard fcard = findCard(key);
+        if (fcard == null) {
+            return dft;
+        }
+        return fcard.getValue(Boolean.class, dft).booleanValue();
+    }
+
+    /**
+     * @return the size of the data of the HDU including the padding, computed
+     *         as {@link Header#getDataSize()} does.
+     */
+    public long getDataSize() {
+        if (!containsKey(BITPIX) || !containsKey(NAXIS)) {
+            return 0L;
+        }
+        int naxis = getIntValue(NAXIS, 0);
+        long[] axes = new long[Math.max(naxis, 0)];
+        for (int axis = 1; axis <= naxis; axis += 1) {
+            axes[axis - 1] = getLongValue(NAXISn.n(axis), 0);
+        }
+        long dataSize = HDUIndex.dataSize(getIntValue(BITPIX, 0), naxis, axes, getBooleanValue(GROUPS, false), getLongValue(PCOUNT, 0), getLongValue(GCOUNT, 1));
+        return FitsUtil.addPadding(dataSize);
+    }
+
+    /**
+     * @return the <CODE>double</CODE> value of the keyword.
+     * @param key
+     *            the keyword
+     * @param dft
+     *            the value returned if the keyword is missing
+     */
+    public double getDoubleValue(IFitsHeader key, double dft) {
+        return getDoubleValue(key.key(), dft);
+    }
+
+    /**
+     * @return the <CODE>double</CODE> value of the keyword.
+     * @param key
+     *            the keyword
+     * @param dft
+     *            the value returned if the keyword is missing
+     */
+    public double getDoubleValue(String key, double dft) {
+        HeaderCard fcard = findCard(key);
+        if (fcard == null) {
+            return dft;
+        }
+        return fcard.getValue(Double.class, dft).doubleValue();
+    }
+
+    /**
+     * @return the offset of the header in the input or -1 if the input was
+     *         not a random access input.
+     */
+    public long getFileOffset() {
+        return this.fileOffset;
+    }
+
+    /**
+     * @return the <CODE>int</CODE> value of the keyword.
+     * @param key
+     *            the keyword
+     * @param dft
+     *            the value returned if the keyword is missing
+     */
+    public int getIntValue(IFitsHeader key, int dft) {
+        return (int) getLongValue(key.key(), dft);
+    }
+
+    /**
+     * @return the <CODE>int</CODE> value of the keyword.
+     * @param key
+     *            the keyword
+     * @param dft
+     *            the value returned if the keyword is missing
+     */
+    public int getIntValue(String key, int dft) {
+        return (int) getLongValue(key, dft);
+    }
+
+    /**
+     * @return the <CODE>long</CODE> value of the keyword.
+     * @param key
+     *            the keyword
+     * @param dft
+     *            the value returned if the keyword is missing
+     */
+    public long getLongValue(IFitsHeader key, long dft) {
+        return getLongValue(key.key(), dft);
+    }
+
+    /**
+     * @return the <CODE>long</CODE> value of the keyword.
+     * @param key
+     *            the keyword
+     * @param dft
+     *            the value returned if the keyword is missing
+     */
+    public long getLongValue(String key, long dft) {
+        HeaderCard fcard = findCard(key);
+        if (fcard == null) {
+            return dft;
+        }
+        return fcard.getValue(Long.class, dft).longValue();
+    }
+
+    /**
+     * @return the number of 80 character cards up to and including the END
+     *         card.
+     */
+    public int getNumberOfPhysicalCards() {
+        return this.physicalCards;
+    }
+
+    /**
+     * @return the size of the header in the input, a multiple of the FITS
+     *         block size.
+     */
+    public long getSize() {
+        return this.size;
+    }
+
+    /**
+     * @return the <CODE>String</CODE> value of the keyword or null if it is
+     *         missing or not a string.
+     * @param key
+     *            the keyword
+     */
+    public String getStringValue(IFitsHeader key) {
+        return getStringValue(key.key());
+    }
+
+    /**
+     * @return the <CODE>String</CODE> value of the keyword or null if it is
+     *         missing or not a string.
+     * @param key
+     *            the keyword
+     */
+    public String getStringValue(String key) {
+        HeaderCard fcard = findCard(key);
+        if (fcard == null || !fcard.isStringValue()) {
+            return null;
+        }
+        return fcard.getValue();
+    }
+
+    /**
+     * Parse the complete header.
+     *
+     * @return the header as it would have been read by
+     *         {@link Header#readHeader(ArrayDataInput)}, except that it is not
+     *         tied to the input and can therefore not be rewritten in place.
+     * @throws IOException
+     *             if the header could not be parsed
+     */
+    public Header toHeader() throws IOException {
+        try {
+            return new Header(cardInput(0));
+        } catch (TruncatedFileException e) {
+            throw new IOException("Invalid FITS Header", e);
+        }
+    }
+
+    private ArrayDataInput cardInput(int card) {
+        int offset = card * HeaderCard.FITS_HEADER_CARD_SIZE;
+        return new BufferedDataInputStream(new ByteArrayInputStream(this.bytes, offset, this.size - offset), FitsFactory.FITS_BLOCK_SIZE);
+    }
+
+    private HeaderCard parse(int card) {
+        HeaderCard parsed = this.parsedCards.get(card);
+        if (parsed == null) {
+            try {
+                parsed = new HeaderCard(cardInput(card));
+            } catch (Exception e) {
+                throw new IllegalArgumentException("card not legal", e);
+            }
+            this.parsedCards.put(card, parsed);
+        }
+        return parsed;
+    }
+
+    private Integer position(String key) {
+        Integer card = this.positions.get(key);
+        if (card == null && !this.hierarchCards.isEmpty() && key.startsWith(HIERARCH.key())) {
+            // the keywords of HIERARCH cards are needed now
+            for (Integer hierarchCard : this.hierarchCards) {
+                this.positions.put(parse(hierarchCard).getKey(), hierarchCard);
+            }
+            this.hierarchCards.clear();
+            card = this.positions.get(key);
+        }
+        return card;
+    }
+}
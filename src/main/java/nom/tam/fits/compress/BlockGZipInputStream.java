@@ -0,0 +1,351 @@
+package nom.tam.fits.compress;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 1996 - 2021 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import nom.tam.fits.FitsFactory;
+
+/**
+ * Reads a block gzip stream, as written by {@link BlockGZipOutputStream} or
+ * by bgzip. Such a stream is a sequence of complete gzip members that each
+ * record their own compressed size in a "BC" extra field, so the members can
+ * be split off without inflating them. The members are inflated on the
+ * {@link FitsFactory#threadPool()}, up to
+ * {@link FitsFactory#getTileParallelism()} members ahead of the reader, and
+ * are returned in their original order.
+ */
+public class BlockGZipInputStream extends InputStream {
+
+    private static final int GZIP_MAGIC_BYTE1 = 0x1f;
+
+    private static final int GZIP_MAGIC_BYTE2 = 0x8b;
+
+    private static final int DEFLATE_METHOD = 8;
+
+    private static final int FLAG_HEADER_CRC = 0x02;
+
+    private static final int FLAG_EXTRA = 0x04;
+
+    private static final int FLAG_NAME = 0x08;
+
+    private static final int FLAG_COMMENT = 0x10;
+
+    private static final int FIXED_HEADER_SIZE = 12;
+
+    private static final int FLAGS_OFFSET = 3;
+
+    private static final int XLEN_OFFSET = 10;
+
+    private static final int SUBFIELD_HEADER_SIZE = 4;
+
+    private static final int ISIZE_OFFSET = 4;
+
+    private static final int TRAILER_SIZE = 8;
+
+    private static final int MAX_EXTRA_LENGTH = 0xFFFF;
+
+    /**
+     * the maximum uncompressed size of a block gzip member.
+     */
+    private static final int MAX_BLOCK_SIZE = 0x10000;
+
+    private static final int BYTE_MASK = 0xFF;
+
+    private static final int BITS_OF_1_BYTE = 8;
+
+
+    private static final long INT_MASK = 0xFFFFFFFFL;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final InputStream in;
+
+    private final ExecutorService threadPool = FitsFactory.threadPool();
+
+    private final int readAhead = FitsFactory.getTileParallelism();
+
+    private final LinkedList<Future<byte[]>> pending = new LinkedList<Future<byte[]>>();
+
+    private final byte[] single = new byte[1];
+
+    private byte[] current = EMPTY;
+
+    private int position;
+
+    private boolean endOfInput;
+
+    /**
+     * Create a stream that inflates the block gzip members of the input.
+     *
+     * @param in
+     *            the block gzip compressed input
+     */
+    public BlockGZipInputStream(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Check if the stream starts with a block gzip member, the stream must
+     * support mark and reset and is left at its current position.
+     *
+     * @param in
+     *            the stream to check
+     * @return true if the first gzip member records its compressed size.
+     * @throws IOException
+     *             if the stream could not be read
+     */
+    public static boolean isBlockGZip(InputStream in) throws IOException {
+        if (!in.markSupported()) {
+            return false;
+        }
+        byte[] header = new byte[FIXED_HEADER_SIZE];
+        in.mark(FIXED_HEADER_SIZE + MAX_EXTRA_LENGTH);
+        try {
+            if (readFully(in, header, 0, header.length) < header.length || !isMemberHeader(header) || (header[FLAGS_OFFSET] & FLAG_EXTRA) == 0) {
+                return false;
+            }
+            // read the complete extra field, so that all its subfields can be
+            // scanned.
+            int extraLength = unsignedShort(header, XLEN_OFFSET);
+            byte[] extra = new byte[extraLength];
+            if (readFully(in, extra, 0, extraLength) < extraLength) {
+                return false;
+            }
+            return findBlockSize(extra, 0, extraLength) >= 0;
+        } finally {
+            in.reset();
+        }
+    }
+
+    static int findBlockSize(byte[] extra, int offset, int length) {
+        int index = offset;
+        int end = Math.min(offset + length, extra.length);
+        while (index + SUBFIELD_HEADER_SIZE <= end) {
+            int subfieldLength = unsignedShort(extra, index + 2);
+            if (extra[index] == 'B' && extra[index + 1] == 'C' && subfieldLength == 2 && index + SUBFIELD_HEADER_SIZE + 2 <= end) {
+                return unsignedShort(extra, index + SUBFIELD_HEADER_SIZE);
+            }
+            index += SUBFIELD_HEADER_SIZE + subfieldLength;
+        }
+        return -1;
+    }
+
+    private static byte[] inflate(byte[] member) throws IOException {
+        int flags = member[FLAGS_OFFSET];
+        int offset = FIXED_HEADER_SIZE + unsignedShort(member, XLEN_OFFSET);
+        if ((flags & FLAG_NAME) != 0) {
+            offset = skipZeroTerminated(member, offset);
+        }
+        if ((flags & FLAG_COMMENT) != 0) {
+            offset = skipZeroTerminated(member, offset);
+        }
+        if ((flags & FLAG_HEADER_CRC) != 0) {
+            offset += 2;
+        }
+        int trailer = member.length - TRAILER_SIZE;
+        long size = unsignedInt(member, trailer + ISIZE_OFFSET) & INT_MASK;
+        if (size > MAX_BLOCK_SIZE) {
+            throw new IOException("block gzip member of " + size + " bytes exceeds the maximum of " + MAX_BLOCK_SIZE);
+        }
+        byte[] result = new byte[(int) size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(member, offset, trailer - offset);
+            int count = 0;
+            while (count < result.length && !inflater.finished()) {
+                int inflated = inflater.inflate(result, count, result.length - count);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new EOFException("truncated block gzip member");
+                }
+                count += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("corrupt block gzip member", e);
+        } finally {
+            inflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(result, 0, result.length);
+        if (crc.getValue() != (unsignedInt(member, trailer) & INT_MASK)) {
+            throw new IOException("crc error in block gzip member");
+        }
+        return result;
+    }
+
+    static boolean isMemberHeader(byte[] header) {
+        return (header[0] & BYTE_MASK) == GZIP_MAGIC_BYTE1 && (header[1] & BYTE_MASK) == GZIP_MAGIC_BYTE2 && header[2] == DEFLATE_METHOD;
+    }
+
+    private static int readFully(InputStream in, byte[] buffer, int offset, int length) throws IOException {
+        int count = 0;
+        while (count < length) {
+            int read = in.read(buffer, offset + count, length - count);
+            if (read < 0) {
+                break;
+            }
+            count += read;
+        }
+        return count;
+    }
+
+    private static int skipZeroTerminated(byte[] member, int offset) {
+        int index = offset;
+        while (member[index] != 0) {
+            index++;
+        }
+        return index + 1;
+    }
+
+    static int unsignedInt(byte[] bytes, int offset) {
+        int result = 0;
+        for (int index = ISIZE_OFFSET - 1; index >= 0; index--) {
+            result = result << BITS_OF_1_BYTE | bytes[offset + index] & BYTE_MASK;
+        }
+        return result;
+    }
+
+    static int unsignedShort(byte[] bytes, int offset) {
+        return bytes[offset] & BYTE_MASK | (bytes[offset + 1] & BYTE_MASK) << BITS_OF_1_BYTE;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return this.current.length - this.position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Future<byte[]> future : this.pending) {
+            future.cancel(false);
+        }
+        this.pending.clear();
+        this.endOfInput = true;
+        this.in.close();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (read(this.single, 0, 1) < 0) {
+            return -1;
+        }
+        return this.single[0] & BYTE_MASK;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (this.position >= this.current.length) {
+            if (!nextBlock()) {
+                return -1;
+            }
+        }
+        int count = Math.min(len, this.current.length - this.position);
+        System.arraycopy(this.current, this.position, b, off, count);
+        this.position += count;
+        return count;
+    }
+
+    private void fillReadAhead() throws IOException {
+        while (!this.endOfInput && this.pending.size() < this.readAhead) {
+            final byte[] member = readMember();
+            if (member == null) {
+                this.endOfInput = true;
+            } else {
+                this.pending.add(this.threadPool.submit(new Callable<byte[]>() {
+
+                    @Override
+                    public byte[] call() throws IOException {
+                        return inflate(member);
+                    }
+                }));
+            }
+        }
+    }
+
+    private boolean nextBlock() throws IOException {
+        fillReadAhead();
+        if (this.pending.isEmpty()) {
+            return false;
+        }
+        try {
+            this.current = this.pending.removeFirst().get();
+        } catch (Exception e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("could not inflate block gzip member", e);
+        }
+        this.position = 0;
+        return true;
+    }
+
+    private byte[] readMember() throws IOException {
+        byte[] header = new byte[FIXED_HEADER_SIZE];
+        int count = readFully(this.in, header, 0, header.length);
+        if (count == 0) {
+            return null;
+        }
+        if (count < header.length || !isMemberHeader(header) || (header[FLAGS_OFFSET] & FLAG_EXTRA) == 0) {
+            throw new IOException("not a block gzip member");
+        }
+        int extraLength = unsignedShort(header, XLEN_OFFSET);
+        byte[] extra = new byte[extraLength];
+        if (readFully(this.in, extra, 0, extraLength) < extraLength) {
+            throw new EOFException("truncated block gzip member");
+        }
+        int blockSize = findBlockSize(extra, 0, extraLength);
+        int memberSize = blockSize + 1;
+        if (blockSize < 0 || memberSize < FIXED_HEADER_SIZE + extraLength + TRAILER_SIZE) {
+            throw new IOException("not a block gzip member");
+        }
+        byte[] member = new byte[memberSize];
+        System.arraycopy(header, 0, member, 0, header.length);
+        System.arraycopy(extra, 0, member, header.length, extraLength);
+        int rest = memberSize - header.length - extraLength;
+        if (readFully(this.in, member, header.length + extraLength, rest) < rest) {
+            throw new EOFException("truncated block gzip member");
+        }
+        return member;
+    }
+}
@@ -0,0 +1,269 @@
+package nom.tam.fits.compress;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 1996 - 2021 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import nom.tam.fits.FitsFactory;
+
+/**
+ * Writes a block gzip stream: the data is cut into blocks of at most
+ * {@link #BLOCK_SIZE} bytes, every block is deflated on the
+ * {@link FitsFactory#threadPool()} into a complete gzip member, and the
+ * members are written in order. Every member records its compressed size in
+ * a "BC" extra field (the layout used by bgzip), so the result can be read
+ * in parallel by {@link BlockGZipInputStream} and by any normal gzip reader.
+ * For example
+ *
+ * <pre>
+ * BufferedDataOutputStream out = new BufferedDataOutputStream(new BlockGZipOutputStream(new FileOutputStream(&quot;image.fits.gz&quot;)));
+ * fits.write(out);
+ * out.close();
+ * </pre>
+ *
+ * The stream must be closed, only then the end of file member is written.
+ * {@link nom.tam.fits.Fits#write(java.io.DataOutput)} does not close a stream
+ * it was given.
+ */
+public class BlockGZipOutputStream extends OutputStream {
+
+    /**
+     * the maximum number of uncompressed bytes per block, chosen so that even
+     * incompressible blocks fit in a member of at most 64k.
+     */
+    public static final int BLOCK_SIZE = 65280;
+
+    private static final int MAX_MEMBER_SIZE = 65536;
+
+    private static final int DEFLATE_SLACK = 1024;
+
+    // @formatter:off
+    private static final byte[] HEADER = {
+        0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0
+    };
+
+    private static final byte[] EMPTY_MEMBER = {
+        0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0, 0x1b, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0
+    };
+    // @formatter:on
+
+    private static final int BLOCK_SIZE_FIELD_SIZE = 2;
+
+    private static final int TRAILER_SIZE = 8;
+
+    private static final int INT_SIZE = 4;
+
+    private static final int BITS_OF_1_BYTE = 8;
+
+
+    private final OutputStream out;
+
+    private final int level;
+
+    private final ExecutorService threadPool = FitsFactory.threadPool();
+
+    private final int parallelism = FitsFactory.getTileParallelism();
+
+    private final LinkedList<Future<byte[]>> pending = new LinkedList<Future<byte[]>>();
+
+    private byte[] block = new byte[BLOCK_SIZE];
+
+    private int blockLength;
+
+    private boolean closed;
+
+    /**
+     * Create a block gzip stream with the default compression level.
+     *
+     * @param out
+     *            the stream to write the compressed members to
+     */
+    public BlockGZipOutputStream(OutputStream out) {
+        this(out, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Create a block gzip stream with the given compression level.
+     *
+     * @param out
+     *            the stream to write the compressed members to
+     * @param level
+     *            the {@link Deflater} compression level
+     */
+    public BlockGZipOutputStream(OutputStream out, int level) {
+        this.out = out;
+        this.level = level;
+    }
+
+    private static byte[] deflate(byte[] data, int length, int level) throws IOException {
+        Deflater deflater = new Deflater(level, true);
+        byte[] member = new byte[HEADER.length + BLOCK_SIZE_FIELD_SIZE + length + DEFLATE_SLACK];
+        int count = HEADER.length + BLOCK_SIZE_FIELD_SIZE;
+        try {
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (count + TRAILER_SIZE >= member.length) {
+                    member = Arrays.copyOf(member, member.length * 2);
+                }
+                count += deflater.deflate(member, count, member.length - TRAILER_SIZE - count);
+            }
+        } finally {
+            deflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        count = putInt(member, count, (int) crc.getValue());
+        count = putInt(member, count, length);
+        if (count > MAX_MEMBER_SIZE) {
+            throw new IOException("block gzip member exceeds " + MAX_MEMBER_SIZE + " bytes");
+        }
+        System.arraycopy(HEADER, 0, member, 0, HEADER.length);
+        member[HEADER.length] = (byte) (count - 1);
+        member[HEADER.length + 1] = (byte) (count - 1 >> BITS_OF_1_BYTE);
+        return Arrays.copyOf(member, count);
+    }
+
+    private static int putInt(byte[] bytes, int offset, int value) {
+        for (int index = 0; index < INT_SIZE; index++) {
+            bytes[offset + index] = (byte) (value >> index * BITS_OF_1_BYTE);
+        }
+        return offset + INT_SIZE;
+    }
+
+    /**
+     * Write all buffered data, the empty end of file member and close the
+     * underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        try {
+            submitBlock();
+            drain(0);
+            this.out.write(EMPTY_MEMBER);
+            this.out.flush();
+        } finally {
+            this.closed = true;
+            for (Future<byte[]> future : this.pending) {
+                future.cancel(false);
+            }
+            this.pending.clear();
+            this.out.close();
+        }
+    }
+
+    /**
+     * Compress and write all buffered data, this ends the current block so
+     * frequent flushing results in smaller blocks.
+     */
+    @Override
+    public void flush() throws IOException {
+        submitBlock();
+        drain(0);
+        this.out.flush();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (this.closed) {
+            throw new IOException("stream is closed");
+        }
+        int offset = off;
+        int remaining = len;
+        while (remaining > 0) {
+            int count = Math.min(remaining, BLOCK_SIZE - this.blockLength);
+            System.arraycopy(b, offset, this.block, this.blockLength, count);
+            this.blockLength += count;
+            offset += count;
+            remaining -= count;
+            if (this.blockLength == BLOCK_SIZE) {
+                submitBlock();
+            }
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (this.closed) {
+            throw new IOException("stream is closed");
+        }
+        this.block[this.blockLength++] = (byte) b;
+        if (this.blockLength == BLOCK_SIZE) {
+            submitBlock();
+        }
+    }
+
+    private void drain(int maxPending) throws IOException {
+        while (this.pending.size() > maxPending) {
+            byte[] member;
+            try {
+                member = this.pending.removeFirst().get();
+            } catch (Exception e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("could not deflate block gzip member", e);
+            }
+            this.out.write(member);
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        if (this.blockLength == 0) {
+            return;
+        }
+        final byte[] data = this.block;
+        final int length = this.blockLength;
+        final int compressionLevel = this.level;
+        this.pending.add(this.threadPool.submit(new Callable<byte[]>() {
+
+            @Override
+            public byte[] call() throws IOException {
+                return deflate(data, length, compressionLevel);
+            }
+        }));
+        this.block = new byte[BLOCK_SIZE];
+        this.blockLength = 0;
+        drain(this.parallelism - 1);
+    }
+}
@@ -45,6 +45,9 @@ public class GZipCompressionProvider implements ICompressProvider {
 
     @Override
     public InputStream decompress(InputStream in) throws IOException {
+        if (BlockGZipInputStream.isBlockGZip(in)) {
+            return new BlockGZipInputStream(in);
+        }
         return new GZIPInputStream(in);
     }
 
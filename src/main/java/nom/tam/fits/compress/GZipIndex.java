@@ -0,0 +1,386 @@
+package nom.tam.fits.compress;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 1996 - 2021 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import nom.tam.util.SafeClose;
+
+/**
+ * An index of access points into a gzip file: compressed offsets where a gzip
+ * member starts, together with the uncompressed offset of its first byte.
+ * Reading can restart at any access point, so reaching an uncompressed position
+ * only needs the data from the access point before it to be inflated.
+ * <p>
+ * The deflate format does not allow to restart in the middle of a member (the
+ * inflater state can not be restored with java.util.zip), so a file written by
+ * plain gzip, which is a single member, only has one access point at its start.
+ * Files written with {@link BlockGZipOutputStream} or bgzip consist of small
+ * members and get an access point about every {@link #DEFAULT_SPACING} bytes;
+ * for them the index is built from the member headers and trailers without
+ * inflating anything.
+ * </p>
+ */
+public final class GZipIndex {
+
+    /**
+     * The suffix appended to the name of a gzip file to get the name of its
+     * index file.
+     */
+    public static final String INDEX_FILE_SUFFIX = ".gzx";
+
+    /**
+     * The default minimal distance in uncompressed bytes between two access
+     * points.
+     */
+    public static final long DEFAULT_SPACING = CompressionManager.ONE_MEGABYTE;
+
+    private static final Logger LOG = Logger.getLogger(GZipIndex.class.getName());
+
+    /**
+     * The first bytes of an index file, followed by the format version.
+     */
+    private static final int INDEX_FILE_MAGIC = 0x475A5849;
+
+    private static final int INDEX_FILE_VERSION = 1;
+
+    private static final int FIXED_HEADER_SIZE = 10;
+
+    private static final int FLAGS_OFFSET = 3;
+
+    private static final int FLAG_HEADER_CRC = 0x02;
+
+    private static final int FLAG_EXTRA = 0x04;
+
+    private static final int FLAG_NAME = 0x08;
+
+    private static final int FLAG_COMMENT = 0x10;
+
+    private static final int TRAILER_SIZE = 8;
+
+    private static final int ISIZE_SIZE = 4;
+
+    private static final long INT_MASK = 0xFFFFFFFFL;
+
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+    private final long[] compressedOffsets;
+
+    private final long[] uncompressedOffsets;
+
+    private final long length;
+
+    private GZipIndex(long[] compressedOffsets, long[] uncompressedOffsets, long length) {
+        this.compressedOffsets = compressedOffsets;
+        this.uncompressedOffsets = uncompressedOffsets;
+        this.length = length;
+    }
+
+    /**
+     * @return the sidecar index file used for the gzip file.
+     * @param gzipFile
+     *            the gzip file
+     */
+    public static File indexFileOf(File gzipFile) {
+        return new File(gzipFile.getPath() + INDEX_FILE_SUFFIX);
+    }
+
+    /**
+     * Get the index of a gzip file from its sidecar file, or scan the file and
+     * try to save the index to the sidecar file if there is no up to date one.
+     * A sidecar file that can not be written is only logged.
+     * 
+     * @param gzipFile
+     *            the gzip file
+     * @return the index
+     * @throws IOException
+     *             if the gzip file could not be scanned
+     */
+    public static GZipIndex forFile(File gzipFile) throws IOException {
+        File indexFile = indexFileOf(gzipFile);
+        GZipIndex index = load(indexFile, gzipFile);
+        if (index == null) {
+            index = scan(gzipFile, DEFAULT_SPACING);
+            try {
+                index.save(indexFile, gzipFile);
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Could not write gzip index file " + indexFile, e);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Load an index from a sidecar file.
+     * 
+     * @param indexFile
+     *            the sidecar file
+     * @param gzipFile
+     *            the gzip file it should describe
+     * @return the index or null if there is no index file or if it does not
+     *         match the current length and modification time of the gzip file.
+     */
+    public static GZipIndex load(File indexFile, File gzipFile) {
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            if (in.readInt() != INDEX_FILE_MAGIC || in.readInt() != INDEX_FILE_VERSION || in.readLong() != gzipFile.length() || in.readLong() != gzipFile.lastModified()) {
+                return null;
+            }
+            long length = in.readLong();
+            int size = in.readInt();
+            long[] compressedOffsets = new long[size];
+            long[] uncompressedOffsets = new long[size];
+            for (int index = 0; index < size; index++) {
+                compressedOffsets[index] = in.readLong();
+                uncompressedOffsets[index] = in.readLong();
+            }
+            return new GZipIndex(compressedOffsets, uncompressedOffsets, length);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Ignoring unreadable gzip index file " + indexFile, e);
+            return null;
+        } finally {
+            SafeClose.close(in);
+        }
+    }
+
+    /**
+     * Scan a gzip file for its members. Members that record their compressed
+     * size are skipped without inflating them, all others are inflated to find
+     * their end. The scan stops at the end of the file or at anything that is
+     * not a gzip member (like trailing zeros).
+     * 
+     * @param gzipFile
+     *            the gzip file
+     * @param spacing
+     *            the minimal distance in uncompressed bytes between two access
+     *            points
+     * @return the index
+     * @throws IOException
+     *             if the file could not be read or is not a gzip file
+     */
+    public static GZipIndex scan(File gzipFile, long spacing) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(gzipFile, "r");
+        try {
+            long[] compressedOffsets = new long[1];
+            long[] uncompressedOffsets = new long[1];
+            int size = 0;
+            long offset = 0;
+            long uncompressed = 0;
+            byte[] header = new byte[FIXED_HEADER_SIZE];
+            while (offset + FIXED_HEADER_SIZE <= in.length()) {
+                in.seek(offset);
+                in.readFully(header);
+                if (!BlockGZipInputStream.isMemberHeader(header)) {
+                    break;
+                }
+                if (size == 0 || uncompressed - uncompressedOffsets[size - 1] >= spacing) {
+                    if (size == compressedOffsets.length) {
+                        compressedOffsets = Arrays.copyOf(compressedOffsets, size * 2);
+                        uncompressedOffsets = Arrays.copyOf(uncompressedOffsets, size * 2);
+                    }
+                    compressedOffsets[size] = offset;
+                    uncompressedOffsets[size] = uncompressed;
+                    size++;
+                }
+                int blockSize = -1;
+                int flags = header[FLAGS_OFFSET];
+                if ((flags & FLAG_EXTRA) != 0) {
+                    byte[] extra = new byte[in.readUnsignedByte() | in.readUnsignedByte() << Byte.SIZE];
+                    in.readFully(extra);
+                    blockSize = BlockGZipInputStream.findBlockSize(extra, 0, extra.length);
+                }
+                if (blockSize >= 0) {
+                    offset += blockSize + 1;
+                    in.seek(offset - ISIZE_SIZE);
+                    byte[] isize = new byte[ISIZE_SIZE];
+                    in.readFully(isize);
+                    uncompressed += BlockGZipInputStream.unsignedInt(isize, 0) & INT_MASK;
+                } else {
+                    skipHeaderFields(in, flags);
+                    long[] sizes = inflateMember(in);
+                    offset = sizes[0] + TRAILER_SIZE;
+                    uncompressed += sizes[1];
+                }
+            }
+            if (size == 0) {
+                throw new IOException("Not a gzip file " + gzipFile);
+            }
+            return new GZipIndex(Arrays.copyOf(compressedOffsets, size), Arrays.copyOf(uncompressedOffsets, size), uncompressed);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * inflate a member from the current file pointer.
+     * 
+     * @return the offset of the member trailer and the number of inflated
+     *         bytes.
+     */
+    private static long[] inflateMember(RandomAccessFile in) throws IOException {
+        byte[] input = new byte[SCAN_BUFFER_SIZE];
+        byte[] output = new byte[SCAN_BUFFER_SIZE];
+        Inflater inflater = new Inflater(true);
+        try {
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    int count = in.read(input);
+                    if (count < 0) {
+                        throw new EOFException("truncated gzip member");
+                    }
+                    inflater.setInput(input, 0, count);
+                }
+                inflater.inflate(output);
+                if (inflater.needsDictionary()) {
+                    throw new IOException("corrupt gzip member");
+                }
+            }
+            return new long[]{
+                in.getFilePointer() - inflater.getRemaining(),
+                inflater.getBytesWritten()
+            };
+        } catch (DataFormatException e) {
+            throw new IOException("corrupt gzip member", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void skipHeaderFields(RandomAccessFile in, int flags) throws IOException {
+        if ((flags & FLAG_NAME) != 0) {
+            while (in.readByte() != 0) {
+                continue;
+            }
+        }
+        if ((flags & FLAG_COMMENT) != 0) {
+            while (in.readByte() != 0) {
+                continue;
+            }
+        }
+        if ((flags & FLAG_HEADER_CRC) != 0) {
+            in.skipBytes(2);
+        }
+    }
+
+    /**
+     * @return the compressed offset of the n'th access point.
+     * @param n
+     *            the index of the access point
+     */
+    public long getCompressedOffset(int n) {
+        return this.compressedOffsets[n];
+    }
+
+    /**
+     * @return the total number of uncompressed bytes in the file.
+     */
+    public long getLength() {
+        return this.length;
+    }
+
+    /**
+     * @return the uncompressed offset of the n'th access point.
+     * @param n
+     *            the index of the access point
+     */
+    public long getUncompressedOffset(int n) {
+        return this.uncompressedOffsets[n];
+    }
+
+    /**
+     * @return the index of the last access point at or before an uncompressed
+     *         offset.
+     * @param uncompressedOffset
+     *            the uncompressed offset to look up
+     */
+    public int indexAt(long uncompressedOffset) {
+        int found = Arrays.binarySearch(this.uncompressedOffsets, uncompressedOffset);
+        if (found >= 0) {
+            return found;
+        }
+        return Math.max(0, -found - 2);
+    }
+
+    /**
+     * Save the index to a sidecar file, together with the length and
+     * modification time of the gzip file so that a stale index is detected.
+     * 
+     * @param indexFile
+     *            the sidecar file
+     * @param gzipFile
+     *            the gzip file the index describes
+     * @throws IOException
+     *             if the file could not be written
+     */
+    public void save(File indexFile, File gzipFile) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+        try {
+            out.writeInt(INDEX_FILE_MAGIC);
+            out.writeInt(INDEX_FILE_VERSION);
+            out.writeLong(gzipFile.length());
+            out.writeLong(gzipFile.lastModified());
+            out.writeLong(this.length);
+            out.writeInt(this.compressedOffsets.length);
+            for (int index = 0; index < this.compressedOffsets.length; index++) {
+                out.writeLong(this.compressedOffsets[index]);
+                out.writeLong(this.uncompressedOffsets[index]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return the number of access points in the index.
+     */
+    public int size() {
+        return this.compressedOffsets.length;
+    }
+}
@@ -0,0 +1,248 @@
+package nom.tam.fits.compress;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 1996 - 2021 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.zip.GZIPInputStream;
+
+import nom.tam.util.FitsIO;
+import nom.tam.util.RandomAccessDataObject;
+import nom.tam.util.SafeClose;
+
+/**
+ * Read only random access to the uncompressed content of a gzip file, so
+ * that a gzipped FITS file can be opened with
+ * {@code new Fits(new GZipRandomAccessFile(file))} and read with deferred
+ * data, image tilers and HDU skipping. A seek restarts inflating at the
+ * nearest {@link GZipIndex} access point before the target (or continues
+ * from the current position if that is closer), so the amount of data
+ * inflated per access is bounded by the access point spacing. Files written
+ * with {@link BlockGZipOutputStream} have an access point about every
+ * megabyte, a single member gzip file only has one at its start.
+ */
+public class GZipRandomAccessFile implements RandomAccessDataObject {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+
+    private final GZipIndex index;
+
+    private InputStream inflated;
+
+    private long inflatedPosition;
+
+    private long position;
+
+    private final byte[] single = new byte[1];
+
+    /**
+     * Open a gzip file using its sidecar index, the index is created (and
+     * saved if possible) if there is no up to date one.
+     *
+     * @param file
+     *            the gzip file
+     * @throws IOException
+     *             if the file could not be indexed
+     */
+    public GZipRandomAccessFile(File file) throws IOException {
+        this(file, GZipIndex.forFile(file));
+    }
+
+    /**
+     * Open a gzip file with an existing index.
+     *
+     * @param file
+     *            the gzip file
+     * @param index
+     *            the index of the file
+     */
+    public GZipRandomAccessFile(File file, GZipIndex index) {
+        this.file = file;
+        this.index = index;
+    }
+
+    @Override
+    public void close() throws IOException {
+        SafeClose.close(this.inflated);
+        this.inflated = null;
+    }
+
+    /**
+     * @return the index used to seek in the file.
+     */
+    public GZipIndex getIndex() {
+        return this.index;
+    }
+
+    @Override
+    public long getFilePointer() {
+        return this.position;
+    }
+
+    @Override
+    public long length() {
+        return this.index.getLength();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (read(this.single, 0, 1) < 0) {
+            return -1;
+        }
+        return this.single[0] & FitsIO.BYTE_MASK;
+    }
+
+    @Override
+    public int read(byte[] bytes) throws IOException {
+        return read(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (this.position >= length()) {
+            return -1;
+        }
+        position();
+        int count = this.inflated.read(bytes, offset, length);
+        if (count > 0) {
+            this.position += count;
+            this.inflatedPosition += count;
+        }
+        return count;
+    }
+
+    @Override
+    public String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c = read();
+        if (c < 0) {
+            return null;
+        }
+        while (c >= 0 && c != '\n') {
+            if (c == '\r') {
+                long next = this.position;
+                if (read() != '\n') {
+                    seek(next);
+                }
+                break;
+            }
+            line.write(c);
+            c = read();
+        }
+        return new String(line.toByteArray(), Charset.forName("ISO-8859-1"));
+    }
+
+    @Override
+    public String readUTF() throws IOException {
+        return new DataInputStream(new InputStream() {
+
+            @Override
+            public int read() throws IOException {
+                return GZipRandomAccessFile.this.read();
+            }
+        }).readUTF();
+    }
+
+    @Override
+    public void seek(long l) throws IOException {
+        if (l < 0) {
+            throw new IOException("negative seek offset");
+        }
+        this.position = l;
+    }
+
+    @Override
+    public void setLength(long l) throws IOException {
+        throw readOnly();
+    }
+
+    @Override
+    public void write(byte[] bytes) throws IOException {
+        throw readOnly();
+    }
+
+    @Override
+    public void write(byte[] bytes, int i, int i1) throws IOException {
+        throw readOnly();
+    }
+
+    @Override
+    public void write(int i) throws IOException {
+        throw readOnly();
+    }
+
+    @Override
+    public void writeUTF(String s) throws IOException {
+        throw readOnly();
+    }
+
+    /**
+     * make the inflated stream match the current position, either by
+     * inflating forward from where it is or by restarting at the nearest
+     * access point.
+     */
+    private void position() throws IOException {
+        int accessPoint = this.index.indexAt(this.position);
+        long accessPointOffset = this.index.getUncompressedOffset(accessPoint);
+        if (this.inflated == null || this.inflatedPosition > this.position || this.inflatedPosition < accessPointOffset) {
+            close();
+            FileInputStream in = new FileInputStream(this.file);
+            try {
+                in.getChannel().position(this.index.getCompressedOffset(accessPoint));
+                this.inflated = new GZIPInputStream(new BufferedInputStream(in, BUFFER_SIZE), BUFFER_SIZE);
+            } catch (IOException e) {
+                SafeClose.close(in);
+                throw e;
+            }
+            this.inflatedPosition = accessPointOffset;
+        }
+        while (this.inflatedPosition < this.position) {
+            long skipped = this.inflated.skip(this.position - this.inflatedPosition);
+            if (skipped <= 0) {
+                throw new IOException("could not skip to " + this.position + " in " + this.file);
+            }
+            this.inflatedPosition += skipped;
+        }
+    }
+
+    private IOException readOnly() {
+        return new IOException(this.file + " is opened read only");
+    }
+}
@@ -230,7 +230,7 @@ public abstract class GZipCompressor<T extends Buffer> implements ICompressor<T>
 
     @Override
     public boolean compress(T pixelData, ByteBuffer compressed) {
-        this.nioBuffer.rewind();
+        this.nioBuffer.clear();
         int pixelDataLimit = pixelData.limit();
         GZIPOutputStream zip = null;
         try {
@@ -254,7 +254,7 @@ public abstract class GZipCompressor<T extends Buffer> implements ICompressor<T>
 
     @Override
     public void decompress(ByteBuffer compressed, T pixelData) {
-        this.nioBuffer.rewind();
+        this.nioBuffer.clear();
         TypeConversion<Buffer> typeConverter = getTypeConverter(compressed, pixelData.limit());
         GZIPInputStream zip = null;
         try {
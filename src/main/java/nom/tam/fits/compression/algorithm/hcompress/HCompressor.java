@@ -39,7 +39,6 @@ import java.nio.ShortBuffer;
 import nom.tam.fits.compression.algorithm.api.ICompressor;
 import nom.tam.fits.compression.algorithm.quant.QuantizeProcessor.DoubleQuantCompressor;
 import nom.tam.fits.compression.algorithm.quant.QuantizeProcessor.FloatQuantCompressor;
-import nom.tam.util.ArrayFuncs;
 
 public abstract class HCompressor<T extends Buffer> implements ICompressor<T> {
 
@@ -53,11 +52,9 @@ public abstract class HCompressor<T extends Buffer> implements ICompressor<T> {
 
         @Override
         public boolean compress(ByteBuffer buffer, ByteBuffer compressed) {
-            byte[] byteArray = new byte[buffer.limit()];
-            buffer.get(byteArray);
-            long[] longArray = new long[byteArray.length];
+            long[] longArray = new long[buffer.limit()];
             for (int index = 0; index < longArray.length; index++) {
-                longArray[index] = byteArray[index] & BYTE_MASK_FOR_LONG;
+                longArray[index] = buffer.get() & BYTE_MASK_FOR_LONG;
             }
             compress(longArray, compressed);
             return true;
@@ -96,10 +93,10 @@ public abstract class HCompressor<T extends Buffer> implements ICompressor<T> {
 
         @Override
         public boolean compress(IntBuffer buffer, ByteBuffer compressed) {
-            int[] intArray = new int[buffer.limit()];
-            buffer.get(intArray);
-            long[] longArray = new long[intArray.length];
-            ArrayFuncs.copyInto(intArray, longArray);
+            long[] longArray = new long[buffer.limit()];
+            for (int index = 0; index < longArray.length; index++) {
+                longArray[index] = buffer.get();
+            }
             compress(longArray, compressed);
             return true;
         }
@@ -123,10 +120,10 @@ public abstract class HCompressor<T extends Buffer> implements ICompressor<T> {
 
         @Override
         public boolean compress(ShortBuffer buffer, ByteBuffer compressed) {
-            short[] shortArray = new short[buffer.limit()];
-            buffer.get(shortArray);
-            long[] longArray = new long[shortArray.length];
-            ArrayFuncs.copyInto(shortArray, longArray);
+            long[] longArray = new long[buffer.limit()];
+            for (int index = 0; index < longArray.length; index++) {
+                longArray[index] = buffer.get();
+            }
             compress(longArray, compressed);
             return true;
         }
@@ -59,6 +59,7 @@ public abstract class PLIOCompress {
         public boolean compress(ByteBuffer buffer, ByteBuffer compressed) {
             this.pixelData = buffer;
             compress(compressed.asShortBuffer(), this.pixelData.limit());
+            this.pixelData = null;
             return true;
         }
 
@@ -66,6 +67,7 @@ public abstract class PLIOCompress {
         public void decompress(ByteBuffer compressed, ByteBuffer buffer) {
             this.pixelData = buffer;
             decompress(compressed.asShortBuffer(), this.pixelData.limit());
+            this.pixelData = null;
         }
 
         @Override
@@ -87,6 +89,7 @@ public abstract class PLIOCompress {
         public boolean compress(ShortBuffer buffer, ByteBuffer compressed) {
             this.pixelData = buffer;
             super.compress(compressed.asShortBuffer(), this.pixelData.limit());
+            this.pixelData = null;
             return true;
         }
 
@@ -94,6 +97,7 @@ public abstract class PLIOCompress {
         public void decompress(ByteBuffer compressed, ShortBuffer buffer) {
             this.pixelData = buffer;
             decompress(compressed.asShortBuffer(), this.pixelData.limit());
+            this.pixelData = null;
         }
 
         @Override
@@ -118,6 +122,7 @@ public abstract class PLIOCompress {
         public boolean compress(IntBuffer buffer, ByteBuffer compressed) {
             this.pixelData = buffer;
             super.compress(compressed.asShortBuffer(), this.pixelData.limit());
+            this.pixelData = null;
             return true;
         }
 
@@ -125,6 +130,7 @@ public abstract class PLIOCompress {
         public void decompress(ByteBuffer compressed, IntBuffer buffer) {
             this.pixelData = buffer;
             decompress(compressed.asShortBuffer(), this.pixelData.limit());
+            this.pixelData = null;
         }
 
         @Override
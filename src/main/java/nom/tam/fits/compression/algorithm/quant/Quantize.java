@@ -31,31 +31,114 @@ package nom.tam.fits.compression.algorithm.quant;
  * #L%
  */
 
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
 import java.util.Arrays;
 
 public class Quantize {
 
-    class DoubleArrayPointer {
-
-        private final double[] array;
+    /**
+     * Points to a row of the pixels of a tile, whatever their type the pixels
+     * are read as doubles.
+     */
+    abstract static class PixelPointer {
 
         private int startIndex;
 
-        DoubleArrayPointer(double[] arrayIn) {
-            this.array = arrayIn;
+        public abstract double get(int ii);
+
+        protected int index(int ii) {
+            return ii + this.startIndex;
         }
 
-        public DoubleArrayPointer copy(long l) {
-            DoubleArrayPointer result = new DoubleArrayPointer(this.array);
-            result.startIndex = (int) l;
-            return result;
+        public void setStart(int start) {
+            this.startIndex = start;
         }
+    }
 
+    private static final class DoublePixelPointer extends PixelPointer {
+
+        private final DoubleBuffer pixels;
+
+        private final int offset;
+
+        DoublePixelPointer(DoubleBuffer pixels) {
+            this.pixels = pixels;
+            this.offset = pixels.position();
+        }
+
+        @Override
         public double get(int ii) {
-            return this.array[ii + this.startIndex];
+            return this.pixels.get(this.offset + index(ii));
+        }
+    }
+
+    /**
+     * Reads float pixels straight from their buffer, so that they need not be
+     * copied into a double array first.
+     */
+    private static final class FloatPixelPointer extends PixelPointer {
+
+        private final FloatBuffer pixels;
+
+        private final int offset;
+
+        FloatPixelPointer(FloatBuffer pixels) {
+            this.pixels = pixels;
+            this.offset = pixels.position();
+        }
+
+        @Override
+        public double get(int ii) {
+            return this.pixels.get(this.offset + index(ii));
+        }
+    }
+
+    /**
+     * The arrays used to compute the median and noise estimates, kept per
+     * thread so that they are not allocated again for each tile. Arrays for
+     * tiles with more than {@link #MAX_CACHED_NOISE_SCRATCH_LENGTH} rows or
+     * columns are not kept.
+     */
+    private static final class NoiseScratch {
+
+        private double[] differences2 = new double[0];
+
+        private double[] differences3 = new double[0];
+
+        private double[] differences5 = new double[0];
+
+        private double[] diffs2 = new double[0];
+
+        private double[] diffs3 = new double[0];
+
+        private double[] diffs5 = new double[0];
+
+        private NoiseScratch ensureSize(int nx, int ny) {
+            if (this.differences2.length < nx) {
+                this.differences2 = new double[nx];
+                this.differences3 = new double[nx];
+                this.differences5 = new double[nx];
+            }
+            if (this.diffs2.length < ny) {
+                this.diffs2 = new double[ny];
+                this.diffs3 = new double[ny];
+                this.diffs5 = new double[ny];
+            }
+            return this;
         }
     }
 
+    private static final ThreadLocal<NoiseScratch> NOISE_SCRATCH = new ThreadLocal<NoiseScratch>() {
+
+        @Override
+        protected NoiseScratch initialValue() {
+            return new NoiseScratch();
+        }
+    };
+
+    private static final int MAX_CACHED_NOISE_SCRATCH_LENGTH = 16 * 1024;
+
     private static final double DEFAULT_QUANT_LEVEL = 4.;
 
     private static final double MAX_INT_AS_DOUBLE = Integer.MAX_VALUE;
@@ -131,7 +214,7 @@ public class Quantize {
      * flux(i+2))) The returned estimates are the median of the values that are
      * computed for each row of the image.
      * 
-     * @param arrayIn
+     * @param array
      *            2 dimensional tiledImageOperation of image pixels
      * @param nx
      *            number of pixels in each row of the image
@@ -143,8 +226,7 @@ public class Quantize {
      *            value of null pixels, if nullcheck is true
      * @return error status
      */
-    private void calculateNoise(double[] arrayIn, int nx, int ny) {
-        DoubleArrayPointer array = new DoubleArrayPointer(arrayIn);
+    private void calculateNoise(PixelPointer array, int nx, int ny) {
         initializeNoise();
         if (nx < MINIMUM_PIXEL_WIDTH) {
             // treat entire tiledImageOperation as an image with a single row
@@ -154,19 +236,20 @@ public class Quantize {
         if (calculateNoiseShortRow(array, nx, ny)) {
             return;
         }
-        DoubleArrayPointer rowpix;
+        PixelPointer rowpix = array;
         int nrows = 0, nrows2 = 0;
         long ngoodpix = 0;
-        /* allocate arrays used to compute the median and noise estimates */
-        double[] differences2 = new double[nx];
-        double[] differences3 = new double[nx];
-        double[] differences5 = new double[nx];
-        double[] diffs2 = new double[ny];
-        double[] diffs3 = new double[ny];
-        double[] diffs5 = new double[ny];
+        /* get the arrays used to compute the median and noise estimates */
+        NoiseScratch scratch = noiseScratch(nx, ny);
+        double[] differences2 = scratch.differences2;
+        double[] differences3 = scratch.differences3;
+        double[] differences5 = scratch.differences5;
+        double[] diffs2 = scratch.diffs2;
+        double[] diffs3 = scratch.diffs3;
+        double[] diffs5 = scratch.diffs5;
         /* loop over each row of the image */
         for (int jj = 0; jj < ny; jj++) {
-            rowpix = array.copy(jj * nx); /* point to first pixel in the row */
+            rowpix.setStart(jj * nx); /* point to first pixel in the row */
             int ii = 0;
             ii = findNextValidPixelWithNullCheck(nx, rowpix, ii);
             if (ii == nx) {
@@ -276,7 +359,7 @@ public class Quantize {
         setNoiseResult(ngoodpix);
     }
 
-    private boolean calculateNoiseShortRow(DoubleArrayPointer array, int nx, int ny) {
+    private boolean calculateNoiseShortRow(PixelPointer array, int nx, int ny) {
         /* rows must have at least 9 pixels */
         if (nx < MINIMUM_PIXEL_WIDTH) {
             int ngoodpix = 0;
@@ -323,11 +406,11 @@ public class Quantize {
         }
     }
 
-    protected int findNextValidPixelWithNullCheck(int nx, DoubleArrayPointer rowpix, int ii) {
+    protected int findNextValidPixelWithNullCheck(int nx, PixelPointer rowpix, int ii) {
         return ii;
     }
 
-    private double getNextPixelAndCheckMinMax(DoubleArrayPointer rowpix, int ii) {
+    private double getNextPixelAndCheckMinMax(PixelPointer rowpix, int ii) {
         double pixelValue = rowpix.get(ii); /* store the good pixel value */
         if (pixelValue < this.xminval) {
             this.xminval = pixelValue;
@@ -402,6 +485,50 @@ public class Quantize {
      * @return true if the quantification was possible
      */
     public boolean quantize(double[] fdata, int nxpix, int nypix) {
+        return quantize(DoubleBuffer.wrap(fdata), nxpix, nypix);
+    }
+
+    /**
+     * Same as {@link #quantize(double[], int, int)} for the pixels from the
+     * current position of a buffer, the position is not changed.
+     *
+     * @param fdata
+     *            the data to quantinize
+     * @param nxpix
+     *            the image width
+     * @param nypix
+     *            the image hight
+     * @return true if the quantification was possible
+     */
+    public boolean quantize(DoubleBuffer fdata, int nxpix, int nypix) {
+        return quantize(new DoublePixelPointer(fdata), nxpix, nypix);
+    }
+
+    /**
+     * Same as {@link #quantize(double[], int, int)} for float pixels from the
+     * current position of a buffer, the position is not changed. The pixels
+     * are read directly from the buffer without making a double copy of them.
+     *
+     * @param fdata
+     *            the data to quantinize
+     * @param nxpix
+     *            the image width
+     * @param nypix
+     *            the image hight
+     * @return true if the quantification was possible
+     */
+    public boolean quantize(FloatBuffer fdata, int nxpix, int nypix) {
+        return quantize(new FloatPixelPointer(fdata), nxpix, nypix);
+    }
+
+    private NoiseScratch noiseScratch(int nx, int ny) {
+        if (nx > MAX_CACHED_NOISE_SCRATCH_LENGTH || ny > MAX_CACHED_NOISE_SCRATCH_LENGTH) {
+            return new NoiseScratch().ensureSize(nx, ny);
+        }
+        return NOISE_SCRATCH.get().ensureSize(nx, ny);
+    }
+
+    private boolean quantize(PixelPointer fdata, int nxpix, int nypix) {
         // MAD 2nd, 3rd, and 5th order noise values
         double stdev;
         double bScale; /* bscale, 1 in intdata = delta in fdata */
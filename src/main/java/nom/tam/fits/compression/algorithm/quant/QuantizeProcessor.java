@@ -51,10 +51,8 @@ public class QuantizeProcessor {
 
         @Override
         public boolean compress(DoubleBuffer buffer, ByteBuffer compressed) {
-            IntBuffer intData = IntBuffer.wrap(new int[this.quantizeOption.getTileHeight() * this.quantizeOption.getTileWidth()]);
-            double[] doubles = new double[this.quantizeOption.getTileHeight() * this.quantizeOption.getTileWidth()];
-            buffer.get(doubles);
-            if (!this.quantize(doubles, intData)) {
+            IntBuffer intData = intScratch(tileSize());
+            if (!quantizeTile(buffer, intData)) {
                 return false;
             }
             intData.rewind();
@@ -64,16 +62,13 @@ public class QuantizeProcessor {
 
         @Override
         public void decompress(ByteBuffer compressed, DoubleBuffer buffer) {
-            IntBuffer intData = IntBuffer.wrap(new int[this.quantizeOption.getTileHeight() * this.quantizeOption.getTileWidth()]);
+            IntBuffer intData = intScratch(tileSize());
             this.postCompressor.decompress(compressed, intData);
             intData.rewind();
             unquantize(intData, buffer);
         }
     }
 
-    /**
-     * TODO this is done very inefficient and should be refactored!
-     */
     public static class FloatQuantCompressor extends QuantizeProcessor implements ICompressor<FloatBuffer> {
 
         private final ICompressor<IntBuffer> postCompressor;
@@ -85,14 +80,8 @@ public class QuantizeProcessor {
 
         @Override
         public boolean compress(FloatBuffer buffer, ByteBuffer compressed) {
-            float[] floats = new float[this.quantizeOption.getTileHeight() * this.quantizeOption.getTileWidth()];
-            double[] doubles = new double[this.quantizeOption.getTileHeight() * this.quantizeOption.getTileWidth()];
-            buffer.get(floats);
-            for (int index = 0; index < doubles.length; index++) {
-                doubles[index] = floats[index];
-            }
-            IntBuffer intData = IntBuffer.wrap(new int[this.quantizeOption.getTileHeight() * this.quantizeOption.getTileWidth()]);
-            if (!this.quantize(doubles, intData)) {
+            IntBuffer intData = intScratch(tileSize());
+            if (!quantizeTile(buffer, intData)) {
                 return false;
             }
             intData.rewind();
@@ -102,15 +91,10 @@ public class QuantizeProcessor {
 
         @Override
         public void decompress(ByteBuffer compressed, FloatBuffer buffer) {
-            IntBuffer intData = IntBuffer.wrap(new int[this.quantizeOption.getTileHeight() * this.quantizeOption.getTileWidth()]);
+            IntBuffer intData = intScratch(tileSize());
             this.postCompressor.decompress(compressed, intData);
             intData.rewind();
-            double[] doubles = new double[this.quantizeOption.getTileHeight() * this.quantizeOption.getTileWidth()];
-            DoubleBuffer doubleBuffer = DoubleBuffer.wrap(doubles);
-            unquantize(intData, doubleBuffer);
-            for (double d : doubles) {
-                buffer.put((float) d);
-            }
+            unquantize(intData, buffer);
         }
     }
 
@@ -137,80 +121,24 @@ public class QuantizeProcessor {
 
     private class DitherFilter extends PixelFilter {
 
-        private static final int LAST_RANDOM_VALUE = 1043618065;
-
-        private static final double MAX_INT_AS_DOUBLE = Integer.MAX_VALUE;
-
-        /**
-         * DO NOT CHANGE THIS; used when quantizing real numbers
-         */
-        private static final int N_RANDOM = 10000;
-
         private static final int RANDOM_MULTIPLICATOR = 500;
 
-        private static final double RANDOM_START_VALUE = 16807.0;
-
         private int iseed = 0;
 
         private int nextRandom = 0;
 
-        private final double[] randomValues;
-
         DitherFilter(long seed) {
             super(null);
-            this.randomValues = initRandoms();
             initialize(seed);
         }
 
         public void initialize(long ditherSeed) {
             this.iseed = (int) ((ditherSeed - 1) % N_RANDOM);
-            this.nextRandom = (int) (this.randomValues[this.iseed] * RANDOM_MULTIPLICATOR);
+            this.nextRandom = (int) (RANDOM_VALUES[this.iseed] * RANDOM_MULTIPLICATOR);
         }
 
         public double nextRandom() {
-            return this.randomValues[this.nextRandom];
-        }
-
-        private double[] initRandoms() {
-
-            /* initialize an tiledImageOperation of random numbers */
-
-            int ii;
-            double a = RANDOM_START_VALUE;
-            double m = MAX_INT_AS_DOUBLE;
-            double temp;
-            double seed;
-
-            /* allocate tiledImageOperation for the random number sequence */
-            double[] randomValue = new double[N_RANDOM];
-
-            /*
-             * We need a portable algorithm that anyone can use to generate this
-             * exact same sequence of random number. The C 'rand' function is
-             * not suitable because it is not available to Fortran or Java
-             * programmers. Instead, use a well known simple algorithm published
-             * here: "Random number generators: good ones are hard to find",
-             * Communications of the ACM, Volume 31 , Issue 10 (October 1988)
-             * Pages: 1192 - 1201
-             */
-
-            /* initialize the random numbers */
-            seed = 1;
-            for (ii = 0; ii < N_RANDOM; ii++) {
-                temp = a * seed;
-                seed = temp - m * (int) (temp / m);
-                randomValue[ii] = seed / m;
-            }
-
-            /*
-             * IMPORTANT NOTE: the 10000th seed value must have the value
-             * 1043618065 if the algorithm has been implemented correctly
-             */
-
-            if ((int) seed != LAST_RANDOM_VALUE) {
-                throw new IllegalArgumentException("randomValue generated incorrect random number sequence");
-            }
-            return randomValue;
+            return RANDOM_VALUES[this.nextRandom];
         }
 
         @Override
@@ -221,7 +149,7 @@ public class QuantizeProcessor {
                 if (this.iseed >= N_RANDOM) {
                     this.iseed = 0;
                 }
-                this.nextRandom = (int) (this.randomValues[this.iseed] * RANDOM_MULTIPLICATOR);
+                this.nextRandom = (int) (RANDOM_VALUES[this.iseed] * RANDOM_MULTIPLICATOR);
             }
         }
 
@@ -316,8 +244,32 @@ public class QuantizeProcessor {
         }
     }
 
+    private static final int LAST_RANDOM_VALUE = 1043618065;
+
     private static final double MAX_INT_AS_DOUBLE = Integer.MAX_VALUE;
 
+    /**
+     * DO NOT CHANGE THIS; used when quantizing real numbers
+     */
+    private static final int N_RANDOM = 10000;
+
+    private static final double RANDOM_START_VALUE = 16807.0;
+
+    /**
+     * The random sequence used for dithering, it is always the same so it is
+     * computed only once.
+     */
+    private static final double[] RANDOM_VALUES = initRandoms();
+
+    /**
+     * Quantized pixels per thread, reused for the tiles processed by the
+     * thread. Tiles with more than {@link #MAX_CACHED_INT_SCRATCH_SIZE} pixels
+     * get an array that is not kept.
+     */
+    private static final ThreadLocal<int[]> INT_SCRATCH = new ThreadLocal<int[]>();
+
+    private static final int MAX_CACHED_INT_SCRATCH_SIZE = 256 * 1024;
+
     /**
      * number of reserved values, starting with
      */
@@ -366,7 +318,7 @@ public class QuantizeProcessor {
             this.quantize = new Quantize(quantizeOption) {
 
                 @Override
-                protected int findNextValidPixelWithNullCheck(int nx, DoubleArrayPointer rowpix, int ii) {
+                protected int findNextValidPixelWithNullCheck(int nx, PixelPointer rowpix, int ii) {
                     while (ii < nx && nullFilter.isNull(rowpix.get(ii))) {
                         ii++;
                     }
@@ -385,6 +337,65 @@ public class QuantizeProcessor {
         this.centerOnZero = localCenterOnZero;
     }
 
+    private static double[] initRandoms() {
+
+        /* initialize an tiledImageOperation of random numbers */
+
+        int ii;
+        double a = RANDOM_START_VALUE;
+        double m = MAX_INT_AS_DOUBLE;
+        double temp;
+        double seed;
+
+        /* allocate tiledImageOperation for the random number sequence */
+        double[] randomValue = new double[N_RANDOM];
+
+        /*
+         * We need a portable algorithm that anyone can use to generate this
+         * exact same sequence of random number. The C 'rand' function is
+         * not suitable because it is not available to Fortran or Java
+         * programmers. Instead, use a well known simple algorithm published
+         * here: "Random number generators: good ones are hard to find",
+         * Communications of the ACM, Volume 31 , Issue 10 (October 1988)
+         * Pages: 1192 - 1201
+         */
+
+        /* initialize the random numbers */
+        seed = 1;
+        for (ii = 0; ii < N_RANDOM; ii++) {
+            temp = a * seed;
+            seed = temp - m * (int) (temp / m);
+            randomValue[ii] = seed / m;
+        }
+
+        /*
+         * IMPORTANT NOTE: the 10000th seed value must have the value
+         * 1043618065 if the algorithm has been implemented correctly
+         */
+
+        if ((int) seed != LAST_RANDOM_VALUE) {
+            throw new IllegalArgumentException("randomValue generated incorrect random number sequence");
+        }
+        return randomValue;
+    }
+
+    /**
+     * @return a buffer with room for the given number of quantized pixels,
+     *         backed by the scratch array of the current thread if the tile is
+     *         not too large.
+     */
+    private static IntBuffer intScratch(int size) {
+        if (size > MAX_CACHED_INT_SCRATCH_SIZE) {
+            return IntBuffer.allocate(size);
+        }
+        int[] ints = INT_SCRATCH.get();
+        if (ints == null || ints.length < size) {
+            ints = new int[size];
+            INT_SCRATCH.set(ints);
+        }
+        return IntBuffer.wrap(ints, 0, size);
+    }
+
     public Quantize getQuantize() {
         return this.quantize;
     }
@@ -398,6 +409,51 @@ public class QuantizeProcessor {
         return success;
     }
 
+    /**
+     * Quantize the double pixels from the position of the buffer, if the
+     * quantization is possible.
+     *
+     * @param fdata
+     *            the pixels of the tile
+     * @param quants
+     *            the buffer to put the quantized pixels in
+     * @return true if the pixels were quantized
+     */
+    protected boolean quantizeTile(DoubleBuffer fdata, IntBuffer quants) {
+        boolean success = this.quantize.quantize(fdata, this.quantizeOption.getTileWidth(), this.quantizeOption.getTileHeight());
+        if (success) {
+            calculateBZeroAndBscale();
+            for (int index = tileSize(); index > 0; index--) {
+                quants.put(this.pixelFilter.toInt(fdata.get()));
+                this.pixelFilter.nextPixel();
+            }
+        }
+        return success;
+    }
+
+    /**
+     * Quantize the float pixels from the position of the buffer, if the
+     * quantization is possible. The pixels are used as they are, without a
+     * double copy of them.
+     *
+     * @param fdata
+     *            the pixels of the tile
+     * @param quants
+     *            the buffer to put the quantized pixels in
+     * @return true if the pixels were quantized
+     */
+    protected boolean quantizeTile(FloatBuffer fdata, IntBuffer quants) {
+        boolean success = this.quantize.quantize(fdata, this.quantizeOption.getTileWidth(), this.quantizeOption.getTileHeight());
+        if (success) {
+            calculateBZeroAndBscale();
+            for (int index = tileSize(); index > 0; index--) {
+                quants.put(this.pixelFilter.toInt(fdata.get()));
+                this.pixelFilter.nextPixel();
+            }
+        }
+        return success;
+    }
+
     public void quantize(final DoubleBuffer fdata, final IntBuffer intData) {
         while (fdata.hasRemaining()) {
             intData.put(this.pixelFilter.toInt(fdata.get()));
@@ -412,6 +468,21 @@ public class QuantizeProcessor {
         }
     }
 
+    /**
+     * Restore the float pixels of a tile from the quantized pixels.
+     *
+     * @param intData
+     *            the quantized pixels
+     * @param fdata
+     *            the buffer to put the pixels of the tile in
+     */
+    public void unquantize(final IntBuffer intData, final FloatBuffer fdata) {
+        for (int index = tileSize(); index > 0; index--) {
+            fdata.put((float) this.pixelFilter.toDouble(intData.get()));
+            this.pixelFilter.nextPixel();
+        }
+    }
+
     private void calculateBZeroAndBscale() {
         this.bScale = this.quantizeOption.getBScale();
         this.bZero = zeroCenter();
@@ -420,6 +491,10 @@ public class QuantizeProcessor {
         this.quantizeOption.setBZero(this.bZero);
     }
 
+    protected int tileSize() {
+        return this.quantizeOption.getTileWidth() * this.quantizeOption.getTileHeight();
+    }
+
     private int nint(double x) {
         return x >= 0. ? (int) (x + ROUNDING_HALF) : (int) (x - ROUNDING_HALF);
     }
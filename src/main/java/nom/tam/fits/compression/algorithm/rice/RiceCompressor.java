@@ -311,6 +311,7 @@ public abstract class RiceCompressor<T extends Buffer> implements ICompressor<T>
         /* write out first int value to the first 4 bytes of the buffer */
         buffer.putInt(firstPixel, this.bitsPerPixel);
         int thisblock = this.blockSize;
+        long[] diff = new long[this.blockSize];
         for (int i = 0; i < dataLength; i += this.blockSize) {
             /* last block may be shorter */
             if (dataLength - i < this.blockSize) {
@@ -325,7 +326,6 @@ public abstract class RiceCompressor<T extends Buffer> implements ICompressor<T>
              * passed as an int.) compute sum of mapped pixel values at same
              * time use double precision for sum to allow 32-bit integer inputs
              */
-            long[] diff = new long[this.blockSize];
             double pixelsum = 0.0;
             int nextpix;
             /*
@@ -35,6 +35,12 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.ServiceLoader;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -101,6 +107,14 @@ public class CompressorProvider implements ICompressorProvider {
 
         private final Constructor<ICompressParameters> parametersConstructor;
 
+        /**
+         * compressors without an option carry no per tile settings, so idle
+         * instances (and their fixed size internal buffers) are kept for the
+         * next tile. They do not keep a reference to the tiles they processed.
+         * At most {@link #MAX_IDLE_COMPRESSORS} are kept per control.
+         */
+        private final Deque<ICompressor<Buffer>> idleCompressors = new ArrayDeque<ICompressor<Buffer>>();
+
         protected TileCompressorControl(Class<?> compressorClass) {
             this(compressorClass, null);
         }
@@ -119,7 +133,10 @@ public class CompressorProvider implements ICompressorProvider {
         @Override
         public boolean compress(Buffer in, ByteBuffer out, ICompressOption option) {
             try {
-                return newCompressor(option).compress(in, out);
+                ICompressor<Buffer> compressor = newCompressor(option);
+                boolean compressed = compressor.compress(in, out);
+                releaseCompressor(compressor);
+                return compressed;
             } catch (Exception e) {
                 LOG.log(Level.FINE, "could not compress using " + this.constructor + " must fallback to other compression method", e);
                 return false;
@@ -129,7 +146,9 @@ public class CompressorProvider implements ICompressorProvider {
         @Override
         public void decompress(ByteBuffer in, Buffer out, ICompressOption option) {
             try {
-                newCompressor(option).decompress(in, out);
+                ICompressor<Buffer> compressor = newCompressor(option);
+                compressor.decompress(in, out);
+                releaseCompressor(compressor);
             } catch (Exception e) {
                 throw new IllegalStateException("could not decompress " + this.constructor, e);
             }
@@ -154,10 +173,38 @@ public class CompressorProvider implements ICompressorProvider {
         }
 
         private ICompressor<Buffer> newCompressor(ICompressOption option) throws InstantiationException, IllegalAccessException, InvocationTargetException {
-            return this.constructor.getParameterTypes().length == 0 ? this.constructor.newInstance() : this.constructor.newInstance(option);
+            if (this.optionClass != null) {
+                return this.constructor.newInstance(option);
+            }
+            synchronized (this.idleCompressors) {
+                ICompressor<Buffer> compressor = this.idleCompressors.poll();
+                if (compressor != null) {
+                    return compressor;
+                }
+            }
+            return this.constructor.newInstance();
+        }
+
+        /**
+         * give a compressor back after it completed a tile, a compressor that
+         * failed is not reused.
+         */
+        private void releaseCompressor(ICompressor<Buffer> compressor) {
+            if (this.optionClass == null) {
+                synchronized (this.idleCompressors) {
+                    if (this.idleCompressors.size() < MAX_IDLE_COMPRESSORS) {
+                        this.idleCompressors.push(compressor);
+                    }
+                }
+            }
         }
     }
 
+    /**
+     * the maximum number of idle compressors kept per compressor control.
+     */
+    private static final int MAX_IDLE_COMPRESSORS = Runtime.getRuntime().availableProcessors();
+
     private static final ICompressOption NULL_OPTION = new ICompressOption() {
 
         @Override
@@ -275,9 +322,72 @@ public class CompressorProvider implements ICompressorProvider {
      */
     private static final Logger LOG = Logger.getLogger(CompressorProvider.class.getName());
 
+    /**
+     * the registered providers per class loader, the service loader scan is
+     * only done once per class loader. Only the class loader of this class and
+     * its parents are cached, they stay reachable through this class anyway.
+     * Other context class loaders (e.g. of a web application) are scanned on
+     * every lookup, so that the cache never keeps them alive.
+     */
+    private static final Map<ClassLoader, List<ICompressorProvider>> PROVIDERS = new HashMap<ClassLoader, List<ICompressorProvider>>();
+
+    /**
+     * the resolved compressor controls per cached class loader, keyed by the
+     * quantization algorithm, compression algorithm and base type.
+     */
+    private static final Map<ClassLoader, Map<String, ICompressorControl>> CONTROLS = new HashMap<ClassLoader, Map<String, ICompressorControl>>();
+
+    /**
+     * forget all cached providers and compressor controls, so that the next
+     * lookup scans the service loader again.
+     */
+    public static void clearCache() {
+        synchronized (CONTROLS) {
+            PROVIDERS.clear();
+            CONTROLS.clear();
+        }
+    }
+
     public static ICompressorControl findCompressorControl(String quantAlgorithm, String compressionAlgorithm, Class<?> baseType) {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (!isCacheable(classLoader)) {
+            return resolveCompressorControl(loadProviders(classLoader), quantAlgorithm, compressionAlgorithm, baseType);
+        }
+        String key = quantAlgorithm + "/" + compressionAlgorithm + "/" + (baseType == null ? null : baseType.getName());
+        synchronized (CONTROLS) {
+            Map<String, ICompressorControl> controls = CONTROLS.get(classLoader);
+            if (controls == null) {
+                controls = new HashMap<String, ICompressorControl>();
+                CONTROLS.put(classLoader, controls);
+            }
+            if (controls.containsKey(key)) {
+                return controls.get(key);
+            }
+            ICompressorControl result = resolveCompressorControl(providers(classLoader), quantAlgorithm, compressionAlgorithm, baseType);
+            controls.put(key, result);
+            return result;
+        }
+    }
+
+    /**
+     * @return true if the class loader is the one of this class or one of its
+     *         parents.
+     */
+    private static boolean isCacheable(ClassLoader classLoader) {
+        if (classLoader == null) {
+            return true;
+        }
+        for (ClassLoader own = CompressorProvider.class.getClassLoader(); own != null; own = own.getParent()) {
+            if (own == classLoader) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ICompressorControl resolveCompressorControl(List<ICompressorProvider> providers, String quantAlgorithm, String compressionAlgorithm, Class<?> baseType) {
         ICompressorProvider defaultProvider = null;
-        for (ICompressorProvider iTileCompressorProvider : ServiceLoader.load(ICompressorProvider.class, Thread.currentThread().getContextClassLoader())) {
+        for (ICompressorProvider iTileCompressorProvider : providers) {
             if (iTileCompressorProvider instanceof CompressorProvider) {
                 defaultProvider = iTileCompressorProvider;
             } else {
@@ -290,6 +400,23 @@ public class CompressorProvider implements ICompressorProvider {
         return defaultProvider.createCompressorControl(quantAlgorithm, compressionAlgorithm, baseType);
     }
 
+    private static List<ICompressorProvider> loadProviders(ClassLoader classLoader) {
+        List<ICompressorProvider> providers = new ArrayList<ICompressorProvider>();
+        for (ICompressorProvider provider : ServiceLoader.load(ICompressorProvider.class, classLoader)) {
+            providers.add(provider);
+        }
+        return providers;
+    }
+
+    private static List<ICompressorProvider> providers(ClassLoader classLoader) {
+        List<ICompressorProvider> providers = PROVIDERS.get(classLoader);
+        if (providers == null) {
+            providers = loadProviders(classLoader);
+            PROVIDERS.put(classLoader, providers);
+        }
+        return providers;
+    }
+
     @Override
     public ICompressorControl createCompressorControl(String quantAlgorithm, String compressionAlgorithm, Class<?> baseType) {
 
@@ -33,6 +33,8 @@ package nom.tam.fits.compression.provider.param.base;
 
 import static nom.tam.fits.header.Standard.TTYPEn;
 
+import java.lang.reflect.Array;
+
 import nom.tam.fits.BinaryTable;
 import nom.tam.fits.BinaryTableHDU;
 import nom.tam.fits.FitsException;
@@ -76,6 +78,28 @@ public abstract class CompressParameters implements ICompressParameters {
         }
     }
 
+    /**
+     * initialize the column based options of the compression algorithm from the
+     * binary table, but only read the values of the specified rows. The entries
+     * of all other rows are left undefined.
+     * 
+     * @param header
+     *            the header of the hdu
+     * @param binaryTable
+     *            the table of the hdu
+     * @param size
+     *            the column size
+     * @param rows
+     *            the rows of the table to read the values from
+     * @throws FitsException
+     *             if the column could not be initialized
+     */
+    public void initializeColumns(IHeaderAccess header, BinaryTable binaryTable, int size, int[] rows) throws FitsException {
+        for (ICompressColumnParameter parameter : columnParameters()) {
+            parameter.column(getNullableColumn(header, binaryTable, parameter.getName(), size, rows), size);
+        }
+    }
+
     @Override
     public void initializeColumns(int size) {
         for (ICompressColumnParameter parameter : columnParameters()) {
@@ -97,16 +121,40 @@ public abstract class CompressParameters implements ICompressParameters {
         }
     }
 
-    private Object getNullableColumn(IHeaderAccess header, BinaryTable binaryTable, String columnName) throws FitsException {
+    private int findColumn(IHeaderAccess header, BinaryTable binaryTable, String columnName) {
         for (int i = 1; i <= binaryTable.getNCols(); i++) {
             HeaderCard card = header.findCard(TTYPEn.n(i));
             if (card != null && card.getValue().trim().equals(columnName)) {
-                return binaryTable.getColumn(i - 1);
+                return i - 1;
             }
         }
+        return -1;
+    }
+
+    private Object getNullableColumn(IHeaderAccess header, BinaryTable binaryTable, String columnName) throws FitsException {
+        int columnIndex = findColumn(header, binaryTable, columnName);
+        if (columnIndex >= 0) {
+            return binaryTable.getColumn(columnIndex);
+        }
         return null;
     }
 
+    private Object getNullableColumn(IHeaderAccess header, BinaryTable binaryTable, String columnName, int size, int[] rows) throws FitsException {
+        int columnIndex = findColumn(header, binaryTable, columnName);
+        if (columnIndex < 0) {
+            return null;
+        }
+        Object column = null;
+        for (int row : rows) {
+            Object element = binaryTable.getElement(row, columnIndex);
+            if (column == null) {
+                column = Array.newInstance(element.getClass().getComponentType(), size);
+            }
+            Array.set(column, row, Array.get(element, 0));
+        }
+        return column;
+    }
+
     protected ICompressColumnParameter[] columnParameters() {
         return new ICompressColumnParameter[0];
     }
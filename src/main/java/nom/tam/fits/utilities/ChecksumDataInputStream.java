@@ -0,0 +1,188 @@
+package nom.tam.fits.utilities;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 1996 - 2021 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import nom.tam.util.BufferedDataInputStream;
+
+/**
+ * A buffered FITS input that accumulates the FITS checksum of the bytes the
+ * reader consumes. Bytes that the buffer reads ahead are only summed when they
+ * are consumed, so the sums end exactly where the reader stops. A
+ * {@link nom.tam.fits.Fits} reading from this stream restarts the sums at the
+ * start of every HDU and of its data: after {@link nom.tam.fits.Fits#readHDU()}
+ * {@link #getChecksum()} covers the header and data of the HDU just read and
+ * {@link #getDataSum()} its data. This allows to verify HDUs of sequential
+ * inputs, e.g. gzip compressed files, see
+ * {@link FitsCheckSum#verifyChecksum(nom.tam.fits.BasicHDU, ChecksumDataInputStream)}.
+ * <p>
+ * The stream is used by {@link nom.tam.fits.Fits} as it is, compressed inputs
+ * must be decompressed before they are wrapped.
+ */
+public class ChecksumDataInputStream extends BufferedDataInputStream {
+
+    private static final int SKIP_BUFFER_SIZE = 8 * 1024;
+
+    private FitsCheckSum.Checksum hduSum = new FitsCheckSum.Checksum();
+
+    private FitsCheckSum.Checksum dataSum = new FitsCheckSum.Checksum();
+
+    private FitsCheckSum.Checksum markedHduSum;
+
+    private FitsCheckSum.Checksum markedDataSum;
+
+    private byte[] skipBuffer;
+
+    /**
+     * create a checksum input reading from another stream.
+     *
+     * @param in
+     *            the stream to read from.
+     */
+    public ChecksumDataInputStream(InputStream in) {
+        super(in);
+    }
+
+    /**
+     * create a checksum input reading from another stream with a specified
+     * buffer size.
+     *
+     * @param in
+     *            the stream to read from.
+     * @param bufLength
+     *            the buffer length to use.
+     */
+    public ChecksumDataInputStream(InputStream in, int bufLength) {
+        super(in, bufLength);
+    }
+
+    /**
+     * @return the 32bit checksum of the bytes consumed since the last
+     *         {@link #startHDU()}.
+     */
+    public long getChecksum() {
+        return this.hduSum.getValue();
+    }
+
+    /**
+     * @return the 32bit checksum of the bytes consumed since the last
+     *         {@link #startData()}.
+     */
+    public long getDataSum() {
+        return this.dataSum.getValue();
+    }
+
+    /**
+     * @return the number of bytes consumed since the last {@link #startHDU()}.
+     */
+    public long getLength() {
+        return this.hduSum.getLength();
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        super.mark(readlimit);
+        this.markedHduSum = this.hduSum.copy();
+        this.markedDataSum = this.dataSum.copy();
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            this.hduSum.update(b);
+            this.dataSum.update(b);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            this.hduSum.update(b, off, n);
+            this.dataSum.update(b, off, n);
+        }
+        return n;
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        super.reset();
+        // the bytes after the mark will be consumed again.
+        this.hduSum = this.markedHduSum.copy();
+        this.dataSum = this.markedDataSum.copy();
+    }
+
+    /**
+     * skipped bytes are read and summed, a skipped padding is part of the
+     * checksum.
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        if (this.skipBuffer == null) {
+            this.skipBuffer = new byte[SKIP_BUFFER_SIZE];
+        }
+        long skipped = 0;
+        try {
+            while (skipped < n) {
+                skipped += read(this.skipBuffer, 0, (int) Math.min(n - skipped, this.skipBuffer.length));
+            }
+        } catch (EOFException e) {
+            // skip as far as the stream goes.
+        }
+        return skipped;
+    }
+
+    /**
+     * restart the sum of the data at the current position, called when the
+     * header of an HDU was read.
+     */
+    public void startData() {
+        this.dataSum.reset();
+    }
+
+    /**
+     * restart both sums at the current position, called before the header of
+     * an HDU is read.
+     */
+    public void startHDU() {
+        this.hduSum.reset();
+        this.dataSum.reset();
+    }
+}
@@ -0,0 +1,140 @@
+package nom.tam.fits.utilities;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 1996 - 2021 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream that accumulates the FITS checksum of all bytes read through
+ * it. Wrap it in a {@link nom.tam.util.BufferedDataInputStream} (or pass it to
+ * {@link nom.tam.fits.Fits#Fits(InputStream)}) to compute the checksum while
+ * the FITS is read. Skipped bytes are read and summed as well, so the checksum
+ * always covers the complete stream up to the current position.
+ * <p>
+ * The sum covers the bytes as this stream hands them out, and a buffered
+ * reader on top of it reads ahead past the end of the current HDU. The
+ * checksum is therefore only meaningful for the whole stream; to verify single
+ * HDUs read them from a {@link ChecksumDataInputStream}.
+ */
+public class ChecksumInputStream extends FilterInputStream {
+
+    private static final int SKIP_BUFFER_SIZE = 8 * 1024;
+
+    private final FitsCheckSum.Checksum sum = new FitsCheckSum.Checksum();
+
+    /**
+     * create a checksum stream reading from another stream.
+     *
+     * @param in
+     *            the stream to read from.
+     */
+    public ChecksumInputStream(InputStream in) {
+        super(in);
+    }
+
+    /**
+     * @return the 32bit checksum of the bytes read since the creation or the
+     *         last {@link #resetChecksum()}.
+     */
+    public long getChecksum() {
+        return this.sum.getValue();
+    }
+
+    /**
+     * @return the number of bytes read since the creation or the last
+     *         {@link #resetChecksum()}.
+     */
+    public long getLength() {
+        return this.sum.getLength();
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        // marking would make us sum bytes twice.
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = this.in.read();
+        if (b >= 0) {
+            this.sum.update(b);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = this.in.read(b, off, len);
+        if (n > 0) {
+            this.sum.update(b, off, n);
+        }
+        return n;
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * restart the checksum. The restart happens at the position of the
+     * underlying stream, which is not an HDU boundary when a buffered reader
+     * reads from this stream.
+     */
+    public void resetChecksum() {
+        this.sum.reset();
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        byte[] buffer = new byte[(int) Math.min(n, SKIP_BUFFER_SIZE)];
+        long skipped = 0;
+        while (skipped < n) {
+            int got = read(buffer, 0, (int) Math.min(n - skipped, buffer.length));
+            if (got < 0) {
+                break;
+            }
+            skipped += got;
+        }
+        return skipped;
+    }
+}
@@ -0,0 +1,118 @@
+package nom.tam.fits.utilities;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 1996 - 2021 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An output stream that accumulates the FITS checksum of all bytes written
+ * through it. Wrap it in a {@link nom.tam.util.BufferedDataOutputStream} to get
+ * an {@link nom.tam.util.ArrayDataOutput} that can be passed to
+ * {@link nom.tam.fits.Fits#write(java.io.DataOutput)}; the checksum is then
+ * computed while the FITS is written, without keeping a copy of the bytes.
+ */
+public class ChecksumOutputStream extends FilterOutputStream {
+
+    private final FitsCheckSum.Checksum sum = new FitsCheckSum.Checksum();
+
+    /**
+     * create a checksum stream that discards the bytes after summing them.
+     */
+    public ChecksumOutputStream() {
+        this(null);
+    }
+
+    /**
+     * create a checksum stream that passes the bytes on to another stream.
+     *
+     * @param out
+     *            the stream to write to, or null to discard the bytes.
+     */
+    public ChecksumOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.out != null) {
+            super.close();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (this.out != null) {
+            this.out.flush();
+        }
+    }
+
+    /**
+     * @return the 32bit checksum of the bytes written since the creation or the
+     *         last {@link #reset()}.
+     */
+    public long getChecksum() {
+        return this.sum.getValue();
+    }
+
+    /**
+     * @return the number of bytes written since the creation or the last
+     *         {@link #reset()}.
+     */
+    public long getLength() {
+        return this.sum.getLength();
+    }
+
+    /**
+     * restart the checksum, e.g. at the beginning of the next HDU.
+     */
+    public void reset() {
+        this.sum.reset();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (this.out != null) {
+            this.out.write(b, off, len);
+        }
+        this.sum.update(b, off, len);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (this.out != null) {
+            this.out.write(b);
+        }
+        this.sum.update(b);
+    }
+}
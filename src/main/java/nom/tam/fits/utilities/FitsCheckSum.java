@@ -38,19 +38,163 @@ import static nom.tam.util.FitsIO.BYTE_2_OF_LONG_MASK;
 import static nom.tam.util.FitsIO.BYTE_3_OF_LONG_MASK;
 import static nom.tam.util.FitsIO.BYTE_4_OF_LONG_MASK;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 import nom.tam.fits.BasicHDU;
+import nom.tam.fits.Data;
 import nom.tam.fits.FitsException;
+import nom.tam.fits.FitsFactory;
 import nom.tam.fits.Header;
 import nom.tam.util.AsciiFuncs;
 import nom.tam.util.BufferedDataOutputStream;
 import nom.tam.util.FitsIO;
+import nom.tam.util.MappedFile;
+import nom.tam.util.RandomAccess;
 
 public final class FitsCheckSum {
 
+    /**
+     * Incremental Seaman-Pence checksum. Bytes can be fed in arbitrary chunks,
+     * the position of every byte within its 4-byte group is tracked across
+     * calls, so feeding a byte sequence in pieces gives the same result as
+     * {@link FitsCheckSum#checksum(byte[])} on the whole sequence.
+     */
+    public static final class Checksum {
+
+        private long hi;
+
+        private long lo;
+
+        private long length;
+
+        /**
+         * @return a new checksum that continues from the state of this one.
+         */
+        public Checksum copy() {
+            Checksum copy = new Checksum();
+            copy.hi = this.hi;
+            copy.lo = this.lo;
+            copy.length = this.length;
+            return copy;
+        }
+
+        /**
+         * @return the number of bytes summed so far.
+         */
+        public long getLength() {
+            return this.length;
+        }
+
+        /**
+         * @return the 32bit checksum of the bytes summed so far in the range
+         *         from 0 to 2^32-1
+         */
+        public long getValue() {
+            fold();
+            return this.hi << FitsIO.BITS_OF_2_BYTES | this.lo;
+        }
+
+        /**
+         * forget all bytes summed so far.
+         */
+        public void reset() {
+            this.hi = 0;
+            this.lo = 0;
+            this.length = 0;
+        }
+
+        /**
+         * add the next byte of the stream to the sum.
+         *
+         * @param b
+         *            the byte (only the lowest 8 bits are used)
+         */
+        public void update(int b) {
+            long value = b & BYTE_1_OF_LONG_MASK;
+            switch ((int) (this.length % CHECKSUM_BLOCK_SIZE)) {
+                case 0:
+                    this.hi += value << FitsIO.BITS_OF_1_BYTE;
+                    break;
+                case 1:
+                    this.hi += value;
+                    break;
+                case CHECKSUM_HALF_BLOCK_SIZE:
+                    this.lo += value << FitsIO.BITS_OF_1_BYTE;
+                    break;
+                default:
+                    this.lo += value;
+                    break;
+            }
+            this.length++;
+        }
+
+        /**
+         * add the next bytes of the stream to the sum.
+         *
+         * @param data
+         *            the bytes
+         * @param offset
+         *            the offset of the first byte to add
+         * @param len
+         *            the number of bytes to add
+         */
+        public void update(byte[] data, int offset, int len) {
+            update(ByteBuffer.wrap(data, offset, len));
+        }
+
+        /**
+         * add the remaining bytes of the buffer to the sum, the bytes are read
+         * as big-endian longs so each read covers two 4-byte groups. The
+         * position of the buffer is moved to its limit.
+         *
+         * @param buffer
+         *            the bytes to add
+         */
+        public void update(ByteBuffer buffer) {
+            while (buffer.hasRemaining() && this.length % CHECKSUM_BLOCK_SIZE != 0) {
+                update(buffer.get());
+            }
+            ByteBuffer words = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+            final int longs = words.remaining() / FitsIO.BYTES_IN_LONG;
+            long h = this.hi;
+            long l = this.lo;
+            for (int index = 0; index < longs; index++) {
+                long value = words.getLong();
+                h += (value >>> FitsIO.BITS_OF_6_BYTES) + (value >>> FitsIO.BITS_OF_2_BYTES & FitsIO.SHORT_OF_LONG_MASK);
+                l += (value >>> FitsIO.BITS_OF_4_BYTES & FitsIO.SHORT_OF_LONG_MASK) + (value & FitsIO.SHORT_OF_LONG_MASK);
+            }
+            this.hi = h;
+            this.lo = l;
+            this.length += (long) longs * FitsIO.BYTES_IN_LONG;
+            buffer.position(buffer.position() + longs * FitsIO.BYTES_IN_LONG);
+            while (buffer.hasRemaining()) {
+                update(buffer.get());
+            }
+            fold();
+        }
+
+        private void fold() {
+            long hicarry = this.hi >>> FitsIO.BITS_OF_2_BYTES;
+            long locarry = this.lo >>> FitsIO.BITS_OF_2_BYTES;
+            while (hicarry != 0 || locarry != 0) {
+                this.hi = (this.hi & FitsIO.SHORT_OF_LONG_MASK) + locarry;
+                this.lo = (this.lo & FitsIO.SHORT_OF_LONG_MASK) + hicarry;
+                hicarry = this.hi >>> FitsIO.BITS_OF_2_BYTES;
+                locarry = this.lo >>> FitsIO.BITS_OF_2_BYTES;
+            }
+        }
+    }
+
     private static final int CHECKSUM_STRING_SIZE = 16;
 
     /**
@@ -62,18 +206,31 @@ public final class FitsCheckSum {
 
     private static final int CHECKSUM_HALF_BLOCK_SIZE = 2;
 
+    private static final int CHECKSUM_READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The number of bytes summed by one task of a parallel checksum, a multiple
+     * of the checksum block size so the partial sums can simply be added.
+     */
+    private static final int PARALLEL_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * The maximum number of bytes of a file channel that are mapped at once.
+     */
+    private static final long MAPPED_CHUNK_SIZE = 32L * PARALLEL_CHUNK_SIZE;
+
     /**
      * Calculate the Seaman-Pence 32-bit 1's complement checksum over the byte
-     * stream. The option to start from an intermediate checksum accumulated
-     * over another previous byte stream is not implemented. The implementation
+     * stream. To start from an intermediate checksum accumulated over another
+     * previous byte stream use {@link Checksum} instead. The implementation
      * accumulates in two 64-bit integer values the two low-order and the two
      * high-order bytes of adjacent 4-byte groups. A carry-over of bits is never
      * done within the main loop (only once at the end at reduction to a 32-bit
      * positive integer) since an overflow of a 64-bit value (signed, with
      * maximum at 2^63-1) by summation of 16-bit values could only occur after
-     * adding approximately 140G short values (=2^47) (280GBytes) or more. We
-     * assume for now that this routine here is never called to swallow FITS
-     * files of that size or larger. by R J Mathar
+     * adding approximately 140G short values (=2^47) (280GBytes) or more. Large
+     * arrays are split into chunks that are summed in parallel and added in
+     * 1's complement arithmetic afterwards. by R J Mathar
      * {@link nom.tam.fits.header.Checksum#CHECKSUM}
      *
      * @param data
@@ -82,10 +239,6 @@ public final class FitsCheckSum {
      * @since 2005-10-05
      */
     public static long checksum(final byte[] data) {
-        long hi = 0;
-        long lo = 0;
-        final int len = CHECKSUM_HALF_BLOCK_SIZE * (data.length / CHECKSUM_BLOCK_SIZE);
-        // System.out.println(data.length + " bytes") ;
         final int remain = data.length % CHECKSUM_BLOCK_SIZE;
         if (remain != 0) {
             throw new IllegalArgumentException("fits blocks always must be devidable by 4");
@@ -95,26 +248,150 @@ public final class FitsCheckSum {
          * LSB; by some kind of coincidence, we can stay with the byte order
          * known from the original C version of the algorithm.
          */
-        for (int i = 0; i < len; i += CHECKSUM_HALF_BLOCK_SIZE) {
-            /*
-             * The four bytes in this block handled by a single 'i' are each
-             * signed (-128 to 127) in Java and need to be masked indivdually to
-             * avoid sign extension /propagation.
-             */
-            int offset = CHECKSUM_HALF_BLOCK_SIZE * i;
-            hi += data[offset++] << FitsIO.BITS_OF_1_BYTE & BYTE_2_OF_LONG_MASK | data[offset++] & BYTE_1_OF_LONG_MASK;
-            lo += data[offset++] << FitsIO.BITS_OF_1_BYTE & BYTE_2_OF_LONG_MASK | data[offset++] & BYTE_1_OF_LONG_MASK;
+        return checksum(ByteBuffer.wrap(data), FitsFactory.threadPool());
+    }
+
+    /**
+     * Calculate the checksum over a section of a random access file by
+     * streaming it through a small buffer, the section is never held in memory
+     * as a whole. The position of the file is restored afterwards. A
+     * {@link MappedFile} is summed in parallel directly from its mapped
+     * channel.
+     *
+     * @param in
+     *            the file to read from
+     * @param offset
+     *            the position of the first byte of the section
+     * @param size
+     *            the number of bytes in the section
+     * @return the 32bit checksum in the range from 0 to 2^32-1
+     * @throws IOException
+     *             if the section could not be read
+     */
+    public static long checksum(RandomAccess in, long offset, long size) throws IOException {
+        if (in instanceof MappedFile) {
+            return checksum(((MappedFile) in).getChannel(), offset, size);
         }
+        long oldPosition = in.getFilePointer();
+        try {
+            in.seek(offset);
+            Checksum sum = new Checksum();
+            byte[] buffer = new byte[(int) Math.min(size, CHECKSUM_READ_BUFFER_SIZE)];
+            long remaining = size;
+            while (remaining > 0) {
+                int n = (int) Math.min(remaining, buffer.length);
+                in.readFully(buffer, 0, n);
+                sum.update(buffer, 0, n);
+                remaining -= n;
+            }
+            return sum.getValue();
+        } finally {
+            in.seek(oldPosition);
+        }
+    }
+
+    /**
+     * Calculate the checksum over the remaining bytes of a buffer, e.g. a
+     * memory mapped region of a file. The position of the buffer is not
+     * changed.
+     *
+     * @param data
+     *            the bytes to sum
+     * @return the 32bit checksum in the range from 0 to 2^32-1
+     */
+    public static long checksum(ByteBuffer data) {
+        Checksum sum = new Checksum();
+        sum.update(data.duplicate());
+        return sum.getValue();
+    }
 
-        long hicarry = hi >>> FitsIO.BITS_OF_2_BYTES;
-        long locarry = lo >>> FitsIO.BITS_OF_2_BYTES;
-        while (hicarry != 0 || locarry != 0) {
-            hi = (hi & FitsIO.SHORT_OF_LONG_MASK) + locarry;
-            lo = (lo & FitsIO.SHORT_OF_LONG_MASK) + hicarry;
-            hicarry = hi >>> FitsIO.BITS_OF_2_BYTES;
-            locarry = lo >>> FitsIO.BITS_OF_2_BYTES;
+    /**
+     * Calculate the checksum over the remaining bytes of a buffer by splitting
+     * it into chunks that are summed in parallel on the executor, the partial
+     * sums are added afterwards. The position of the buffer is not changed.
+     *
+     * @param data
+     *            the bytes to sum
+     * @param executor
+     *            the executor to sum the chunks on
+     * @return the 32bit checksum in the range from 0 to 2^32-1
+     */
+    public static long checksum(ByteBuffer data, ExecutorService executor) {
+        if (data.remaining() <= PARALLEL_CHUNK_SIZE) {
+            return checksum(data);
         }
-        return hi << FitsIO.BITS_OF_2_BYTES | lo;
+        List<Future<Long>> partialSums = new ArrayList<Future<Long>>();
+        // a long position, so the last step does not overflow for buffers
+        // close to 2 GB.
+        for (long start = data.position(); start < data.limit(); start += PARALLEL_CHUNK_SIZE) {
+            final ByteBuffer chunk = data.duplicate();
+            chunk.position((int) start);
+            chunk.limit((int) Math.min(start + PARALLEL_CHUNK_SIZE, data.limit()));
+            partialSums.add(executor.submit(new Callable<Long>() {
+
+                @Override
+                public Long call() {
+                    return checksum(chunk);
+                }
+            }));
+        }
+        long result = 0;
+        try {
+            for (Future<Long> partialSum : partialSums) {
+                result = sumOf(result, partialSum.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while computing checksum", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("could not compute checksum", e.getCause());
+        }
+        return result;
+    }
+
+    /**
+     * Calculate the checksum over a section of a file channel. The section is
+     * memory mapped piece by piece and every piece is summed in parallel on
+     * the {@link FitsFactory#threadPool()}.
+     *
+     * @param channel
+     *            the channel to read from
+     * @param offset
+     *            the position of the first byte of the section
+     * @param size
+     *            the number of bytes in the section
+     * @return the 32bit checksum in the range from 0 to 2^32-1
+     * @throws IOException
+     *             if the section could not be mapped
+     */
+    public static long checksum(FileChannel channel, long offset, long size) throws IOException {
+        long result = 0;
+        for (long done = 0; done < size; done += MAPPED_CHUNK_SIZE) {
+            long length = Math.min(MAPPED_CHUNK_SIZE, size - done);
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset + done, length);
+            result = sumOf(result, checksum(mapped, FitsFactory.threadPool()));
+        }
+        return result;
+    }
+
+    /**
+     * Add two checksums in 1's complement arithmetic, this gives the checksum
+     * of the concatenation of the two byte streams as long as the first of
+     * them has a length that is a multiple of 4.
+     *
+     * @param sum1
+     *            the first checksum
+     * @param sum2
+     *            the second checksum
+     * @return the combined 32bit checksum
+     */
+    public static long sumOf(long sum1, long sum2) {
+        long sum = sum1 + sum2;
+        // If we had a carry it should go into the beginning.
+        while ((sum & FitsIO.HIGH_INTEGER_MASK) != 0) {
+            sum = (sum & FitsIO.INTEGER_MASK) + (sum >>> FitsIO.BITS_OF_4_BYTES);
+        }
+        return sum;
     }
 
     /**
@@ -216,54 +493,154 @@ public final class FitsCheckSum {
             hdr.addValue(CHECKSUM, "0000000000000000");
             hdr.addValue(DATASUM, "0");
 
-            // write the header to stream to get the cards sorted. no need to
-            // flush because we will ignore the data.
-            ByteArrayOutputStream hduByteImage = new ByteArrayOutputStream();
-            hdu.getHeader().write(new BufferedDataOutputStream(hduByteImage));
-            hduByteImage.reset();
+            // write the header to stream to get the cards sorted. Nothing is
+            // kept in memory, the bytes only pass through the checksum.
+            ChecksumOutputStream sum = new ChecksumOutputStream();
+            BufferedDataOutputStream bdos = new BufferedDataOutputStream(sum);
+            hdr.write(bdos);
+            bdos.flush();
+            sum.reset();
 
             /*
-             * Convert the entire sequence of 2880 byte header cards into a byte
-             * tiledImageOperation. The main benefit compared to the C
-             * implementations is that we do not need to worry about the
-             * particular byte order on machines (Linux/VAX/MIPS vs Hp-UX,
+             * Stream the data through the checksum. The main benefit compared
+             * to the C implementations is that we do not need to worry about
+             * the particular byte order on machines (Linux/VAX/MIPS vs Hp-UX,
              * Sparc...) supposed that the correct implementation is in the
              * write() interface.
              */
-            BufferedDataOutputStream bdos = new BufferedDataOutputStream(hduByteImage);
             hdu.getData().write(bdos);
             bdos.flush();
-            
-            long csd = checksum(hduByteImage.toByteArray());
-            hdu.getHeader().card(DATASUM).value(Long.toString(csd));
+            long csd = sum.getChecksum();
+            hdr.card(DATASUM).value(Long.toString(csd));
 
             // We already have the checksum of the data. Lets compute it for
             // the header.
-            hduByteImage.reset();
-            hdu.getHeader().write(bdos);
+            sum.reset();
+            hdr.write(bdos);
             bdos.flush();
-            
-            long csh = checksum(hduByteImage.toByteArray());
-            
-            long cshdu = csh + csd;
-            // If we had a carry it should go into the
-            // beginning.
-            while ((cshdu & FitsIO.HIGH_INTEGER_MASK) != 0) {
-                long cshduIntPart = cshdu & FitsIO.INTEGER_MASK;
-                cshdu = cshduIntPart + 1;
-            }
+            long csh = sum.getChecksum();
             /*
              * This time we do not use a deleteKey() to ensure that the keyword
              * is replaced "in place". Note that the value of the checksum is
              * actually independent to a permutation of the 80-byte records
              * within the header.
              */
-            hdr.card(CHECKSUM).value(checksumEnc(cshdu, true));
+            hdr.card(CHECKSUM).value(checksumEnc(sumOf(csh, csd), true));
         } catch (IOException e) {
             throw new FitsException("Could not calculate the checksum!", e);
         }
     }
 
+    /**
+     * Verify the DATASUM keyword of a HDU against its data as stored in a
+     * random access file. The data is streamed from the file and never
+     * materialized.
+     *
+     * @param hdu
+     *            the HDU read from the file
+     * @param in
+     *            the file the HDU was read from
+     * @return true if the checksum of the stored data matches the DATASUM
+     *         keyword.
+     * @throws FitsException
+     *             if the HDU has no DATASUM keyword, was not read from a file
+     *             or the data could not be read
+     */
+    public static boolean verifyDataSum(BasicHDU<?> hdu, RandomAccess in) throws FitsException {
+        String dataSum = hdu.getHeader().getStringValue(DATASUM);
+        if (dataSum == null) {
+            throw new FitsException("HDU has no " + DATASUM.key() + " keyword");
+        }
+        Data data = hdu.getData();
+        long size = data.getSize();
+        if (size > 0 && data.getFileOffset() < 0) {
+            throw new FitsException("HDU data was not read from a file");
+        }
+        try {
+            long csd = size > 0 ? checksum(in, data.getFileOffset(), size) : 0;
+            return csd == Long.parseLong(dataSum.trim());
+        } catch (NumberFormatException e) {
+            throw new FitsException("Illegal " + DATASUM.key() + " value " + dataSum, e);
+        } catch (IOException e) {
+            throw new FitsException("Could not calculate the checksum!", e);
+        }
+    }
+
+    /**
+     * Verify the CHECKSUM keyword of a HDU against its header and data as
+     * stored in a random access file. The complete HDU must sum to negative
+     * zero. The bytes are streamed from the file and never materialized.
+     *
+     * @param hdu
+     *            the HDU read from the file
+     * @param in
+     *            the file the HDU was read from
+     * @return true if the HDU as stored in the file has a valid checksum.
+     * @throws FitsException
+     *             if the HDU has no CHECKSUM keyword, was not read from a file
+     *             or the file could not be read
+     */
+    public static boolean verifyChecksum(BasicHDU<?> hdu, RandomAccess in) throws FitsException {
+        Header hdr = hdu.getHeader();
+        if (!hdr.containsKey(CHECKSUM)) {
+            throw new FitsException("HDU has no " + CHECKSUM.key() + " keyword");
+        }
+        if (hdu.getFileOffset() < 0) {
+            throw new FitsException("HDU was not read from a file");
+        }
+        try {
+            long size = hdr.getOriginalSize() + hdu.getData().getSize();
+            return checksum(in, hdu.getFileOffset(), size) == FitsIO.INTEGER_MASK;
+        } catch (IOException e) {
+            throw new FitsException("Could not calculate the checksum!", e);
+        }
+    }
+
+    /**
+     * Verify the DATASUM keyword of the HDU that was last read from a checksum
+     * input against the sum of its data as it was consumed.
+     *
+     * @param hdu
+     *            the HDU just read from the input
+     * @param in
+     *            the input the HDU was read from
+     * @return true if the checksum of the data read matches the DATASUM
+     *         keyword.
+     * @throws FitsException
+     *             if the HDU has no DATASUM keyword
+     */
+    public static boolean verifyDataSum(BasicHDU<?> hdu, ChecksumDataInputStream in) throws FitsException {
+        String dataSum = hdu.getHeader().getStringValue(DATASUM);
+        if (dataSum == null) {
+            throw new FitsException("HDU has no " + DATASUM.key() + " keyword");
+        }
+        try {
+            return in.getDataSum() == Long.parseLong(dataSum.trim());
+        } catch (NumberFormatException e) {
+            throw new FitsException("Illegal " + DATASUM.key() + " value " + dataSum, e);
+        }
+    }
+
+    /**
+     * Verify the CHECKSUM keyword of the HDU that was last read from a
+     * checksum input. The header and data as they were consumed must sum to
+     * negative zero.
+     *
+     * @param hdu
+     *            the HDU just read from the input
+     * @param in
+     *            the input the HDU was read from
+     * @return true if the HDU as read has a valid checksum.
+     * @throws FitsException
+     *             if the HDU has no CHECKSUM keyword
+     */
+    public static boolean verifyChecksum(BasicHDU<?> hdu, ChecksumDataInputStream in) throws FitsException {
+        if (!hdu.getHeader().containsKey(CHECKSUM)) {
+            throw new FitsException("HDU has no " + CHECKSUM.key() + " keyword");
+        }
+        return in.getChecksum() == FitsIO.INTEGER_MASK;
+    }
+
     private FitsCheckSum() {
     }
 }
@@ -33,8 +33,16 @@ package nom.tam.fits.utilities;
 
 import nom.tam.fits.BasicHDU;
 import nom.tam.fits.Fits;
-import nom.tam.util.BufferedFile;
+import nom.tam.fits.FitsFactory;
+import nom.tam.util.ChannelFile;
+import nom.tam.util.SafeClose;
 
+/**
+ * Copy a FITS file HDU by HDU. Both files are accessed through their file
+ * channels, so the data of the HDUs is copied with
+ * {@link java.nio.channels.FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+ * without decoding it.
+ */
 public final class FitsCopy {
 
     private FitsCopy() {
@@ -42,25 +50,25 @@ public final class FitsCopy {
 
     public static void main(String[] args) throws Exception {
         String file = args[0];
+        FitsFactory.setUseChannelFiles(true);
         Fits f = new Fits(file);
-        int i = 0;
-        BasicHDU<?> h;
-
-        do {
-            h = f.readHDU();
-            if (h != null) {
+        ChannelFile out = null;
+        try {
+            BasicHDU<?>[] hdus = f.read();
+            // copy before printing the info, which loads the data.
+            out = new ChannelFile(args[1], "rw");
+            f.write(out);
+            for (int i = 0; i < hdus.length; i++) {
                 if (i == 0) {
                     System.out.println("\n\nPrimary header:\n");
                 } else {
                     System.out.println("\n\nExtension " + i + ":\n");
                 }
-                i += 1;
-                h.info(System.out);
+                hdus[i].info(System.out);
             }
-        } while (h != null);
-        f.close();
-        BufferedFile bf = new BufferedFile(args[1], "rw");
-        f.write(bf);
-        bf.close();
+        } finally {
+            SafeClose.close(out);
+            f.close();
+        }
     }
 }
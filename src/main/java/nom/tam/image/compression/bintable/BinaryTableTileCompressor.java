@@ -31,16 +31,11 @@ package nom.tam.image.compression.bintable;
  * #L%
  */
 
-import java.io.IOException;
 import java.nio.ByteBuffer;
 
 import nom.tam.fits.FitsException;
 import nom.tam.image.compression.hdu.CompressedTableData;
-import nom.tam.util.ArrayDataOutput;
-import nom.tam.util.BufferedDataOutputStream;
-import nom.tam.util.ByteBufferOutputStream;
 import nom.tam.util.ColumnTable;
-import nom.tam.util.SafeClose;
 
 public class BinaryTableTileCompressor extends BinaryTableTile {
 
@@ -62,14 +57,7 @@ public class BinaryTableTileCompressor extends BinaryTableTile {
     @Override
     public void run() {
         ByteBuffer buffer = ByteBuffer.wrap(new byte[getUncompressedSizeInBytes()]);
-        ArrayDataOutput os = new BufferedDataOutputStream(new ByteBufferOutputStream(buffer));
-        try {
-            this.data.write(os, this.rowStart, this.rowEnd, this.column);
-        } catch (IOException e) {
-            throw new IllegalStateException("could not write compressed data", e);
-        } finally {
-            SafeClose.close(os);
-        }
+        this.data.write(buffer, this.rowStart, this.rowEnd, this.column);
         buffer.rewind();
         int spaceForCompression = getUncompressedSizeInBytes();
         // give the compression 10% more space and a minimum of 1024 bytes
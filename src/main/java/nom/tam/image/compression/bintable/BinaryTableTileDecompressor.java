@@ -31,21 +31,17 @@ package nom.tam.image.compression.bintable;
  * #L%
  */
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
 import java.nio.ByteBuffer;
 
 import nom.tam.fits.FitsException;
 import nom.tam.image.compression.hdu.CompressedTableData;
-import nom.tam.util.ArrayDataInput;
-import nom.tam.util.BufferedDataInputStream;
 import nom.tam.util.ColumnTable;
 
 public class BinaryTableTileDecompressor extends BinaryTableTile {
 
     private final ByteBuffer compressedBytes;
 
-    private ArrayDataInput is;
+    private ByteBuffer unCompressedBytes;
 
     public BinaryTableTileDecompressor(CompressedTableData binData, ColumnTable<?> columnTable, BinaryTableTileDescription description) throws FitsException {
         super(columnTable, description);
@@ -54,16 +50,12 @@ public class BinaryTableTileDecompressor extends BinaryTableTile {
 
     @Override
     public void run() {
-        if (this.is == null) {
-            ByteBuffer unCompressedBytes = ByteBuffer.wrap(new byte[getUncompressedSizeInBytes()]);
-            getCompressorControl().decompress(this.compressedBytes, type.asTypedBuffer(unCompressedBytes), null);
-            this.is = new BufferedDataInputStream(new ByteArrayInputStream(unCompressedBytes.array()));
-        }
-        try {
-            this.data.read(this.is, this.rowStart, this.rowEnd, this.column);
-        } catch (IOException e) {
-            throw new IllegalStateException("could not read compressed data", e);
+        if (this.unCompressedBytes == null) {
+            this.unCompressedBytes = ByteBuffer.wrap(new byte[getUncompressedSizeInBytes()]);
+            getCompressorControl().decompress(this.compressedBytes, type.asTypedBuffer(this.unCompressedBytes), null);
         }
+        this.unCompressedBytes.rewind();
+        this.data.read(this.unCompressedBytes, this.rowStart, this.rowEnd, this.column);
     }
 
 }
@@ -40,7 +40,9 @@ import nom.tam.fits.FitsException;
 import nom.tam.fits.Header;
 import nom.tam.fits.HeaderCard;
 import nom.tam.fits.compression.algorithm.api.ICompressOption;
+import nom.tam.image.ImageTiler;
 import nom.tam.image.compression.tile.TiledImageCompressionOperation;
+import nom.tam.util.ArrayDataOutput;
 import nom.tam.util.ArrayFuncs;
 
 public class CompressedImageData extends BinaryTable {
@@ -75,6 +77,10 @@ public class CompressedImageData extends BinaryTable {
         tiledImageOperation().compress(hdu);
     }
 
+    protected void compress(CompressedImageHDU hdu, ImageTiler source, ArrayDataOutput out) throws FitsException {
+        tiledImageOperation().compress(hdu, source, out);
+    }
+
     protected void forceNoLoss(int x, int y, int width, int heigth) {
         this.tiledImageOperation.forceNoLoss(x, y, width, heigth);
     }
@@ -84,12 +90,60 @@ public class CompressedImageData extends BinaryTable {
     }
 
     protected Buffer getUncompressedData(Header hdr) throws FitsException {
+        TiledImageCompressionOperation areaOperation = this.tiledImageOperation;
         try {
             this.tiledImageOperation = new TiledImageCompressionOperation(this).read(hdr);
+            if (areaOperation != null) {
+                this.tiledImageOperation.setParallelism(areaOperation.getParallelism());
+            }
             return this.tiledImageOperation.decompress();
         } finally {
-            this.tiledImageOperation = null;
+            // keep the settings and tiles used for decompressing areas.
+            this.tiledImageOperation = areaOperation;
+        }
+    }
+
+    /**
+     * decompress only the tiles intersecting the specified area of the image.
+     * The tile geometry is created once and reused for all areas.
+     *
+     * @param hdr
+     *            the header of the compressed hdu
+     * @param area
+     *            the buffer to fill with the pixels of the area
+     * @param x
+     *            the x position of the area in the image
+     * @param y
+     *            the y position of the area in the image
+     * @param width
+     *            the width of the area
+     * @param height
+     *            the height of the area
+     * @throws FitsException
+     *             if the compressed tiles could not be read
+     */
+    protected void getUncompressedData(Header hdr, Buffer area, int x, int y, int width, int height) throws FitsException {
+        tiledImageOperation().decompress(hdr, area, x, y, width, height);
+    }
+
+    /**
+     * create the tiles for an image that will be compressed tile by tile, the
+     * image is described by the header only.
+     *
+     * @param header
+     *            the header of the compressed hdu, including the description
+     *            of the uncompressed image
+     * @param tileAxis
+     *            the axis of the tiles in the image
+     * @throws FitsException
+     *             if the tiles could not be created
+     */
+    protected void prepareUncompressedTiles(Header header, int... tileAxis) throws FitsException {
+        tiledImageOperation().readPrimaryHeaders(header);
+        if (tileAxis.length > 0) {
+            tiledImageOperation().setTileAxes(tileAxis);
         }
+        tiledImageOperation().prepareTiles();
     }
 
     protected void prepareUncompressedData(Object data, Header header) throws FitsException {
@@ -122,6 +176,10 @@ public class CompressedImageData extends BinaryTable {
         tiledImageOperation().setCompressAlgorithm(compressAlgorithmCard);
     }
 
+    protected void setParallelism(int value) {
+        tiledImageOperation().setParallelism(value);
+    }
+
     protected void setQuantAlgorithm(HeaderCard quantAlgorithmCard) throws FitsException {
         tiledImageOperation().setQuantAlgorithm(quantAlgorithmCard);
     }
@@ -34,6 +34,7 @@ package nom.tam.image.compression.hdu;
 import static nom.tam.fits.header.Compression.ZIMAGE;
 import static nom.tam.fits.header.Standard.BLANK;
 
+import java.io.IOException;
 import java.nio.Buffer;
 import java.util.Arrays;
 import java.util.Collections;
@@ -51,6 +52,8 @@ import nom.tam.fits.compression.algorithm.api.ICompressOption;
 import nom.tam.fits.header.Compression;
 import nom.tam.fits.header.GenericKey;
 import nom.tam.fits.header.IFitsHeader;
+import nom.tam.image.ImageTiler;
+import nom.tam.util.ArrayDataOutput;
 import nom.tam.util.Cursor;
 
 /**
@@ -106,6 +109,37 @@ public class CompressedImageHDU extends BinaryTableHDU {
         return compressedImageHDU;
     }
 
+    /**
+     * Prepare a compressed image hdu for an image that is only described by
+     * its header, e.g. because it is too large to be held in memory. The tile
+     * axis that are not specified are set to the width of the image and 1.
+     * Next step would be to set the compression options into the hdu and then
+     * compress it tile by tile with
+     * {@link #compress(ImageTiler, ArrayDataOutput)}.
+     *
+     * @param imageHeader
+     *            the header of the image to compress
+     * @param tileAxis
+     *            the axis of the tiles in the image
+     * @return the prepared compressed image hdu.
+     * @throws FitsException
+     *             if the header could not be used to create a compressed
+     *             image.
+     */
+    public static CompressedImageHDU fromImageHeader(Header imageHeader, int... tileAxis) throws FitsException {
+        Header header = new Header();
+        CompressedImageData compressedData = new CompressedImageData();
+        compressedData.fillHeader(header);
+        Cursor<String, HeaderCard> iterator = header.iterator();
+        Cursor<String, HeaderCard> imageIterator = imageHeader.iterator();
+        while (imageIterator.hasNext()) {
+            HeaderCard card = imageIterator.next();
+            BackupRestoreUnCompressedHeaderCard.restore(card, iterator);
+        }
+        compressedData.prepareUncompressedTiles(header, tileAxis);
+        return new CompressedImageHDU(header, compressedData);
+    }
+
     /**
      * Check that this HDU has a valid header for this type.
      *
@@ -145,6 +179,23 @@ public class CompressedImageHDU extends BinaryTableHDU {
         getData().compress(this);
     }
 
+    /**
+     * Compress the image tile by tile and write this hdu to the output. The
+     * pixels of every tile are requested from the source just before the tile
+     * is compressed, so the uncompressed image never has to be in memory. The
+     * compressed table is only written to the output, this hdu is not changed.
+     *
+     * @param source
+     *            the tiler providing the pixels of the uncompressed image
+     * @param out
+     *            the output to write the hdu to
+     * @throws FitsException
+     *             if the image could not be compressed or written
+     */
+    public void compress(ImageTiler source, ArrayDataOutput out) throws FitsException {
+        getData().compress(this, source, out);
+    }
+
     /**
      * Specify an areaWithin the image that will not undergo a lossy
      * compression. This will only have affect it the selected compression
@@ -176,6 +227,31 @@ public class CompressedImageHDU extends BinaryTableHDU {
         return (CompressedImageData) super.getData();
     }
 
+    /**
+     * @return a tiler over the uncompressed image, that decompresses only the
+     *         tiles needed for a requested sub-image.
+     */
+    public ImageTiler getTiler() {
+        return new CompressedImageTiler(this);
+    }
+
+    /**
+     * Get a subset of the uncompressed image, only the tiles that intersect
+     * the requested sub-image are read and decompressed. The sub-image is
+     * returned as a one-dimensional array.
+     *
+     * @param corners
+     *            The starting corner (using 0 as the start) for the image.
+     * @param lengths
+     *            The length requested in each dimension.
+     * @return the pixels of the sub-image
+     * @throws IOException
+     *             if the sub-image could not be read
+     */
+    public Object getTile(int[] corners, int[] lengths) throws IOException {
+        return getTiler().getTile(corners, lengths);
+    }
+
     public Buffer getUncompressedData() throws FitsException {
         return getData().getUncompressedData(getHeader());
     }
@@ -211,6 +287,20 @@ public class CompressedImageHDU extends BinaryTableHDU {
         return this;
     }
 
+    /**
+     * limit the number of tiles of this hdu that are compressed or
+     * decompressed at the same time.
+     *
+     * @param value
+     *            the maximum number of tiles in flight, 0 or less to use the
+     *            setting of the FitsFactory
+     * @return this
+     */
+    public CompressedImageHDU setParallelism(int value) {
+        getData().setParallelism(value);
+        return this;
+    }
+
     public CompressedImageHDU setQuantAlgorithm(String quantAlgorithm) throws FitsException {
         if (quantAlgorithm != null && !quantAlgorithm.isEmpty()) {
             HeaderCard quantAlgorithmCard = getHeader().card(Compression.ZQUANTIZ).value(quantAlgorithm).card();
@@ -0,0 +1,163 @@
+package nom.tam.image.compression.hdu;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 1996 - 2021 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import static nom.tam.fits.header.Compression.ZBITPIX;
+import static nom.tam.fits.header.Compression.ZNAXIS;
+import static nom.tam.fits.header.Compression.ZNAXISn;
+
+import java.io.IOException;
+import java.nio.Buffer;
+
+import nom.tam.fits.FitsException;
+import nom.tam.fits.Header;
+import nom.tam.image.ImageTiler;
+import nom.tam.util.ArrayDataOutput;
+import nom.tam.util.ArrayFuncs;
+import nom.tam.util.type.PrimitiveType;
+import nom.tam.util.type.PrimitiveTypeHandler;
+
+/**
+ * Image tiler over the uncompressed image of a compressed image hdu. A
+ * sub-image is created by decompressing only the tiles that intersect it, so
+ * the complete image is never decompressed for a sub-image request. At the
+ * moment only 2 dimensional images are supported.
+ */
+public class CompressedImageTiler implements ImageTiler {
+
+    private final CompressedImageHDU hdu;
+
+    public CompressedImageTiler(CompressedImageHDU hdu) {
+        this.hdu = hdu;
+    }
+
+    @Override
+    public Object getCompleteImage() throws IOException {
+        try {
+            return ArrayFuncs.curl(this.hdu.getUncompressedData().array(), getDimensions());
+        } catch (FitsException e) {
+            throw new IOException("Could not decompress the image", e);
+        }
+    }
+
+    /**
+     * Get a subset of the image. An image tile is returned as a one-dimensional
+     * array although the image will normally be multi-dimensional.
+     * 
+     * @param corners
+     *            The starting corner (using 0 as the start) for the image.
+     * @param lengths
+     *            The length requested in each dimension.
+     * @throws IOException
+     *             if the compressed tiles could not be read
+     */
+    @Override
+    public Object getTile(int[] corners, int[] lengths) throws IOException {
+        int[] dims = getDimensions();
+        checkTile(dims, corners, lengths);
+        int arraySize = 1;
+        for (int length : lengths) {
+            arraySize *= length;
+        }
+        Object outArray = getBaseType().newArray(arraySize);
+        getTile(outArray, corners, lengths);
+        return outArray;
+    }
+
+    @Override
+    public void getTile(ArrayDataOutput output, int[] corners, int[] lengths) throws FitsException, IOException {
+        if (output == null) {
+            throw new IOException("Attempt to read from null data output");
+        }
+        output.writeArray(getTile(corners, lengths));
+        output.flush();
+    }
+
+    /**
+     * Get a tile, filling in a prespecified array.
+     * 
+     * @param outArray
+     *            The output tile array. A one-dimensional array. The length of
+     *            this array should be the product of lengths.
+     * @param corners
+     *            The corners of the tile.
+     * @param lengths
+     *            The dimensions of the tile.
+     * @throws IOException
+     *             if the compressed tiles could not be read
+     */
+    @Override
+    public void getTile(Object outArray, int[] corners, int[] lengths) throws IOException {
+        checkTile(getDimensions(), corners, lengths);
+        try {
+            this.hdu.getData().getUncompressedData(this.hdu.getHeader(), getBaseType().wrap(outArray), corners[1], corners[0], lengths[1], lengths[0]);
+        } catch (FitsException e) {
+            throw new IOException("Could not decompress the tiles of the sub-image", e);
+        }
+    }
+
+    private void checkTile(int[] dims, int[] corners, int[] lengths) throws IOException {
+        if (dims.length != 2) {
+            throw new IOException("Only 2 dimensional compressed images support sub-images");
+        }
+        if (corners.length != dims.length || lengths.length != dims.length) {
+            throw new IOException("Inconsistent sub-image request");
+        }
+        for (int i = 0; i < dims.length; i += 1) {
+            if (corners[i] < 0 || lengths[i] < 0 || corners[i] + lengths[i] > dims[i]) {
+                throw new IOException("Sub-image not within image");
+            }
+        }
+    }
+
+    private PrimitiveType<Buffer> getBaseType() {
+        int zBitPix = this.hdu.getHeader().getIntValue(ZBITPIX);
+        PrimitiveType<Buffer> primitiveType = PrimitiveTypeHandler.valueOf(zBitPix);
+        if (primitiveType == null) {
+            primitiveType = PrimitiveTypeHandler.nearestValueOf(zBitPix);
+        }
+        return primitiveType;
+    }
+
+    /**
+     * @return the dimensions of the uncompressed image in java order.
+     */
+    private int[] getDimensions() {
+        Header header = this.hdu.getHeader();
+        int naxis = header.getIntValue(ZNAXIS);
+        int[] dims = new int[naxis];
+        for (int i = 1; i <= naxis; i++) {
+            dims[naxis - i] = header.getIntValue(ZNAXISn.n(i));
+        }
+        return dims;
+    }
+}
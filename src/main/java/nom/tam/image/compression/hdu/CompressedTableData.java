@@ -36,7 +36,9 @@ import static nom.tam.image.compression.bintable.BinaryTableTileDescription.tile
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import nom.tam.fits.BinaryTable;
 import nom.tam.fits.FitsException;
@@ -57,6 +59,12 @@ public class CompressedTableData extends BinaryTable {
 
     private String[] columnCompressionAlgorithms;
 
+    /**
+     * maximum number of tiles submitted at the same time, 0 or less to use the
+     * setting of the FitsFactory.
+     */
+    private int parallelism;
+
     public CompressedTableData() {
     }
 
@@ -65,11 +73,8 @@ public class CompressedTableData extends BinaryTable {
     }
 
     public void compress(Header header) throws FitsException {
+        processTiles();
         for (BinaryTableTile binaryTableTile : this.tiles) {
-            binaryTableTile.execute(FitsFactory.threadPool());
-        }
-        for (BinaryTableTile binaryTableTile : this.tiles) {
-            binaryTableTile.waitForResult();
             binaryTableTile.fillHeader(header);
         }
         fillHeader(header);
@@ -128,12 +133,9 @@ public class CompressedTableData extends BinaryTable {
                                 .tileIndex(tileIndex++)//
                                 .compressionAlgorithm(compressionAlgorithm));
                 this.tiles.add(binaryTableTile);
-                binaryTableTile.execute(FitsFactory.threadPool());
             }
         }
-        for (BinaryTableTile binaryTableTile : this.tiles) {
-            binaryTableTile.waitForResult();
-        }
+        processTiles();
         return dataToFill;
     }
 
@@ -141,6 +143,10 @@ public class CompressedTableData extends BinaryTable {
         return this.rowsPerTile;
     }
 
+    protected void setParallelism(int value) {
+        this.parallelism = value;
+    }
+
     protected void setColumnCompressionAlgorithms(String[] columnCompressionAlgorithms) {
         this.columnCompressionAlgorithms = columnCompressionAlgorithms;
     }
@@ -149,4 +155,20 @@ public class CompressedTableData extends BinaryTable {
         this.rowsPerTile = value;
         return this;
     }
+
+    private void processTiles() {
+        ExecutorService threadPool = FitsFactory.threadPool();
+        int maxInFlight = this.parallelism > 0 ? this.parallelism : FitsFactory.getTileParallelism();
+        LinkedList<BinaryTableTile> inFlight = new LinkedList<BinaryTableTile>();
+        for (BinaryTableTile binaryTableTile : this.tiles) {
+            binaryTableTile.execute(threadPool);
+            inFlight.add(binaryTableTile);
+            if (inFlight.size() >= maxInFlight) {
+                inFlight.removeFirst().waitForResult();
+            }
+        }
+        for (BinaryTableTile binaryTableTile : inFlight) {
+            binaryTableTile.waitForResult();
+        }
+    }
 }
@@ -130,4 +130,18 @@ public class CompressedTableHDU extends BinaryTableHDU {
         return (CompressedTableData) super.getData();
     }
 
+    /**
+     * limit the number of tiles of this hdu that are compressed or
+     * decompressed at the same time.
+     *
+     * @param value
+     *            the maximum number of tiles in flight, 0 or less to use the
+     *            setting of the FitsFactory
+     * @return this
+     */
+    public CompressedTableHDU setParallelism(int value) {
+        getData().setParallelism(value);
+        return this;
+    }
+
 }
@@ -32,6 +32,7 @@ package nom.tam.image.compression.tile;
  */
 
 import java.lang.reflect.Array;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 
 import nom.tam.fits.compression.algorithm.api.ICompressOption;
@@ -41,6 +42,7 @@ import nom.tam.image.compression.tile.mask.ImageNullPixelMask;
 import nom.tam.image.tile.operation.AbstractTileOperation;
 import nom.tam.image.tile.operation.ITileOperation;
 import nom.tam.image.tile.operation.TileArea;
+import nom.tam.image.tile.operation.buffer.TileBufferFactory;
 import nom.tam.util.type.PrimitiveTypeHandler;
 import nom.tam.util.type.PrimitiveTypes;
 
@@ -83,16 +85,19 @@ abstract class TileCompressionOperation extends AbstractTileOperation implements
     }
 
     protected byte[] getCompressedData() {
+        if (this.compressedData == null) {
+            throw new IllegalStateException("compressed data of tile " + getTileIndex() + " was already released");
+        }
+        if (this.compressedData.hasArray() && this.compressedData.arrayOffset() == 0 && this.compressedData.array().length == this.compressedData.limit()) {
+            // the tile kept an exactly sized copy of its compressed data.
+            return this.compressedData.array();
+        }
         byte[] data = new byte[this.compressedData.limit()];
         this.compressedData.rewind();
         PrimitiveTypes.BYTE.getArray(this.compressedData, data);
         return data;
     }
 
-    protected ByteBuffer getCompressedWholeArea() {
-        return getTiledImageOperation().getCompressedWholeArea();
-    }
-
     protected TileCompressionType getCompressionType() {
         return this.compressionType;
     }
@@ -134,22 +139,27 @@ abstract class TileCompressionOperation extends AbstractTileOperation implements
     }
 
     /**
-     * set the buffer that describes the whole compressed image and let the tile
-     * create a slice of it from the position where the tile starts in the whole
-     * image. Attention this method is not thread-safe because it changes the
-     * position of the buffer parameter. This buffer is just as big as the image
-     * buffer but will be reduced to the needed size as a last step of the
-     * Compression.
+     * release the pixel and compressed data of the tile, after that the tile
+     * can not be processed anymore.
+     */
+    protected void releaseData() {
+        this.compressedData = null;
+        setTileBuffer(null);
+    }
+
+    /**
+     * let the tile work on a buffer of its own instead of a slice of the whole
+     * image buffer, so that single tiles can be processed without allocating
+     * the complete image.
      *
-     * @param compressed
-     *            the buffer that describes the whole image.
+     * @param buffer
+     *            the buffer with space for exactly the pixels of this tile.
+     * @return this
      */
-    protected void setWholeImageCompressedBuffer(ByteBuffer compressed) {
-        compressed.position(this.compressedOffset * getBaseType().size());
-        this.compressedData = compressed.slice();
-        this.compressedOffset = 0;
-        // we do not limit this buffer but is expected not to write more than
-        // the uncompressed size.
+    protected TileCompressionOperation setTileOnlyBuffer(Buffer buffer) {
+        int width = getTileBuffer().getWidth();
+        setTileBuffer(TileBufferFactory.createTileBuffer(getBaseType(), 0, width, width, getTileBuffer().getHeight()).setData(buffer));
+        return this;
     }
 
     protected abstract AbstractNullPixelMask createImageNullPixelMask(ImageNullPixelMask imageNullPixelMask);
@@ -32,14 +32,26 @@ package nom.tam.image.compression.tile;
  */
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import nom.tam.image.compression.tile.mask.ImageNullPixelMask;
 import nom.tam.image.compression.tile.mask.NullPixelMaskPreserver;
 import nom.tam.image.tile.operation.TileArea;
-import nom.tam.util.type.PrimitiveTypes;
 
 public class TileCompressor extends TileCompressionOperation {
 
+    /**
+     * Scratch buffer per thread to compress the tiles into. Tiles are
+     * compressed independent of each other, afterwards only the compressed
+     * bytes are kept by the tile and the buffer is reused for the next tile
+     * processed by the same thread. Buffers larger than
+     * {@link #MAX_CACHED_COMPRESS_BUFFER_SIZE} are not kept, so a pool thread
+     * never holds on to the largest tile it has seen.
+     */
+    private static final ThreadLocal<ByteBuffer> COMPRESS_BUFFER = new ThreadLocal<ByteBuffer>();
+
+    private static final int MAX_CACHED_COMPRESS_BUFFER_SIZE = 1024 * 1024;
+
     private boolean forceNoLoss = false;
 
     private NullPixelMaskPreserver nullPixelMaskPerserver;
@@ -48,33 +60,39 @@ public class TileCompressor extends TileCompressionOperation {
         super(array, tileIndex, area);
     }
 
+    private static ByteBuffer compressBuffer(int size) {
+        ByteBuffer buffer = COMPRESS_BUFFER.get();
+        if (size > MAX_CACHED_COMPRESS_BUFFER_SIZE) {
+            buffer = ByteBuffer.allocate(size);
+        } else if (buffer == null || buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate(size);
+            COMPRESS_BUFFER.set(buffer);
+        }
+        buffer.clear();
+        buffer.limit(size);
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        return buffer;
+    }
+
     @Override
     public void run() {
         compress();
     }
 
     /**
-     * lets close the gaps in the data as soon as the previous tiles are also
-     * compressed. the compressed data of the first tile is used to append the
-     * complete block.
+     * copy the compressed bytes out of the scratch buffer, so the tile only
+     * holds the memory it really needs.
      */
-    private void compactCompressedData() {
-        if (getTileIndex() > 0) {
-            // wait for the previous tile to finish.
-            getPreviousTileOperation().waitForResult();
-            ByteBuffer compressedWholeArea = getCompressedWholeArea();
-            this.compressedOffset = compressedWholeArea.position();
-            PrimitiveTypes.BYTE.appendBuffer(compressedWholeArea, this.compressedData);
-            replaceCompressedBufferWithTargetArea(compressedWholeArea);
-        } else {
-            this.compressedOffset = 0;
-            getCompressedWholeArea().position(this.compressedData.limit());
-        }
+    private void keepCompressedData() {
+        byte[] compressed = new byte[this.compressedData.limit()];
+        this.compressedData.get(compressed);
+        this.compressedData = ByteBuffer.wrap(compressed);
+        this.compressedOffset = 0;
     }
 
     private void compress() {
         initTileOptions();
-        this.compressedData.limit(getTileBuffer().getPixelSize() * getBaseType().size());
+        this.compressedData = compressBuffer(getTileBuffer().getPixelSize() * getBaseType().size());
         this.compressionType = TileCompressionType.COMPRESSED;
         boolean compressSuccess = false;
         boolean tryNormalCompression = !(this.tileOptions.isLossyCompression() && this.forceNoLoss);
@@ -99,16 +117,7 @@ public class TileCompressor extends TileCompressionOperation {
         this.compressedData.limit(this.compressedData.position());
         this.compressedData.rewind();
         this.tileOptions.getCompressionParameters().setValueFromColumn(getTileIndex());
-        compactCompressedData();
-    }
-
-    private void replaceCompressedBufferWithTargetArea(ByteBuffer compressedWholeArea) {
-        int compressedSize = this.compressedData.limit();
-        int latest = compressedWholeArea.position();
-        compressedWholeArea.position(this.compressedOffset);
-        this.compressedData = compressedWholeArea.slice();
-        this.compressedData.limit(compressedSize);
-        compressedWholeArea.position(latest);
+        keepCompressedData();
     }
 
     @Override
@@ -57,8 +57,9 @@ final class TileCompressorInitialisation implements ITileOperationInitialisation
     @Override
     public void init(TileCompressionOperation tileOperation) {
         tileOperation.setCompressedOffset(this.compressedOffset);
-        tileOperation.setWholeImageBuffer(this.buffer);
-        tileOperation.setWholeImageCompressedBuffer(this.imageTilesOperation.getCompressedWholeArea());
+        if (this.buffer != null) {
+            tileOperation.setWholeImageBuffer(this.buffer);
+        }
         this.compressedOffset += tileOperation.getPixelSize();
     }
 
@@ -63,6 +63,18 @@ final class TileDecompressorInitialisation implements ITileOperationInitialisati
         this.header = header;
     }
 
+    /**
+     * create an initialisation that only sets up the tile geometry, the tile
+     * data and the column based compression parameters are initialized later
+     * for just the tiles that are needed.
+     *
+     * @param imageTilesOperation
+     *            the operation the tiles belong to
+     */
+    protected TileDecompressorInitialisation(TiledImageCompressionOperation imageTilesOperation) {
+        this(imageTilesOperation, null, null, null, null);
+    }
+
     @Override
     public TileCompressionOperation createTileOperation(int tileIndex, TileArea area) {
         return new TileDecompressor(this.imageTilesOperation, tileIndex, area);
@@ -80,6 +92,8 @@ final class TileDecompressorInitialisation implements ITileOperationInitialisati
 
     @Override
     public void tileCount(int tileCount) throws FitsException {
-        this.imageTilesOperation.compressOptions().getCompressionParameters().initializeColumns(this.header, this.imageTilesOperation.getBinaryTable(), tileCount);
+        if (this.header != null) {
+            this.imageTilesOperation.compressOptions().getCompressionParameters().initializeColumns(this.header, this.imageTilesOperation.getBinaryTable(), tileCount);
+        }
     }
 }
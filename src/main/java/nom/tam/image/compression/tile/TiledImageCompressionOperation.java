@@ -43,21 +43,32 @@ import static nom.tam.fits.header.Compression.ZNAXIS;
 import static nom.tam.fits.header.Compression.ZNAXISn;
 import static nom.tam.fits.header.Compression.ZQUANTIZ;
 import static nom.tam.fits.header.Compression.ZTILEn;
+import static nom.tam.fits.header.Standard.NAXIS1;
+import static nom.tam.fits.header.Standard.NAXIS2;
+import static nom.tam.fits.header.Standard.PCOUNT;
+import static nom.tam.fits.header.Standard.TDIMn;
+import static nom.tam.fits.header.Standard.TFORMn;
 import static nom.tam.fits.header.Standard.TTYPEn;
 import static nom.tam.image.compression.tile.TileCompressionType.COMPRESSED;
 import static nom.tam.image.compression.tile.TileCompressionType.GZIP_COMPRESSED;
 import static nom.tam.image.compression.tile.TileCompressionType.UNCOMPRESSED;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Array;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 
 import nom.tam.fits.BinaryTable;
 import nom.tam.fits.BinaryTableHDU;
 import nom.tam.fits.FitsException;
 import nom.tam.fits.FitsFactory;
+import nom.tam.fits.FitsUtil;
 import nom.tam.fits.Header;
 import nom.tam.fits.HeaderCard;
 import nom.tam.fits.HeaderCardBuilder;
@@ -66,9 +77,16 @@ import nom.tam.fits.compression.algorithm.api.ICompressorControl;
 import nom.tam.fits.compression.provider.CompressorProvider;
 import nom.tam.fits.compression.provider.param.api.HeaderAccess;
 import nom.tam.fits.compression.provider.param.api.HeaderCardAccess;
+import nom.tam.fits.compression.provider.param.api.ICompressParameters;
+import nom.tam.fits.compression.provider.param.base.CompressParameters;
+import nom.tam.image.ImageTiler;
 import nom.tam.image.compression.tile.mask.ImageNullPixelMask;
 import nom.tam.image.tile.operation.AbstractTiledImageOperation;
 import nom.tam.image.tile.operation.TileArea;
+import nom.tam.util.ArrayDataOutput;
+import nom.tam.util.BufferedFile;
+import nom.tam.util.Cursor;
+import nom.tam.util.SafeClose;
 import nom.tam.util.type.PrimitiveType;
 import nom.tam.util.type.PrimitiveTypeHandler;
 import nom.tam.util.type.PrimitiveTypes;
@@ -81,6 +99,8 @@ import nom.tam.util.type.PrimitiveTypes;
  */
 public class TiledImageCompressionOperation extends AbstractTiledImageOperation<TileCompressionOperation> {
 
+    private static final int HEAP_COPY_BUFFER_SIZE = 64 * 1024;
+
     /**
      * ZCMPTYPE name of the algorithm that was used to compress
      */
@@ -88,8 +108,6 @@ public class TiledImageCompressionOperation extends AbstractTiledImageOperation<
 
     private final BinaryTable binaryTable;
 
-    private ByteBuffer compressedWholeArea;
-
     // Note: field is initialized lazily: use getter within class!
     private ICompressorControl compressorControl;
 
@@ -105,6 +123,21 @@ public class TiledImageCompressionOperation extends AbstractTiledImageOperation<
 
     private ImageNullPixelMask imageNullPixelMask;
 
+    /**
+     * maximum number of tiles submitted at the same time, 0 or less to use the
+     * setting of the FitsFactory.
+     */
+    private int parallelism;
+
+    /**
+     * the header the tiles were last created from to decompress areas of the
+     * image, as long as the tiles stay the same their geometry is reused for
+     * the next area of the same header.
+     */
+    private Header areaHeader;
+
+    private TileCompressionOperation[] areaTiles;
+
     private static void addColumnToTable(BinaryTableHDU hdu, Object column, String columnName) throws FitsException {
         if (column != null) {
             hdu.setColumnName(hdu.addColumn(column) - 1, columnName, null);
@@ -138,6 +171,68 @@ public class TiledImageCompressionOperation extends AbstractTiledImageOperation<
         writeHeader(hdu.getHeader());
     }
 
+    /**
+     * compress the image tile by tile and write the complete hdu (header and
+     * data) to the output. The pixels of each tile are requested from the
+     * source just before the tile is compressed and only a limited number of
+     * tiles is processed at the same time, so the image never has to fit in
+     * memory. The compressed tiles are collected in a temporary heap file,
+     * because the table layout and the heap size are only known after the last
+     * tile. The compressed table is built in a copy of the header of the hdu,
+     * the hdu itself is not changed.
+     *
+     * @param hdu
+     *            the hdu describing the compressed image
+     * @param source
+     *            the source of the uncompressed pixels
+     * @param out
+     *            the output to write the hdu to
+     * @throws FitsException
+     *             if the tiles could not be compressed or written
+     */
+    public void compress(BinaryTableHDU hdu, ImageTiler source, ArrayDataOutput out) throws FitsException {
+        if (this.imageNullPixelMask != null) {
+            throw new FitsException("Null pixel masks are not supported when compressing tile by tile");
+        }
+        File heapFile = null;
+        BufferedFile heap = null;
+        try {
+            heapFile = File.createTempFile("nom-tam-fits-heap", ".tmp");
+            heap = new BufferedFile(heapFile, "rw");
+            long[][] descriptors = new long[getNumberOfTileOperations()][];
+            ExecutorService threadPool = FitsFactory.threadPool();
+            int maxInFlight = maxTilesInFlight();
+            LinkedList<TileCompressionOperation> inFlight = new LinkedList<TileCompressionOperation>();
+            for (TileCompressionOperation tileOperation : getTileOperations()) {
+                readTile(source, tileOperation);
+                tileOperation.execute(threadPool);
+                inFlight.add(tileOperation);
+                if (inFlight.size() >= maxInFlight) {
+                    streamTile(inFlight.removeFirst(), heap, descriptors);
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                streamTile(inFlight.removeFirst(), heap, descriptors);
+            }
+            long heapSize = heap.length();
+            BinaryTableHDU streamed = new BinaryTableHDU(copyHeader(hdu.getHeader()), new BinaryTable());
+            writeStreamedColumns(streamed, descriptors, heapSize);
+            writeHeader(streamed.getHeader());
+            streamed.getHeader().addValue(PCOUNT, heapSize);
+            streamed.getHeader().write(out);
+            streamed.getData().getData().write(out);
+            copyHeap(heap, out);
+            FitsUtil.pad(out, (long) streamed.getHeader().getIntValue(NAXIS1) * streamed.getHeader().getIntValue(NAXIS2) + heapSize);
+        } catch (IOException e) {
+            throw new FitsException("Could not write the compressed tiles", e);
+        } finally {
+            SafeClose.close(heap);
+            if (heapFile != null && !heapFile.delete()) {
+                heapFile.deleteOnExit();
+            }
+        }
+    }
+
     @Override
     public ICompressOption compressOptions() {
         initializeCompressionControl();
@@ -154,6 +249,80 @@ public class TiledImageCompressionOperation extends AbstractTiledImageOperation<
         return decompressedWholeArea;
     }
 
+    /**
+     * decompress only the tiles that intersect the specified area of the image
+     * and copy the overlapping pixels into the area buffer. Only the table
+     * rows of the intersecting tiles are read, the tiles are decompressed in
+     * parallel. The tiles are only created for the first area of a header,
+     * later areas of the same header reuse them.
+     *
+     * @param header
+     *            the header of the compressed hdu
+     * @param area
+     *            the array backed buffer to fill, with space for width *
+     *            height pixels ordered from left to right and top down.
+     * @param x
+     *            the x position of the area in the image
+     * @param y
+     *            the y position of the area in the image
+     * @param width
+     *            the width of the area
+     * @param height
+     *            the height of the area
+     * @throws FitsException
+     *             if the compressed tiles could not be read
+     */
+    public void decompress(Header header, Buffer area, int x, int y, int width, int height) throws FitsException {
+        if (this.areaHeader != header || this.areaTiles != getTileOperations()) {
+            readPrimaryHeaders(header);
+            setCompressAlgorithm(header.findCard(ZCMPTYPE));
+            setQuantAlgorithm(header.findCard(ZQUANTIZ));
+            // the compressor control follows the algorithms of the header.
+            this.compressorControl = null;
+            createTiles(new TileDecompressorInitialisation(this));
+            this.areaHeader = header;
+            this.areaTiles = getTileOperations();
+        }
+        TileArea requestedArea = new TileArea().start(x, y).end(x + width, y + height);
+        List<TileCompressionOperation> tiles = new ArrayList<TileCompressionOperation>();
+        for (TileCompressionOperation tileOperation : getTileOperations()) {
+            if (tileOperation.getArea().intersects(requestedArea)) {
+                tiles.add(tileOperation);
+            }
+        }
+        int[] rows = new int[tiles.size()];
+        for (int index = 0; index < rows.length; index++) {
+            rows[index] = tiles.get(index).getTileIndex();
+        }
+        TileDecompressorInitialisation init = new TileDecompressorInitialisation(this, //
+                getNullableColumn(header, Object[].class, UNCOMPRESSED_DATA_COLUMN, rows), //
+                getNullableColumn(header, Object[].class, COMPRESSED_DATA_COLUMN, rows), //
+                getNullableColumn(header, Object[].class, GZIP_COMPRESSED_DATA_COLUMN, rows), //
+                new HeaderAccess(header));
+        Buffer[] tileBuffers = new Buffer[rows.length];
+        for (int index = 0; index < rows.length; index++) {
+            TileCompressionOperation tileOperation = tiles.get(index);
+            tileBuffers[index] = getBaseType().newBuffer(tileOperation.getPixelSize());
+            init.init(tileOperation.setTileOnlyBuffer(tileBuffers[index]));
+        }
+        ICompressParameters parameters = compressOptions().getCompressionParameters();
+        if (parameters instanceof CompressParameters) {
+            ((CompressParameters) parameters).initializeColumns(new HeaderAccess(header), this.binaryTable, getNumberOfTileOperations(), rows);
+        } else {
+            // parameters of other providers only know how to read all rows.
+            parameters.initializeColumns(new HeaderAccess(header), this.binaryTable, getNumberOfTileOperations());
+        }
+        byte[][] nullPixels = getNullableColumn(header, byte[][].class, NULL_PIXEL_MASK_COLUMN, rows);
+        if (nullPixels != null) {
+            preserveNulls(0L, header.getStringValue(ZMASKCMP)).setColumn(nullPixels);
+        }
+        readCompressionHeaders(header);
+        processTiles(tiles);
+        for (int index = 0; index < rows.length; index++) {
+            copyOverlap(tiles.get(index).getArea(), tileBuffers[index], area, requestedArea);
+        }
+    }
+
     public void forceNoLoss(int x, int y, int width, int heigth) {
         TileArea tileArea = new TileArea().start(x, y).end(x + width, y + heigth);
         for (TileCompressionOperation operation : getTileOperations()) {
@@ -163,9 +332,15 @@ public class TiledImageCompressionOperation extends AbstractTiledImageOperation<
         }
     }
 
+    /**
+     * @deprecated tiles compress into buffers of their own, there is no buffer
+     *             for the whole compressed area any more.
+     * @return always null.
+     */
     @Override
+    @Deprecated
     public ByteBuffer getCompressedWholeArea() {
-        return this.compressedWholeArea;
+        return null;
     }
 
     @Override
@@ -182,10 +357,30 @@ public class TiledImageCompressionOperation extends AbstractTiledImageOperation<
         return this.gzipCompressorControl;
     }
 
+    /**
+     * @return the maximum number of tiles of this operation that are submitted
+     *         to the thread pool at the same time, 0 or less if the setting of
+     *         the FitsFactory is used.
+     */
+    public int getParallelism() {
+        return this.parallelism;
+    }
+
+    /**
+     * create the tiles for an image that will be compressed tile by tile,
+     * without allocating buffers for the whole image.
+     *
+     * @return this
+     * @throws FitsException
+     *             if the tiles could not be created
+     */
+    public TiledImageCompressionOperation prepareTiles() throws FitsException {
+        createTiles(new TileCompressorInitialisation(this, null));
+        return this;
+    }
+
     public TiledImageCompressionOperation prepareUncompressedData(final Buffer buffer) throws FitsException {
-        this.compressedWholeArea = ByteBuffer.wrap(new byte[getBaseType().size() * getBufferSize()]);
         createTiles(new TileCompressorInitialisation(this, buffer));
-        this.compressedWholeArea.rewind();
         return this;
     }
 
@@ -237,6 +432,20 @@ public class TiledImageCompressionOperation extends AbstractTiledImageOperation<
         return this;
     }
 
+    /**
+     * limit the number of tiles of this operation that are submitted to the
+     * thread pool at the same time.
+     *
+     * @param value
+     *            the maximum number of tiles in flight, 0 or less to use
+     *            {@link FitsFactory#getTileParallelism()}
+     * @return this
+     */
+    public TiledImageCompressionOperation setParallelism(int value) {
+        this.parallelism = value;
+        return this;
+    }
+
     public TiledImageCompressionOperation setQuantAlgorithm(HeaderCard quantAlgorithmCard) {
         if (quantAlgorithmCard != null) {
             this.quantAlgorithm = quantAlgorithmCard.getValue();
@@ -246,6 +455,57 @@ public class TiledImageCompressionOperation extends AbstractTiledImageOperation<
         return this;
     }
 
+    private static String columnName(TileCompressionType compression) {
+        if (compression == GZIP_COMPRESSED) {
+            return GZIP_COMPRESSED_DATA_COLUMN;
+        } else if (compression == UNCOMPRESSED) {
+            return UNCOMPRESSED_DATA_COLUMN;
+        }
+        return COMPRESSED_DATA_COLUMN;
+    }
+
+    private static Header copyHeader(Header header) throws FitsException {
+        Header copy = new Header();
+        Cursor<String, HeaderCard> copyIterator = copy.iterator();
+        Cursor<String, HeaderCard> iterator = header.iterator();
+        while (iterator.hasNext()) {
+            copyIterator.add(iterator.next().copy());
+        }
+        return copy;
+    }
+
+    private void copyHeap(BufferedFile heap, ArrayDataOutput out) throws IOException {
+        byte[] buffer = new byte[HEAP_COPY_BUFFER_SIZE];
+        heap.seek(0);
+        long remaining = heap.length();
+        while (remaining > 0) {
+            int count = (int) Math.min(buffer.length, remaining);
+            heap.readFully(buffer, 0, count);
+            out.write(buffer, 0, count);
+            remaining -= count;
+        }
+    }
+
+    private void copyOverlap(TileArea tileArea, Buffer tileBuffer, Buffer area, TileArea requestedArea) {
+        int[] tileStart = tileArea.getStartPoint();
+        int[] tileEnd = tileArea.getEndPoint();
+        int[] areaStart = requestedArea.getStartPoint();
+        int[] areaEnd = requestedArea.getEndPoint();
+        int tileWidth = tileEnd[0] - tileStart[0];
+        int areaWidth = areaEnd[0] - areaStart[0];
+        int fromX = Math.max(tileStart[0], areaStart[0]);
+        int toX = Math.min(tileEnd[0], areaEnd[0]);
+        int fromY = Math.max(tileStart[1], areaStart[1]);
+        int toY = Math.min(tileEnd[1], areaEnd[1]);
+        Object tileArray = tileBuffer.array();
+        Object areaArray = area.array();
+        for (int row = fromY; row < toY; row++) {
+            System.arraycopy(tileArray, tileBuffer.arrayOffset() + (row - tileStart[1]) * tileWidth + fromX - tileStart[0], //
+                    areaArray, area.arrayOffset() + (row - areaStart[1]) * areaWidth + fromX - areaStart[0], //
+                    toX - fromX);
+        }
+    }
+
     private <T> T getNullableColumn(Header header, Class<T> class1, String columnName) throws FitsException {
         for (int i = 1; i <= this.binaryTable.getNCols(); i++) {
             String val = header.getStringValue(TTYPEn.n(i));
@@ -256,6 +516,24 @@ public class TiledImageCompressionOperation extends AbstractTiledImageOperation<
         return null;
     }
 
+    /**
+     * read only the specified rows of the column, all other entries of the
+     * returned column are null.
+     */
+    private <T> T getNullableColumn(Header header, Class<T> class1, String columnName, int[] rows) throws FitsException {
+        for (int i = 1; i <= this.binaryTable.getNCols(); i++) {
+            String val = header.getStringValue(TTYPEn.n(i));
+            if (val != null && val.trim().equals(columnName)) {
+                Object column = Array.newInstance(class1.getComponentType(), getNumberOfTileOperations());
+                for (int row : rows) {
+                    Array.set(column, row, this.binaryTable.getElement(row, i - 1));
+                }
+                return class1.cast(column);
+            }
+        }
+        return null;
+    }
+
     private void initializeCompressionControl() {
         if (this.compressorControl == null) {
             this.compressorControl = CompressorProvider.findCompressorControl(this.quantAlgorithm, this.compressAlgorithm, getBaseType().primitiveClass());
@@ -274,15 +552,46 @@ public class TiledImageCompressionOperation extends AbstractTiledImageOperation<
     }
 
     private void processAllTiles() {
+        processTiles(Arrays.asList(getTileOperations()));
+    }
+
+    private int maxTilesInFlight() {
+        if (this.parallelism > 0) {
+            return this.parallelism;
+        }
+        return FitsFactory.getTileParallelism();
+    }
+
+    private void processTiles(List<TileCompressionOperation> tiles) {
         ExecutorService threadPool = FitsFactory.threadPool();
-        for (TileCompressionOperation tileOperation : getTileOperations()) {
+        int maxInFlight = maxTilesInFlight();
+        LinkedList<TileCompressionOperation> inFlight = new LinkedList<TileCompressionOperation>();
+        for (TileCompressionOperation tileOperation : tiles) {
             tileOperation.execute(threadPool);
+            inFlight.add(tileOperation);
+            if (inFlight.size() >= maxInFlight) {
+                inFlight.removeFirst().waitForResult();
+            }
         }
-        for (TileCompressionOperation tileOperation : getTileOperations()) {
+        for (TileCompressionOperation tileOperation : inFlight) {
             tileOperation.waitForResult();
         }
     }
 
+    private void readTile(ImageTiler source, TileCompressionOperation tileOperation) throws IOException {
+        int[] start = tileOperation.getArea().getStartPoint();
+        int[] end = tileOperation.getArea().getEndPoint();
+        Buffer tileBuffer = getBaseType().newBuffer(tileOperation.getPixelSize());
+        source.getTile(tileBuffer.array(), new int[]{
+            start[1],
+            start[0]
+        }, new int[]{
+            end[1] - start[1],
+            end[0] - start[0]
+        });
+        tileOperation.setTileOnlyBuffer(tileBuffer);
+    }
+
     private void readAxis(Header header) throws FitsException {
         if (areAxesUndefined()) {
             int naxis = header.getIntValue(ZNAXIS);
@@ -341,6 +650,17 @@ public class TiledImageCompressionOperation extends AbstractTiledImageOperation<
         return column;
     }
 
+    private void streamTile(TileCompressionOperation tileOperation, BufferedFile heap, long[][] descriptors) throws IOException {
+        tileOperation.waitForResult();
+        byte[] compressedData = tileOperation.getCompressedData();
+        descriptors[tileOperation.getTileIndex()] = new long[]{
+            compressedData.length,
+            heap.length()
+        };
+        heap.write(compressedData);
+        tileOperation.releaseData();
+    }
+
     private void writeColumns(BinaryTableHDU hdu) throws FitsException {
         Object compressedColumn = null;
         Object uncompressedColumn = null;
@@ -366,6 +686,46 @@ public class TiledImageCompressionOperation extends AbstractTiledImageOperation<
         hdu.getData().fillHeader(hdu.getHeader());
     }
 
+    /**
+     * the data columns are added as fixed columns holding the descriptors of
+     * the tiles (2J or 2K), afterwards the header is changed to declare them
+     * as variable length columns (1PB or 1QB), the row layout is identical.
+     * 64 bit descriptors are only used if the heap does not fit 32 bit
+     * offsets. The hdu is only used to write the table, its header and table
+     * model do not match afterwards.
+     */
+    private void writeStreamedColumns(BinaryTableHDU hdu, long[][] descriptors, long heapSize) throws FitsException {
+        boolean longDescriptors = heapSize > Integer.MAX_VALUE;
+        Class<?> descriptorClass = longDescriptors ? long[].class : int[].class;
+        List<Integer> dataColumns = new ArrayList<Integer>();
+        for (TileCompressionType compression : TileCompressionType.values()) {
+            Object column = null;
+            for (TileCompressionOperation tileOperation : getTileOperations()) {
+                if (tileOperation.getCompressionType() == compression) {
+                    if (column == null) {
+                        column = Array.newInstance(descriptorClass, getNumberOfTileOperations());
+                    }
+                    long[] descriptor = descriptors[tileOperation.getTileIndex()];
+                    Array.set(column, tileOperation.getTileIndex(), longDescriptors ? descriptor : new int[]{
+                        (int) descriptor[0],
+                        (int) descriptor[1]
+                    });
+                }
+            }
+            if (column != null) {
+                setNullEntries(column, Array.newInstance(descriptorClass.getComponentType(), 2));
+                addColumnToTable(hdu, column, columnName(compression));
+                dataColumns.add(hdu.getNCols() - 1);
+            }
+        }
+        this.imageOptions.getCompressionParameters().addColumnsToTable(hdu);
+        hdu.getData().fillHeader(hdu.getHeader());
+        for (Integer column : dataColumns) {
+            hdu.getHeader().addValue(TFORMn.n(column + 1), longDescriptors ? "1QB" : "1PB");
+            hdu.getHeader().deleteKey(TDIMn.n(column + 1));
+        }
+    }
+
     private void writeHeader(Header header) throws FitsException {
         HeaderCardBuilder cardBuilder = header//
                 .card(ZBITPIX).value(getBaseType().bitPix())//
@@ -105,10 +105,6 @@ public abstract class AbstractTileOperation implements Runnable, ITileOperation
         return this.tiledImageOperation.getBaseType();
     }
 
-    protected ITileOperation getPreviousTileOperation() {
-        return this.tiledImageOperation.getTileOperation(getTileIndex() - 1);
-    }
-
     protected TileBuffer getTileBuffer() {
         return this.tileBuffer;
     }
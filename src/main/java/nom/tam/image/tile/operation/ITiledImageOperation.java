@@ -42,7 +42,13 @@ public interface ITiledImageOperation {
     ICompressOption compressOptions();
     
     PrimitiveType<Buffer> getBaseType();
-    
+
+    /**
+     * @return the buffer the tiles were compressed into.
+     * @deprecated tiles compress into buffers of their own, there is no buffer
+     *             for the whole compressed area any more and null is returned.
+     */
+    @Deprecated
     ByteBuffer getCompressedWholeArea();
 
     ICompressorControl getCompressorControl();
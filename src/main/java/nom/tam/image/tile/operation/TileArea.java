@@ -48,6 +48,20 @@ public class TileArea {
         return this;
     }
 
+    /**
+     * @return the (exclusive) end point of the area.
+     */
+    public int[] getEndPoint() {
+        return Arrays.copyOf(this.endPoint, this.endPoint.length);
+    }
+
+    /**
+     * @return the start point of the area.
+     */
+    public int[] getStartPoint() {
+        return Arrays.copyOf(this.startPoint, this.startPoint.length);
+    }
+
     /**
      * @param other
      *            the tile to test intersection with
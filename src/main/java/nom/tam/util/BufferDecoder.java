@@ -34,6 +34,7 @@ package nom.tam.util;
 import java.io.EOFException;
 import java.io.IOException;
 import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
 
 import nom.tam.util.type.PrimitiveType;
 import nom.tam.util.type.PrimitiveTypeHandler;
@@ -97,6 +98,12 @@ public abstract class BufferDecoder {
 
     private final BufferPointer sharedBuffer;
 
+    /**
+     * big-endian view of the shared buffer, used to decode whole runs of
+     * primitives at once.
+     */
+    private ByteBuffer sharedBufferView;
+
     public BufferDecoder(BufferPointer sharedBuffer) {
         this.sharedBuffer = sharedBuffer;
     }
@@ -114,6 +121,22 @@ public abstract class BufferDecoder {
 
     protected abstract int eofCheck(EOFException e, int start, int index, int length) throws EOFException;
 
+    /**
+     * Fill the buffer for a bulk read of an array. At least one element must
+     * be available afterwards, implementations may provide more, but never
+     * more than wantBytes.
+     *
+     * @param elementSize
+     *            the size of one element in bytes
+     * @param wantBytes
+     *            the number of bytes still needed by the array read
+     * @throws IOException
+     *             if the buffer could not be filled
+     */
+    protected void fillBuffer(int elementSize, int wantBytes) throws IOException {
+        checkBuffer(elementSize);
+    }
+
     protected void read(ArrayDataOutput output, Class<?> type, int start, int length) throws IOException {
         if (type == float.class) {
             for (int i = start; i < start + length; i++) {
@@ -155,11 +178,17 @@ public abstract class BufferDecoder {
     }
 
     protected int read(boolean[] b, int start, int length) throws IOException {
-
         int i = start;
         try {
-            for (; i < start + length; i++) {
-                b[i] = readBoolean();
+            checkBuffer(-1);
+            while (i < start + length) {
+                int count = bufferedElements(FitsIO.BYTES_IN_BOOLEAN, start + length - i);
+                byte[] buffer = this.sharedBuffer.buffer;
+                int offset = this.sharedBuffer.bufferOffset;
+                for (int end = i + count; i < end; i++) {
+                    b[i] = buffer[offset++] == 1;
+                }
+                this.sharedBuffer.bufferOffset = offset;
             }
             return length;
         } catch (EOFException e) {
@@ -211,11 +240,13 @@ public abstract class BufferDecoder {
     }
 
     protected int read(char[] c, int start, int length) throws IOException {
-
         int i = start;
         try {
-            for (; i < start + length; i++) {
-                c[i] = readChar();
+            checkBuffer(-1);
+            while (i < start + length) {
+                int count = bufferedElements(FitsIO.BYTES_IN_CHAR, start + length - i);
+                bufferView(count * FitsIO.BYTES_IN_CHAR).asCharBuffer().get(c, i, count);
+                i += count;
             }
             return length * FitsIO.BYTES_IN_CHAR;
         } catch (EOFException e) {
@@ -224,11 +255,13 @@ public abstract class BufferDecoder {
     }
 
     protected int read(double[] d, int start, int length) throws IOException {
-
         int i = start;
         try {
-            for (; i < start + length; i++) {
-                d[i] = Double.longBitsToDouble(readLong());
+            checkBuffer(-1);
+            while (i < start + length) {
+                int count = bufferedElements(FitsIO.BYTES_IN_DOUBLE, start + length - i);
+                bufferView(count * FitsIO.BYTES_IN_DOUBLE).asDoubleBuffer().get(d, i, count);
+                i += count;
             }
             return length * FitsIO.BYTES_IN_DOUBLE;
         } catch (EOFException e) {
@@ -237,11 +270,13 @@ public abstract class BufferDecoder {
     }
 
     protected int read(float[] f, int start, int length) throws IOException {
-
         int i = start;
         try {
-            for (; i < start + length; i++) {
-                f[i] = Float.intBitsToFloat(readInt());
+            checkBuffer(-1);
+            while (i < start + length) {
+                int count = bufferedElements(FitsIO.BYTES_IN_FLOAT, start + length - i);
+                bufferView(count * FitsIO.BYTES_IN_FLOAT).asFloatBuffer().get(f, i, count);
+                i += count;
             }
             return length * FitsIO.BYTES_IN_FLOAT;
         } catch (EOFException e) {
@@ -250,11 +285,13 @@ public abstract class BufferDecoder {
     }
 
     protected int read(int[] i, int start, int length) throws IOException {
-
         int ii = start;
         try {
-            for (; ii < start + length; ii++) {
-                i[ii] = readInt();
+            checkBuffer(-1);
+            while (ii < start + length) {
+                int count = bufferedElements(FitsIO.BYTES_IN_INTEGER, start + length - ii);
+                bufferView(count * FitsIO.BYTES_IN_INTEGER).asIntBuffer().get(i, ii, count);
+                ii += count;
             }
             return length * FitsIO.BYTES_IN_INTEGER;
         } catch (EOFException e) {
@@ -263,25 +300,28 @@ public abstract class BufferDecoder {
     }
 
     protected int read(long[] l, int start, int length) throws IOException {
-
         int i = start;
         try {
-            for (; i < start + length; i++) {
-                l[i] = readLong();
+            checkBuffer(-1);
+            while (i < start + length) {
+                int count = bufferedElements(FitsIO.BYTES_IN_LONG, start + length - i);
+                bufferView(count * FitsIO.BYTES_IN_LONG).asLongBuffer().get(l, i, count);
+                i += count;
             }
             return length * FitsIO.BYTES_IN_LONG;
         } catch (EOFException e) {
             return eofCheck(e, start, i, FitsIO.BYTES_IN_LONG);
         }
-
     }
 
     protected int read(short[] s, int start, int length) throws IOException {
-
         int i = start;
         try {
-            for (; i < start + length; i++) {
-                s[i] = readShort();
+            checkBuffer(-1);
+            while (i < start + length) {
+                int count = bufferedElements(FitsIO.BYTES_IN_SHORT, start + length - i);
+                bufferView(count * FitsIO.BYTES_IN_SHORT).asShortBuffer().get(s, i, count);
+                i += count;
             }
             return length * FitsIO.BYTES_IN_SHORT;
         } catch (EOFException e) {
@@ -373,4 +413,43 @@ public abstract class BufferDecoder {
         return this.sharedBuffer.buffer[this.sharedBuffer.bufferOffset++] << FitsIO.BITS_OF_1_BYTE | //
                 this.sharedBuffer.buffer[this.sharedBuffer.bufferOffset++] & FitsIO.BYTE_MASK;
     }
+
+    /**
+     * @return the number of complete elements that can be decoded from the
+     *         buffer, the buffer is filled first if not a single element is
+     *         left.
+     * @param elementSize
+     *            the size of one element in bytes
+     * @param maxElements
+     *            the number of elements that are still needed
+     * @throws IOException
+     *             if the buffer could not be filled
+     */
+    private int bufferedElements(int elementSize, int maxElements) throws IOException {
+        int available = Math.max(0, this.sharedBuffer.bufferLength - this.sharedBuffer.bufferOffset) / elementSize;
+        if (available == 0) {
+            fillBuffer(elementSize, (int) Math.min((long) maxElements * elementSize, Integer.MAX_VALUE));
+            available = Math.max(0, this.sharedBuffer.bufferLength - this.sharedBuffer.bufferOffset) / elementSize;
+        }
+        return Math.min(available, maxElements);
+    }
+
+    /**
+     * @return a big-endian view of the next bytes in the buffer, the buffer
+     *         offset is moved behind them.
+     * @param bytes
+     *            the number of bytes to view
+     */
+    private ByteBuffer bufferView(int bytes) {
+        ByteBuffer view = this.sharedBufferView;
+        if (view == null || view.array() != this.sharedBuffer.buffer) {
+            view = ByteBuffer.wrap(this.sharedBuffer.buffer);
+            this.sharedBufferView = view;
+        }
+        view.clear();
+        view.position(this.sharedBuffer.bufferOffset);
+        view.limit(this.sharedBuffer.bufferOffset + bytes);
+        this.sharedBuffer.bufferOffset += bytes;
+        return view;
+    }
 }
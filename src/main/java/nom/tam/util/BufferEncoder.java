@@ -33,11 +33,18 @@ package nom.tam.util;
 
 import java.io.IOException;
 import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
 
 public abstract class BufferEncoder {
 
     private final BufferPointer sharedBuffer;
 
+    /**
+     * big-endian view of the shared buffer, used to encode whole runs of
+     * primitives at once.
+     */
+    private ByteBuffer sharedBufferView;
+
     protected BufferEncoder(BufferPointer sharedBuffer) {
         this.sharedBuffer = sharedBuffer;
     }
@@ -45,46 +52,71 @@ public abstract class BufferEncoder {
     protected abstract void needBuffer(int need) throws IOException;
 
     protected void write(boolean[] b, int start, int length) throws IOException {
-        for (int i = start; i < start + length; i++) {
-            writeBoolean(b[i]);
+        int i = start;
+        while (i < start + length) {
+            int count = reserveElements(FitsIO.BYTES_IN_BOOLEAN, start + length - i);
+            byte[] buffer = this.sharedBuffer.buffer;
+            int offset = this.sharedBuffer.bufferOffset;
+            for (int end = i + count; i < end; i++) {
+                buffer[offset++] = b[i] ? (byte) 1 : (byte) 0;
+            }
+            this.sharedBuffer.bufferOffset = offset;
         }
     }
 
     protected abstract void write(byte[] buf, int offset, int length) throws IOException;
 
     protected void write(char[] c, int start, int length) throws IOException {
-        for (int i = start; i < start + length; i++) {
-            writeChar(c[i]);
+        int i = start;
+        while (i < start + length) {
+            int count = reserveElements(FitsIO.BYTES_IN_CHAR, start + length - i);
+            bufferView(count * FitsIO.BYTES_IN_CHAR).asCharBuffer().put(c, i, count);
+            i += count;
         }
     }
 
     protected void write(double[] d, int start, int length) throws IOException {
-        for (int i = start; i < start + length; i++) {
-            writeLong(Double.doubleToLongBits(d[i]));
+        int i = start;
+        while (i < start + length) {
+            int count = reserveElements(FitsIO.BYTES_IN_DOUBLE, start + length - i);
+            bufferView(count * FitsIO.BYTES_IN_DOUBLE).asDoubleBuffer().put(d, i, count);
+            i += count;
         }
     }
 
     protected void write(float[] f, int start, int length) throws IOException {
-        for (int i = start; i < start + length; i++) {
-            writeInt(Float.floatToIntBits(f[i]));
+        int i = start;
+        while (i < start + length) {
+            int count = reserveElements(FitsIO.BYTES_IN_FLOAT, start + length - i);
+            bufferView(count * FitsIO.BYTES_IN_FLOAT).asFloatBuffer().put(f, i, count);
+            i += count;
         }
     }
 
     protected void write(int[] i, int start, int length) throws IOException {
-        for (int ii = start; ii < start + length; ii++) {
-            writeInt(i[ii]);
+        int ii = start;
+        while (ii < start + length) {
+            int count = reserveElements(FitsIO.BYTES_IN_INTEGER, start + length - ii);
+            bufferView(count * FitsIO.BYTES_IN_INTEGER).asIntBuffer().put(i, ii, count);
+            ii += count;
         }
     }
 
     protected void write(long[] l, int start, int length) throws IOException {
-        for (int i = start; i < start + length; i++) {
-            writeLong(l[i]);
+        int i = start;
+        while (i < start + length) {
+            int count = reserveElements(FitsIO.BYTES_IN_LONG, start + length - i);
+            bufferView(count * FitsIO.BYTES_IN_LONG).asLongBuffer().put(l, i, count);
+            i += count;
         }
     }
 
     protected void write(short[] s, int start, int length) throws IOException {
-        for (int i = start; i < start + length; i++) {
-            writeShort(s[i]);
+        int i = start;
+        while (i < start + length) {
+            int count = reserveElements(FitsIO.BYTES_IN_SHORT, start + length - i);
+            bufferView(count * FitsIO.BYTES_IN_SHORT).asShortBuffer().put(s, i, count);
+            i += count;
         }
     }
 
@@ -192,4 +224,41 @@ public abstract class BufferEncoder {
         this.sharedBuffer.buffer[this.sharedBuffer.bufferOffset++] = (byte) (s >>> FitsIO.BITS_OF_1_BYTE);
         this.sharedBuffer.buffer[this.sharedBuffer.bufferOffset++] = (byte) s;
     }
+
+    /**
+     * @return a big-endian view of the next bytes in the buffer, the buffer
+     *         offset is moved behind them.
+     * @param bytes
+     *            the number of bytes to view
+     */
+    private ByteBuffer bufferView(int bytes) {
+        ByteBuffer view = this.sharedBufferView;
+        if (view == null || view.array() != this.sharedBuffer.buffer) {
+            view = ByteBuffer.wrap(this.sharedBuffer.buffer);
+            this.sharedBufferView = view;
+        }
+        view.clear();
+        view.position(this.sharedBuffer.bufferOffset);
+        view.limit(this.sharedBuffer.bufferOffset + bytes);
+        this.sharedBuffer.bufferOffset += bytes;
+        return view;
+    }
+
+    /**
+     * reserve space in the buffer for as many of the elements still to write as
+     * fit into it.
+     * 
+     * @return the number of elements reserved
+     * @param elementSize
+     *            the size of one element in bytes
+     * @param maxElements
+     *            the number of elements that are still to write
+     * @throws IOException
+     *             if the buffer could not be flushed
+     */
+    private int reserveElements(int elementSize, int maxElements) throws IOException {
+        int count = Math.min(maxElements, Math.max(1, (this.sharedBuffer.buffer.length - 1) / elementSize));
+        needBuffer(count * elementSize);
+        return count;
+    }
 }
@@ -81,6 +81,16 @@ public class BufferedDataInputStream extends BufferedInputStream implements Arra
      */
     private static final int SKIP_BUFFER_SIZE = 8192;
 
+    /**
+     * maximum size of the buffer to decode primitive arrays in bulk.
+     */
+    private static final int BULK_BUFFER_SIZE = 8192;
+
+    /**
+     * starts with room for a single element only, it is enlarged by the first
+     * bulk array read. Many short lived streams (e.g. one per header card)
+     * never read arrays.
+     */
     private final BufferPointer sharedBuffer = new BufferPointer().init(FitsIO.BYTES_IN_LONG);
 
     private final BufferDecoder bufferDecoder = new BufferDecoder(this.sharedBuffer) {
@@ -97,6 +107,19 @@ public class BufferedDataInputStream extends BufferedInputStream implements Arra
             return BufferedDataInputStream.this.eofCheck(e, index, start, length);
         }
 
+        @Override
+        protected void fillBuffer(int elementSize, int wantBytes) throws IOException {
+            // take as much as the stream has already buffered (but never more
+            // than the array read will consume), only go to the underlying
+            // stream for single elements as the element wise reads did.
+            int buffered = Math.min(BufferedDataInputStream.this.count - BufferedDataInputStream.this.pos, Math.min(wantBytes, BULK_BUFFER_SIZE));
+            int bytes = Math.max(elementSize, buffered / elementSize * elementSize);
+            if (bytes > BufferedDataInputStream.this.sharedBuffer.buffer.length) {
+                BufferedDataInputStream.this.sharedBuffer.init(Math.max(bytes, Math.min(BULK_BUFFER_SIZE, BufferedDataInputStream.this.buf.length)));
+            }
+            readBytesIntoSharedBuffer(bytes);
+        }
+
         @Override
         protected int read(byte[] buf, int offset, int length) throws IOException {
             return BufferedDataInputStream.this.read(buf, offset, length);
@@ -279,6 +302,7 @@ public class BufferedDataInputStream extends BufferedInputStream implements Arra
         if (read(this.sharedBuffer.buffer, 0, bytes) < bytes) {
             throw new EOFException();
         }
+        this.sharedBuffer.bufferLength = bytes;
     }
 
     @Override
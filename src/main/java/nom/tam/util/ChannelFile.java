@@ -0,0 +1,1007 @@
+package nom.tam.util;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 1996 - 2021 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import nom.tam.util.type.PrimitiveTypeHandler;
+
+/**
+ * A random access file that does all its I/O through the {@link FileChannel}
+ * of the file. Unlike {@link BufferedFile}, which copies everything through an
+ * internal byte array and a RandomAccessFile, the data is encoded and decoded
+ * in a single reusable direct ByteBuffer with positional channel reads and
+ * writes, and primitive arrays are converted in bulk through big-endian views
+ * of it. Large byte arrays are written together with the pending buffer in
+ * one gathering write, and unconverted data can be copied from the channel of
+ * another file with {@link #transferFrom(RandomAccess, long, long)}, which
+ * lets the operating system move the bytes without passing them through the
+ * Java heap.
+ * <p>
+ * Like {@link BufferedFile} this class is not synchronized.
+ */
+public class ChannelFile implements ArrayDataOutput, RandomAccess {
+
+    private final RandomAccessFile file;
+
+    private final FileChannel channel;
+
+    /**
+     * The buffer used for all I/O. While reading it holds the bytes from
+     * bufferStart up to its limit, while writing the bytes from bufferStart up
+     * to its position are still to be written.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The offset in the file of the beginning of the buffer.
+     */
+    private long bufferStart;
+
+    private boolean doingInput = true;
+
+    private long marker;
+
+    /**
+     * Open a file for read access.
+     *
+     * @param file
+     *            the file to open
+     * @throws IOException
+     *             if the file could not be opened
+     */
+    public ChannelFile(File file) throws IOException {
+        this(file, "r", FitsIO.DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Open a file with the given mode.
+     *
+     * @param file
+     *            the file to open
+     * @param mode
+     *            the mode to open the file in, as for a RandomAccessFile
+     * @throws IOException
+     *             if the file could not be opened
+     */
+    public ChannelFile(File file, String mode) throws IOException {
+        this(file, mode, FitsIO.DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Open a file with the given mode and buffer size.
+     *
+     * @param file
+     *            the file to open
+     * @param mode
+     *            the mode to open the file in, as for a RandomAccessFile
+     * @param bufferSize
+     *            the size of the direct buffer, at least the size of the
+     *            largest primitive.
+     * @throws IOException
+     *             if the file could not be opened
+     */
+    public ChannelFile(File file, String mode, int bufferSize) throws IOException {
+        if (bufferSize < FitsIO.BYTES_IN_LONG) {
+            throw new IllegalArgumentException("Invalid buffer size " + bufferSize);
+        }
+        this.file = new RandomAccessFile(file, mode);
+        this.channel = this.file.getChannel();
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.buffer.limit(0);
+    }
+
+    /**
+     * Open a file with the given mode.
+     *
+     * @param filename
+     *            the name of the file to open
+     * @param mode
+     *            the mode to open the file in, as for a RandomAccessFile
+     * @throws IOException
+     *             if the file could not be opened
+     */
+    public ChannelFile(String filename, String mode) throws IOException {
+        this(new File(filename), mode);
+    }
+
+    /**
+     * Make sure that the buffer is in input mode and that at least needBytes
+     * can be read from it, refilling it from the channel if necessary.
+     *
+     * @param needBytes
+     *            the number of bytes needed, at most the buffer capacity
+     * @return false if the file ends before needBytes are available.
+     * @throws IOException
+     *             if the channel could not be read
+     */
+    private boolean fill(int needBytes) throws IOException {
+        startInput();
+        if (this.buffer.remaining() >= needBytes) {
+            return true;
+        }
+        this.bufferStart += this.buffer.position();
+        this.buffer.compact();
+        while (this.buffer.position() < needBytes) {
+            if (this.channel.read(this.buffer, this.bufferStart + this.buffer.position()) < 0) {
+                break;
+            }
+        }
+        this.buffer.flip();
+        return this.buffer.remaining() >= needBytes;
+    }
+
+    private ByteBuffer input(int needBytes) throws IOException {
+        if (!fill(needBytes)) {
+            throw new EOFException();
+        }
+        return this.buffer;
+    }
+
+    /**
+     * @return the buffer in output mode with at least needBytes space left.
+     */
+    private ByteBuffer output(int needBytes) throws IOException {
+        startOutput();
+        if (this.buffer.remaining() < needBytes) {
+            writeBuffer();
+        }
+        return this.buffer;
+    }
+
+    private void startInput() throws IOException {
+        if (!this.doingInput) {
+            flush();
+            this.buffer.limit(0);
+            this.doingInput = true;
+        }
+    }
+
+    private void startOutput() {
+        if (this.doingInput) {
+            this.bufferStart += this.buffer.position();
+            this.buffer.clear();
+            this.doingInput = false;
+        }
+    }
+
+    /**
+     * Write the pending bytes of the buffer (which must be in output mode) to
+     * the channel.
+     */
+    private void writeBuffer() throws IOException {
+        this.buffer.flip();
+        while (this.buffer.hasRemaining()) {
+            this.bufferStart += this.channel.write(this.buffer, this.bufferStart);
+        }
+        this.buffer.clear();
+    }
+
+    /**
+     * Discard the buffer content and continue at the given file offset.
+     */
+    private void invalidate(long offset) {
+        this.bufferStart = offset;
+        this.buffer.clear();
+        if (this.doingInput) {
+            this.buffer.limit(0);
+        }
+    }
+
+    /**
+     * Handle an end of file during an array read in the same way
+     * {@link BufferedFile} does: a partial read returns the number of bytes
+     * read, an empty one throws.
+     */
+    private int eofCheck(int done, int elementSize) throws EOFException {
+        if (done == 0) {
+            throw new EOFException();
+        }
+        return done * elementSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        this.channel.close();
+        this.file.close();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (!this.doingInput && this.buffer.position() > 0) {
+            writeBuffer();
+        }
+    }
+
+    /**
+     * @return the channel of the file. Note that the position of the channel
+     *         is not kept in sync with the file pointer of this object, all
+     *         I/O is done with explicit positions.
+     */
+    public FileChannel getChannel() {
+        return this.channel;
+    }
+
+    @Override
+    public long getFilePointer() {
+        return this.bufferStart + this.buffer.position();
+    }
+
+    /**
+     * @return the current length of the file.
+     * @throws IOException
+     *             if the operation failed
+     */
+    public long length() throws IOException {
+        flush();
+        return this.channel.size();
+    }
+
+    @Override
+    public void mark(int readlimit) throws IOException {
+        this.marker = getFilePointer();
+    }
+
+    /**
+     * @return Read a byte or -1 at the end of the file.
+     * @throws IOException
+     *             if the underlying read operation fails
+     */
+    public int read() throws IOException {
+        if (!fill(FitsIO.BYTES_IN_BYTE)) {
+            return -1;
+        }
+        return this.buffer.get() & FitsIO.BYTE_MASK;
+    }
+
+    @Override
+    public void read(ArrayDataOutput output, Class<?> type, int offset, int size) throws IOException {
+        if (type == boolean.class) {
+            for (int index = 0; index < size; index++) {
+                output.writeBoolean(readBoolean());
+            }
+        } else if (type.isPrimitive() && type != void.class) {
+            // The FITS representation is the same on both sides, so the raw
+            // bytes can be transferred without decoding them.
+            long remaining = (long) size * PrimitiveTypeHandler.valueOf(type).size();
+            byte[] transfer = new byte[(int) Math.min(remaining, this.buffer.capacity())];
+            while (remaining > 0) {
+                int get = (int) Math.min(remaining, transfer.length);
+                readFully(transfer, 0, get);
+                output.write(transfer, 0, get);
+                remaining -= get;
+            }
+        } else {
+            throw new IOException("Invalid type for tile array");
+        }
+    }
+
+    @Override
+    public int read(boolean[] b) throws IOException {
+        return read(b, 0, b.length);
+    }
+
+    @Override
+    public int read(boolean[] b, int start, int length) throws IOException {
+        int done = 0;
+        while (done < length) {
+            if (!fill(FitsIO.BYTES_IN_BOOLEAN)) {
+                return eofCheck(done, FitsIO.BYTES_IN_BOOLEAN);
+            }
+            int n = Math.min(length - done, this.buffer.remaining());
+            for (int index = 0; index < n; index++) {
+                b[start + done + index] = this.buffer.get() == 1;
+            }
+            done += n;
+        }
+        return length;
+    }
+
+    @Override
+    public int read(byte[] buf) throws IOException {
+        return read(buf, 0, buf.length);
+    }
+
+    @Override
+    public int read(byte[] buf, int offset, int len) throws IOException {
+        int done = 0;
+        while (done < len) {
+            if (this.doingInput && !this.buffer.hasRemaining() && len - done >= this.buffer.capacity()) {
+                // nothing buffered and more than a buffer full wanted, so read
+                // straight into the array.
+                int n = this.channel.read(ByteBuffer.wrap(buf, offset + done, len - done), getFilePointer());
+                if (n < 0) {
+                    return eofCheck(done, FitsIO.BYTES_IN_BYTE);
+                }
+                invalidate(getFilePointer() + n);
+                done += n;
+                continue;
+            }
+            if (!fill(FitsIO.BYTES_IN_BYTE)) {
+                return eofCheck(done, FitsIO.BYTES_IN_BYTE);
+            }
+            int n = Math.min(len - done, this.buffer.remaining());
+            this.buffer.get(buf, offset + done, n);
+            done += n;
+        }
+        return len;
+    }
+
+    @Override
+    public int read(char[] c) throws IOException {
+        return read(c, 0, c.length);
+    }
+
+    @Override
+    public int read(char[] c, int start, int length) throws IOException {
+        int done = 0;
+        while (done < length) {
+            if (!fill(FitsIO.BYTES_IN_CHAR)) {
+                return eofCheck(done, FitsIO.BYTES_IN_CHAR);
+            }
+            int n = Math.min(length - done, this.buffer.remaining() / FitsIO.BYTES_IN_CHAR);
+            this.buffer.asCharBuffer().get(c, start + done, n);
+            this.buffer.position(this.buffer.position() + n * FitsIO.BYTES_IN_CHAR);
+            done += n;
+        }
+        return length * FitsIO.BYTES_IN_CHAR;
+    }
+
+    @Override
+    public int read(double[] d) throws IOException {
+        return read(d, 0, d.length);
+    }
+
+    @Override
+    public int read(double[] d, int start, int length) throws IOException {
+        int done = 0;
+        while (done < length) {
+            if (!fill(FitsIO.BYTES_IN_DOUBLE)) {
+                return eofCheck(done, FitsIO.BYTES_IN_DOUBLE);
+            }
+            int n = Math.min(length - done, this.buffer.remaining() / FitsIO.BYTES_IN_DOUBLE);
+            this.buffer.asDoubleBuffer().get(d, start + done, n);
+            this.buffer.position(this.buffer.position() + n * FitsIO.BYTES_IN_DOUBLE);
+            done += n;
+        }
+        return length * FitsIO.BYTES_IN_DOUBLE;
+    }
+
+    @Override
+    public int read(float[] f) throws IOException {
+        return read(f, 0, f.length);
+    }
+
+    @Override
+    public int read(float[] f, int start, int length) throws IOException {
+        int done = 0;
+        while (done < length) {
+            if (!fill(FitsIO.BYTES_IN_FLOAT)) {
+                return eofCheck(done, FitsIO.BYTES_IN_FLOAT);
+            }
+            int n = Math.min(length - done, this.buffer.remaining() / FitsIO.BYTES_IN_FLOAT);
+            this.buffer.asFloatBuffer().get(f, start + done, n);
+            this.buffer.position(this.buffer.position() + n * FitsIO.BYTES_IN_FLOAT);
+            done += n;
+        }
+        return length * FitsIO.BYTES_IN_FLOAT;
+    }
+
+    @Override
+    public int read(int[] i) throws IOException {
+        return read(i, 0, i.length);
+    }
+
+    @Override
+    public int read(int[] i, int start, int length) throws IOException {
+        int done = 0;
+        while (done < length) {
+            if (!fill(FitsIO.BYTES_IN_INTEGER)) {
+                return eofCheck(done, FitsIO.BYTES_IN_INTEGER);
+            }
+            int n = Math.min(length - done, this.buffer.remaining() / FitsIO.BYTES_IN_INTEGER);
+            this.buffer.asIntBuffer().get(i, start + done, n);
+            this.buffer.position(this.buffer.position() + n * FitsIO.BYTES_IN_INTEGER);
+            done += n;
+        }
+        return length * FitsIO.BYTES_IN_INTEGER;
+    }
+
+    @Override
+    public int read(long[] l) throws IOException {
+        return read(l, 0, l.length);
+    }
+
+    @Override
+    public int read(long[] l, int start, int length) throws IOException {
+        int done = 0;
+        while (done < length) {
+            if (!fill(FitsIO.BYTES_IN_LONG)) {
+                return eofCheck(done, FitsIO.BYTES_IN_LONG);
+            }
+            int n = Math.min(length - done, this.buffer.remaining() / FitsIO.BYTES_IN_LONG);
+            this.buffer.asLongBuffer().get(l, start + done, n);
+            this.buffer.position(this.buffer.position() + n * FitsIO.BYTES_IN_LONG);
+            done += n;
+        }
+        return length * FitsIO.BYTES_IN_LONG;
+    }
+
+    @Override
+    public int read(short[] s) throws IOException {
+        return read(s, 0, s.length);
+    }
+
+    @Override
+    public int read(short[] s, int start, int length) throws IOException {
+        int done = 0;
+        while (done < length) {
+            if (!fill(FitsIO.BYTES_IN_SHORT)) {
+                return eofCheck(done, FitsIO.BYTES_IN_SHORT);
+            }
+            int n = Math.min(length - done, this.buffer.remaining() / FitsIO.BYTES_IN_SHORT);
+            this.buffer.asShortBuffer().get(s, start + done, n);
+            this.buffer.position(this.buffer.position() + n * FitsIO.BYTES_IN_SHORT);
+            done += n;
+        }
+        return length * FitsIO.BYTES_IN_SHORT;
+    }
+
+    @Deprecated
+    @Override
+    public int readArray(Object o) throws IOException {
+        return (int) readLArray(o);
+    }
+
+    @Override
+    public boolean readBoolean() throws IOException {
+        return input(FitsIO.BYTES_IN_BOOLEAN).get() == 1;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+        return input(FitsIO.BYTES_IN_BYTE).get();
+    }
+
+    @Override
+    public char readChar() throws IOException {
+        return input(FitsIO.BYTES_IN_CHAR).getChar();
+    }
+
+    @Override
+    public double readDouble() throws IOException {
+        return input(FitsIO.BYTES_IN_DOUBLE).getDouble();
+    }
+
+    @Override
+    public float readFloat() throws IOException {
+        return input(FitsIO.BYTES_IN_FLOAT).getFloat();
+    }
+
+    @Override
+    public void readFully(byte[] b) throws IOException {
+        readFully(b, 0, b.length);
+    }
+
+    @Override
+    public void readFully(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IOException("Attempt to read outside byte array");
+        }
+        if (len > 0 && read(b, off, len) < len) {
+            throw new EOFException();
+        }
+    }
+
+    @Override
+    public int readInt() throws IOException {
+        return input(FitsIO.BYTES_IN_INTEGER).getInt();
+    }
+
+    @Override
+    public long readLArray(Object o) throws IOException {
+        if (o == null) {
+            return 0;
+        }
+        if (!o.getClass().isArray()) {
+            throw new IOException("Invalid object passed to ChannelFile.readLArray:" + o.getClass().getName());
+        }
+        int length = Array.getLength(o);
+        Class<?> component = o.getClass().getComponentType();
+        if (!component.isPrimitive()) {
+            long count = 0;
+            for (int index = 0; index < length; index++) {
+                count += readLArray(Array.get(o, index));
+            }
+            return count;
+        } else if (component == byte.class) {
+            readFully((byte[]) o);
+            return length;
+        } else if (component == boolean.class) {
+            return read((boolean[]) o, 0, length);
+        } else if (component == char.class) {
+            return read((char[]) o, 0, length);
+        } else if (component == short.class) {
+            return read((short[]) o, 0, length);
+        } else if (component == int.class) {
+            return read((int[]) o, 0, length);
+        } else if (component == long.class) {
+            return read((long[]) o, 0, length);
+        } else if (component == float.class) {
+            return read((float[]) o, 0, length);
+        } else if (component == double.class) {
+            return read((double[]) o, 0, length);
+        }
+        throw new IOException("Invalid object passed to ChannelFile.readLArray:" + o.getClass().getName());
+    }
+
+    @Override
+    public String readLine() throws IOException {
+        int c = read();
+        if (c < 0) {
+            return null;
+        }
+        StringBuilder line = new StringBuilder();
+        while (c >= 0 && c != '\n') {
+            if (c == '\r') {
+                long cur = getFilePointer();
+                if (read() != '\n') {
+                    seek(cur);
+                }
+                break;
+            }
+            line.append((char) c);
+            c = read();
+        }
+        return line.toString();
+    }
+
+    @Override
+    public long readLong() throws IOException {
+        return input(FitsIO.BYTES_IN_LONG).getLong();
+    }
+
+    @Override
+    public short readShort() throws IOException {
+        return input(FitsIO.BYTES_IN_SHORT).getShort();
+    }
+
+    @Override
+    public int readUnsignedByte() throws IOException {
+        return readByte() & FitsIO.BYTE_MASK;
+    }
+
+    @Override
+    public int readUnsignedShort() throws IOException {
+        return readShort() & FitsIO.SHORT_MASK;
+    }
+
+    @Override
+    public String readUTF() throws IOException {
+        return DataInputStream.readUTF(this);
+    }
+
+    @Override
+    public void reset() throws IOException {
+        seek(this.marker);
+    }
+
+    @Override
+    public void seek(long offsetFromStart) throws IOException {
+        flush();
+        long offset = Math.max(0, offsetFromStart);
+        if (this.doingInput && offset >= this.bufferStart && offset <= this.bufferStart + this.buffer.limit()) {
+            this.buffer.position((int) (offset - this.bufferStart));
+        } else {
+            invalidate(offset);
+        }
+    }
+
+    /**
+     * Set the length of the file.
+     *
+     * @param newLength
+     *            The number of bytes at which the file is set.
+     * @throws IOException
+     *             if the resizing of the underlying file fails
+     */
+    public void setLength(long newLength) throws IOException {
+        flush();
+        long offset = getFilePointer();
+        this.file.setLength(newLength);
+        invalidate(offset);
+    }
+
+    @Override
+    public long skip(long offset) throws IOException {
+        long current = getFilePointer();
+        long target = current + offset;
+        if (offset > 0 && target > length()) {
+            target = length();
+        } else if (target < 0) {
+            target = 0;
+        }
+        seek(target);
+        return target - current;
+    }
+
+    @Override
+    public void skipAllBytes(int toSkip) throws IOException {
+        skipAllBytes((long) toSkip);
+    }
+
+    @Override
+    public void skipAllBytes(long toSkip) throws IOException {
+        // Note that we allow negative skips...
+        if (skip(toSkip) < toSkip) {
+            throw new EOFException();
+        }
+    }
+
+    @Override
+    public int skipBytes(int n) throws IOException {
+        skipAllBytes(n);
+        return n;
+    }
+
+    /**
+     * Copy a section of another file to the current position of this file
+     * without converting it. If the source is backed by a file channel (a
+     * {@link MappedFile} or another {@link ChannelFile}) the bytes are moved
+     * with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+     * and never enter the Java heap; the file pointer of the source is not
+     * changed.
+     *
+     * @param source
+     *            the file to copy from
+     * @param offset
+     *            the offset of the section in the source
+     * @param size
+     *            the number of bytes to copy
+     * @return false (and nothing is copied) if the source has no channel that
+     *         could be used.
+     * @throws IOException
+     *             if the section could not be copied
+     */
+    public boolean transferFrom(RandomAccess source, long offset, long size) throws IOException {
+        FileChannel from;
+        if (source instanceof MappedFile) {
+            from = ((MappedFile) source).getChannel();
+        } else if (source instanceof ChannelFile) {
+            ((ChannelFile) source).flush();
+            from = ((ChannelFile) source).channel;
+        } else {
+            return false;
+        }
+        if (from == this.channel) {
+            return false;
+        }
+        startOutput();
+        flush();
+        long done = 0;
+        while (done < size) {
+            this.channel.position(this.bufferStart + done);
+            long n = from.transferTo(offset + done, size - done, this.channel);
+            if (n <= 0) {
+                throw new EOFException();
+            }
+            done += n;
+        }
+        this.bufferStart += size;
+        return true;
+    }
+
+    @Override
+    public void write(boolean[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(boolean[] b, int start, int length) throws IOException {
+        int done = 0;
+        while (done < length) {
+            ByteBuffer out = output(FitsIO.BYTES_IN_BOOLEAN);
+            int n = Math.min(length - done, out.remaining());
+            for (int index = 0; index < n; index++) {
+                out.put(b[start + done + index] ? (byte) 1 : (byte) 0);
+            }
+            done += n;
+        }
+    }
+
+    @Override
+    public void write(byte[] buf) throws IOException {
+        write(buf, 0, buf.length);
+    }
+
+    @Override
+    public void write(byte[] buf, int offset, int length) throws IOException {
+        ByteBuffer out = output(0);
+        if (length <= out.remaining()) {
+            out.put(buf, offset, length);
+        } else {
+            // write the pending bytes and the array in one go.
+            write(new ByteBuffer[]{
+                ByteBuffer.wrap(buf, offset, length)
+            });
+        }
+    }
+
+    /**
+     * Write the remaining bytes of the buffers, together with any pending
+     * output, with a single gathering write on the channel. This is useful to
+     * write data that is already in its FITS representation, like rows or
+     * heap sections, without copying it into the internal buffer first.
+     *
+     * @param buffers
+     *            the buffers to write, their positions are advanced.
+     * @throws IOException
+     *             if the write failed
+     */
+    public void write(ByteBuffer[] buffers) throws IOException {
+        startOutput();
+        ByteBuffer[] all = new ByteBuffer[buffers.length + 1];
+        this.buffer.flip();
+        all[0] = this.buffer;
+        System.arraycopy(buffers, 0, all, 1, buffers.length);
+        long size = 0;
+        for (ByteBuffer element : all) {
+            size += element.remaining();
+        }
+        this.channel.position(this.bufferStart);
+        long done = 0;
+        while (done < size) {
+            done += this.channel.write(all);
+        }
+        this.bufferStart += size;
+        this.buffer.clear();
+    }
+
+    @Override
+    public void write(char[] c) throws IOException {
+        write(c, 0, c.length);
+    }
+
+    @Override
+    public void write(char[] c, int start, int length) throws IOException {
+        int done = 0;
+        while (done < length) {
+            ByteBuffer out = output(FitsIO.BYTES_IN_CHAR);
+            int n = Math.min(length - done, out.remaining() / FitsIO.BYTES_IN_CHAR);
+            out.asCharBuffer().put(c, start + done, n);
+            out.position(out.position() + n * FitsIO.BYTES_IN_CHAR);
+            done += n;
+        }
+    }
+
+    @Override
+    public void write(double[] d) throws IOException {
+        write(d, 0, d.length);
+    }
+
+    @Override
+    public void write(double[] d, int start, int length) throws IOException {
+        int done = 0;
+        while (done < length) {
+            ByteBuffer out = output(FitsIO.BYTES_IN_DOUBLE);
+            int n = Math.min(length - done, out.remaining() / FitsIO.BYTES_IN_DOUBLE);
+            out.asDoubleBuffer().put(d, start + done, n);
+            out.position(out.position() + n * FitsIO.BYTES_IN_DOUBLE);
+            done += n;
+        }
+    }
+
+    @Override
+    public void write(float[] f) throws IOException {
+        write(f, 0, f.length);
+    }
+
+    @Override
+    public void write(float[] f, int start, int length) throws IOException {
+        int done = 0;
+        while (done < length) {
+            ByteBuffer out = output(FitsIO.BYTES_IN_FLOAT);
+            int n = Math.min(length - done, out.remaining() / FitsIO.BYTES_IN_FLOAT);
+            out.asFloatBuffer().put(f, start + done, n);
+            out.position(out.position() + n * FitsIO.BYTES_IN_FLOAT);
+            done += n;
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        output(FitsIO.BYTES_IN_BYTE).put((byte) b);
+    }
+
+    @Override
+    public void write(int[] i) throws IOException {
+        write(i, 0, i.length);
+    }
+
+    @Override
+    public void write(int[] i, int start, int length) throws IOException {
+        int done = 0;
+        while (done < length) {
+            ByteBuffer out = output(FitsIO.BYTES_IN_INTEGER);
+            int n = Math.min(length - done, out.remaining() / FitsIO.BYTES_IN_INTEGER);
+            out.asIntBuffer().put(i, start + done, n);
+            out.position(out.position() + n * FitsIO.BYTES_IN_INTEGER);
+            done += n;
+        }
+    }
+
+    @Override
+    public void write(long[] l) throws IOException {
+        write(l, 0, l.length);
+    }
+
+    @Override
+    public void write(long[] l, int start, int length) throws IOException {
+        int done = 0;
+        while (done < length) {
+            ByteBuffer out = output(FitsIO.BYTES_IN_LONG);
+            int n = Math.min(length - done, out.remaining() / FitsIO.BYTES_IN_LONG);
+            out.asLongBuffer().put(l, start + done, n);
+            out.position(out.position() + n * FitsIO.BYTES_IN_LONG);
+            done += n;
+        }
+    }
+
+    @Override
+    public void write(short[] s) throws IOException {
+        write(s, 0, s.length);
+    }
+
+    @Override
+    public void write(short[] s, int start, int length) throws IOException {
+        int done = 0;
+        while (done < length) {
+            ByteBuffer out = output(FitsIO.BYTES_IN_SHORT);
+            int n = Math.min(length - done, out.remaining() / FitsIO.BYTES_IN_SHORT);
+            out.asShortBuffer().put(s, start + done, n);
+            out.position(out.position() + n * FitsIO.BYTES_IN_SHORT);
+            done += n;
+        }
+    }
+
+    @Override
+    public void write(String[] s) throws IOException {
+        write(s, 0, s.length);
+    }
+
+    @Override
+    public void write(String[] s, int start, int length) throws IOException {
+        for (int i = start; i < start + length; i++) {
+            write(AsciiFuncs.getBytes(s[i]), 0, s[i].length());
+        }
+    }
+
+    @Override
+    public void writeArray(Object o) throws IOException {
+        if (!o.getClass().isArray()) {
+            throw new IOException("Invalid object passed to ChannelFile.writeArray:" + o.getClass().getName());
+        }
+        int length = Array.getLength(o);
+        if (o instanceof boolean[]) {
+            write((boolean[]) o, 0, length);
+        } else if (o instanceof byte[]) {
+            write((byte[]) o, 0, length);
+        } else if (o instanceof char[]) {
+            write((char[]) o, 0, length);
+        } else if (o instanceof short[]) {
+            write((short[]) o, 0, length);
+        } else if (o instanceof int[]) {
+            write((int[]) o, 0, length);
+        } else if (o instanceof long[]) {
+            write((long[]) o, 0, length);
+        } else if (o instanceof float[]) {
+            write((float[]) o, 0, length);
+        } else if (o instanceof double[]) {
+            write((double[]) o, 0, length);
+        } else if (o instanceof String[]) {
+            write((String[]) o, 0, length);
+        } else {
+            for (int i = 0; i < length; i++) {
+                writeArray(Array.get(o, i));
+            }
+        }
+    }
+
+    @Override
+    public void writeBoolean(boolean b) throws IOException {
+        output(FitsIO.BYTES_IN_BOOLEAN).put(b ? (byte) 1 : (byte) 0);
+    }
+
+    @Override
+    public void writeByte(int b) throws IOException {
+        output(FitsIO.BYTES_IN_BYTE).put((byte) b);
+    }
+
+    @Override
+    public void writeBytes(String s) throws IOException {
+        write(AsciiFuncs.getBytes(s), 0, s.length());
+    }
+
+    @Override
+    public void writeChar(int c) throws IOException {
+        output(FitsIO.BYTES_IN_CHAR).putChar((char) c);
+    }
+
+    @Override
+    public void writeChars(String s) throws IOException {
+        write(s.toCharArray());
+    }
+
+    @Override
+    public void writeDouble(double d) throws IOException {
+        output(FitsIO.BYTES_IN_DOUBLE).putDouble(d);
+    }
+
+    @Override
+    public void writeFloat(float f) throws IOException {
+        output(FitsIO.BYTES_IN_FLOAT).putFloat(f);
+    }
+
+    @Override
+    public void writeInt(int i) throws IOException {
+        output(FitsIO.BYTES_IN_INTEGER).putInt(i);
+    }
+
+    @Override
+    public void writeLong(long l) throws IOException {
+        output(FitsIO.BYTES_IN_LONG).putLong(l);
+    }
+
+    @Override
+    public void writeShort(int s) throws IOException {
+        output(FitsIO.BYTES_IN_SHORT).putShort((short) s);
+    }
+
+    @Override
+    public void writeUTF(String s) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream utf = new DataOutputStream(bytes);
+        utf.writeUTF(s);
+        utf.flush();
+        write(bytes.toByteArray());
+    }
+}
@@ -33,6 +33,7 @@ package nom.tam.util;
 
 import java.io.IOException;
 import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -65,6 +66,12 @@ public class ColumnTable<T> implements DataTable {
 
     private static final int MAX_TYPE_VALUE = MAX_COLUMN_INDEXES;
 
+    /**
+     * The number of bytes of raw rows that are read or written as one block,
+     * the columns are decoded from or encoded into the block.
+     */
+    private static final int BLOCK_SIZE = 256 * 1024;
+
     private interface PointerAccess<X extends Object> {
 
         void set(ColumnTable<?> table, X array);
@@ -75,6 +82,16 @@ public class ColumnTable<T> implements DataTable {
 
         void read(ColumnTable<?> table, ArrayDataInput is, int index, int arrOffset, int size) throws IOException;
 
+        /**
+         * decode the elements of a column from a block of raw rows.
+         */
+        void decode(Object column, ByteBuffer block, int arrOffset, int size, int rows, int position, int rowLength);
+
+        /**
+         * encode the elements of a column into a block of raw rows.
+         */
+        void encode(Object column, ByteBuffer block, int arrOffset, int size, int rows, int position, int rowLength);
+
     }
 
     private static final Map<PrimitiveType<?>, PointerAccess<?>> POINTER_ACCESSORS;
@@ -103,6 +120,38 @@ public class ColumnTable<T> implements DataTable {
             public void read(ColumnTable<?> table, ArrayDataInput is, int index, int arrOffset, int size) throws IOException {
                 is.read(table.bytePointers[index], arrOffset, size);
             }
+
+            @Override
+            public void decode(Object column, ByteBuffer block, int arrOffset, int size, int rows, int position, int rowLength) {
+                byte[] array = (byte[]) column;
+                for (int row = 0; row < rows; row++) {
+                    int from = position + row * rowLength;
+                    int to = arrOffset + row * size;
+                    if (block.hasArray()) {
+                        System.arraycopy(block.array(), block.arrayOffset() + from, array, to, size);
+                    } else {
+                        for (int end = to + size; to < end; to++) {
+                            array[to] = block.get(from++);
+                        }
+                    }
+                }
+            }
+
+            @Override
+            public void encode(Object column, ByteBuffer block, int arrOffset, int size, int rows, int position, int rowLength) {
+                byte[] array = (byte[]) column;
+                for (int row = 0; row < rows; row++) {
+                    int from = arrOffset + row * size;
+                    int to = position + row * rowLength;
+                    if (block.hasArray()) {
+                        System.arraycopy(array, from, block.array(), block.arrayOffset() + to, size);
+                    } else {
+                        for (int end = from + size; from < end; from++) {
+                            block.put(to++, array[from]);
+                        }
+                    }
+                }
+            }
         };
         POINTER_ACCESSORS_BY_TYPE[PrimitiveTypes.BOOLEAN.type()] = new PointerAccess<boolean[][]>() {
 
@@ -125,6 +174,32 @@ public class ColumnTable<T> implements DataTable {
             public void read(ColumnTable<?> table, ArrayDataInput is, int index, int arrOffset, int size) throws IOException {
                 is.read(table.booleanPointers[index], arrOffset, size);
             }
+
+            @Override
+            public void decode(Object column, ByteBuffer block, int arrOffset, int size, int rows, int position, int rowLength) {
+                boolean[] array = (boolean[]) column;
+                int to = arrOffset;
+                for (int row = 0; row < rows; row++) {
+                    int from = position + row * rowLength;
+                    for (int end = to + size; to < end; to++) {
+                        array[to] = block.get(from) == 1;
+                        from += FitsIO.BYTES_IN_BOOLEAN;
+                    }
+                }
+            }
+
+            @Override
+            public void encode(Object column, ByteBuffer block, int arrOffset, int size, int rows, int position, int rowLength) {
+                boolean[] array = (boolean[]) column;
+                int from = arrOffset;
+                for (int row = 0; row < rows; row++) {
+                    int to = position + row * rowLength;
+                    for (int end = from + size; from < end; from++) {
+                        block.put(to, array[from] ? (byte) 1 : (byte) 0);
+                        to += FitsIO.BYTES_IN_BOOLEAN;
+                    }
+                }
+            }
         };
         POINTER_ACCESSORS_BY_TYPE[PrimitiveTypes.SHORT.type()] = new PointerAccess<short[][]>() {
 
@@ -147,6 +222,32 @@ public class ColumnTable<T> implements DataTable {
             public void read(ColumnTable<?> table, ArrayDataInput is, int index, int arrOffset, int size) throws IOException {
                 is.read(table.shortPointers[index], arrOffset, size);
             }
+
+            @Override
+            public void decode(Object column, ByteBuffer block, int arrOffset, int size, int rows, int position, int rowLength) {
+                short[] array = (short[]) column;
+                int to = arrOffset;
+                for (int row = 0; row < rows; row++) {
+                    int from = position + row * rowLength;
+                    for (int end = to + size; to < end; to++) {
+                        array[to] = block.getShort(from);
+                        from += FitsIO.BYTES_IN_SHORT;
+                    }
+                }
+            }
+
+            @Override
+            public void encode(Object column, ByteBuffer block, int arrOffset, int size, int rows, int position, int rowLength) {
+                short[] array = (short[]) column;
+                int from = arrOffset;
+                for (int row = 0; row < rows; row++) {
+                    int to = position + row * rowLength;
+                    for (int end = from + size; from < end; from++) {
+                        block.putShort(to, array[from]);
+                        to += FitsIO.BYTES_IN_SHORT;
+                    }
+                }
+            }
         };
         POINTER_ACCESSORS_BY_TYPE[PrimitiveTypes.CHAR.type()] = new PointerAccess<char[][]>() {
 
@@ -170,6 +271,32 @@ public class ColumnTable<T> implements DataTable {
             public void read(ColumnTable<?> table, ArrayDataInput is, int index, int arrOffset, int size) throws IOException {
                 is.read(table.charPointers[index], arrOffset, size);
             }
+
+            @Override
+            public void decode(Object column, ByteBuffer block, int arrOffset, int size, int rows, int position, int rowLength) {
+                char[] array = (char[]) column;
+                int to = arrOffset;
+                for (int row = 0; row < rows; row++) {
+                    int from = position + row * rowLength;
+                    for (int end = to + size; to < end; to++) {
+                        array[to] = block.getChar(from);
+                        from += FitsIO.BYTES_IN_CHAR;
+                    }
+                }
+            }
+
+            @Override
+            public void encode(Object column, ByteBuffer block, int arrOffset, int size, int rows, int position, int rowLength) {
+                char[] array = (char[]) column;
+                int from = arrOffset;
+                for (int row = 0; row < rows; row++) {
+                    int to = position + row * rowLength;
+                    for (int end = from + size; from < end; from++) {
+                        block.putChar(to, array[from]);
+                        to += FitsIO.BYTES_IN_CHAR;
+                    }
+                }
+            }
         };
         POINTER_ACCESSORS_BY_TYPE[PrimitiveTypes.INT.type()] = new PointerAccess<int[][]>() {
 
@@ -192,6 +319,32 @@ public class ColumnTable<T> implements DataTable {
             public void read(ColumnTable<?> table, ArrayDataInput is, int index, int arrOffset, int size) throws IOException {
                 is.read(table.intPointers[index], arrOffset, size);
             }
+
+            @Override
+            public void decode(Object column, ByteBuffer block, int arrOffset, int size, int rows, int position, int rowLength) {
+                int[] array = (int[]) column;
+                int to = arrOffset;
+                for (int row = 0; row < rows; row++) {
+                    int from = position + row * rowLength;
+                    for (int end = to + size; to < end; to++) {
+                        array[to] = block.getInt(from);
+                        from += FitsIO.BYTES_IN_INTEGER;
+                    }
+                }
+            }
+
+            @Override
+            public void encode(Object column, ByteBuffer block, int arrOffset, int size, int rows, int position, int rowLength) {
+                int[] array = (int[]) column;
+                int from = arrOffset;
+                for (int row = 0; row < rows; row++) {
+                    int to = position + row * rowLength;
+                    for (int end = from + size; from < end; from++) {
+                        block.putInt(to, array[from]);
+                        to += FitsIO.BYTES_IN_INTEGER;
+                    }
+                }
+            }
         };
         POINTER_ACCESSORS_BY_TYPE[PrimitiveTypes.LONG.type()] = new PointerAccess<long[][]>() {
 
@@ -214,6 +367,32 @@ public class ColumnTable<T> implements DataTable {
             public void read(ColumnTable<?> table, ArrayDataInput is, int index, int arrOffset, int size) throws IOException {
                 is.read(table.longPointers[index], arrOffset, size);
             }
+
+            @Override
+            public void decode(Object column, ByteBuffer block, int arrOffset, int size, int rows, int position, int rowLength) {
+                long[] array = (long[]) column;
+                int to = arrOffset;
+                for (int row = 0; row < rows; row++) {
+                    int from = position + row * rowLength;
+                    for (int end = to + size; to < end; to++) {
+                        array[to] = block.getLong(from);
+                        from += FitsIO.BYTES_IN_LONG;
+                    }
+                }
+            }
+
+            @Override
+            public void encode(Object column, ByteBuffer block, int arrOffset, int size, int rows, int position, int rowLength) {
+                long[] array = (long[]) column;
+                int from = arrOffset;
+                for (int row = 0; row < rows; row++) {
+                    int to = position + row * rowLength;
+                    for (int end = from + size; from < end; from++) {
+                        block.putLong(to, array[from]);
+                        to += FitsIO.BYTES_IN_LONG;
+                    }
+                }
+            }
         };
         POINTER_ACCESSORS_BY_TYPE[PrimitiveTypes.FLOAT.type()] = new PointerAccess<float[][]>() {
 
@@ -236,6 +415,32 @@ public class ColumnTable<T> implements DataTable {
             public void read(ColumnTable<?> table, ArrayDataInput is, int index, int arrOffset, int size) throws IOException {
                 is.read(table.floatPointers[index], arrOffset, size);
             }
+
+            @Override
+            public void decode(Object column, ByteBuffer block, int arrOffset, int size, int rows, int position, int rowLength) {
+                float[] array = (float[]) column;
+                int to = arrOffset;
+                for (int row = 0; row < rows; row++) {
+                    int from = position + row * rowLength;
+                    for (int end = to + size; to < end; to++) {
+                        array[to] = block.getFloat(from);
+                        from += FitsIO.BYTES_IN_FLOAT;
+                    }
+                }
+            }
+
+            @Override
+            public void encode(Object column, ByteBuffer block, int arrOffset, int size, int rows, int position, int rowLength) {
+                float[] array = (float[]) column;
+                int from = arrOffset;
+                for (int row = 0; row < rows; row++) {
+                    int to = position + row * rowLength;
+                    for (int end = from + size; from < end; from++) {
+                        block.putFloat(to, array[from]);
+                        to += FitsIO.BYTES_IN_FLOAT;
+                    }
+                }
+            }
         };
         POINTER_ACCESSORS_BY_TYPE[PrimitiveTypes.DOUBLE.type()] = new PointerAccess<double[][]>() {
 
@@ -258,6 +463,32 @@ public class ColumnTable<T> implements DataTable {
             public void read(ColumnTable<?> table, ArrayDataInput is, int index, int arrOffset, int size) throws IOException {
                 is.read(table.doublePointers[index], arrOffset, size);
             }
+
+            @Override
+            public void decode(Object column, ByteBuffer block, int arrOffset, int size, int rows, int position, int rowLength) {
+                double[] array = (double[]) column;
+                int to = arrOffset;
+                for (int row = 0; row < rows; row++) {
+                    int from = position + row * rowLength;
+                    for (int end = to + size; to < end; to++) {
+                        array[to] = block.getDouble(from);
+                        from += FitsIO.BYTES_IN_DOUBLE;
+                    }
+                }
+            }
+
+            @Override
+            public void encode(Object column, ByteBuffer block, int arrOffset, int size, int rows, int position, int rowLength) {
+                double[] array = (double[]) column;
+                int from = arrOffset;
+                for (int row = 0; row < rows; row++) {
+                    int to = position + row * rowLength;
+                    for (int end = from + size; from < end; from++) {
+                        block.putDouble(to, array[from]);
+                        to += FitsIO.BYTES_IN_DOUBLE;
+                    }
+                }
+            }
         };
         Map<PrimitiveType<?>, PointerAccess<?>> pointerAccess = new HashMap<PrimitiveType<?>, PointerAccess<?>>();
         pointerAccess.put(PrimitiveTypes.BYTE, POINTER_ACCESSORS_BY_TYPE[PrimitiveTypes.BYTE.type()]);
@@ -401,7 +632,8 @@ public class ColumnTable<T> implements DataTable {
 
     /**
      * Add a row to the table. This method is very inefficient for adding
-     * multiple rows and should be avoided if possible.
+     * multiple rows and should be avoided if possible, use
+     * {@link nom.tam.fits.BinaryTableBuilder} to build a table row by row.
      * 
      * @param row
      *            the row to add
@@ -721,6 +953,35 @@ public class ColumnTable<T> implements DataTable {
         return this.types;
     }
 
+    /**
+     * @return the number of bytes of a row in the stream.
+     */
+    private int rowLength() {
+        int rowLength = 0;
+        for (int col = 0; col < this.arrays.length; col += 1) {
+            rowLength += this.sizes[col] * PrimitiveTypeHandler.valueOf(this.bases[col]).size();
+        }
+        return rowLength;
+    }
+
+    /**
+     * Decode all columns of a block of raw rows into the column arrays or
+     * encode them from the column arrays into the block, column by column.
+     */
+    private void transcode(ByteBuffer block, int firstRow, int rows, int rowLength, boolean decode) {
+        int position = 0;
+        for (int col = 0; col < this.arrays.length; col += 1) {
+            int size = this.sizes[col];
+            PointerAccess<?> accessor = POINTER_ACCESSORS_BY_TYPE[this.types[col]];
+            if (decode) {
+                accessor.decode(this.arrays[col], block, size * firstRow, size, rows, position, rowLength);
+            } else {
+                accessor.encode(this.arrays[col], block, size * firstRow, size, rows, position, rowLength);
+            }
+            position += size * PrimitiveTypeHandler.valueOf(this.bases[col]).size();
+        }
+    }
+
     /**
      * Set the pointer arrays for the eight primitive types to point to the
      * appropriate elements of arrays.
@@ -759,19 +1020,16 @@ public class ColumnTable<T> implements DataTable {
      *             if the reading failed
      */
     public void read(ArrayDataInput is) throws IOException {
-        int[] columnIndex = new int[MAX_COLUMN_INDEXES];
-        // While we have not finished reading the table..
-        for (int row = 0; row < this.nrow; row += 1) {
-            Arrays.fill(columnIndex, 0);
-            // Loop over the columns within the row.
-            for (int col = 0; col < this.arrays.length; col += 1) {
-                int arrOffset = this.sizes[col] * row;
-                int size = this.sizes[col];
-                char colType = this.types[col];
-                PointerAccess<?> accessor = POINTER_ACCESSORS_BY_TYPE[colType];
-                accessor.read(this, is, columnIndex[colType], arrOffset, size);
-                columnIndex[colType] += 1;
-            }
+        int rowLength = rowLength();
+        if (rowLength == 0) {
+            return;
+        }
+        int blockRows = Math.max(1, Math.min(this.nrow, BLOCK_SIZE / rowLength));
+        ByteBuffer block = ByteBuffer.wrap(new byte[blockRows * rowLength]);
+        for (int row = 0; row < this.nrow; row += blockRows) {
+            int rows = Math.min(blockRows, this.nrow - row);
+            is.readFully(block.array(), 0, rows * rowLength);
+            transcode(block, row, rows, rowLength, true);
         }
     }
 
@@ -891,19 +1149,16 @@ public class ColumnTable<T> implements DataTable {
      *             if the write operation failed
      */
     public void write(ArrayDataOutput os) throws IOException {
-        int[] columnIndex = new int[MAX_COLUMN_INDEXES];
-        for (int row = 0; row < this.nrow; row += 1) {
-            Arrays.fill(columnIndex, 0);
-            // Loop over the columns within the row.
-            for (int col = 0; col < this.arrays.length; col += 1) {
-
-                int arrOffset = this.sizes[col] * row;
-                int size = this.sizes[col];
-
-                char colType = this.types[col];
-                POINTER_ACCESSORS_BY_TYPE[colType].write(this, os, columnIndex[colType], arrOffset, size);
-                columnIndex[colType] += 1;
-            }
+        int rowLength = rowLength();
+        if (rowLength == 0) {
+            return;
+        }
+        int blockRows = Math.max(1, Math.min(this.nrow, BLOCK_SIZE / rowLength));
+        ByteBuffer block = ByteBuffer.wrap(new byte[blockRows * rowLength]);
+        for (int row = 0; row < this.nrow; row += blockRows) {
+            int rows = Math.min(blockRows, this.nrow - row);
+            transcode(block, row, rows, rowLength, false);
+            os.write(block.array(), 0, rows * rowLength);
         }
     }
 
@@ -922,26 +1177,33 @@ public class ColumnTable<T> implements DataTable {
      *             if the write operation failed
      */
     public void write(ArrayDataOutput os, int rowStart, int rowEnd, int columnNr) throws IOException {
-        int[] columnIndex = new int[MAX_COLUMN_INDEXES];
-        for (int row = 0; row < this.nrow; row += 1) {
-            if (row >= rowStart && row < rowEnd) {
-                Arrays.fill(columnIndex, 0);
-                // Loop over the columns within the row.
-                for (int col = 0; col < this.arrays.length; col += 1) {
-
-                    int arrOffset = this.sizes[col] * row;
-                    int size = this.sizes[col];
-
-                    char colType = this.types[col];
-                    if (columnNr == col) {
-                        POINTER_ACCESSORS_BY_TYPE[colType].write(this, os, columnIndex[colType], arrOffset, size);
-                    }
-                    columnIndex[colType] += 1;
-                }
-            }
+        int first = Math.max(rowStart, 0);
+        int last = Math.min(rowEnd, this.nrow);
+        if (first < last) {
+            int size = this.sizes[columnNr];
+            POINTER_ACCESSORS_BY_TYPE[this.types[columnNr]].write(this, os, pointerIndex(columnNr), size * first, size * (last - first));
         }
     }
 
+    /**
+     * Write a slice of a column of the table directly into a byte buffer,
+     * starting at the current position of the buffer. Only the requested rows
+     * of the column are touched, the position of the buffer is advanced past
+     * the written elements.
+     * 
+     * @param buffer
+     *            the buffer to write to.
+     * @param rowStart
+     *            first row to write
+     * @param rowEnd
+     *            row number that should not be written anymore
+     * @param columnNr
+     *            zero based column number to write.
+     */
+    public void write(ByteBuffer buffer, int rowStart, int rowEnd, int columnNr) {
+        transcodeColumn(buffer, rowStart, rowEnd, columnNr, false);
+    }
+
     /**
      * Read a column of a table.
      * 
@@ -957,22 +1219,64 @@ public class ColumnTable<T> implements DataTable {
      *             if the reading failed
      */
     public void read(ArrayDataInput is, int rowStart, int rowEnd, int columnNr) throws IOException {
-        int[] columnIndex = new int[MAX_COLUMN_INDEXES];
-        // While we have not finished reading the table..
-        for (int row = 0; row < this.nrow; row += 1) {
-            if (row >= rowStart && row < rowEnd) {
-                Arrays.fill(columnIndex, 0);
-                // Loop over the columns within the row.
-                for (int col = 0; col < this.arrays.length; col += 1) {
-                    int arrOffset = this.sizes[col] * row;
-                    int size = this.sizes[col];
-                    char colType = this.types[col];
-                    if (col == columnNr) {
-                        POINTER_ACCESSORS_BY_TYPE[colType].read(this, is, columnIndex[colType], arrOffset, size);
-                    }
-                    columnIndex[colType] += 1;
-                }
+        int first = Math.max(rowStart, 0);
+        int last = Math.min(rowEnd, this.nrow);
+        if (first < last) {
+            int size = this.sizes[columnNr];
+            POINTER_ACCESSORS_BY_TYPE[this.types[columnNr]].read(this, is, pointerIndex(columnNr), size * first, size * (last - first));
+        }
+    }
+
+    /**
+     * Read a slice of a column of the table directly from a byte buffer,
+     * starting at the current position of the buffer. Only the requested rows
+     * of the column are touched, the position of the buffer is advanced past
+     * the read elements.
+     * 
+     * @param buffer
+     *            the buffer to read from.
+     * @param rowStart
+     *            first row to read
+     * @param rowEnd
+     *            row number that should not be read anymore
+     * @param columnNr
+     *            the columnNumber to read.
+     */
+    public void read(ByteBuffer buffer, int rowStart, int rowEnd, int columnNr) {
+        transcodeColumn(buffer, rowStart, rowEnd, columnNr, true);
+    }
+
+    /**
+     * @return the index of the column in the pointer array of its type.
+     */
+    private int pointerIndex(int columnNr) {
+        int index = 0;
+        for (int col = 0; col < columnNr; col += 1) {
+            if (this.types[col] == this.types[columnNr]) {
+                index += 1;
             }
         }
+        return index;
+    }
+
+    /**
+     * Decode a slice of a column from a byte buffer or encode it into the
+     * buffer, the slice is one contiguous range of the column array.
+     */
+    private void transcodeColumn(ByteBuffer buffer, int rowStart, int rowEnd, int columnNr, boolean decode) {
+        int first = Math.max(rowStart, 0);
+        int last = Math.min(rowEnd, this.nrow);
+        if (first >= last) {
+            return;
+        }
+        int size = this.sizes[columnNr];
+        int elements = size * (last - first);
+        PointerAccess<?> accessor = POINTER_ACCESSORS_BY_TYPE[this.types[columnNr]];
+        if (decode) {
+            accessor.decode(this.arrays[columnNr], buffer, size * first, elements, 1, buffer.position(), 0);
+        } else {
+            accessor.encode(this.arrays[columnNr], buffer, size * first, elements, 1, buffer.position(), 0);
+        }
+        buffer.position(buffer.position() + elements * PrimitiveTypeHandler.valueOf(this.bases[columnNr]).size());
     }
 }
@@ -174,6 +174,19 @@ public class HashedList<VALUE extends CursorValue<String>> implements Collection
 
     /** The key value pairs */
     private final HashMap<String, VALUE> keyed = new HashMap<String, VALUE>();
+
+    /**
+     * The position of the first entry with a given key. Only positions below
+     * positionsValid can be trusted, the rest of the list is scanned lazily
+     * when a key is looked up, so appending entries keeps all known positions
+     * and a change in the middle of the list only invalidates what follows.
+     */
+    private final HashMap<String, Integer> positions = new HashMap<String, Integer>();
+
+    /**
+     * The number of leading entries of the list whose positions are known.
+     */
+    private int positionsValid;
     
     /**
      * This maintains a 'current' position in the list...
@@ -205,6 +218,7 @@ public class HashedList<VALUE extends CursorValue<String>> implements Collection
             }
         }
         this.keyed.put(key, entry);
+        invalidatePositions(pos);
         if (pos >= this.ordered.size()) {
             // AK: We are adding a card to the end of the header.
             //     If the cursor points to the end of the header, we want to increment it.
@@ -270,6 +284,7 @@ public class HashedList<VALUE extends CursorValue<String>> implements Collection
     public void clear() {
         this.keyed.clear();
         this.ordered.clear();
+        invalidatePositions(0);
     }
 
     @Override
@@ -324,15 +339,44 @@ public class HashedList<VALUE extends CursorValue<String>> implements Collection
     // the method is used internally in situations where the entry must be
     // there.
     int indexOf(VALUE entry) {
-        for (int index = 0; index < this.ordered.size(); index++) {
-            String searchKey = entry.getKey();
-            if (searchKey.equals(this.ordered.get(index).getKey())) {
-                return index;
+        String searchKey = entry.getKey();
+        Integer known = this.positions.get(searchKey);
+        if (known != null && known < this.positionsValid) {
+            if (searchKey.equals(this.ordered.get(known).getKey())) {
+                return known;
+            }
+            // the key of an entry was changed behind our back.
+            invalidatePositions(0);
+        }
+        while (this.positionsValid < this.ordered.size()) {
+            int index = this.positionsValid++;
+            String key = this.ordered.get(index).getKey();
+            Integer first = this.positions.get(key);
+            // positions not confirmed by the entry there are left overs of
+            // earlier changes.
+            if (first == null || first >= index || !key.equals(this.ordered.get(first).getKey())) {
+                this.positions.put(key, index);
+                if (searchKey.equals(key)) {
+                    return index;
+                }
             }
         }
         throw new NoSuchElementException("Internal error: " + entry + " should have been found in " + ordered);
     }
 
+    /**
+     * Forget the known positions from the index on, because entries were
+     * inserted or removed there.
+     */
+    private void invalidatePositions(int index) {
+        if (index <= 0) {
+            this.positions.clear();
+            this.positionsValid = 0;
+        } else if (index < this.positionsValid) {
+            this.positionsValid = index;
+        }
+    }
+
     @Override
     public boolean isEmpty() {
         return this.ordered.isEmpty();
@@ -406,6 +450,7 @@ public class HashedList<VALUE extends CursorValue<String>> implements Collection
     private boolean internalRemove(int index, VALUE entry) {
         this.keyed.remove(entry.getKey());
         this.ordered.remove(index);
+        invalidatePositions(index);
         
         // AK: if removing a key before the current position, update the current position to
         //     keep pointing to the same location.
@@ -471,6 +516,7 @@ public class HashedList<VALUE extends CursorValue<String>> implements Collection
         // same entry in hashmap and ordered so only one change.
         this.keyed.remove(oldKey);
         this.keyed.put(newKey, oldVal);
+        invalidatePositions(0);
         return true;
     }
 
@@ -502,6 +548,7 @@ public class HashedList<VALUE extends CursorValue<String>> implements Collection
      */
     public void sort(final Comparator<String> comp) {
         java.util.Collections.sort(this.ordered, new EntryComparator<VALUE>(comp));
+        invalidatePositions(0);
     }
 
     @Override
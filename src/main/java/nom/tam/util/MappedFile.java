@@ -0,0 +1,598 @@
+package nom.tam.util;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 1996 - 2021 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import nom.tam.util.type.PrimitiveTypeHandler;
+
+/**
+ * A read-only random access input that decodes directly from memory mapped
+ * windows of a file rather than copying every read through an intermediate
+ * byte buffer as {@link BufferedFile} does. The file is mapped lazily in
+ * segments so that files larger than 2 GB are supported; consecutive segments
+ * overlap by the size of the largest primitive so that no single element ever
+ * straddles two mappings. Primitive array reads are converted in bulk through
+ * big-endian views of the mapping.
+ * <p>
+ * Like {@link BufferedFile} this class is not synchronized.
+ */
+public class MappedFile implements RandomAccess {
+
+    /**
+     * The default size of a mapped segment (1 GB).
+     */
+    public static final long DEFAULT_SEGMENT_SIZE = 1024L * 1024L * 1024L;
+
+    /**
+     * The number of bytes by which consecutive segments overlap, so that a
+     * primitive value always lies entirely in one segment.
+     */
+    private static final int SEGMENT_OVERLAP = FitsIO.BYTES_IN_LONG;
+
+    /**
+     * size of the transfer buffer used when streaming data to an output.
+     */
+    private static final int TRANSFER_SIZE = 8192;
+
+    private final RandomAccessFile file;
+
+    private final FileChannel channel;
+
+    private final long fileLength;
+
+    private final long segmentSize;
+
+    private final MappedByteBuffer[] segments;
+
+    private long position;
+
+    private long marker;
+
+    /**
+     * Map a file for read access using the default segment size.
+     * 
+     * @param file
+     *            the file to map
+     * @throws IOException
+     *             if the file could not be opened
+     */
+    public MappedFile(File file) throws IOException {
+        this(file, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Map a file for read access.
+     * 
+     * @param file
+     *            the file to map
+     * @param segmentSize
+     *            the size of each mapped window in bytes, it must be positive
+     *            and not larger than {@link Integer#MAX_VALUE} minus the
+     *            segment overlap.
+     * @throws IOException
+     *             if the file could not be opened
+     */
+    public MappedFile(File file, long segmentSize) throws IOException {
+        if (segmentSize <= 0 || segmentSize > Integer.MAX_VALUE - SEGMENT_OVERLAP) {
+            throw new IllegalArgumentException("Invalid segment size " + segmentSize);
+        }
+        this.file = new RandomAccessFile(file, "r");
+        this.channel = this.file.getChannel();
+        this.fileLength = this.channel.size();
+        this.segmentSize = segmentSize;
+        this.segments = new MappedByteBuffer[(int) ((this.fileLength + segmentSize - 1) / segmentSize)];
+    }
+
+    /**
+     * Map a file for read access using the default segment size.
+     * 
+     * @param filename
+     *            the name of the file to map
+     * @throws IOException
+     *             if the file could not be opened
+     */
+    public MappedFile(String filename) throws IOException {
+        this(new File(filename));
+    }
+
+    /**
+     * Position the segment containing the current file pointer and return it,
+     * making sure that at least needBytes are available in it.
+     * 
+     * @param needBytes
+     *            the number of bytes that must be readable
+     * @return the positioned segment or null if less than needBytes remain in
+     *         the file.
+     * @throws IOException
+     *             if the segment could not be mapped
+     */
+    private ByteBuffer segment(int needBytes) throws IOException {
+        if (this.position + needBytes > this.fileLength) {
+            return null;
+        }
+        int index = (int) (this.position / this.segmentSize);
+        long start = index * this.segmentSize;
+        MappedByteBuffer mapped = this.segments[index];
+        if (mapped == null) {
+            long size = Math.min(this.segmentSize + SEGMENT_OVERLAP, this.fileLength - start);
+            mapped = this.channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            this.segments[index] = mapped;
+        }
+        mapped.position((int) (this.position - start));
+        return mapped;
+    }
+
+    private ByteBuffer checkedSegment(int needBytes) throws IOException {
+        ByteBuffer buffer = segment(needBytes);
+        if (buffer == null) {
+            throw new EOFException();
+        }
+        this.position += needBytes;
+        return buffer;
+    }
+
+    /**
+     * Handle an end of file during an array read in the same way
+     * {@link BufferedFile} does: a partial read returns the number of bytes
+     * read, an empty one throws.
+     */
+    private int eofCheck(int done, int elementSize) throws EOFException {
+        if (done == 0) {
+            throw new EOFException();
+        }
+        return done * elementSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+        this.file.close();
+        for (int index = 0; index < this.segments.length; index++) {
+            this.segments[index] = null;
+        }
+    }
+
+    /**
+     * @return the channel of the mapped file.
+     */
+    public FileChannel getChannel() {
+        return this.channel;
+    }
+
+    @Override
+    public long getFilePointer() {
+        return this.position;
+    }
+
+    /**
+     * @return the length of the mapped file.
+     */
+    public long length() {
+        return this.fileLength;
+    }
+
+    @Override
+    public void mark(int readlimit) throws IOException {
+        this.marker = this.position;
+    }
+
+    /**
+     * @return Read a byte or -1 at the end of the file.
+     * @throws IOException
+     *             if the underlying read operation fails
+     */
+    public int read() throws IOException {
+        ByteBuffer buffer = segment(FitsIO.BYTES_IN_BYTE);
+        if (buffer == null) {
+            return -1;
+        }
+        this.position++;
+        return buffer.get() & FitsIO.BYTE_MASK;
+    }
+
+    @Override
+    public void read(ArrayDataOutput output, Class<?> type, int offset, int size) throws IOException {
+        if (type == boolean.class) {
+            for (int index = 0; index < size; index++) {
+                output.writeBoolean(readBoolean());
+            }
+        } else if (type.isPrimitive() && type != void.class) {
+            // The FITS representation is the same on both sides, so the raw
+            // bytes can be transferred without decoding them.
+            long remaining = (long) size * PrimitiveTypeHandler.valueOf(type).size();
+            byte[] transfer = new byte[(int) Math.min(remaining, TRANSFER_SIZE)];
+            while (remaining > 0) {
+                int get = (int) Math.min(remaining, transfer.length);
+                readFully(transfer, 0, get);
+                output.write(transfer, 0, get);
+                remaining -= get;
+            }
+        } else {
+            throw new IOException("Invalid type for tile array");
+        }
+    }
+
+    @Override
+    public int read(boolean[] b) throws IOException {
+        return read(b, 0, b.length);
+    }
+
+    @Override
+    public int read(boolean[] b, int start, int length) throws IOException {
+        int done = 0;
+        while (done < length) {
+            ByteBuffer buffer = segment(FitsIO.BYTES_IN_BOOLEAN);
+            if (buffer == null) {
+                return eofCheck(done, FitsIO.BYTES_IN_BOOLEAN);
+            }
+            int n = Math.min(length - done, buffer.remaining());
+            for (int index = 0; index < n; index++) {
+                b[start + done + index] = buffer.get() == 1;
+            }
+            this.position += n;
+            done += n;
+        }
+        return length;
+    }
+
+    @Override
+    public int read(byte[] buf) throws IOException {
+        return read(buf, 0, buf.length);
+    }
+
+    @Override
+    public int read(byte[] buf, int offset, int len) throws IOException {
+        int done = 0;
+        while (done < len) {
+            ByteBuffer buffer = segment(FitsIO.BYTES_IN_BYTE);
+            if (buffer == null) {
+                return eofCheck(done, FitsIO.BYTES_IN_BYTE);
+            }
+            int n = Math.min(len - done, buffer.remaining());
+            buffer.get(buf, offset + done, n);
+            this.position += n;
+            done += n;
+        }
+        return len;
+    }
+
+    @Override
+    public int read(char[] c) throws IOException {
+        return read(c, 0, c.length);
+    }
+
+    @Override
+    public int read(char[] c, int start, int length) throws IOException {
+        int done = 0;
+        while (done < length) {
+            ByteBuffer buffer = segment(FitsIO.BYTES_IN_CHAR);
+            if (buffer == null) {
+                return eofCheck(done, FitsIO.BYTES_IN_CHAR);
+            }
+            int n = Math.min(length - done, buffer.remaining() / FitsIO.BYTES_IN_CHAR);
+            buffer.asCharBuffer().get(c, start + done, n);
+            this.position += (long) n * FitsIO.BYTES_IN_CHAR;
+            done += n;
+        }
+        return length * FitsIO.BYTES_IN_CHAR;
+    }
+
+    @Override
+    public int read(double[] d) throws IOException {
+        return read(d, 0, d.length);
+    }
+
+    @Override
+    public int read(double[] d, int start, int length) throws IOException {
+        int done = 0;
+        while (done < length) {
+            ByteBuffer buffer = segment(FitsIO.BYTES_IN_DOUBLE);
+            if (buffer == null) {
+                return eofCheck(done, FitsIO.BYTES_IN_DOUBLE);
+            }
+            int n = Math.min(length - done, buffer.remaining() / FitsIO.BYTES_IN_DOUBLE);
+            buffer.asDoubleBuffer().get(d, start + done, n);
+            this.position += (long) n * FitsIO.BYTES_IN_DOUBLE;
+            done += n;
+        }
+        return length * FitsIO.BYTES_IN_DOUBLE;
+    }
+
+    @Override
+    public int read(float[] f) throws IOException {
+        return read(f, 0, f.length);
+    }
+
+    @Override
+    public int read(float[] f, int start, int length) throws IOException {
+        int done = 0;
+        while (done < length) {
+            ByteBuffer buffer = segment(FitsIO.BYTES_IN_FLOAT);
+            if (buffer == null) {
+                return eofCheck(done, FitsIO.BYTES_IN_FLOAT);
+            }
+            int n = Math.min(length - done, buffer.remaining() / FitsIO.BYTES_IN_FLOAT);
+            buffer.asFloatBuffer().get(f, start + done, n);
+            this.position += (long) n * FitsIO.BYTES_IN_FLOAT;
+            done += n;
+        }
+        return length * FitsIO.BYTES_IN_FLOAT;
+    }
+
+    @Override
+    public int read(int[] i) throws IOException {
+        return read(i, 0, i.length);
+    }
+
+    @Override
+    public int read(int[] i, int start, int length) throws IOException {
+        int done = 0;
+        while (done < length) {
+            ByteBuffer buffer = segment(FitsIO.BYTES_IN_INTEGER);
+            if (buffer == null) {
+                return eofCheck(done, FitsIO.BYTES_IN_INTEGER);
+            }
+            int n = Math.min(length - done, buffer.remaining() / FitsIO.BYTES_IN_INTEGER);
+            buffer.asIntBuffer().get(i, start + done, n);
+            this.position += (long) n * FitsIO.BYTES_IN_INTEGER;
+            done += n;
+        }
+        return length * FitsIO.BYTES_IN_INTEGER;
+    }
+
+    @Override
+    public int read(long[] l) throws IOException {
+        return read(l, 0, l.length);
+    }
+
+    @Override
+    public int read(long[] l, int start, int length) throws IOException {
+        int done = 0;
+        while (done < length) {
+            ByteBuffer buffer = segment(FitsIO.BYTES_IN_LONG);
+            if (buffer == null) {
+                return eofCheck(done, FitsIO.BYTES_IN_LONG);
+            }
+            int n = Math.min(length - done, buffer.remaining() / FitsIO.BYTES_IN_LONG);
+            buffer.asLongBuffer().get(l, start + done, n);
+            this.position += (long) n * FitsIO.BYTES_IN_LONG;
+            done += n;
+        }
+        return length * FitsIO.BYTES_IN_LONG;
+    }
+
+    @Override
+    public int read(short[] s) throws IOException {
+        return read(s, 0, s.length);
+    }
+
+    @Override
+    public int read(short[] s, int start, int length) throws IOException {
+        int done = 0;
+        while (done < length) {
+            ByteBuffer buffer = segment(FitsIO.BYTES_IN_SHORT);
+            if (buffer == null) {
+                return eofCheck(done, FitsIO.BYTES_IN_SHORT);
+            }
+            int n = Math.min(length - done, buffer.remaining() / FitsIO.BYTES_IN_SHORT);
+            buffer.asShortBuffer().get(s, start + done, n);
+            this.position += (long) n * FitsIO.BYTES_IN_SHORT;
+            done += n;
+        }
+        return length * FitsIO.BYTES_IN_SHORT;
+    }
+
+    @Deprecated
+    @Override
+    public int readArray(Object o) throws IOException {
+        return (int) readLArray(o);
+    }
+
+    @Override
+    public boolean readBoolean() throws IOException {
+        return checkedSegment(FitsIO.BYTES_IN_BOOLEAN).get() == 1;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+        return checkedSegment(FitsIO.BYTES_IN_BYTE).get();
+    }
+
+    @Override
+    public char readChar() throws IOException {
+        return checkedSegment(FitsIO.BYTES_IN_CHAR).getChar();
+    }
+
+    @Override
+    public double readDouble() throws IOException {
+        return checkedSegment(FitsIO.BYTES_IN_DOUBLE).getDouble();
+    }
+
+    @Override
+    public float readFloat() throws IOException {
+        return checkedSegment(FitsIO.BYTES_IN_FLOAT).getFloat();
+    }
+
+    @Override
+    public void readFully(byte[] b) throws IOException {
+        readFully(b, 0, b.length);
+    }
+
+    @Override
+    public void readFully(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IOException("Attempt to read outside byte array");
+        }
+        if (len > 0 && read(b, off, len) < len) {
+            throw new EOFException();
+        }
+    }
+
+    @Override
+    public int readInt() throws IOException {
+        return checkedSegment(FitsIO.BYTES_IN_INTEGER).getInt();
+    }
+
+    @Override
+    public long readLArray(Object o) throws IOException {
+        if (o == null) {
+            return 0;
+        }
+        if (!o.getClass().isArray()) {
+            throw new IOException("Invalid object passed to MappedFile.readLArray:" + o.getClass().getName());
+        }
+        int length = Array.getLength(o);
+        Class<?> component = o.getClass().getComponentType();
+        if (!component.isPrimitive()) {
+            long count = 0;
+            for (int index = 0; index < length; index++) {
+                count += readLArray(Array.get(o, index));
+            }
+            return count;
+        } else if (component == byte.class) {
+            readFully((byte[]) o);
+            return length;
+        } else if (component == boolean.class) {
+            return read((boolean[]) o, 0, length);
+        } else if (component == char.class) {
+            return read((char[]) o, 0, length);
+        } else if (component == short.class) {
+            return read((short[]) o, 0, length);
+        } else if (component == int.class) {
+            return read((int[]) o, 0, length);
+        } else if (component == long.class) {
+            return read((long[]) o, 0, length);
+        } else if (component == float.class) {
+            return read((float[]) o, 0, length);
+        } else if (component == double.class) {
+            return read((double[]) o, 0, length);
+        }
+        throw new IOException("Invalid object passed to MappedFile.readLArray:" + o.getClass().getName());
+    }
+
+    @Override
+    public String readLine() throws IOException {
+        int c = read();
+        if (c < 0) {
+            return null;
+        }
+        StringBuilder line = new StringBuilder();
+        while (c >= 0 && c != '\n') {
+            if (c == '\r') {
+                long cur = this.position;
+                if (read() != '\n') {
+                    this.position = cur;
+                }
+                break;
+            }
+            line.append((char) c);
+            c = read();
+        }
+        return line.toString();
+    }
+
+    @Override
+    public long readLong() throws IOException {
+        return checkedSegment(FitsIO.BYTES_IN_LONG).getLong();
+    }
+
+    @Override
+    public short readShort() throws IOException {
+        return checkedSegment(FitsIO.BYTES_IN_SHORT).getShort();
+    }
+
+    @Override
+    public int readUnsignedByte() throws IOException {
+        return readByte() & FitsIO.BYTE_MASK;
+    }
+
+    @Override
+    public int readUnsignedShort() throws IOException {
+        return readShort() & FitsIO.SHORT_MASK;
+    }
+
+    @Override
+    public String readUTF() throws IOException {
+        return DataInputStream.readUTF(this);
+    }
+
+    @Override
+    public void reset() throws IOException {
+        this.position = this.marker;
+    }
+
+    @Override
+    public void seek(long offsetFromStart) throws IOException {
+        this.position = Math.max(0, offsetFromStart);
+    }
+
+    @Override
+    public long skip(long offset) throws IOException {
+        long target = this.position + offset;
+        if (target > this.fileLength) {
+            target = this.fileLength;
+        } else if (target < 0) {
+            target = 0;
+        }
+        long skipped = target - this.position;
+        this.position = target;
+        return skipped;
+    }
+
+    @Override
+    public void skipAllBytes(int toSkip) throws IOException {
+        skipAllBytes((long) toSkip);
+    }
+
+    @Override
+    public void skipAllBytes(long toSkip) throws IOException {
+        // Note that we allow negative skips...
+        if (skip(toSkip) < toSkip) {
+            throw new EOFException();
+        }
+    }
+
+    @Override
+    public int skipBytes(int n) throws IOException {
+        skipAllBytes(n);
+        return n;
+    }
+}
@@ -34,10 +34,12 @@ package nom.tam.fits;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
 
 import nom.tam.util.BufferedDataInputStream;
 import nom.tam.util.BufferedDataOutputStream;
+import nom.tam.util.BufferedFile;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -141,4 +143,73 @@ public class FitsHeapTest {
         Assert.assertTrue(actual.getCause().getMessage().equals("testHeapWriteFailures"));
     }
 
+    @Test
+    public void testHeapDataAcrossSegments() throws Exception {
+        FitsHeap heap = new FitsHeap(0);
+        byte[] filler = new byte[FitsHeap.SEGMENT_SIZE - 10];
+        filler[filler.length - 1] = 42;
+        int[] spanning = new int[]{
+            1,
+            2,
+            3,
+            4,
+            5
+        };
+        Assert.assertEquals(0L, heap.putData(filler));
+        long offset = heap.putData(spanning);
+        Assert.assertEquals(filler.length, offset);
+        Assert.assertEquals(filler.length + 20L, heap.size());
+
+        int[] result = new int[5];
+        heap.getData(offset, result);
+        Assert.assertArrayEquals(spanning, result);
+        byte[] last = new byte[1];
+        heap.getData(filler.length - 1L, last);
+        Assert.assertEquals(42, last[0]);
+
+        FitsHeap copy = heap.copy();
+        result = new int[5];
+        copy.getData(offset, result);
+        Assert.assertArrayEquals(spanning, result);
+    }
+
+    @Test
+    public void testHeapReadAcrossSegments() throws Exception {
+        File file = new File("target/fitsHeapSegments.bin");
+        long size = FitsHeap.SEGMENT_SIZE + 1024L;
+        BufferedFile out = new BufferedFile(file, "rw");
+        out.write(new byte[7]);
+        for (long index = 0; index < size / 4; index++) {
+            out.writeInt((int) index);
+        }
+        out.writeInt(-1);
+        out.close();
+
+        FitsHeap heap = new FitsHeap(size);
+        BufferedFile in = new BufferedFile(file, "r");
+        try {
+            in.skipAllBytes(7);
+            heap.read(in);
+            Assert.assertEquals(7 + size, in.getFilePointer());
+            Assert.assertEquals(-1, in.readInt());
+        } finally {
+            in.close();
+        }
+        // the heap is read completely, so it does not need the file anymore.
+        int[] values = new int[2];
+        heap.getData(FitsHeap.SEGMENT_SIZE - 4L, values);
+        Assert.assertArrayEquals(new int[]{
+            FitsHeap.SEGMENT_SIZE / 4 - 1,
+            FitsHeap.SEGMENT_SIZE / 4
+        }, values);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BufferedDataOutputStream copy = new BufferedDataOutputStream(bytes);
+        heap.write(copy);
+        copy.close();
+        Assert.assertEquals(size, bytes.size());
+        BufferedDataInputStream written = new BufferedDataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        written.skipAllBytes(size - 4);
+        Assert.assertEquals((int) (size / 4 - 1), written.readInt());
+    }
 }
@@ -0,0 +1,186 @@
+package nom.tam.fits;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 1996 - 2021 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+
+import nom.tam.util.BufferedFile;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HDUIndexTest {
+
+    private static final String FILE_NAME = "target/HDUIndexTest.fits";
+
+    @After
+    public void after() {
+        FitsFactory.setUseHDUIndexFiles(false);
+        HDUIndex.indexFileOf(new File(FILE_NAME)).delete();
+    }
+
+    private BasicHDU<?> extension(Object data, String extname, int extver) throws FitsException {
+        BasicHDU<?> hdu = Fits.makeHDU(data);
+        hdu.getHeader().addValue("EXTNAME", extname, null);
+        hdu.getHeader().addValue("EXTVER", extver, null);
+        return hdu;
+    }
+
+    private void writeFile() throws Exception {
+        Fits fits = new Fits();
+        fits.addHDU(Fits.makeHDU(new int[10][10]));
+        fits.addHDU(extension(new float[100][30], "SCI", 1));
+        fits.addHDU(extension(new Object[]{
+            new int[]{
+                1,
+                2,
+                3
+            },
+            new double[]{
+                1.5,
+                2.5,
+                3.5
+            }
+        }, "EVENTS", 1));
+        fits.addHDU(extension(new short[7][3], "SCI", 2));
+        BufferedFile out = new BufferedFile(FILE_NAME, "rw");
+        try {
+            fits.write(out);
+        } finally {
+            out.close();
+        }
+        fits.close();
+    }
+
+    @Test
+    public void testScan() throws Exception {
+        writeFile();
+        Fits fits = new Fits(FILE_NAME);
+        try {
+            HDUIndex index = fits.getHDUIndex();
+            Assert.assertEquals(4, index.size());
+            Assert.assertEquals(0, index.get(0).getOffset());
+            Assert.assertEquals(2880, index.get(0).getHeaderSize());
+            Assert.assertEquals(2880, index.get(0).getDataSize());
+            Assert.assertEquals("SCI", index.get(1).getExtname());
+            Assert.assertEquals(100 * 30 * 4 + 2880 - 100 * 30 * 4 % 2880, index.get(1).getDataSize());
+            Assert.assertEquals(index.get(1).getEndOffset(), index.get(2).getOffset());
+            Assert.assertEquals(new File(FILE_NAME).length(), index.get(3).getEndOffset());
+            Assert.assertEquals(2, index.indexAt(index.get(2).getOffset()));
+            Assert.assertEquals(-1, index.indexAt(index.get(2).getOffset() + 1));
+            Assert.assertEquals(3, index.indexOf("sci ", 2));
+            Assert.assertEquals(-1, index.indexOf("SCI", 3));
+        } finally {
+            fits.close();
+        }
+    }
+
+    @Test
+    public void testDirectAccess() throws Exception {
+        writeFile();
+        Fits fits = new Fits(FILE_NAME);
+        try {
+            BasicHDU<?> last = fits.getHDU(3);
+            Assert.assertEquals(4, fits.getNumberOfHDUs());
+            Assert.assertArrayEquals(new int[]{
+                7,
+                3
+            }, ((ImageHDU) last).getAxes());
+            BasicHDU<?> events = fits.getHDU("EVENTS", 1);
+            Assert.assertEquals("EVENTS", events.getHeader().getStringValue("EXTNAME"));
+            Assert.assertNull(fits.getHDU(4));
+            Assert.assertNull(fits.getHDU("EVENTS", 2));
+
+            BasicHDU<?>[] all = fits.read();
+            Assert.assertEquals(4, all.length);
+            Assert.assertSame(events, all[2]);
+            Assert.assertSame(last, all[3]);
+            Assert.assertEquals(100, ((ImageHDU) all[1]).getAxes()[0]);
+        } finally {
+            fits.close();
+        }
+    }
+
+    @Test
+    public void testSkipWithIndex() throws Exception {
+        writeFile();
+        Fits fits = new Fits(FILE_NAME);
+        try {
+            fits.getHDUIndex();
+            fits.skipHDU(2);
+            BasicHDU<?> hdu = fits.readHDU();
+            Assert.assertEquals("EVENTS", hdu.getHeader().getStringValue("EXTNAME"));
+        } finally {
+            fits.close();
+        }
+    }
+
+    @Test
+    public void testSearchWithoutIndex() throws Exception {
+        writeFile();
+        Fits fits = new Fits(FILE_NAME);
+        try {
+            fits.addHDU(extension(new int[2][2], "EXTRA", 1));
+            Assert.assertEquals(4, fits.getHDUIndex().size());
+            Assert.assertSame(fits.getHDU(0), fits.getHDU("EXTRA", 1));
+            Assert.assertNotNull(fits.getHDU("SCI", 2));
+            Assert.assertNull(fits.getHDU("SCI", 3));
+        } finally {
+            fits.close();
+        }
+    }
+
+    @Test
+    public void testIndexFile() throws Exception {
+        writeFile();
+        File file = new File(FILE_NAME);
+        File indexFile = HDUIndex.indexFileOf(file);
+        indexFile.delete();
+        FitsFactory.setUseHDUIndexFiles(true);
+        Fits fits = new Fits(file);
+        try {
+            Assert.assertEquals("SCI", fits.getHDU("SCI", 2).getHeader().getStringValue("EXTNAME"));
+        } finally {
+            fits.close();
+        }
+        Assert.assertTrue(indexFile.exists());
+        HDUIndex loaded = HDUIndex.load(indexFile, file);
+        Assert.assertNotNull(loaded);
+        Assert.assertEquals(4, loaded.size());
+        Assert.assertEquals(file.length(), loaded.get(3).getEndOffset());
+
+        Assert.assertTrue(file.setLastModified(file.lastModified() - 10000));
+        Assert.assertNull(HDUIndex.load(indexFile, file));
+    }
+}
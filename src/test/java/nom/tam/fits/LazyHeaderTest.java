@@ -0,0 +1,150 @@
+package nom.tam.fits;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 1996 - 2021 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+import nom.tam.fits.header.Standard;
+import nom.tam.util.BufferedDataInputStream;
+import nom.tam.util.BufferedDataOutputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LazyHeaderTest {
+
+    @After
+    public void after() {
+        FitsFactory.setUseHierarch(false);
+        FitsFactory.setLongStringsEnabled(false);
+    }
+
+    private byte[] twoHDUs() throws Exception {
+        FitsFactory.setUseHierarch(true);
+        FitsFactory.setLongStringsEnabled(true);
+        Fits fits = new Fits();
+        BasicHDU<?> primary = Fits.makeHDU(new short[5][7]);
+        Header header = primary.getHeader();
+        header.addValue("OBJECT", "M 31", "the target");
+        header.addValue("EXPTIME", 12.5, "seconds");
+        header.addValue("HIERARCH.ESO.DET.CHIP", "CCD-1", null);
+        header.addValue("LONGSTR", "a string that is much longer than what fits on a single card, so it needs CONTINUE cards to be written", null);
+        for (int index = 0; index < 60; index++) {
+            header.insertHistory("history line " + index);
+        }
+        header.addValue("OBSERVER", "first", null);
+        fits.addHDU(primary);
+        BasicHDU<?> extension = Fits.makeHDU(new int[3][4]);
+        extension.getHeader().addValue("EXTNAME", "SECOND", null);
+        fits.addHDU(extension);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BufferedDataOutputStream out = new BufferedDataOutputStream(bytes);
+        fits.write(out);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void testValuesLikeHeader() throws Exception {
+        byte[] bytes = twoHDUs();
+        Header header = new Header(new BufferedDataInputStream(new ByteArrayInputStream(bytes)));
+        LazyHeader lazy = LazyHeader.read(new BufferedDataInputStream(new ByteArrayInputStream(bytes)));
+
+        Assert.assertEquals(header.getOriginalSize(), lazy.getSize());
+        Assert.assertEquals(header.getNumberOfPhysicalCards(), lazy.getNumberOfPhysicalCards());
+        Assert.assertEquals(header.getDataSize(), lazy.getDataSize());
+        Assert.assertEquals("M 31", lazy.getStringValue("OBJECT"));
+        Assert.assertEquals(12.5, lazy.getDoubleValue("EXPTIME", 0), 0);
+        Assert.assertEquals(16, lazy.getIntValue(Standard.BITPIX, 0));
+        Assert.assertEquals(7, lazy.getLongValue("NAXIS1", 0));
+        Assert.assertTrue(lazy.getBooleanValue(Standard.SIMPLE, false));
+        Assert.assertEquals(header.getStringValue("LONGSTR"), lazy.getStringValue("LONGSTR"));
+        Assert.assertEquals("CCD-1", lazy.getStringValue("HIERARCH.ESO.DET.CHIP"));
+        Assert.assertEquals("first", lazy.getStringValue("OBSERVER"));
+        Assert.assertNull(lazy.getStringValue("EXPTIME"));
+        Assert.assertFalse(lazy.containsKey("CONTINUE"));
+        Assert.assertFalse(lazy.containsKey("END"));
+        Assert.assertNull(lazy.findCard("MISSING"));
+        Assert.assertSame(lazy.findCard("OBJECT"), lazy.findCard("OBJECT"));
+        Assert.assertEquals(-1, lazy.getFileOffset());
+
+        Header full = lazy.toHeader();
+        Assert.assertEquals(header.getNumberOfCards(), full.getNumberOfCards());
+        Assert.assertEquals(header.getStringValue("LONGSTR"), full.getStringValue("LONGSTR"));
+    }
+
+    @Test
+    public void testSkipToNextHeader() throws Exception {
+        BufferedDataInputStream in = new BufferedDataInputStream(new ByteArrayInputStream(twoHDUs()));
+        LazyHeader primary = LazyHeader.read(in);
+        in.skipAllBytes(primary.getDataSize());
+        LazyHeader extension = LazyHeader.read(in);
+        Assert.assertEquals("SECOND", extension.getStringValue(Standard.EXTNAME));
+        Assert.assertEquals(2880, extension.getDataSize());
+        in.skipAllBytes(extension.getDataSize());
+        try {
+            LazyHeader.read(in);
+            Assert.fail("expected the end of the input");
+        } catch (EOFException e) {
+            // the input ends after the last HDU
+        }
+    }
+
+    @Test
+    public void testLastDuplicateCounts() throws Exception {
+        byte[] block = new byte[2880];
+        String cards = String.format("%-80s%-80s%-80s%-80s%-80s", "SIMPLE  =                    T", "NAXIS   =                    0", "OBJECT  = 'first'", "OBJECT  = 'second'", "END");
+        System.arraycopy(cards.getBytes("US-ASCII"), 0, block, 0, cards.length());
+        LazyHeader lazy = LazyHeader.read(new BufferedDataInputStream(new ByteArrayInputStream(block)));
+        Assert.assertEquals("second", lazy.getStringValue("OBJECT"));
+        Assert.assertEquals(5, lazy.getNumberOfPhysicalCards());
+        Assert.assertEquals(0, lazy.getDataSize());
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotFits() throws Exception {
+        byte[] block = new byte[2880];
+        System.arraycopy("NAXIS   =                    0".getBytes("US-ASCII"), 0, block, 0, 30);
+        LazyHeader.read(new BufferedDataInputStream(new ByteArrayInputStream(block)));
+    }
+
+    @Test(expected = TruncatedFileException.class)
+    public void testTruncated() throws Exception {
+        byte[] block = new byte[2880];
+        System.arraycopy("SIMPLE  =                    T".getBytes("US-ASCII"), 0, block, 0, 30);
+        LazyHeader.read(new BufferedDataInputStream(new ByteArrayInputStream(block)));
+    }
+}
@@ -0,0 +1,238 @@
+package nom.tam.fits.compress;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 1996 - 2016 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import nom.tam.fits.Fits;
+import nom.tam.fits.ImageHDU;
+import nom.tam.util.BufferedDataOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BlockGZipTest {
+
+    private static byte[] testData(int size) {
+        byte[] data = new byte[size];
+        Random random = new Random(42);
+        for (int index = 0; index < size; index++) {
+            data[index] = (byte) (index % 1000 < 500 ? index / 7 : random.nextInt());
+        }
+        return data;
+    }
+
+    private static byte[] blockGZip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BlockGZipOutputStream out = new BlockGZipOutputStream(bytes);
+        out.write(data, 0, 1000);
+        out.write(data[1000]);
+        out.write(data, 1001, data.length - 1001);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * check that the file ends with the empty member bgzip uses as end of file
+     * marker.
+     */
+    static void assertEndsWithEofMember(File file) throws IOException {
+        byte[] marker = {
+            0x1f,
+            (byte) 0x8b,
+            8,
+            4,
+            0,
+            0,
+            0,
+            0,
+            0,
+            (byte) 0xff,
+            6,
+            0,
+            'B',
+            'C',
+            2,
+            0,
+            0x1b,
+            0,
+            3,
+            0,
+            0,
+            0,
+            0,
+            0,
+            0,
+            0,
+            0,
+            0
+        };
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] tail = new byte[marker.length];
+            in.seek(in.length() - tail.length);
+            in.readFully(tail);
+            Assert.assertArrayEquals(marker, tail);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[7777];
+        int count;
+        while ((count = in.read(buffer)) >= 0) {
+            bytes.write(buffer, 0, count);
+        }
+        in.close();
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void testReadableByPlainGZip() throws Exception {
+        byte[] data = testData(5 * BlockGZipOutputStream.BLOCK_SIZE + 123);
+        byte[] compressed = blockGZip(data);
+        Assert.assertArrayEquals(data, readAll(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+    }
+
+    @Test
+    public void testParallelRead() throws Exception {
+        byte[] data = testData(5 * BlockGZipOutputStream.BLOCK_SIZE + 123);
+        InputStream in = CompressionManager.decompress(new ByteArrayInputStream(blockGZip(data)));
+        Assert.assertTrue(in instanceof BlockGZipInputStream);
+        Assert.assertArrayEquals(data, readAll(in));
+    }
+
+    @Test
+    public void testPlainGZipIsNotBlockGZip() throws Exception {
+        byte[] data = testData(10000);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        out.write(data);
+        out.close();
+        InputStream in = CompressionManager.decompress(new ByteArrayInputStream(bytes.toByteArray()));
+        Assert.assertFalse(in instanceof BlockGZipInputStream);
+        Assert.assertArrayEquals(data, readAll(in));
+    }
+
+    @Test
+    public void testExtraFieldWithShortSubfields() throws Exception {
+        // an 'AB' and an 'XY' subfield without data, no block size.
+        byte[] plain = {
+            0x1f,
+            (byte) 0x8b,
+            8,
+            4,
+            0,
+            0,
+            0,
+            0,
+            0,
+            (byte) 0xff,
+            8,
+            0,
+            'A',
+            'B',
+            0,
+            0,
+            'X',
+            'Y',
+            0,
+            0,
+            0,
+            0
+        };
+        Assert.assertFalse(BlockGZipInputStream.isBlockGZip(new BufferedInputStream(new ByteArrayInputStream(plain))));
+        // the block size follows an empty subfield, beyond the first 18 bytes.
+        byte[] block = plain.clone();
+        block[10] = 10;
+        block[16] = 'B';
+        block[17] = 'C';
+        block[18] = 2;
+        Assert.assertTrue(BlockGZipInputStream.isBlockGZip(new BufferedInputStream(new ByteArrayInputStream(block))));
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorruptMember() throws Exception {
+        byte[] compressed = blockGZip(testData(100000));
+        compressed[compressed.length / 2] ^= 0x55;
+        readAll(new BlockGZipInputStream(new ByteArrayInputStream(compressed)));
+    }
+
+    @Test
+    public void testOversizedMember() throws Exception {
+        byte[] compressed = blockGZip(testData(2000));
+        // the ISIZE of the first member, just before the empty end of file
+        // member.
+        int isize = compressed.length - 28 - 4;
+        compressed[isize + 3] = (byte) 0xFF;
+        try {
+            readAll(new BlockGZipInputStream(new ByteArrayInputStream(compressed)));
+            Assert.fail("oversized member accepted");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("exceeds"));
+        }
+    }
+
+    @Test
+    public void testWriteAndReadFits() throws Exception {
+        int[][] image = new int[300][300];
+        for (int y = 0; y < image.length; y++) {
+            for (int x = 0; x < image[y].length; x++) {
+                image[y][x] = x * y;
+            }
+        }
+        File file = new File("target/blockgzip.fits.gz");
+        Fits fits = new Fits();
+        fits.addHDU(Fits.makeHDU(image));
+        BufferedDataOutputStream out = new BufferedDataOutputStream(new BlockGZipOutputStream(new FileOutputStream(file)));
+        fits.write(out);
+        out.close();
+        fits.close();
+        assertEndsWithEofMember(file);
+
+        fits = new Fits(file);
+        Assert.assertArrayEquals(image, (int[][]) ((ImageHDU) fits.readHDU()).getKernel());
+        fits.close();
+    }
+}
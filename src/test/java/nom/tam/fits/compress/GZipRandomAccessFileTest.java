@@ -0,0 +1,172 @@
+package nom.tam.fits.compress;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 1996 - 2016 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import nom.tam.fits.Fits;
+import nom.tam.fits.ImageHDU;
+import nom.tam.util.BufferedDataOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GZipRandomAccessFileTest {
+
+    private static byte[] testData(int size) {
+        byte[] data = new byte[size];
+        Random random = new Random(7);
+        for (int index = 0; index < size; index++) {
+            data[index] = (byte) (index % 300 < 200 ? index / 11 : random.nextInt());
+        }
+        return data;
+    }
+
+    private static File write(OutputStream out, File file, byte[] data) throws IOException {
+        out.write(data);
+        out.close();
+        GZipIndex.indexFileOf(file).delete();
+        return file;
+    }
+
+    private static void assertRandomReads(byte[] data, GZipRandomAccessFile in) throws IOException {
+        Assert.assertEquals(data.length, in.length());
+        Random random = new Random(3);
+        byte[] buffer = new byte[5000];
+        for (int test = 0; test < 50; test++) {
+            long position = random.nextInt(data.length - buffer.length);
+            in.seek(position);
+            int count = in.read(buffer, 0, buffer.length);
+            Assert.assertTrue(count > 0);
+            Assert.assertEquals(position + count, in.getFilePointer());
+            for (int index = 0; index < count; index++) {
+                Assert.assertEquals(data[(int) position + index], buffer[index]);
+            }
+        }
+        in.seek(data.length);
+        Assert.assertEquals(-1, in.read());
+        in.close();
+    }
+
+    @Test
+    public void testBlockGZip() throws Exception {
+        byte[] data = testData(10 * BlockGZipOutputStream.BLOCK_SIZE + 17);
+        File file = new File("target/random-block.gz");
+        write(new BlockGZipOutputStream(new FileOutputStream(file)), file, data);
+        GZipIndex index = GZipIndex.scan(file, 0);
+        // every block plus the empty end of file member
+        Assert.assertEquals(12, index.size());
+        Assert.assertEquals(data.length, index.getLength());
+        Assert.assertEquals(2, index.indexAt(2L * BlockGZipOutputStream.BLOCK_SIZE + 5));
+        assertRandomReads(data, new GZipRandomAccessFile(file, index));
+
+        Assert.assertEquals(2, GZipIndex.scan(file, 4 * BlockGZipOutputStream.BLOCK_SIZE).indexAt(9L * BlockGZipOutputStream.BLOCK_SIZE));
+    }
+
+    @Test
+    public void testPlainGZip() throws Exception {
+        byte[] data = testData(300000);
+        File file = new File("target/random-plain.gz");
+        write(new GZIPOutputStream(new FileOutputStream(file)), file, data);
+        GZipIndex index = GZipIndex.scan(file, 0);
+        Assert.assertEquals(1, index.size());
+        Assert.assertEquals(data.length, index.getLength());
+        assertRandomReads(data, new GZipRandomAccessFile(file, index));
+    }
+
+    @Test
+    public void testIndexFile() throws Exception {
+        byte[] data = testData(3 * BlockGZipOutputStream.BLOCK_SIZE);
+        File file = new File("target/random-saved.gz");
+        write(new BlockGZipOutputStream(new FileOutputStream(file)), file, data);
+        Assert.assertNull(GZipIndex.load(GZipIndex.indexFileOf(file), file));
+        GZipRandomAccessFile in = new GZipRandomAccessFile(file);
+        Assert.assertTrue(GZipIndex.indexFileOf(file).isFile());
+        GZipIndex loaded = GZipIndex.load(GZipIndex.indexFileOf(file), file);
+        Assert.assertEquals(in.getIndex().size(), loaded.size());
+        Assert.assertEquals(data.length, loaded.getLength());
+        assertRandomReads(data, new GZipRandomAccessFile(file));
+
+        file.setLastModified(file.lastModified() - 10000);
+        Assert.assertNull(GZipIndex.load(GZipIndex.indexFileOf(file), file));
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadOnly() throws Exception {
+        File file = new File("target/random-readonly.gz");
+        write(new BlockGZipOutputStream(new FileOutputStream(file)), file, testData(100));
+        new GZipRandomAccessFile(file).write(1);
+    }
+
+    @Test
+    public void testFitsTiles() throws Exception {
+        float[][] image = new float[500][400];
+        for (int y = 0; y < image.length; y++) {
+            for (int x = 0; x < image[y].length; x++) {
+                image[y][x] = x + y * 1000;
+            }
+        }
+        File file = new File("target/random-image.fits.gz");
+        Fits fits = new Fits();
+        fits.addHDU(Fits.makeHDU(new int[10][10]));
+        fits.addHDU(Fits.makeHDU(image));
+        BufferedDataOutputStream out = new BufferedDataOutputStream(new BlockGZipOutputStream(new FileOutputStream(file)));
+        fits.write(out);
+        out.close();
+        fits.close();
+        BlockGZipTest.assertEndsWithEofMember(file);
+        GZipIndex.indexFileOf(file).delete();
+
+        fits = new Fits(new GZipRandomAccessFile(file));
+        ImageHDU hdu = (ImageHDU) fits.getHDU(1);
+        float[] tile = (float[]) hdu.getTiler().getTile(new int[]{
+            450,
+            100
+        }, new int[]{
+            20,
+            30
+        });
+        Assert.assertEquals(600, tile.length);
+        for (int y = 0; y < 20; y++) {
+            for (int x = 0; x < 30; x++) {
+                Assert.assertEquals(image[450 + y][100 + x], tile[y * 30 + x], 0f);
+            }
+        }
+        Assert.assertArrayEquals(new int[10][10], (int[][]) fits.getHDU(0).getKernel());
+        fits.close();
+    }
+}
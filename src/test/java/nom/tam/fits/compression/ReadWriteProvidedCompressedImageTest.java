@@ -38,6 +38,8 @@ import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -48,7 +50,14 @@ import java.lang.reflect.Array;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.ImageIcon;
 import javax.swing.JFrame;
@@ -61,6 +70,7 @@ import org.junit.Test;
 import nom.tam.fits.BasicHDU;
 import nom.tam.fits.Fits;
 import nom.tam.fits.FitsException;
+import nom.tam.fits.FitsFactory;
 import nom.tam.fits.Header;
 import nom.tam.fits.HeaderCard;
 import nom.tam.fits.ImageData;
@@ -71,8 +81,10 @@ import nom.tam.fits.compression.algorithm.rice.RiceCompressOption;
 import nom.tam.fits.header.Compression;
 import nom.tam.fits.header.Standard;
 import nom.tam.fits.util.BlackBoxImages;
+import nom.tam.image.ImageTiler;
 import nom.tam.image.StandardImageTiler;
 import nom.tam.image.compression.hdu.CompressedImageHDU;
+import nom.tam.util.ArrayDataOutput;
 import nom.tam.util.ArrayFuncs;
 import nom.tam.util.BufferedDataOutputStream;
 import nom.tam.util.SafeClose;
@@ -510,6 +522,284 @@ public class ReadWriteProvidedCompressedImageTest {
         doTile("readRiceAsImageHDU", data, image.getTiler(), 0, 0, 20, 20);
     }
 
+    @Test
+    public void readSeveralSubImagesOfOneHdu() throws Exception {
+        String fileName = "src/test/resources/nom/tam/image/provided/m13_rice.fits";
+        Object expected = readAll(fileName, 1);
+        Fits f = null;
+        try {
+            f = new Fits(fileName);
+            CompressedImageHDU hdu = (CompressedImageHDU) f.getHDU(1);
+            // the tiles created for the first area are reused for the others.
+            assertSubImage(hdu, expected, 17, 33, 120, 41);
+            assertSubImage(hdu, expected, 0, 299, 300, 1);
+            assertSubImage(hdu, expected, 17, 33, 120, 41);
+            Assert.assertEquals(expected, hdu.getUncompressedData());
+            assertSubImage(hdu, expected, 250, 3, 50, 200);
+        } finally {
+            SafeClose.close(f);
+        }
+    }
+
+    @Test
+    public void readRiceSubImage() throws Exception {
+        assertSubImage("src/test/resources/nom/tam/image/provided/m13_rice.fits", 17, 33, 120, 41);
+        assertSubImage("src/test/resources/nom/tam/image/provided/m13real_rice.fits", 0, 299, 300, 1);
+        assertSubImage("src/test/resources/nom/tam/image/provided/m13_hcomp.fits", 250, 3, 50, 200);
+    }
+
+    @Test
+    public void testSubImageOfSquareTiles() throws Exception {
+        Fits f = null;
+        try {
+            f = new Fits();
+            CompressedImageHDU compressedHdu = CompressedImageHDU.fromImageHDU(this.m13real, 40, 40);
+            compressedHdu.setCompressAlgorithm(Compression.ZCMPTYPE_RICE_1)//
+                    .setQuantAlgorithm(Compression.ZQUANTIZ_SUBTRACTIVE_DITHER_1)//
+                    .getCompressOption(QuantizeOption.class)//
+                    /**/.setQlevel(1.0);
+            compressedHdu.compress();
+            f.addHDU(compressedHdu);
+            BufferedDataOutputStream bdos = null;
+            try {
+                bdos = new BufferedDataOutputStream(new FileOutputStream("target/subImageOfSquareTiles.fits.fz"));
+                f.write(bdos);
+            } finally {
+                SafeClose.close(bdos);
+            }
+        } finally {
+            SafeClose.close(f);
+        }
+        assertSubImage("target/subImageOfSquareTiles.fits.fz", 35, 75, 50, 90);
+        assertSubImage("target/subImageOfSquareTiles.fits.fz", 281, 0, 19, 300);
+        assertSubImage("target/subImageOfSquareTiles.fits.fz", 40, 40, 40, 40);
+    }
+
+    @Test
+    public void testStreamedCompression() throws Exception {
+        assertStreamedCompression("src/test/resources/nom/tam/image/provided/m13real.fits", Compression.ZQUANTIZ_SUBTRACTIVE_DITHER_1, 40, 40);
+        assertStreamedCompression("src/test/resources/nom/tam/image/provided/m13.fits", null, 300, 7);
+    }
+
+    private void assertStreamedCompression(String fileName, String quantAlgorithm, int tileWidth, int tileHeight) throws Exception {
+        Fits f = null;
+        BufferedDataOutputStream bdos = null;
+        try {
+            f = new Fits(fileName);
+            ImageHDU image = (ImageHDU) f.getHDU(0);
+            CompressedImageHDU compressedHdu = CompressedImageHDU.fromImageHeader(image.getHeader(), tileWidth, tileHeight);
+            compressedHdu.setCompressAlgorithm(Compression.ZCMPTYPE_RICE_1)//
+                    .setQuantAlgorithm(quantAlgorithm);
+            if (quantAlgorithm != null) {
+                compressedHdu.getCompressOption(QuantizeOption.class).setQlevel(1.0);
+            }
+            bdos = new BufferedDataOutputStream(new FileOutputStream("target/streamed.fits.fz"));
+            BasicHDU.getDummyHDU().write(bdos);
+            int cards = compressedHdu.getHeader().getNumberOfCards();
+            compressedHdu.compress(image.getTiler(), bdos);
+            // the compressed table is only written, the hdu stays as it was.
+            Assert.assertEquals(cards, compressedHdu.getHeader().getNumberOfCards());
+            Assert.assertEquals(0, compressedHdu.getHeader().getIntValue(Standard.TFIELDS));
+            Assert.assertEquals(0, compressedHdu.getData().getNCols());
+        } finally {
+            SafeClose.close(bdos);
+            SafeClose.close(f);
+        }
+        try {
+            f = new Fits(fileName);
+            ImageHDU image = (ImageHDU) f.getHDU(0);
+            CompressedImageHDU compressedHdu = CompressedImageHDU.fromImageHDU(image, tileWidth, tileHeight);
+            compressedHdu.setCompressAlgorithm(Compression.ZCMPTYPE_RICE_1)//
+                    .setQuantAlgorithm(quantAlgorithm);
+            if (quantAlgorithm != null) {
+                compressedHdu.getCompressOption(QuantizeOption.class).setQlevel(1.0);
+            }
+            compressedHdu.compress();
+            Object expected = compressedHdu.asImageHDU().getData().getData();
+            Object actual = readCompressedHdu("target/streamed.fits.fz", 1).getData().getData();
+            Assert.assertArrayEquals((Object[]) expected, (Object[]) actual);
+        } finally {
+            SafeClose.close(f);
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testThreadPoolReplacedWhileCompressing() throws Exception {
+        final int[][] pixels = new int[100][100];
+        for (int y = 0; y < pixels.length; y++) {
+            for (int x = 0; x < pixels[y].length; x++) {
+                pixels[y][x] = x * y;
+            }
+        }
+        ImageHDU image = (ImageHDU) Fits.makeHDU(pixels);
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingDeque<Runnable>());
+        // install another executor after some tiles were submitted to the
+        // default pool, the running compression keeps using the default pool.
+        ImageTiler swappingTiler = new ImageTiler() {
+
+            private int tiles;
+
+            @Override
+            public Object getCompleteImage() throws IOException {
+                return pixels;
+            }
+
+            @Override
+            public Object getTile(int[] corners, int[] lengths) throws IOException {
+                int[] tile = new int[lengths[0] * lengths[1]];
+                getTile(tile, corners, lengths);
+                return tile;
+            }
+
+            @Override
+            public void getTile(ArrayDataOutput output, int[] corners, int[] lengths) throws FitsException, IOException {
+                output.write((int[]) getTile(corners, lengths));
+            }
+
+            @Override
+            public void getTile(Object array, int[] corners, int[] lengths) throws IOException {
+                if (++this.tiles == 3) {
+                    FitsFactory.setThreadPool(executor);
+                }
+                for (int y = 0; y < lengths[0]; y++) {
+                    System.arraycopy(pixels[corners[0] + y], corners[1], array, y * lengths[1], lengths[1]);
+                }
+            }
+        };
+        try {
+            FitsFactory.setThreadPool(null);
+            ExecutorService defaultPool = FitsFactory.threadPool();
+            CompressedImageHDU compressedHdu = CompressedImageHDU.fromImageHDU(image, 100, 10);
+            compressedHdu.setCompressAlgorithm(Compression.ZCMPTYPE_RICE_1).setParallelism(1);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            BufferedDataOutputStream out = new BufferedDataOutputStream(bytes);
+            BasicHDU.getDummyHDU().write(out);
+            compressedHdu.compress(swappingTiler, out);
+            out.close();
+            Assert.assertSame(executor, FitsFactory.threadPool());
+            Assert.assertFalse(defaultPool.isShutdown());
+
+            Fits read = new Fits(new ByteArrayInputStream(bytes.toByteArray()));
+            try {
+                ImageHDU uncompressed = ((CompressedImageHDU) read.getHDU(1)).asImageHDU();
+                Assert.assertArrayEquals(pixels, (int[][]) uncompressed.getKernel());
+            } finally {
+                read.close();
+            }
+            FitsFactory.setThreadPool(null);
+            Assert.assertSame(defaultPool, FitsFactory.threadPool());
+        } finally {
+            FitsFactory.setThreadPool(null);
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testParallelismOfSubImageReads() throws Exception {
+        String fileName = "src/test/resources/nom/tam/image/provided/m13_rice.fits";
+        Object expected = readAll(fileName, 1);
+        // counts the tiles that were submitted before and are not done yet
+        // whenever the next tile is submitted.
+        final int[] maxPending = new int[1];
+        final List<Future<?>> submitted = new ArrayList<Future<?>>();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(4, 4, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingDeque<Runnable>()) {
+
+            @Override
+            public void execute(Runnable command) {
+                int pending = 0;
+                for (Future<?> earlier : submitted) {
+                    if (!earlier.isDone()) {
+                        pending++;
+                    }
+                }
+                maxPending[0] = Math.max(maxPending[0], pending);
+                submitted.add((Future<?>) command);
+                super.execute(command);
+            }
+
+            @Override
+            protected void beforeExecute(Thread t, Runnable r) {
+                try {
+                    // keep the tiles in flight long enough to be counted.
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        Fits f = null;
+        try {
+            FitsFactory.setThreadPool(executor);
+            f = new Fits(fileName);
+            CompressedImageHDU hdu = (CompressedImageHDU) f.getHDU(1);
+            hdu.setParallelism(1);
+            assertSubImage(hdu, expected, 17, 33, 120, 41);
+            Assert.assertEquals(expected, hdu.getUncompressedData());
+            Assert.assertTrue(submitted.size() > 1);
+            Assert.assertEquals(0, maxPending[0]);
+
+            hdu.setParallelism(4);
+            assertSubImage(hdu, expected, 17, 33, 120, 41);
+            Assert.assertTrue(maxPending[0] > 0);
+        } finally {
+            SafeClose.close(f);
+            FitsFactory.setThreadPool(null);
+            executor.shutdown();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testTilesCompressIndependently() throws Exception {
+        // a single thread running the latest submitted tile first, tiles that
+        // wait for their predecessor would block forever.
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingDeque<Runnable>() {
+
+            @Override
+            public boolean offer(Runnable runnable) {
+                return offerFirst(runnable);
+            }
+        });
+        try {
+            FitsFactory.setThreadPool(executor);
+            CompressedImageHDU compressedHdu = CompressedImageHDU.fromImageHDU(this.m13, 300, 10);
+            compressedHdu.setCompressAlgorithm(Compression.ZCMPTYPE_RICE_1);
+            compressedHdu.setParallelism(8).compress();
+            Assert.assertArrayEquals(this.m13_data, (short[][]) compressedHdu.asImageHDU().getData().getData());
+        } finally {
+            FitsFactory.setThreadPool(null);
+            executor.shutdown();
+        }
+    }
+
+    private void assertSubImage(String fileName, int x, int y, int nx, int ny) throws Exception {
+        Object expected = readAll(fileName, 1);
+        Fits f = null;
+        try {
+            f = new Fits(fileName);
+            assertSubImage((CompressedImageHDU) f.getHDU(1), expected, x, y, nx, ny);
+        } finally {
+            SafeClose.close(f);
+        }
+    }
+
+    private void assertSubImage(CompressedImageHDU hdu, Object expected, int x, int y, int nx, int ny) throws Exception {
+        int width = hdu.getHeader().getIntValue(Compression.ZNAXISn.n(1));
+        Object tile = hdu.getTile(new int[]{
+            y,
+            x
+        }, new int[]{
+            ny,
+            nx
+        });
+        Assert.assertEquals(nx * ny, Array.getLength(tile));
+        Object expectedArray = ArrayFuncs.getBaseClass(tile) == float.class ? ((FloatBuffer) expected).array() : ((ShortBuffer) expected).array();
+        for (int row = 0; row < ny; row++) {
+            for (int column = 0; column < nx; column++) {
+                Assert.assertEquals(Array.get(expectedArray, (row + y) * width + column + x), Array.get(tile, row * nx + column));
+            }
+        }
+    }
+
     private void doTile(String test, Object data, StandardImageTiler t, int x, int y, int nx, int ny) throws Exception {
         Class<?> baseClass = ArrayFuncs.getBaseClass(data);
         Object tile = Array.newInstance(baseClass, nx * ny);
@@ -45,6 +45,8 @@ import nom.tam.fits.FitsFactory;
 import nom.tam.fits.Header;
 import nom.tam.fits.HeaderCardException;
 import nom.tam.fits.compression.algorithm.api.ICompressOption;
+import nom.tam.fits.compression.algorithm.api.ICompressor;
+import nom.tam.fits.compression.algorithm.quant.QuantizeProcessor.DoubleQuantCompressor;
 import nom.tam.fits.compression.algorithm.quant.QuantizeProcessor.FloatQuantCompressor;
 import nom.tam.fits.compression.provider.param.api.HeaderAccess;
 import nom.tam.fits.compression.provider.param.api.ICompressColumnParameter;
@@ -743,6 +745,57 @@ public class QuantizeTest {
         Assert.assertFalse(floatQuantCompressor.compress(FloatBuffer.wrap(new float[4]), ByteBuffer.wrap(new byte[100])));
     }
 
+    @Test
+    public void testFloatTilesLikeDoubleTiles() throws Exception {
+        final int xsize = 50;
+        final int ysize = 20;
+        float[] floats = new float[xsize * ysize];
+        double[] doubles = new double[floats.length];
+        for (int index = 0; index < floats.length; index++) {
+            floats[index] = (float) (Math.sin(index / 10d) * 1000d + index % 7);
+            doubles[index] = floats[index];
+        }
+        floats[33] = Float.NaN;
+        doubles[33] = Double.NaN;
+        final int[][] quantized = new int[2][];
+        for (int run = 0; run < 2; run++) {
+            final int index = run;
+            ICompressor<IntBuffer> capture = new ICompressor<IntBuffer>() {
+
+                @Override
+                public boolean compress(IntBuffer buffer, ByteBuffer compressed) {
+                    quantized[index] = new int[buffer.remaining()];
+                    buffer.get(quantized[index]);
+                    return true;
+                }
+
+                @Override
+                public void decompress(ByteBuffer compressed, IntBuffer buffer) {
+                    buffer.put(quantized[index]);
+                }
+            };
+            QuantizeOption option = new QuantizeOption()//
+                    .setDither(true)//
+                    .setSeed(7)//
+                    .setNullValue(Double.NaN)//
+                    .setCheckNull(true)//
+                    .setQlevel(4)//
+                    .setTileWidth(xsize)//
+                    .setTileHeight(ysize);
+            if (run == 0) {
+                Assert.assertTrue(new FloatQuantCompressor(option, capture).compress(FloatBuffer.wrap(floats), null));
+                float[] restored = new float[floats.length];
+                new FloatQuantCompressor(option, capture).decompress(null, FloatBuffer.wrap(restored));
+                for (int pixel = 0; pixel < floats.length; pixel++) {
+                    Assert.assertEquals(floats[pixel], restored[pixel], option.getBScale());
+                }
+            } else {
+                Assert.assertTrue(new DoubleQuantCompressor(option, capture).compress(DoubleBuffer.wrap(doubles), null));
+            }
+        }
+        Assert.assertArrayEquals(quantized[1], quantized[0]);
+    }
+
     @Test
     public void testQuantParameters() throws Exception {
         QuantizeOption baseOption = new QuantizeOption();
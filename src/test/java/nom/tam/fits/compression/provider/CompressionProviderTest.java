@@ -31,8 +31,14 @@ package nom.tam.fits.compression.provider;
  * #L%
  */
 
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
 import nom.tam.fits.FitsException;
 import nom.tam.fits.compression.algorithm.api.ICompressOption;
+import nom.tam.fits.compression.algorithm.api.ICompressor;
 import nom.tam.fits.compression.algorithm.api.ICompressorControl;
 import nom.tam.fits.compression.provider.param.api.ICompressParameters;
 
@@ -41,6 +47,29 @@ import org.junit.Test;
 
 public class CompressionProviderTest {
 
+    public static class CountingCompressor implements ICompressor<IntBuffer> {
+
+        private static int instances;
+
+        public CountingCompressor() {
+            instances++;
+        }
+
+        @Override
+        public boolean compress(IntBuffer buffer, ByteBuffer compressed) {
+            if (buffer.remaining() == 0) {
+                throw new IllegalStateException("empty tile");
+            }
+            compressed.putInt(buffer.get(0));
+            return true;
+        }
+
+        @Override
+        public void decompress(ByteBuffer compressed, IntBuffer buffer) {
+            buffer.put(0, compressed.getInt(0));
+        }
+    }
+
     @Test
     public void testNullOptions() {
         ICompressorControl compressor = CompressorProvider.findCompressorControl(null, "GZIP_1", byte.class);
@@ -62,4 +91,69 @@ public class CompressionProviderTest {
         parameters.setValueFromColumn(10000);// nothinh should happen ;-)
         parameters.setValuesInHeader(null);// nothinh should happen ;-)
     }
+
+    @Test
+    public void testCompressorControlIsCached() {
+        ICompressorControl control = CompressorProvider.findCompressorControl(null, "GZIP_1", int.class);
+        Assert.assertSame(control, CompressorProvider.findCompressorControl(null, "GZIP_1", int.class));
+        Assert.assertNotSame(control, CompressorProvider.findCompressorControl(null, "GZIP_1", short.class));
+        Assert.assertNull(CompressorProvider.findCompressorControl(null, "NOT_THERE", int.class));
+        CompressorProvider.clearCache();
+        ICompressorControl reloaded = CompressorProvider.findCompressorControl(null, "GZIP_1", int.class);
+        Assert.assertNotSame(control, reloaded);
+        Assert.assertSame(reloaded, CompressorProvider.findCompressorControl(null, "GZIP_1", int.class));
+    }
+
+    @Test
+    public void testForeignClassLoaderIsNotCached() {
+        Thread thread = Thread.currentThread();
+        ClassLoader contextClassLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(new URLClassLoader(new URL[0], CompressorProvider.class.getClassLoader()));
+        try {
+            ICompressorControl control = CompressorProvider.findCompressorControl(null, "GZIP_1", int.class);
+            Assert.assertNotNull(control);
+            Assert.assertNotSame(control, CompressorProvider.findCompressorControl(null, "GZIP_1", int.class));
+        } finally {
+            thread.setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    @Test
+    public void testCachedControlRoundTrips() {
+        ICompressorControl control = CompressorProvider.findCompressorControl(null, "GZIP_1", int.class);
+        for (int tile = 0; tile < 3; tile++) {
+            int[] pixels = new int[100 + tile * 50];
+            for (int index = 0; index < pixels.length; index++) {
+                pixels[index] = index * (tile + 1);
+            }
+            ByteBuffer compressed = ByteBuffer.allocate(pixels.length * 4 + 1024);
+            Assert.assertTrue(control.compress(IntBuffer.wrap(pixels), compressed, null));
+            compressed.rewind();
+            int[] result = new int[pixels.length];
+            control.decompress(compressed, IntBuffer.wrap(result), null);
+            Assert.assertArrayEquals(pixels, result);
+        }
+    }
+
+    @Test
+    public void testOptionFreeCompressorsAreReused() {
+        ICompressorControl control = new CompressorProvider.TileCompressorControl(CountingCompressor.class);
+        CountingCompressor.instances = 0;
+        for (int tile = 0; tile < 5; tile++) {
+            ByteBuffer compressed = ByteBuffer.allocate(4);
+            Assert.assertTrue(control.compress(IntBuffer.wrap(new int[]{
+                tile
+            }), compressed, null));
+            int[] result = new int[1];
+            control.decompress(compressed, IntBuffer.wrap(result), null);
+            Assert.assertEquals(tile, result[0]);
+        }
+        Assert.assertEquals(1, CountingCompressor.instances);
+        // a compressor that failed is dropped.
+        Assert.assertFalse(control.compress(IntBuffer.allocate(0), ByteBuffer.allocate(4), null));
+        Assert.assertTrue(control.compress(IntBuffer.wrap(new int[]{
+            1
+        }), ByteBuffer.allocate(4), null));
+        Assert.assertEquals(2, CountingCompressor.instances);
+    }
 }
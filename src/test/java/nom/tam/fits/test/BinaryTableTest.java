@@ -40,12 +40,15 @@ import static org.junit.Assert.assertNotNull;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Handler;
 import java.util.logging.LogRecord;
@@ -57,11 +60,15 @@ import org.junit.Test;
 
 import nom.tam.fits.BasicHDU;
 import nom.tam.fits.BinaryTable;
+import nom.tam.fits.BinaryTableBuilder;
 import nom.tam.fits.BinaryTableHDU;
+import nom.tam.fits.BinaryTableWriter;
+import nom.tam.fits.BinaryTableRowCursor;
 import nom.tam.fits.Fits;
 import nom.tam.fits.FitsException;
 import nom.tam.fits.FitsFactory;
 import nom.tam.fits.FitsHeap;
+import nom.tam.fits.FitsUtil;
 import nom.tam.fits.Header;
 import nom.tam.fits.HeaderCard;
 import nom.tam.fits.PaddingException;
@@ -1231,6 +1238,292 @@ public class BinaryTableTest {
         }
     }
 
+    @Test
+    public void testDeferredColumnRead() throws Exception {
+        FitsFactory.setUseAsciiTables(false);
+        Object[] data = new Object[]{
+            this.bytes,
+            this.bits,
+            this.bools,
+            this.shorts,
+            this.ints,
+            this.floats,
+            this.doubles,
+            this.longs,
+            this.strings,
+            this.complex,
+            this.dcomplex_arr,
+            this.vf,
+            this.vs,
+            this.vbool,
+            this.vc,
+            this.vBytes
+        };
+        Fits f = new Fits();
+        f.addHDU(Fits.makeHDU(data));
+        BufferedFile bf = new BufferedFile("target/btDeferredColumns.fits", "rw");
+        f.write(bf);
+        bf.close();
+
+        Fits deferred = new Fits("target/btDeferredColumns.fits");
+        Fits loaded = new Fits("target/btDeferredColumns.fits");
+        try {
+            BinaryTable deferredTable = ((BinaryTableHDU) deferred.getHDU(1)).getData();
+            BinaryTable loadedTable = ((BinaryTableHDU) loaded.getHDU(1)).getData();
+            loadedTable.getData();
+            // read the ranges from the file before the deferred table gets
+            // loaded by the first full column.
+            Object[] ranges = new Object[data.length];
+            for (int col = 0; col < data.length; col++) {
+                ranges[col] = deferredTable.getColumn(col, 10, 5);
+            }
+            assertEquals(0, Array.getLength(deferredTable.getColumn(0, NROWS, 0)));
+            for (int col = 0; col < data.length; col++) {
+                Object column = deferredTable.getColumn(col);
+                assertEquals("column" + col, true, TestArrayFuncs.arrayEquals(loadedTable.getColumn(col), column));
+                Object range = ranges[col];
+                assertEquals("range" + col, 5, Array.getLength(range));
+                for (int row = 0; row < 5; row++) {
+                    assertEquals("range" + col, true, TestArrayFuncs.arrayEquals(Array.get(column, 10 + row), Array.get(range, row)));
+                    assertEquals("loadedRange" + col, true, TestArrayFuncs.arrayEquals(Array.get(column, 10 + row), Array.get(loadedTable.getColumn(col, 10, 5), row)));
+                }
+            }
+            int[] ints = (int[]) deferredTable.getFlattenedColumn(4);
+            Assert.assertSame(ints, deferredTable.getFlattenedColumn(4));
+            ints[3] = -42;
+            assertEquals(-42, ((int[]) deferredTable.getElement(3, 4))[0]);
+        } finally {
+            deferred.close();
+            loaded.close();
+        }
+    }
+
+    @Test
+    public void testDeferredColumnReadsOnlyColumn() throws Exception {
+        BinaryTable btab = new BinaryTable();
+        btab.addColumn(this.doubles);
+        btab.addColumn(this.ints);
+        btab.addColumn(this.vf);
+        Fits f = new Fits();
+        f.addHDU(Fits.makeHDU(btab));
+        BufferedFile bf = new BufferedFile("target/btDeferredOnlyColumn.fits", "rw");
+        f.write(bf);
+        bf.close();
+
+        final long[] bytesRead = new long[1];
+        BufferedFile in = new BufferedFile("target/btDeferredOnlyColumn.fits", "r") {
+
+            @Override
+            public void readFully(byte[] b, int off, int len) throws IOException {
+                bytesRead[0] += len;
+                super.readFully(b, off, len);
+            }
+        };
+        try {
+            Header.readHeader(in);
+            Header header = Header.readHeader(in);
+            BinaryTable deferred = new BinaryTable(header);
+            deferred.read(in);
+
+            bytesRead[0] = 0;
+            int[] ints = (int[]) deferred.getColumn(1, 0, NROWS);
+            assertArrayEquals(this.ints, ints);
+            assertEquals(NROWS * 4L, bytesRead[0]);
+
+            bytesRead[0] = 0;
+            assertArrayEquals(this.doubles, (double[]) deferred.getFlattenedColumn(0, 0, NROWS), 0.0);
+            assertEquals(NROWS * 8L, bytesRead[0]);
+
+            bytesRead[0] = 0;
+            float[][] vf = (float[][]) deferred.getColumn(2, 0, NROWS);
+            assertEquals(true, TestArrayFuncs.arrayEquals(this.vf, vf));
+            // only the descriptors are read with readFully, the entries are
+            // read from the heap as arrays.
+            assertEquals(NROWS * 8L, bytesRead[0]);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testDeferredFullColumnReadsOnlyColumn() throws Exception {
+        int nCols = 300;
+        BinaryTable btab = new BinaryTable();
+        for (int col = 0; col < nCols; col++) {
+            int[] values = new int[NROWS];
+            for (int row = 0; row < NROWS; row++) {
+                values[row] = col * NROWS + row;
+            }
+            btab.addColumn(values);
+        }
+        Fits f = new Fits();
+        f.addHDU(Fits.makeHDU(btab));
+        BufferedFile bf = new BufferedFile("target/btDeferredWide.fits", "rw");
+        f.write(bf);
+        bf.close();
+
+        final long[] bytesRead = new long[1];
+        BufferedFile in = new BufferedFile("target/btDeferredWide.fits", "r") {
+
+            @Override
+            public void readFully(byte[] b, int off, int len) throws IOException {
+                bytesRead[0] += len;
+                super.readFully(b, off, len);
+            }
+        };
+        try {
+            Header.readHeader(in);
+            Header header = Header.readHeader(in);
+            BinaryTable deferred = new BinaryTable(header);
+            deferred.read(in);
+
+            bytesRead[0] = 0;
+            int[] column = (int[]) deferred.getColumn(123);
+            assertEquals(NROWS * 4L, bytesRead[0]);
+            assertEquals(123 * NROWS + 7, column[7]);
+
+            bytesRead[0] = 0;
+            Assert.assertSame(column, deferred.getColumn(123));
+            Assert.assertSame(column, deferred.getFlattenedColumn(123));
+            assertEquals(0L, bytesRead[0]);
+
+            column[7] = -1;
+            assertEquals(-1, ((int[]) deferred.getElement(7, 123))[0]);
+            assertEquals(-1, ((int[]) deferred.getRow(7)[123])[0]);
+            assertEquals(-1, ((int[]) deferred.getColumn(123, 5, 5))[2]);
+
+            // reading the rest of the table keeps the changed column.
+            assertEquals(-1, deferred.getInt(7, 123));
+            assertEquals(299 * NROWS + 7, deferred.getInt(7, 299));
+            Assert.assertSame(column, deferred.getColumn(123));
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testRowCursorFromStream() throws Exception {
+        FitsFactory.setUseAsciiTables(false);
+        Object[] data = new Object[]{
+            this.ints,
+            this.doubles,
+            this.bools,
+            this.strings,
+            this.floats,
+            this.dcomplex
+        };
+        Fits f = new Fits();
+        f.addHDU(Fits.makeHDU(data));
+        f.addHDU(Fits.makeHDU(new Object[]{
+            this.longs
+        }));
+        BufferedFile bf = new BufferedFile("target/btRowCursor.fits", "rw");
+        f.write(bf);
+        bf.close();
+
+        BufferedDataInputStream in = new BufferedDataInputStream(new FileInputStream("target/btRowCursor.fits"));
+        try {
+            Header primary = Header.readHeader(in);
+            in.skipAllBytes(primary.getDataSize());
+            BinaryTableRowCursor cursor = new BinaryTableRowCursor(Header.readHeader(in), in, 7).filter(new BinaryTableRowCursor.RowFilter() {
+
+                @Override
+                public boolean accept(BinaryTableRowCursor row) {
+                    return row.getInt(0) % 3 == 0;
+                }
+            });
+            int expectedRow = 0;
+            while (cursor.advance()) {
+                assertEquals(expectedRow, cursor.getRowIndex());
+                assertEquals(this.doubles[expectedRow], cursor.getDouble(1), 0d);
+                assertEquals(this.bools[expectedRow], cursor.getBoolean(2, 0));
+                Object[] row = cursor.getRow();
+                for (int col = 0; col < data.length; col++) {
+                    Object expected = Array.get(data[col], expectedRow);
+                    if (col == 3) {
+                        row[col] = ((String) row[col]).trim();
+                    } else if (!expected.getClass().isArray()) {
+                        // scalar columns are returned as arrays of length one
+                        row[col] = Array.get(row[col], 0);
+                    }
+                    assertEquals("row" + expectedRow + "col" + col, true, TestArrayFuncs.arrayEquals(expected, row[col]));
+                }
+                expectedRow += 3;
+            }
+            assertEquals(NROWS + 1, expectedRow);
+            BinaryTableRowCursor second = new BinaryTableRowCursor(Header.readHeader(in), in).rows(10, 5);
+            int count = 0;
+            while (second.hasNext()) {
+                Object[] row = second.next();
+                assertEquals(this.longs[10 + count], ((long[]) row[0])[0]);
+                count++;
+            }
+            assertEquals(5, count);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testRowCursorVaryingColumns() throws Exception {
+        Object[] data = new Object[]{
+            this.vf,
+            this.shorts,
+            this.vbool
+        };
+        Fits f = new Fits();
+        f.addHDU(Fits.makeHDU(data));
+        BufferedFile bf = new BufferedFile("target/btRowCursorVarying.fits", "rw");
+        f.write(bf);
+        bf.close();
+
+        bf = new BufferedFile("target/btRowCursorVarying.fits");
+        try {
+            Header primary = Header.readHeader(bf);
+            bf.skipAllBytes(primary.getDataSize());
+            Header header = Header.readHeader(bf);
+            BinaryTableRowCursor cursor = new BinaryTableRowCursor(header, bf, 16);
+            int rowIndex = 0;
+            while (cursor.hasNext()) {
+                Object[] row = cursor.next();
+                for (int col = 0; col < data.length; col++) {
+                    assertEquals("row" + rowIndex + "col" + col, true, TestArrayFuncs.arrayEquals(Array.get(data[col], rowIndex), row[col]));
+                }
+                rowIndex++;
+            }
+            assertEquals(NROWS, rowIndex);
+            assertEquals(FitsUtil.addPadding(bf.getFilePointer()), bf.getFilePointer());
+            assertEquals(bf.length(), bf.getFilePointer());
+        } finally {
+            bf.close();
+        }
+    }
+
+    @Test(expected = FitsException.class)
+    public void testRowCursorVaryingColumnFromStream() throws Exception {
+        Fits f = new Fits();
+        f.addHDU(Fits.makeHDU(new Object[]{
+            this.vf
+        }));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BufferedDataOutputStream bdos = new BufferedDataOutputStream(out);
+        f.write(bdos);
+        bdos.close();
+        BufferedDataInputStream in = new BufferedDataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        Header primary = Header.readHeader(in);
+        in.skipAllBytes(primary.getDataSize());
+        BinaryTableRowCursor cursor = new BinaryTableRowCursor(Header.readHeader(in), in);
+        cursor.advance();
+        cursor.getElement(0);
+    }
+
+    @Test(expected = FitsException.class)
+    public void testIllegalColumnRange() throws Exception {
+        new BinaryTable(new Object[]{
+            this.ints
+        }).getColumn(0, NROWS - 2, 3);
+    }
+
     @Test
     public void testVar() throws Exception {
         try {
@@ -1273,6 +1566,43 @@ public class BinaryTableTest {
         }
     }
 
+    @Test
+    public void testHeapOffsetBeyond2GB() throws Exception {
+        long tableBytes = 1000L * 3000000L;
+        Header hdr = new Header();
+        hdr.setXtension(XTENSION_BINTABLE);
+        hdr.setBitpix(8);
+        hdr.setNaxes(2);
+        hdr.setNaxis(1, 1000);
+        hdr.setNaxis(2, 3000000);
+        hdr.addValue(Standard.PCOUNT, 32);
+        hdr.addValue(Standard.GCOUNT, 1);
+        hdr.addValue(Standard.TFIELDS, 1);
+        hdr.addValue(Standard.TFORMn.n(1), "1000B");
+        hdr.addValue(Standard.THEAP, tableBytes + 16);
+
+        BinaryTable btab = new BinaryTable(hdr);
+        assertEquals(16L, btab.getHeapOffset());
+        assertEquals(32L, btab.getHeapSize());
+
+        hdr.addValue(Standard.THEAP, 0);
+        BinaryTableHDU hdu = new BinaryTableHDU(hdr, btab);
+        BufferedDataOutputStream failing = new BufferedDataOutputStream(new ByteArrayOutputStream()) {
+
+            @Override
+            public void write(byte[] b) throws IOException {
+                throw new IOException("stop after the header keywords were updated");
+            }
+        };
+        try {
+            hdu.write(failing);
+            Assert.fail("the write should fail");
+        } catch (FitsException e) {
+            assertEquals(tableBytes + 16, hdr.getLongValue(Standard.THEAP));
+            assertEquals(32L, hdr.getLongValue(Standard.PCOUNT));
+        }
+    }
+
     @Test
     public void testFitsHeap() throws Exception {
         Constructor<FitsHeap> declaredConstructor = FitsHeap.class.getDeclaredConstructor(int.class);
@@ -1971,4 +2301,286 @@ public class BinaryTableTest {
         return btab;
     }
 
+    @Test
+    public void testTypedAccessors() throws Exception {
+        double[] doubles = new double[NROWS];
+        int[] ints = new int[NROWS];
+        long[] longs = new long[NROWS];
+        boolean[] flags = new boolean[NROWS];
+        float[][] vectors = new float[NROWS][3];
+        for (int row = 0; row < NROWS; row++) {
+            doubles[row] = row * 0.5;
+            ints[row] = row * 3;
+            longs[row] = row * 10000000000L;
+            flags[row] = row % 3 == 0;
+            vectors[row][2] = row;
+        }
+        BinaryTable btab = new BinaryTable();
+        btab.addColumn(doubles);
+        btab.addColumn(ints);
+        btab.addColumn(longs);
+        btab.addColumn(flags);
+        btab.addColumn(vectors);
+        btab.addColumn(this.strings);
+        Fits f = new Fits();
+        f.addHDU(Fits.makeHDU(btab));
+        BufferedFile out = new BufferedFile("target/typed.fits", "rw");
+        f.write(out);
+        out.close();
+
+        f = new Fits("target/typed.fits");
+        btab = ((BinaryTableHDU) f.getHDU(1)).getData();
+        for (int row = 0; row < NROWS; row++) {
+            assertEquals(doubles[row], btab.getDouble(row, 0), 0.0);
+            assertEquals(ints[row], btab.getInt(row, 1));
+            assertEquals(ints[row], btab.getDouble(row, 1), 0.0);
+            assertEquals(longs[row], btab.getLong(row, 2));
+            assertEquals(flags[row], btab.getBoolean(row, 3));
+        }
+        double[] doubleColumn = btab.getDoubleColumn(0);
+        Assert.assertSame(doubleColumn, btab.getDoubleColumn(0));
+        assertEquals(NROWS * 3, btab.getFloatColumn(4).length);
+        assertEquals(7f, btab.getFloatColumn(4)[7 * 3 + 2], 0f);
+
+        btab.setDouble(5, 0, -1.5);
+        btab.setInt(5, 1, -7);
+        btab.setLong(5, 2, Long.MIN_VALUE);
+        btab.setBoolean(5, 3, false);
+        btab.getFloatColumn(4)[5 * 3] = 42f;
+        assertEquals(-1.5, doubleColumn[5], 0.0);
+        assertEquals(-1.5, ((double[]) btab.getElement(5, 0))[0], 0.0);
+        assertEquals(-7, ((int[]) btab.getElement(5, 1))[0]);
+        assertEquals(Long.MIN_VALUE, btab.getLong(5, 2));
+        assertEquals(false, ((boolean[]) btab.getElement(5, 3))[0]);
+        assertEquals(42f, ((float[]) btab.getElement(5, 4))[0], 0f);
+        f.close();
+    }
+
+    private BinaryTable createTypedTable() throws FitsException {
+        BinaryTable btab = new BinaryTable();
+        btab.addColumn(new double[NROWS]);
+        btab.addColumn(new int[NROWS]);
+        btab.addColumn(new long[NROWS]);
+        btab.addColumn(new boolean[NROWS]);
+        btab.addColumn(new float[NROWS][3]);
+        btab.addColumn(this.strings);
+        return btab;
+    }
+
+    @Test(expected = FitsException.class)
+    public void testTypedAccessorGetLongOfDouble() throws Exception {
+        createTypedTable().getLong(0, 0);
+    }
+
+    @Test(expected = FitsException.class)
+    public void testTypedAccessorGetIntOfLong() throws Exception {
+        createTypedTable().getInt(0, 2);
+    }
+
+    @Test(expected = FitsException.class)
+    public void testTypedAccessorGetDoubleOfBoolean() throws Exception {
+        createTypedTable().getDouble(0, 3);
+    }
+
+    @Test(expected = FitsException.class)
+    public void testTypedAccessorGetDoubleOfVector() throws Exception {
+        createTypedTable().getDouble(0, 4);
+    }
+
+    @Test(expected = FitsException.class)
+    public void testTypedAccessorGetDoubleOfString() throws Exception {
+        createTypedTable().getDouble(0, 5);
+    }
+
+    @Test(expected = FitsException.class)
+    public void testTypedAccessorGetBooleanOfDouble() throws Exception {
+        createTypedTable().getBoolean(0, 0);
+    }
+
+    @Test(expected = FitsException.class)
+    public void testTypedAccessorSetLongOfInt() throws Exception {
+        createTypedTable().setLong(0, 1, 1L);
+    }
+
+    @Test(expected = FitsException.class)
+    public void testTypedAccessorGetDoubleColumnOfInt() throws Exception {
+        createTypedTable().getDoubleColumn(1);
+    }
+
+    @Test(expected = FitsException.class)
+    public void testTypedAccessorGetByteColumnOfBoolean() throws Exception {
+        createTypedTable().getByteColumn(3);
+    }
+
+    @Test(expected = FitsException.class)
+    public void testTypedAccessorGetFloatColumnOfComplex() throws Exception {
+        BinaryTable complex = new BinaryTable();
+        complex.addColumn(new float[NROWS][2]);
+        Assert.assertTrue(new BinaryTableHDU(BinaryTableHDU.manufactureHeader(complex), complex).setComplexColumn(0));
+        complex.getFloatColumn(0);
+    }
+
+    @Test
+    public void testTableBuilder() throws Exception {
+        BinaryTableBuilder builder = new BinaryTableBuilder(4);
+        BinaryTable expected = new BinaryTable();
+        Object[][] rows = new Object[NROWS][];
+        for (int row = 0; row < NROWS; row++) {
+            rows[row] = new Object[]{
+                new int[]{
+                    row
+                },
+                new float[]{
+                    row,
+                    -row
+                },
+                new boolean[]{
+                    row % 2 == 0
+                },
+                "row" + (row % 10),
+                new double[][]{
+                    {
+                        row / 3.0,
+                        row / 7.0
+                    }
+                }
+            };
+            expected.addRow(rows[row]);
+        }
+        for (int row = 0; row < 10; row++) {
+            builder.addRow(rows[row]);
+        }
+        builder.addRows(Arrays.copyOfRange(rows, 10, NROWS));
+        assertEquals(NROWS, builder.getNRows());
+        BinaryTable btab = builder.build();
+        assertEquals(0, builder.getNRows());
+        assertEquals(NROWS, btab.getNRows());
+        assertEquals(NROWS, btab.getIntColumn(0).length);
+
+        Fits f = new Fits();
+        f.addHDU(Fits.makeHDU(btab));
+        BufferedFile out = new BufferedFile("target/built.fits", "rw");
+        f.write(out);
+        out.close();
+        f.close();
+
+        f = new Fits("target/built.fits");
+        btab = ((BinaryTableHDU) f.getHDU(1)).getData();
+        assertEquals(NROWS, btab.getNRows());
+        for (int row = 0; row < NROWS; row++) {
+            Object[] read = btab.getRow(row);
+            Object[] wanted = expected.getRow(row);
+            for (int col = 0; col < wanted.length; col++) {
+                Assert.assertTrue("row " + row + " col " + col, TestArrayFuncs.arrayEquals(wanted[col], read[col]));
+            }
+        }
+        f.close();
+
+        try {
+            builder.addRow(rows[0]).addRow(new Object[]{
+                new int[]{
+                    1
+                }
+            });
+            Assert.fail("row length mismatch expected");
+        } catch (TableException e) {
+            assertEquals("Row length mismatch", e.getMessage());
+        }
+        assertEquals(0, new BinaryTableBuilder().build().getNRows());
+    }
+
+    @Test
+    public void testStreamingWriter() throws Exception {
+        BinaryTable template = new BinaryTable();
+        template.addColumn(new int[]{
+            -1,
+            -2
+        });
+        template.addColumn(new float[][]{
+            {
+                1f,
+                2f
+            },
+            {
+                3f,
+                4f
+            }
+        });
+        template.addColumn(new String[]{
+            "first",
+            "second"
+        });
+        template.addColumn(new double[][]{
+            {
+                1.0
+            },
+            {
+                2.0,
+                3.0
+            }
+        });
+        List<Object[]> expected = new ArrayList<Object[]>();
+        for (int row = 0; row < template.getNRows(); row++) {
+            expected.add(template.getRow(row));
+        }
+
+        BufferedFile out = new BufferedFile("target/streamed.fits", "rw");
+        BasicHDU.getDummyHDU().write(out);
+        BinaryTableWriter writer = new BinaryTableWriter(out, template);
+        for (int batch = 0; batch < 10; batch++) {
+            Object[][] rows = new Object[NROWS][];
+            for (int row = 0; row < NROWS; row++) {
+                int index = batch * NROWS + row;
+                double[] varying = new double[index % 7];
+                Arrays.fill(varying, index);
+                rows[row] = new Object[]{
+                    new int[]{
+                        index
+                    },
+                    new float[]{
+                        index,
+                        -index
+                    },
+                    "row" + index % 100,
+                    varying
+                };
+                expected.add(rows[row]);
+            }
+            writer.writeRows(rows);
+        }
+        writer.writeRow(expected.get(0));
+        expected.add(expected.get(0));
+        assertEquals(expected.size(), writer.getNRows());
+        writer.close();
+        out.close();
+
+        Fits f = new Fits("target/streamed.fits");
+        BinaryTableHDU hdu = (BinaryTableHDU) f.getHDU(1);
+        assertEquals(expected.size(), hdu.getHeader().getIntValue(Standard.NAXIS2));
+        Assert.assertTrue(hdu.getHeader().getIntValue(Standard.PCOUNT) > 0);
+        BinaryTable btab = hdu.getData();
+        assertEquals(expected.size(), btab.getNRows());
+        for (int row = 0; row < expected.size(); row++) {
+            Object[] read = btab.getRow(row);
+            for (int col = 0; col < read.length; col++) {
+                Object wanted = expected.get(row)[col];
+                if (wanted instanceof String) {
+                    assertEquals(wanted, read[col]);
+                } else {
+                    Assert.assertTrue("row " + row + " col " + col, TestArrayFuncs.arrayEquals(ArrayFuncs.flatten(wanted), read[col]));
+                }
+            }
+        }
+        f.close();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BufferedDataOutputStream sequential = new BufferedDataOutputStream(bytes);
+        try {
+            new BinaryTableWriter(sequential, template);
+            Assert.fail("sequential output cannot be updated");
+        } catch (FitsException e) {
+            Assert.assertTrue(e.getMessage().contains("random access"));
+        }
+        assertEquals(0, bytes.size());
+    }
 }
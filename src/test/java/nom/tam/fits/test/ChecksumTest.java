@@ -32,12 +32,28 @@ package nom.tam.fits.test;
  */
 
 import static nom.tam.fits.header.Checksum.CHECKSUM;
+import static nom.tam.fits.header.Checksum.DATASUM;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import nom.tam.fits.BasicHDU;
 import nom.tam.fits.Fits;
@@ -48,10 +64,15 @@ import nom.tam.fits.HeaderCard;
 import nom.tam.fits.ImageData;
 import nom.tam.fits.ImageHDU;
 import nom.tam.fits.header.Standard;
+import nom.tam.fits.utilities.ChecksumDataInputStream;
+import nom.tam.fits.utilities.ChecksumInputStream;
+import nom.tam.fits.utilities.ChecksumOutputStream;
 import nom.tam.fits.utilities.FitsCheckSum;
 import nom.tam.util.BufferedDataInputStream;
 import nom.tam.util.BufferedDataOutputStream;
 import nom.tam.util.Cursor;
+import nom.tam.util.MappedFile;
+import nom.tam.util.RandomAccess;
 import nom.tam.util.test.ThrowAnyException;
 
 import org.junit.Test;
@@ -170,4 +191,250 @@ public class ChecksumTest {
         // TODO: activate this
       //  assertEquals("CVfXFTeVCTeVCTeV", imageHdu.getHeader().card(CHECKSUM).card().getValue());
     }
+
+    @Test
+    public void testIncrementalChecksum() throws Exception {
+        byte[] data = new byte[2880 * 3];
+        new Random(42).nextBytes(data);
+        FitsCheckSum.Checksum sum = new FitsCheckSum.Checksum();
+        int offset = 0;
+        int step = 1;
+        while (offset < data.length) {
+            int len = Math.min(step, data.length - offset);
+            sum.update(data, offset, len);
+            offset += len;
+            step = step * 3 + 1;
+        }
+        assertEquals(data.length, sum.getLength());
+        assertEquals(FitsCheckSum.checksum(data), sum.getValue());
+
+        sum.reset();
+        for (byte b : data) {
+            sum.update(b);
+        }
+        assertEquals(FitsCheckSum.checksum(data), sum.getValue());
+
+        long first = FitsCheckSum.checksum(Arrays.copyOfRange(data, 0, 2880));
+        long rest = FitsCheckSum.checksum(Arrays.copyOfRange(data, 2880, data.length));
+        assertEquals(FitsCheckSum.checksum(data), FitsCheckSum.sumOf(first, rest));
+    }
+
+    @Test
+    public void testChecksumStreams() throws Exception {
+        Fits f = createChecksumFits();
+        ByteArrayOutputStream bs = new ByteArrayOutputStream();
+        ChecksumOutputStream out = new ChecksumOutputStream(bs);
+        BufferedDataOutputStream bdos = new BufferedDataOutputStream(out);
+        f.write(bdos);
+        bdos.flush();
+        byte[] stream = bs.toByteArray();
+        assertEquals(stream.length, out.getLength());
+        assertEquals(FitsCheckSum.checksum(stream), out.getChecksum());
+        // every HDU sums to negative zero so the whole file does too.
+        assertEquals(0xFFFFFFFFL, out.getChecksum());
+
+        ChecksumInputStream in = new ChecksumInputStream(new ByteArrayInputStream(stream));
+        Fits read = new Fits(in);
+        assertEquals(2, read.read().length);
+        assertEquals(stream.length, in.getLength());
+        assertEquals(0xFFFFFFFFL, in.getChecksum());
+        read.close();
+    }
+
+    @Test
+    public void testVerifyOnRandomAccess() throws Exception {
+        File file = new File("target/checksumVerify.fits");
+        Fits f = createChecksumFits();
+        f.write(file);
+        f.close();
+
+        Fits read = new Fits(file);
+        BasicHDU<?>[] hdus = read.read();
+        RandomAccess in = (RandomAccess) read.getStream();
+        for (BasicHDU<?> hdu : hdus) {
+            assertTrue(FitsCheckSum.verifyDataSum(hdu, in));
+            assertTrue(FitsCheckSum.verifyChecksum(hdu, in));
+        }
+        long dataOffset = hdus[1].getData().getFileOffset();
+        read.close();
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(dataOffset + 5);
+        int b = raf.read();
+        raf.seek(dataOffset + 5);
+        raf.write(b + 1);
+        raf.close();
+
+        read = new Fits(file);
+        hdus = read.read();
+        in = (RandomAccess) read.getStream();
+        assertTrue(FitsCheckSum.verifyChecksum(hdus[0], in));
+        assertFalse(FitsCheckSum.verifyDataSum(hdus[1], in));
+        assertFalse(FitsCheckSum.verifyChecksum(hdus[1], in));
+        read.close();
+    }
+
+    @Test
+    public void testVerifySequentialRead() throws Exception {
+        boolean longStrings = FitsFactory.isLongStringsEnabled();
+        try {
+            FitsFactory.setLongStringsEnabled(true);
+            Fits f = createChecksumFits();
+            // a string ending with & makes the header reader look ahead for a
+            // continuation and step back.
+            char[] text = new char[200];
+            Arrays.fill(text, 'x');
+            f.getHDU(0).getHeader().addValue("LONGSTR", new String(text), "long string");
+            f.getHDU(0).getHeader().addValue("AMPSTR", "abc&", "no continuation");
+            f.setChecksum();
+            ByteArrayOutputStream bs = new ByteArrayOutputStream();
+            BufferedDataOutputStream bdos = new BufferedDataOutputStream(bs);
+            f.write(bdos);
+            bdos.close();
+            byte[] stream = bs.toByteArray();
+
+            ChecksumDataInputStream in = new ChecksumDataInputStream(new GZIPInputStream(new ByteArrayInputStream(gzip(stream))));
+            Fits read = new Fits(in);
+            BasicHDU<?> hdu;
+            int count = 0;
+            while ((hdu = read.readHDU()) != null) {
+                assertEquals(Long.parseLong(hdu.getHeader().getStringValue(DATASUM).trim()), in.getDataSum());
+                assertTrue(FitsCheckSum.verifyDataSum(hdu, in));
+                assertTrue(FitsCheckSum.verifyChecksum(hdu, in));
+                assertEquals(hdu.getHeader().getOriginalSize() + hdu.getData().getSize(), in.getLength());
+                count++;
+            }
+            assertEquals(2, count);
+            read.close();
+
+            // change a byte in the data of the table.
+            stream[stream.length - 2880 + 5]++;
+            in = new ChecksumDataInputStream(new GZIPInputStream(new ByteArrayInputStream(gzip(stream))));
+            read = new Fits(in);
+            hdu = read.readHDU();
+            assertTrue(FitsCheckSum.verifyDataSum(hdu, in));
+            assertTrue(FitsCheckSum.verifyChecksum(hdu, in));
+            hdu = read.readHDU();
+            assertFalse(FitsCheckSum.verifyDataSum(hdu, in));
+            assertFalse(FitsCheckSum.verifyChecksum(hdu, in));
+            read.close();
+        } finally {
+            FitsFactory.setLongStringsEnabled(longStrings);
+        }
+    }
+
+    @Test(expected = FitsException.class)
+    public void testVerifyWithoutChecksum() throws Exception {
+        File file = new File("target/checksumMissing.fits");
+        Fits f = new Fits();
+        f.addHDU(FitsFactory.hduFactory(new int[][]{{1, 2}, {3, 4}}));
+        f.write(file);
+        f.close();
+        Fits read = new Fits(file);
+        try {
+            FitsCheckSum.verifyChecksum(read.readHDU(), (RandomAccess) read.getStream());
+        } finally {
+            read.close();
+        }
+    }
+
+    @Test
+    public void testParallelBufferChecksum() throws Exception {
+        byte[] data = new byte[20 * 1024 * 1024 + 11];
+        new Random(7).nextBytes(data);
+        FitsCheckSum.Checksum expected = new FitsCheckSum.Checksum();
+        for (int index = 3; index < data.length; index++) {
+            expected.update(data[index]);
+        }
+        ByteBuffer heap = ByteBuffer.wrap(data);
+        heap.position(3);
+        assertEquals(expected.getValue(), FitsCheckSum.checksum(heap, FitsFactory.threadPool()));
+        assertEquals(3, heap.position());
+        assertEquals(expected.getValue(), FitsCheckSum.checksum(heap));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        direct.put(data).flip();
+        direct.position(3);
+        assertEquals(expected.getValue(), FitsCheckSum.checksum(direct, FitsFactory.threadPool()));
+
+        byte[] aligned = Arrays.copyOf(data, 20 * 1024 * 1024);
+        FitsCheckSum.Checksum sequential = new FitsCheckSum.Checksum();
+        for (byte b : aligned) {
+            sequential.update(b);
+        }
+        assertEquals(sequential.getValue(), FitsCheckSum.checksum(aligned));
+    }
+
+    @Test
+    public void testParallelChecksumInterrupted() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            // keep the only thread busy, so the chunks are never summed.
+            executor.submit(new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+                    release.await();
+                    return null;
+                }
+            });
+            Thread.currentThread().interrupt();
+            try {
+                FitsCheckSum.checksum(ByteBuffer.allocate(20 * 1024 * 1024), executor);
+                fail("the interrupted checksum must fail");
+            } catch (IllegalStateException e) {
+                assertTrue(e.getCause() instanceof InterruptedException);
+            }
+            assertTrue(Thread.interrupted());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testChannelChecksum() throws Exception {
+        byte[] data = new byte[18 * 1024 * 1024];
+        new Random(11).nextBytes(data);
+        File file = new File("target/checksumChannel.bin");
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0);
+        raf.write(data);
+        FileChannel channel = raf.getChannel();
+        long expected = FitsCheckSum.checksum(Arrays.copyOfRange(data, 2880, data.length));
+        assertEquals(expected, FitsCheckSum.checksum(channel, 2880, data.length - 2880));
+        raf.close();
+
+        MappedFile mapped = new MappedFile(file);
+        mapped.seek(17);
+        assertEquals(expected, FitsCheckSum.checksum(mapped, 2880, data.length - 2880));
+        assertEquals(17, mapped.getFilePointer());
+        mapped.close();
+    }
+
+    private byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(compressed);
+        out.write(bytes);
+        out.close();
+        return compressed.toByteArray();
+    }
+
+    private Fits createChecksumFits() throws Exception {
+        Fits f = new Fits();
+        int[][] image = new int[100][100];
+        for (int i = 0; i < image.length; i++) {
+            for (int j = 0; j < image[i].length; j++) {
+                image[i][j] = i * j;
+            }
+        }
+        f.addHDU(FitsFactory.hduFactory(image));
+        f.addHDU(FitsFactory.hduFactory(new Object[]{
+            new double[]{1, 2, 3},
+            new String[]{"a", "bb", "ccc"}
+        }));
+        f.setChecksum();
+        return f;
+    }
 }
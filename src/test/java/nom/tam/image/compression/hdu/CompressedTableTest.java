@@ -38,6 +38,9 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.GZIPInputStream;
 
 import org.junit.After;
@@ -47,6 +50,7 @@ import org.junit.Test;
 
 import nom.tam.fits.BinaryTableHDU;
 import nom.tam.fits.Fits;
+import nom.tam.fits.FitsFactory;
 import nom.tam.fits.Header;
 import nom.tam.fits.HeaderCard;
 import nom.tam.fits.header.IFitsHeader;
@@ -241,6 +245,46 @@ public class CompressedTableTest {
         }
     }
 
+    @Test
+    public void testB12TableDecompressWithSuppliedExecutor() throws Exception {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+        Fits fitsComp = null;
+        Fits fitsOrg = null;
+        try {
+            FitsFactory.setThreadPool(executor);
+            Assert.assertSame(executor, FitsFactory.threadPool());
+            fitsOrg = new Fits("src/test/resources/nom/tam/table/comp/bt12.fits");
+            fitsComp = new Fits("src/test/resources/nom/tam/table/comp/bt12.fits.fz");
+            CompressedTableHDU cfitsioTable = (CompressedTableHDU) fitsComp.getHDU(1);
+            BinaryTableHDU orgTable = (BinaryTableHDU) fitsOrg.getHDU(1);
+            BinaryTableHDU decompressedTable = cfitsioTable.setParallelism(1).asBinaryTableHDU();
+
+            for (int row = 0; row < 50; row++) {
+                Assert.assertArrayEquals((short[]) orgTable.getElement(row, 1), (short[]) decompressedTable.getElement(row, 1));
+                Assert.assertArrayEquals((double[]) orgTable.getElement(row, 3), (double[]) decompressedTable.getElement(row, 3), 0.000000001d);
+            }
+            Assert.assertTrue(executor.getCompletedTaskCount() > 0);
+        } finally {
+            FitsFactory.setThreadPool(null);
+            executor.shutdown();
+            SafeClose.close(fitsComp);
+            SafeClose.close(fitsOrg);
+        }
+        Assert.assertNotSame(executor, FitsFactory.threadPool());
+    }
+
+    @Test
+    public void testTileParallelism() throws Exception {
+        try {
+            FitsFactory.setTileParallelism(3);
+            Assert.assertEquals(3, FitsFactory.getTileParallelism());
+            FitsFactory.setTileParallelism(0);
+            Assert.assertEquals(Runtime.getRuntime().availableProcessors() * 2, FitsFactory.getTileParallelism());
+        } finally {
+            FitsFactory.setTileParallelism(0);
+        }
+    }
+
     private int[] calculateOffsets(byte[] byteArray, int primitiveSize) {
         int[] offset = new int[primitiveSize];
         offset[0] = 0;
@@ -228,6 +228,19 @@ public class TileCompressorProviderTest {
         tileOperation.waitForResult();
     }
 
+    @Test(expected = IllegalStateException.class)
+    public void testTileCompressedDataAfterRelease() throws Exception {
+        TileCompressionOperation tileOperation = new Access2().getTile();
+        tileOperation.setCompressed(new byte[]{
+            1,
+            2,
+            3
+        }, TileCompressionType.COMPRESSED);
+        Assert.assertEquals(3, tileOperation.getCompressedData().length);
+        tileOperation.releaseData();
+        tileOperation.getCompressedData();
+    }
+
     @Test
     public void testTileToString() throws Exception {
         String toString = new Access2().getTile().toString();
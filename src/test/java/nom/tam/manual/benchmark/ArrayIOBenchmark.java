@@ -0,0 +1,142 @@
+package nom.tam.manual.benchmark;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 1996 - 2021 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import nom.tam.util.BufferedDataInputStream;
+import nom.tam.util.BufferedDataOutputStream;
+import nom.tam.util.BufferedFile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Primitive array reads through {@link BufferedFile} and
+ * {@link BufferedDataInputStream}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ArrayIOBenchmark {
+
+    private static final int ELEMENTS = 1024 * 1024;
+
+    private File file;
+
+    private BufferedFile bufferedFile;
+
+    private final double[] doubles = new double[ELEMENTS];
+
+    private final int[] ints = new int[ELEMENTS];
+
+    private final short[] shorts = new short[ELEMENTS];
+
+    @Setup
+    public void setup() throws Exception {
+        this.file = BenchmarkData.tempFile("arrayio");
+        BufferedDataOutputStream out = new BufferedDataOutputStream(new FileOutputStream(this.file));
+        try {
+            double[] values = BenchmarkData.flatten(BenchmarkData.doubleImage(1024, ELEMENTS / 1024));
+            out.write(values);
+            out.write(BenchmarkData.flatten(BenchmarkData.intImage(1024, ELEMENTS / 1024, 65535)));
+            out.write(new short[ELEMENTS]);
+        } finally {
+            out.close();
+        }
+        this.bufferedFile = new BufferedFile(this.file);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        this.bufferedFile.close();
+    }
+
+    @Benchmark
+    public double[] bufferedFileDoubles() throws Exception {
+        this.bufferedFile.seek(0);
+        this.bufferedFile.read(this.doubles);
+        return this.doubles;
+    }
+
+    @Benchmark
+    public int[] bufferedFileInts() throws Exception {
+        this.bufferedFile.seek((long) ELEMENTS * 8);
+        this.bufferedFile.read(this.ints);
+        return this.ints;
+    }
+
+    @Benchmark
+    public short[] bufferedFileShorts() throws Exception {
+        this.bufferedFile.seek((long) ELEMENTS * 12);
+        this.bufferedFile.read(this.shorts);
+        return this.shorts;
+    }
+
+    @Benchmark
+    public double[] streamDoubles() throws Exception {
+        BufferedDataInputStream in = new BufferedDataInputStream(new FileInputStream(this.file));
+        try {
+            in.read(this.doubles);
+        } finally {
+            in.close();
+        }
+        return this.doubles;
+    }
+
+    @Benchmark
+    public int[] streamInts() throws Exception {
+        BufferedDataInputStream in = new BufferedDataInputStream(new FileInputStream(this.file));
+        try {
+            in.skipAllBytes((long) ELEMENTS * 8);
+            in.read(this.ints);
+        } finally {
+            in.close();
+        }
+        return this.ints;
+    }
+}
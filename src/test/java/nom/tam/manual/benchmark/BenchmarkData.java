@@ -0,0 +1,120 @@
+package nom.tam.manual.benchmark;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 1996 - 2021 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import nom.tam.fits.Fits;
+import nom.tam.fits.FitsException;
+import nom.tam.util.BufferedDataOutputStream;
+
+/**
+ * Synthetic data for the benchmarks. Everything is generated from fixed seeds
+ * so repeated runs measure exactly the same work.
+ */
+final class BenchmarkData {
+
+    private static final long SEED = 20151001L;
+
+    private BenchmarkData() {
+    }
+
+    static Random random() {
+        return new Random(SEED);
+    }
+
+    /**
+     * @return a smooth image with some noise, values between 0 and range,
+     *         similar to what the compressors see in real observations.
+     */
+    static int[][] intImage(int width, int height, int range) {
+        Random random = random();
+        int[][] image = new int[height][width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double base = (Math.sin(x * 0.01) + Math.cos(y * 0.013) + 2) * range / 8;
+                image[y][x] = Math.min(range, (int) (base + random.nextInt(range / 2 + 1)));
+            }
+        }
+        return image;
+    }
+
+    static double[][] doubleImage(int width, int height) {
+        Random random = random();
+        double[][] image = new double[height][width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image[y][x] = 1000. + Math.sin(x * 0.01) * 100. + random.nextGaussian();
+            }
+        }
+        return image;
+    }
+
+    static int[] flatten(int[][] image) {
+        int[] result = new int[image.length * image[0].length];
+        for (int y = 0; y < image.length; y++) {
+            System.arraycopy(image[y], 0, result, y * image[y].length, image[y].length);
+        }
+        return result;
+    }
+
+    static double[] flatten(double[][] image) {
+        double[] result = new double[image.length * image[0].length];
+        for (int y = 0; y < image.length; y++) {
+            System.arraycopy(image[y], 0, result, y * image[y].length, image[y].length);
+        }
+        return result;
+    }
+
+    static byte[] bytes(int size) {
+        byte[] result = new byte[size];
+        random().nextBytes(result);
+        return result;
+    }
+
+    static byte[] toBytes(Fits fits) throws FitsException, IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BufferedDataOutputStream dos = new BufferedDataOutputStream(out);
+        fits.write(dos);
+        dos.flush();
+        return out.toByteArray();
+    }
+
+    static File tempFile(String prefix) throws IOException {
+        File file = File.createTempFile(prefix, ".fits");
+        file.deleteOnExit();
+        return file;
+    }
+}
@@ -0,0 +1,142 @@
+package nom.tam.manual.benchmark;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 1996 - 2021 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import nom.tam.fits.BinaryTable;
+import nom.tam.fits.BinaryTableHDU;
+import nom.tam.fits.Fits;
+import nom.tam.fits.FitsFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Column reads from binary tables, both from a deferred table in a file and
+ * from a table held in memory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class BinaryTableBenchmark {
+
+    private static final int ROWS = 200000;
+
+    private static final int VECTOR_SIZE = 4;
+
+    /**
+     * the column to read: 0 int, 1 double, 2 float[4], 3 String.
+     */
+    @Param({
+        "0",
+        "1",
+        "2",
+        "3"
+    })
+    public int column;
+
+    private Fits fits;
+
+    private BinaryTable deferred;
+
+    private BinaryTable loaded;
+
+    @Setup
+    public void setup() throws Exception {
+        Random random = BenchmarkData.random();
+        int[] ints = new int[ROWS];
+        double[] doubles = new double[ROWS];
+        float[][] vectors = new float[ROWS][VECTOR_SIZE];
+        String[] strings = new String[ROWS];
+        for (int row = 0; row < ROWS; row++) {
+            ints[row] = random.nextInt();
+            doubles[row] = random.nextGaussian();
+            for (int index = 0; index < VECTOR_SIZE; index++) {
+                vectors[row][index] = random.nextFloat();
+            }
+            strings[row] = "row" + row;
+        }
+        Fits table = new Fits();
+        table.addHDU(FitsFactory.hduFactory(new Object[]{
+            ints,
+            doubles,
+            vectors,
+            strings
+        }));
+        File file = BenchmarkData.tempFile("table");
+        table.write(file);
+        byte[] tableBytes = BenchmarkData.toBytes(table);
+
+        this.fits = new Fits(file);
+        this.fits.readHDU();
+        this.deferred = ((BinaryTableHDU) this.fits.readHDU()).getData();
+        Fits memory = new Fits(new ByteArrayInputStream(tableBytes));
+        memory.readHDU();
+        this.loaded = ((BinaryTableHDU) memory.readHDU()).getData();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        this.fits.close();
+    }
+
+    /**
+     * The range read never loads the table, so every invocation reads the
+     * column from the file.
+     */
+    @Benchmark
+    public Object deferredColumn() throws Exception {
+        return this.deferred.getFlattenedColumn(this.column, 0, ROWS);
+    }
+
+    @Benchmark
+    public Object loadedColumn() throws Exception {
+        return this.loaded.getFlattenedColumn(this.column);
+    }
+}
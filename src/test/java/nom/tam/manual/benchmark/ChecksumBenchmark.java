@@ -0,0 +1,98 @@
+package nom.tam.manual.benchmark;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 1996 - 2021 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import nom.tam.fits.FitsFactory;
+import nom.tam.fits.utilities.FitsCheckSum;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Checksum throughput over a 64 MB data unit, sequential and in parallel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ChecksumBenchmark {
+
+    private static final int DATA_SIZE = 64 * 1024 * 1024;
+
+    private byte[] data;
+
+    private ByteBuffer direct;
+
+    @Setup
+    public void setup() {
+        this.data = BenchmarkData.bytes(DATA_SIZE);
+        this.direct = ByteBuffer.allocateDirect(DATA_SIZE);
+        this.direct.put(this.data).flip();
+    }
+
+    @Benchmark
+    public long sequential() {
+        return FitsCheckSum.checksum(ByteBuffer.wrap(this.data));
+    }
+
+    @Benchmark
+    public long parallel() {
+        return FitsCheckSum.checksum(this.data);
+    }
+
+    @Benchmark
+    public long parallelDirect() {
+        return FitsCheckSum.checksum(this.direct, FitsFactory.threadPool());
+    }
+
+    @Benchmark
+    public long incremental() {
+        FitsCheckSum.Checksum sum = new FitsCheckSum.Checksum();
+        for (int offset = 0; offset < DATA_SIZE; offset += 2880) {
+            sum.update(this.data, offset, Math.min(2880, DATA_SIZE - offset));
+        }
+        return sum.getValue();
+    }
+}
@@ -0,0 +1,130 @@
+package nom.tam.manual.benchmark;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 1996 - 2021 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import nom.tam.fits.compression.algorithm.api.ICompressor;
+import nom.tam.fits.compression.algorithm.gzip.GZipCompressor.IntGZipCompressor;
+import nom.tam.fits.compression.algorithm.hcompress.HCompressor.IntHCompressor;
+import nom.tam.fits.compression.algorithm.hcompress.HCompressorOption;
+import nom.tam.fits.compression.algorithm.plio.PLIOCompress.IntPLIOCompressor;
+import nom.tam.fits.compression.algorithm.rice.RiceCompressOption;
+import nom.tam.fits.compression.algorithm.rice.RiceCompressor.IntRiceCompressor;
+import nom.tam.util.type.PrimitiveTypes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compression and decompression of a single integer tile with every
+ * compression algorithm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CompressionBenchmark {
+
+    private static final int TILE_SIZE = 300;
+
+    /**
+     * PLIO only supports positive 15 bit values, so all algorithms get those.
+     */
+    private static final int PIXEL_RANGE = 0x7FFF;
+
+    @Param({
+        "RICE_1",
+        "HCOMPRESS_1",
+        "PLIO_1",
+        "GZIP_1"
+    })
+    public String algorithm;
+
+    private int[] pixels;
+
+    private ByteBuffer compressBuffer;
+
+    private byte[] compressed;
+
+    private int[] decompressed;
+
+    private ICompressor<IntBuffer> compressor() {
+        if ("RICE_1".equals(this.algorithm)) {
+            return new IntRiceCompressor(new RiceCompressOption().setBlockSize(32).setBytePix(PrimitiveTypes.INT.size()));
+        } else if ("HCOMPRESS_1".equals(this.algorithm)) {
+            return new IntHCompressor(new HCompressorOption().setTileWidth(TILE_SIZE).setTileHeight(TILE_SIZE).setScale(0));
+        } else if ("PLIO_1".equals(this.algorithm)) {
+            return new IntPLIOCompressor();
+        }
+        return new IntGZipCompressor();
+    }
+
+    @Setup
+    public void setup() {
+        this.pixels = BenchmarkData.flatten(BenchmarkData.intImage(TILE_SIZE, TILE_SIZE, PIXEL_RANGE));
+        this.decompressed = new int[this.pixels.length];
+        this.compressBuffer = ByteBuffer.allocate(this.pixels.length * PrimitiveTypes.INT.size() * 2);
+        compress();
+        // PLIO writes through a short view and leaves the position untouched,
+        // so keep the complete buffer in that case.
+        int length = this.compressBuffer.position() > 0 ? this.compressBuffer.position() : this.compressBuffer.capacity();
+        this.compressed = Arrays.copyOf(this.compressBuffer.array(), length);
+    }
+
+    @Benchmark
+    public ByteBuffer compress() {
+        this.compressBuffer.clear();
+        compressor().compress(IntBuffer.wrap(this.pixels), this.compressBuffer);
+        return this.compressBuffer;
+    }
+
+    @Benchmark
+    public int[] decompress() {
+        compressor().decompress(ByteBuffer.wrap(this.compressed), IntBuffer.wrap(this.decompressed));
+        return this.decompressed;
+    }
+}
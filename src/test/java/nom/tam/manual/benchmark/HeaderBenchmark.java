@@ -0,0 +1,105 @@
+package nom.tam.manual.benchmark;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 1996 - 2021 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import nom.tam.fits.Header;
+import nom.tam.fits.HeaderCard;
+import nom.tam.util.BufferedDataInputStream;
+import nom.tam.util.BufferedDataOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Header parsing: reading complete headers and constructing single cards from
+ * their 80 character images.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class HeaderBenchmark {
+
+    private static final int KEYWORDS = 500;
+
+    private byte[] headerBytes;
+
+    private String[] cards;
+
+    @Setup
+    public void setup() throws Exception {
+        Header header = new Header();
+        header.setSimple(true);
+        header.setBitpix(8);
+        header.setNaxes(0);
+        for (int index = 0; index < KEYWORDS; index++) {
+            header.addValue("DBL" + index, index * 1.5, "a double value");
+            header.addValue("STR" + index, "value " + index, "a string value");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BufferedDataOutputStream dos = new BufferedDataOutputStream(out);
+        header.write(dos);
+        dos.flush();
+        this.headerBytes = out.toByteArray();
+        this.cards = new String[header.getNumberOfCards()];
+        for (int index = 0; index < this.cards.length; index++) {
+            this.cards[index] = new String(this.headerBytes, index * HeaderCard.FITS_HEADER_CARD_SIZE, HeaderCard.FITS_HEADER_CARD_SIZE, "US-ASCII");
+        }
+    }
+
+    @Benchmark
+    public Header readHeader() throws Exception {
+        return Header.readHeader(new BufferedDataInputStream(new ByteArrayInputStream(this.headerBytes)));
+    }
+
+    @Benchmark
+    public void createCards(Blackhole blackhole) {
+        for (String card : this.cards) {
+            blackhole.consume(HeaderCard.create(card));
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package nom.tam.manual.benchmark;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 1996 - 2021 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import nom.tam.fits.BasicHDU;
+import nom.tam.fits.Fits;
+import nom.tam.fits.FitsFactory;
+import nom.tam.fits.ImageHDU;
+import nom.tam.image.StandardImageTiler;
+import nom.tam.util.BufferedDataOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading and writing complete images and cutting tiles out of an image in a
+ * file with the {@link StandardImageTiler}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ImageBenchmark {
+
+    private static final int IMAGE_SIZE = 2048;
+
+    private static final int TILE_SIZE = 256;
+
+    private BasicHDU<?> image;
+
+    private byte[] imageBytes;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    private Fits fits;
+
+    private StandardImageTiler tiler;
+
+    private final int[] corners = new int[2];
+
+    private final int[] lengths = {
+        TILE_SIZE,
+        TILE_SIZE
+    };
+
+    private int nextTile;
+
+    @Setup
+    public void setup() throws Exception {
+        this.image = FitsFactory.hduFactory(BenchmarkData.intImage(IMAGE_SIZE, IMAGE_SIZE, 65535));
+        Fits imageFits = new Fits();
+        imageFits.addHDU(this.image);
+        this.imageBytes = BenchmarkData.toBytes(imageFits);
+
+        File file = BenchmarkData.tempFile("image");
+        imageFits.write(file);
+        this.fits = new Fits(file);
+        this.tiler = ((ImageHDU) this.fits.readHDU()).getTiler();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        this.fits.close();
+    }
+
+    @Benchmark
+    public Object readImage() throws Exception {
+        Fits read = new Fits(new ByteArrayInputStream(this.imageBytes));
+        return read.readHDU().getKernel();
+    }
+
+    @Benchmark
+    public int writeImage() throws Exception {
+        this.out.reset();
+        BufferedDataOutputStream dos = new BufferedDataOutputStream(this.out);
+        this.image.write(dos);
+        dos.flush();
+        return this.out.size();
+    }
+
+    @Benchmark
+    public Object getTile() throws Exception {
+        // walk over the tiles so that not always the same part of the file is
+        // read.
+        int tilesPerRow = IMAGE_SIZE / TILE_SIZE;
+        this.corners[0] = this.nextTile / tilesPerRow * TILE_SIZE;
+        this.corners[1] = this.nextTile % tilesPerRow * TILE_SIZE;
+        this.nextTile = (this.nextTile + 1) % (tilesPerRow * tilesPerRow);
+        return this.tiler.getTile(this.corners, this.lengths);
+    }
+}
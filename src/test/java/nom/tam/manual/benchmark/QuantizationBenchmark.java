@@ -0,0 +1,101 @@
+package nom.tam.manual.benchmark;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 1996 - 2021 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.concurrent.TimeUnit;
+
+import nom.tam.fits.compression.algorithm.quant.QuantizeOption;
+import nom.tam.fits.compression.algorithm.quant.QuantizeProcessor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Quantization and unquantization of a floating point tile with subtractive
+ * dithering, the step in front of the integer compressors.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class QuantizationBenchmark {
+
+    private static final int TILE_SIZE = 300;
+
+    private double[] pixels;
+
+    private double[] unquantized;
+
+    private IntBuffer quantized;
+
+    private QuantizeProcessor quantizeProcessor;
+
+    @Setup
+    public void setup() {
+        this.pixels = BenchmarkData.flatten(BenchmarkData.doubleImage(TILE_SIZE, TILE_SIZE));
+        this.unquantized = new double[this.pixels.length];
+        this.quantized = IntBuffer.allocate(this.pixels.length);
+        this.quantizeProcessor = new QuantizeProcessor(new QuantizeOption()//
+                .setDither(true)//
+                .setSeed(1L)//
+                .setQlevel(4.)//
+                .setTileWidth(TILE_SIZE)//
+                .setTileHeight(TILE_SIZE));
+        quantize();
+    }
+
+    @Benchmark
+    public IntBuffer quantize() {
+        this.quantized.clear();
+        this.quantizeProcessor.quantize(this.pixels, this.quantized);
+        return this.quantized;
+    }
+
+    @Benchmark
+    public double[] unquantize() {
+        this.quantized.rewind();
+        this.quantizeProcessor.unquantize(this.quantized, DoubleBuffer.wrap(this.unquantized));
+        return this.unquantized;
+    }
+}
@@ -0,0 +1,275 @@
+package nom.tam.util;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 1996 - 2021 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import nom.tam.fits.BasicHDU;
+import nom.tam.fits.BinaryTableHDU;
+import nom.tam.fits.Fits;
+import nom.tam.fits.FitsFactory;
+import nom.tam.fits.ImageHDU;
+import nom.tam.fits.utilities.FitsCopy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ChannelFileTest {
+
+    private static final int BUFFER = 20;
+
+    private byte[] contentOf(String name) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(name, "r");
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            file.readFully(bytes);
+            return bytes;
+        } finally {
+            file.close();
+        }
+    }
+
+    @Test
+    public void testPrimitivesAcrossBuffers() throws IOException {
+        ChannelFile file = new ChannelFile(new File("target/ChannelFilePrimitives"), "rw", BUFFER);
+        try {
+            file.setLength(0);
+            for (int index = 0; index < 100; index++) {
+                file.writeByte(index);
+                file.writeShort(index);
+                file.writeInt(index);
+                file.writeLong(index);
+                file.writeFloat(index);
+                file.writeDouble(index);
+                file.writeChar(index);
+                file.writeBoolean(index % 2 == 0);
+            }
+            file.write(new int[]{
+                1,
+                2,
+                3
+            });
+            file.writeUTF("channel");
+        } finally {
+            file.close();
+        }
+
+        BufferedFile buffered = new BufferedFile("target/ChannelFilePrimitives", "r");
+        file = new ChannelFile(new File("target/ChannelFilePrimitives"), "r", BUFFER);
+        try {
+            for (int index = 0; index < 100; index++) {
+                Assert.assertEquals(index, buffered.readByte());
+                Assert.assertEquals(index, buffered.readShort());
+                Assert.assertEquals(index, buffered.readInt());
+                Assert.assertEquals(index, buffered.readLong());
+                Assert.assertEquals(index, buffered.readFloat(), 0f);
+                Assert.assertEquals(index, buffered.readDouble(), 0.);
+                Assert.assertEquals(index, buffered.readChar());
+                Assert.assertEquals(index % 2 == 0, buffered.readBoolean());
+
+                Assert.assertEquals(index, file.readByte());
+                Assert.assertEquals(index, file.readShort());
+                Assert.assertEquals(index, file.readInt());
+                Assert.assertEquals(index, file.readLong());
+                Assert.assertEquals(index, file.readFloat(), 0f);
+                Assert.assertEquals(index, file.readDouble(), 0.);
+                Assert.assertEquals(index, file.readChar());
+                Assert.assertEquals(index % 2 == 0, file.readBoolean());
+            }
+            int[] values = new int[3];
+            Assert.assertEquals(12, file.read(values));
+            Assert.assertArrayEquals(new int[]{
+                1,
+                2,
+                3
+            }, values);
+            Assert.assertEquals("channel", file.readUTF());
+            Assert.assertEquals(file.length(), file.getFilePointer());
+            EOFException eof = null;
+            try {
+                file.read(values);
+            } catch (EOFException e) {
+                eof = e;
+            }
+            Assert.assertNotNull(eof);
+        } finally {
+            buffered.close();
+            file.close();
+        }
+    }
+
+    @Test
+    public void testArraysAndPartialReads() throws IOException {
+        long[] longs = new long[1001];
+        short[] shorts = new short[777];
+        byte[] bytes = new byte[100];
+        for (int index = 0; index < longs.length; index++) {
+            longs[index] = (long) index << 35 | index;
+        }
+        for (int index = 0; index < shorts.length; index++) {
+            shorts[index] = (short) (index * 3);
+        }
+        for (int index = 0; index < bytes.length; index++) {
+            bytes[index] = (byte) index;
+        }
+        ChannelFile file = new ChannelFile(new File("target/ChannelFileArrays"), "rw", BUFFER);
+        try {
+            file.setLength(0);
+            file.writeByte(7);
+            file.write(longs);
+            // larger than the buffer, written with a gathering write
+            file.write(bytes);
+            file.writeArray(new short[][]{
+                Arrays.copyOfRange(shorts, 0, 300),
+                Arrays.copyOfRange(shorts, 300, shorts.length)
+            });
+            file.write(new ByteBuffer[]{
+                ByteBuffer.wrap(new byte[]{
+                    1,
+                    2
+                }),
+                ByteBuffer.wrap(new byte[]{
+                    3
+                })
+            });
+            file.writeByte(4);
+            Assert.assertEquals(1 + longs.length * 8 + bytes.length + shorts.length * 2 + 4, file.getFilePointer());
+
+            file.seek(0);
+            Assert.assertEquals(7, file.readByte());
+            long[] longsRead = new long[longs.length];
+            Assert.assertEquals(longs.length * 8, file.readLArray(longsRead));
+            Assert.assertArrayEquals(longs, longsRead);
+            byte[] bytesRead = new byte[bytes.length];
+            file.readFully(bytesRead);
+            Assert.assertArrayEquals(bytes, bytesRead);
+            file.mark(0);
+            short[] shortsRead = new short[shorts.length];
+            Assert.assertEquals(shorts.length * 2, file.read(shortsRead));
+            Assert.assertArrayEquals(shorts, shortsRead);
+            file.reset();
+            Assert.assertEquals(shorts[0], file.readShort());
+            file.skipAllBytes(shorts.length * 2 - 2);
+
+            // only 4 bytes are left
+            int[] ints = new int[3];
+            Assert.assertEquals(4, file.read(ints));
+            Assert.assertEquals(0x01020304, ints[0]);
+
+            // overwrite in the middle of the file
+            file.seek(1);
+            file.writeLong(-1L);
+            file.seek(1);
+            Assert.assertEquals(-1L, file.readLong());
+            Assert.assertEquals(longs[1], file.readLong());
+            file.setLength(9);
+            Assert.assertEquals(9, file.length());
+        } finally {
+            file.close();
+        }
+    }
+
+    @Test
+    public void testTransferUnmodifiedData() throws Exception {
+        short[][] image = new short[100][120];
+        for (int y = 0; y < image.length; y++) {
+            for (int x = 0; x < image[y].length; x++) {
+                image[y][x] = (short) (x + y * 7);
+            }
+        }
+        Fits fits = new Fits();
+        fits.addHDU(FitsFactory.hduFactory(image));
+        fits.addHDU(FitsFactory.hduFactory(new Object[]{
+            new int[]{
+                1,
+                2,
+                3
+            },
+            new float[][]{
+                {
+                    1f
+                },
+                {
+                    1f,
+                    2f
+                },
+                {
+                    1f,
+                    2f,
+                    3f
+                }
+            }
+        }));
+        fits.write(new File("target/ChannelFileSource.fits"));
+        fits.close();
+
+        FitsCopy.main(new String[]{
+            "target/ChannelFileSource.fits",
+            "target/ChannelFileCopy.fits"
+        });
+        Assert.assertArrayEquals(contentOf("target/ChannelFileSource.fits"), contentOf("target/ChannelFileCopy.fits"));
+
+        FitsFactory.setUseChannelFiles(true);
+        try {
+            fits = new Fits(new File("target/ChannelFileCopy.fits"));
+            Assert.assertTrue(fits.getStream() instanceof ChannelFile);
+            BasicHDU<?>[] hdus = fits.read();
+            short[][] data = (short[][]) ((ImageHDU) hdus[0]).getKernel();
+            data[5][5] = -1;
+            Assert.assertArrayEquals(new float[]{
+                1f,
+                2f
+            }, (float[]) ((BinaryTableHDU) hdus[1]).getElement(1, 1), 0f);
+            fits.write(new File("target/ChannelFileModified.fits"));
+            fits.close();
+        } finally {
+            FitsFactory.setUseChannelFiles(false);
+        }
+
+        fits = new Fits(new File("target/ChannelFileModified.fits"));
+        short[][] data = (short[][]) ((ImageHDU) fits.getHDU(0)).getKernel();
+        Assert.assertEquals(-1, data[5][5]);
+        Assert.assertEquals(image[6][5], data[6][5]);
+        Assert.assertArrayEquals(new float[]{
+            1f,
+            2f,
+            3f
+        }, (float[]) ((BinaryTableHDU) fits.getHDU(1)).getElement(2, 1), 0f);
+        fits.close();
+        Assert.assertEquals(new File("target/ChannelFileSource.fits").length(), new File("target/ChannelFileModified.fits").length());
+    }
+}
@@ -0,0 +1,227 @@
+package nom.tam.util;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 1996 - 2021 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ColumnTableTest {
+
+    private static final int NROWS = 20000;
+
+    private static final int[] SIZES = {
+        1,
+        2,
+        1,
+        3,
+        1,
+        1,
+        3,
+        1
+    };
+
+    private static Object[] columns() {
+        byte[] bytes = new byte[NROWS];
+        boolean[] booleans = new boolean[NROWS * 2];
+        char[] chars = new char[NROWS];
+        short[] shorts = new short[NROWS * 3];
+        int[] ints = new int[NROWS];
+        long[] longs = new long[NROWS];
+        float[] floats = new float[NROWS * 3];
+        double[] doubles = new double[NROWS];
+        for (int index = 0; index < NROWS; index++) {
+            bytes[index] = (byte) index;
+            booleans[2 * index] = index % 3 == 0;
+            chars[index] = (char) ('a' + index % 26);
+            shorts[3 * index + 1] = (short) -index;
+            ints[index] = index * 7919;
+            longs[index] = index * 1000000007L;
+            floats[3 * index + 2] = index / 3f;
+            doubles[index] = -index / 7.0;
+        }
+        return new Object[]{
+            bytes,
+            booleans,
+            chars,
+            shorts,
+            ints,
+            longs,
+            floats,
+            doubles
+        };
+    }
+
+    private static Object[] emptyColumns(Object[] columns) {
+        Object[] empty = new Object[columns.length];
+        for (int col = 0; col < columns.length; col++) {
+            empty[col] = Array.newInstance(columns[col].getClass().getComponentType(), Array.getLength(columns[col]));
+        }
+        return empty;
+    }
+
+    private static byte[] bytesOf(ColumnTable<?> table) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BufferedDataOutputStream out = new BufferedDataOutputStream(bytes);
+        table.write(out);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void testBlockWriteMatchesRowByRow() throws Exception {
+        Object[] columns = columns();
+        ColumnTable<Object> table = new ColumnTable<Object>(columns, SIZES);
+
+        ByteArrayOutputStream blocked = new ByteArrayOutputStream();
+        BufferedDataOutputStream out = new BufferedDataOutputStream(blocked);
+        table.write(out);
+        out.close();
+
+        ByteArrayOutputStream rowByRow = new ByteArrayOutputStream();
+        out = new BufferedDataOutputStream(rowByRow);
+        for (int row = 0; row < NROWS; row++) {
+            for (int col = 0; col < columns.length; col++) {
+                out.writeArray(table.getElement(row, col));
+            }
+        }
+        out.close();
+        Assert.assertArrayEquals(rowByRow.toByteArray(), blocked.toByteArray());
+    }
+
+    @Test
+    public void testBlockReadRoundTrip() throws Exception {
+        Object[] columns = columns();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BufferedDataOutputStream out = new BufferedDataOutputStream(bytes);
+        new ColumnTable<Object>(columns, SIZES).write(out);
+        out.close();
+
+        ColumnTable<Object> table = new ColumnTable<Object>(emptyColumns(columns), SIZES);
+        table.read(new BufferedDataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        Assert.assertArrayEquals((byte[]) columns[0], (byte[]) table.getColumn(0));
+        Assert.assertTrue(Arrays.equals((boolean[]) columns[1], (boolean[]) table.getColumn(1)));
+        Assert.assertArrayEquals((char[]) columns[2], (char[]) table.getColumn(2));
+        Assert.assertArrayEquals((short[]) columns[3], (short[]) table.getColumn(3));
+        Assert.assertArrayEquals((int[]) columns[4], (int[]) table.getColumn(4));
+        Assert.assertArrayEquals((long[]) columns[5], (long[]) table.getColumn(5));
+        Assert.assertArrayEquals((float[]) columns[6], (float[]) table.getColumn(6), 0f);
+        Assert.assertArrayEquals((double[]) columns[7], (double[]) table.getColumn(7), 0.0);
+    }
+
+    @Test
+    public void testColumnSlices() throws Exception {
+        Object[] columns = columns();
+        ColumnTable<Object> table = new ColumnTable<Object>(columns, SIZES);
+        ColumnTable<Object> fromStream = new ColumnTable<Object>(emptyColumns(columns), SIZES);
+        ColumnTable<Object> fromBuffer = new ColumnTable<Object>(emptyColumns(columns), SIZES);
+        for (int col = 0; col < columns.length; col++) {
+            for (int rowStart = 0; rowStart < NROWS; rowStart += 3000) {
+                // the last tile extends beyond the end of the table
+                int rowEnd = rowStart + 3000;
+
+                ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                BufferedDataOutputStream out = new BufferedDataOutputStream(expected);
+                for (int row = rowStart; row < Math.min(rowEnd, NROWS); row++) {
+                    out.writeArray(table.getElement(row, col));
+                }
+                out.close();
+
+                ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+                out = new BufferedDataOutputStream(streamed);
+                table.write(out, rowStart, rowEnd, col);
+                out.close();
+                Assert.assertArrayEquals(expected.toByteArray(), streamed.toByteArray());
+
+                ByteBuffer buffer = ByteBuffer.allocate(expected.size());
+                table.write(buffer, rowStart, rowEnd, col);
+                Assert.assertEquals(expected.size(), buffer.position());
+                Assert.assertArrayEquals(expected.toByteArray(), buffer.array());
+
+                fromStream.read(new BufferedDataInputStream(new ByteArrayInputStream(streamed.toByteArray())), rowStart, rowEnd, col);
+                buffer.rewind();
+                fromBuffer.read(buffer, rowStart, rowEnd, col);
+                Assert.assertEquals(expected.size(), buffer.position());
+            }
+        }
+        Assert.assertArrayEquals(bytesOf(table), bytesOf(fromStream));
+        Assert.assertArrayEquals(bytesOf(table), bytesOf(fromBuffer));
+    }
+
+    @Test
+    public void testColumnSlicesInOffsetAndDirectBuffers() throws Exception {
+        Object[] columns = columns();
+        ColumnTable<Object> table = new ColumnTable<Object>(columns, SIZES);
+        ByteBuffer backing = ByteBuffer.allocate(1000);
+        backing.position(7);
+        ByteBuffer[] buffers = {
+            backing.slice(),
+            ByteBuffer.allocateDirect(1000)
+        };
+        for (ByteBuffer buffer : buffers) {
+            for (int col = 0; col < columns.length; col++) {
+                ColumnTable<Object> copy = new ColumnTable<Object>(emptyColumns(columns), SIZES);
+                buffer.clear();
+                table.write(buffer, 100, 110, col);
+                ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                BufferedDataOutputStream out = new BufferedDataOutputStream(expected);
+                table.write(out, 100, 110, col);
+                out.close();
+                byte[] written = new byte[expected.size()];
+                buffer.rewind();
+                buffer.get(written);
+                Assert.assertArrayEquals(expected.toByteArray(), written);
+                buffer.rewind();
+                copy.read(buffer, 100, 110, col);
+                for (int row = 100; row < 110; row++) {
+                    Assert.assertTrue(Arrays.deepEquals(new Object[]{
+                        table.getElement(row, col)
+                    }, new Object[]{
+                        copy.getElement(row, col)
+                    }));
+                }
+            }
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void testTruncatedRead() throws Exception {
+        ColumnTable<Object> table = new ColumnTable<Object>(columns(), SIZES);
+        table.read(new BufferedDataInputStream(new ByteArrayInputStream(new byte[1000])));
+    }
+}
@@ -37,6 +37,7 @@ import static org.junit.Assert.assertTrue;
 
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.Random;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -389,4 +390,42 @@ public class HashedListTest {
         assertFalse(h.replaceKey("K1", "K2"));
         assertFalse(h.replaceKey("K", "K"));
     }
+
+    @Test
+    public void testPositionsFollowChanges() {
+        HashedList<TestCursorValue> h = new HashedList<TestCursorValue>();
+        Random random = new Random(4711);
+        for (int step = 0; step < 5000; step++) {
+            int operation = random.nextInt(6);
+            if (operation == 0 || h.isEmpty()) {
+                h.add(new TestCursorValue("K" + step, "R" + step));
+            } else if (operation == 1) {
+                h.iterator(random.nextInt(h.size() + 1)).add(new TestCursorValue(random.nextBoolean() ? "COMMENT" : "HISTORY", "C" + step));
+            } else if (operation == 2) {
+                h.iterator(random.nextInt(h.size() + 1)).add(new TestCursorValue("K" + step, "R" + step));
+            } else if (operation == 3) {
+                h.remove(random.nextInt(h.size()));
+            } else if (operation == 4) {
+                String key = h.get(random.nextInt(h.size())).getKey();
+                h.update(key, new TestCursorValue(key, "U" + step));
+            } else {
+                h.removeKey(h.get(random.nextInt(h.size())).getKey());
+            }
+            if (!h.isEmpty()) {
+                TestCursorValue entry = h.get(random.nextInt(h.size()));
+                int first = 0;
+                while (!h.get(first).getKey().equals(entry.getKey())) {
+                    first++;
+                }
+                assertEquals(first, h.indexOf(entry));
+            }
+        }
+        for (int index = 0; index < h.size(); index++) {
+            if (!h.get(index).getKey().equals("COMMENT") && !h.get(index).getKey().equals("HISTORY")) {
+                assertEquals(index, h.indexOf(h.get(index)));
+                Cursor<String, TestCursorValue> cursor = h.iterator(h.get(index).getKey());
+                assertEquals(h.get(index), cursor.next());
+            }
+        }
+    }
 }
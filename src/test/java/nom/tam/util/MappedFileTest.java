@@ -0,0 +1,208 @@
+package nom.tam.util;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 1996 - 2016 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import nom.tam.fits.BasicHDU;
+import nom.tam.fits.Fits;
+import nom.tam.fits.FitsFactory;
+import nom.tam.fits.ImageHDU;
+import nom.tam.fits.TableHDU;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MappedFileTest {
+
+    private static final int SEGMENT = 64;
+
+    private File writeTestFile(String name) throws IOException {
+        BufferedFile file = new BufferedFile("target/" + name, "rw");
+        try {
+            file.setLength(0);
+            for (int index = 0; index < 100; index++) {
+                file.writeByte(index);
+                file.writeShort(index);
+                file.writeInt(index);
+                file.writeLong(index);
+                file.writeFloat(index);
+                file.writeDouble(index);
+                file.writeChar(index);
+                file.writeBoolean(index % 2 == 0);
+            }
+            file.write(new int[]{
+                1,
+                2,
+                3
+            });
+        } finally {
+            file.close();
+        }
+        return new File("target/" + name);
+    }
+
+    @Test
+    public void testReadPrimitivesAcrossSegments() throws IOException {
+        MappedFile file = new MappedFile(writeTestFile("MappedFilePrimitives"), SEGMENT);
+        try {
+            for (int index = 0; index < 100; index++) {
+                Assert.assertEquals(index, file.readByte());
+                Assert.assertEquals(index, file.readShort());
+                Assert.assertEquals(index, file.readInt());
+                Assert.assertEquals(index, file.readLong());
+                Assert.assertEquals(index, file.readFloat(), 0f);
+                Assert.assertEquals(index, file.readDouble(), 0.);
+                Assert.assertEquals(index, file.readChar());
+                Assert.assertEquals(index % 2 == 0, file.readBoolean());
+            }
+            int[] values = new int[4];
+            Assert.assertEquals(12, file.read(values));
+            Assert.assertArrayEquals(new int[]{
+                1,
+                2,
+                3,
+                0
+            }, values);
+            EOFException eof = null;
+            try {
+                file.read(values);
+            } catch (EOFException e) {
+                eof = e;
+            }
+            Assert.assertNotNull(eof);
+        } finally {
+            file.close();
+        }
+    }
+
+    @Test
+    public void testBulkReadsAcrossSegments() throws IOException {
+        BufferedFile out = new BufferedFile("target/MappedFileBulk", "rw");
+        double[] expected = new double[1000];
+        for (int index = 0; index < expected.length; index++) {
+            expected[index] = index * 0.5;
+        }
+        try {
+            out.setLength(0);
+            out.write(new byte[3]);
+            out.write(expected);
+        } finally {
+            out.close();
+        }
+        MappedFile file = new MappedFile(new File("target/MappedFileBulk"), SEGMENT);
+        try {
+            file.skipAllBytes(3);
+            double[] values = new double[expected.length];
+            Assert.assertEquals(values.length * 8, file.readLArray(values));
+            Assert.assertArrayEquals(expected, values, 0.);
+
+            file.seek(3 + 8 * 10);
+            file.mark(0);
+            float[] raw = new float[2];
+            file.read(raw);
+            file.reset();
+            Assert.assertEquals(3 + 8 * 10, file.getFilePointer());
+            Assert.assertEquals(5., file.readDouble(), 0.);
+
+            ByteBufferOutputStream bytes = new ByteBufferOutputStream(ByteBuffer.allocate(16));
+            BufferedDataOutputStream stream = new BufferedDataOutputStream(bytes);
+            file.read(stream, double.class, 0, 2);
+            stream.flush();
+            Assert.assertEquals(3 + 8 * 13, file.getFilePointer());
+        } finally {
+            file.close();
+        }
+    }
+
+    @Test
+    public void testFitsWithMappedFile() throws Exception {
+        float[][] image = new float[200][300];
+        for (int y = 0; y < image.length; y++) {
+            for (int x = 0; x < image[y].length; x++) {
+                image[y][x] = x + 1000 * y;
+            }
+        }
+        Fits fits = new Fits();
+        fits.addHDU(FitsFactory.hduFactory(image));
+        fits.addHDU(FitsFactory.hduFactory(new Object[]{
+            new int[]{
+                1,
+                2,
+                3
+            },
+            new double[]{
+                1.5,
+                2.5,
+                3.5
+            }
+        }));
+        fits.write(new File("target/MappedFileFits.fits"));
+        fits.close();
+
+        FitsFactory.setUseMappedFiles(true);
+        try {
+            fits = new Fits(new File("target/MappedFileFits.fits"));
+            Assert.assertTrue(fits.getStream() instanceof MappedFile);
+            BasicHDU<?>[] hdus = fits.read();
+            ImageHDU imageHDU = (ImageHDU) hdus[0];
+            float[] tile = (float[]) imageHDU.getTiler().getTile(new int[]{
+                10,
+                20
+            }, new int[]{
+                2,
+                3
+            });
+            Assert.assertArrayEquals(new float[]{
+                10020f,
+                10021f,
+                10022f,
+                11020f,
+                11021f,
+                11022f
+            }, tile, 0f);
+            Assert.assertFalse(imageHDU.getData().rewriteable());
+            TableHDU<?> table = (TableHDU<?>) hdus[1];
+            Assert.assertArrayEquals(new double[]{
+                1.5,
+                2.5,
+                3.5
+            }, (double[]) table.getColumn(1), 0.);
+            fits.close();
+        } finally {
+            FitsFactory.setUseMappedFiles(false);
+        }
+    }
+}
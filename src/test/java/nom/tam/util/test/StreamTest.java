@@ -551,6 +551,56 @@ public class StreamTest {
         Assert.assertEquals(0, in.available());
     }
 
+    @Test
+    public void testLargeArraysInBulk() throws Exception {
+        int[] ints = new int[10000];
+        long[] longs = new long[3333];
+        double[] doubles = new double[5001];
+        short[] shorts = new short[12345];
+        for (int index = 0; index < ints.length; index++) {
+            ints[index] = index * 31 - 7;
+        }
+        for (int index = 0; index < longs.length; index++) {
+            longs[index] = (long) index << 33 | index;
+        }
+        for (int index = 0; index < doubles.length; index++) {
+            doubles[index] = index / 3.;
+        }
+        for (int index = 0; index < shorts.length; index++) {
+            shorts[index] = (short) (index * 7);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BufferedDataOutputStream out = new BufferedDataOutputStream(bytes, 100);
+        out.writeByte(1);
+        out.write(ints);
+        out.write(longs);
+        out.writeByte(2);
+        out.write(doubles);
+        out.write(shorts);
+        out.close();
+        Assert.assertEquals(2 + ints.length * 4 + longs.length * 8 + doubles.length * 8 + shorts.length * 2, bytes.size());
+
+        BufferedDataInputStream input = new BufferedDataInputStream(new ByteArrayInputStream(bytes.toByteArray()), 1000);
+        Assert.assertEquals(1, input.readByte());
+        int[] intsRead = new int[ints.length];
+        Assert.assertEquals(ints.length * 4, input.read(intsRead));
+        Assert.assertArrayEquals(ints, intsRead);
+        long[] longsRead = new long[longs.length];
+        Assert.assertEquals(longs.length * 8, input.read(longsRead));
+        Assert.assertArrayEquals(longs, longsRead);
+        Assert.assertEquals(2, input.readByte());
+        double[] doublesRead = new double[doubles.length];
+        Assert.assertEquals(doubles.length * 8, input.read(doublesRead));
+        Assert.assertArrayEquals(doubles, doublesRead, 0.);
+        short[] shortsRead = new short[shorts.length + 10];
+        Assert.assertEquals(shorts.length * 2, input.read(shortsRead));
+        for (int index = 0; index < shorts.length; index++) {
+            Assert.assertEquals(shorts[index], shortsRead[index]);
+        }
+        Assert.assertEquals(0, input.available());
+        input.close();
+    }
+
     @Test
     public void testEofHandlingCharArray() throws Exception {
         Assert.assertEquals(8, create8ByteInput().read(new char[10]));